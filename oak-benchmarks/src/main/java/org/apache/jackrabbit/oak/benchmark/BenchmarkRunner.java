@@ -200,6 +200,7 @@ public class BenchmarkRunner {
             new ConcurrentReadWriteTest(),
             new ConcurrentWriteReadTest(),
             new ConcurrentWriteTest(),
+            new ConcurrentSegmentWriteTest(),
             new SimpleSearchTest(),
             new UUIDLookupTest(),
             new SQL2SearchTest(),
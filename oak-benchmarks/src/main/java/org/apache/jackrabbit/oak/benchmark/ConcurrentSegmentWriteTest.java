@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import java.util.Random;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+/**
+ * Saves content from many concurrent sessions, each to its own subtree, to
+ * measure how segment writes scale with the number of writers. Run it with
+ * the Oak-Segment-Tar fixture, with and without
+ * {@code -Doak.segment.concurrentWrites=true}, to compare TAR files written
+ * one segment after the other with TAR files written concurrently.
+ */
+public class ConcurrentSegmentWriteTest extends AbstractTest {
+
+    private static final String ROOT_NODE_NAME = "test" + TEST_ID;
+
+    private static final int WRITER_COUNT = Integer.getInteger("writerCount", 16);
+
+    private static final int NODE_COUNT = getScale(100);
+
+    private static final int PROPERTY_SIZE = Integer.getInteger("propertySize", 1024);
+
+    private Writer writer;
+
+    @Override
+    protected void beforeSuite() throws Exception {
+        Session session = loginWriter();
+        Node root = session.getRootNode().addNode(ROOT_NODE_NAME, "nt:unstructured");
+        for (int i = 0; i < WRITER_COUNT; i++) {
+            root.addNode("writer" + i, "nt:unstructured");
+        }
+        session.save();
+
+        for (int i = 1; i < WRITER_COUNT; i++) {
+            addBackgroundJob(new Writer(root.getPath() + "/writer" + i));
+        }
+        writer = new Writer(root.getPath() + "/writer0");
+    }
+
+    @Override
+    protected void runTest() throws Exception {
+        writer.run();
+    }
+
+    @Override
+    protected void afterSuite() throws Exception {
+        Session session = loginWriter();
+        session.getNode("/" + ROOT_NODE_NAME).remove();
+        session.save();
+    }
+
+    private class Writer implements Runnable {
+
+        private final Session session = loginWriter();
+
+        private final Random random = new Random();
+
+        private final String path;
+
+        private int count;
+
+        private Writer(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public void run() {
+            try {
+                session.refresh(false);
+                Node node = session.getNode(path).addNode("node" + count++, "nt:unstructured");
+                for (int i = 0; i < NODE_COUNT; i++) {
+                    node.addNode("child" + i, "nt:unstructured").setProperty("data", randomString());
+                    if (i % 10 == 9) {
+                        session.save();
+                    }
+                }
+                session.save();
+            } catch (RepositoryException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private String randomString() {
+            char[] chars = new char[PROPERTY_SIZE];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) ('a' + random.nextInt(26));
+            }
+            return new String(chars);
+        }
+
+    }
+
+}
@@ -454,6 +454,12 @@ public class ExternalSort {
                     tmplist.clear();
                 }
             }
+        } catch (IOException | RuntimeException e) {
+            // the files are only deleted when they are merged
+            for (File f : files) {
+                f.delete();
+            }
+            throw e;
         }
         return files;
     }
@@ -586,6 +592,7 @@ public class ExternalSort {
     /**
      * Sort a list and save it to a temporary file. In case this method is directly used and path filters predicates are
      * provided, try to avoid usage of ArrayList (tmplist) as removal from ArrayList is O(n) operation.
+     * The caller is responsible for deleting the file, as {@link #mergeSortedFiles(List, File)} does.
      *
      * @return the file containing the sorted data
      * @param tmplist
@@ -618,21 +625,25 @@ public class ExternalSort {
 
         File newtmpfile = File.createTempFile("sortInBatch",
                 "flatfile", tmpdirectory);
-        newtmpfile.deleteOnExit();
-        OutputStream out = algorithm.getOutputStream(new FileOutputStream(newtmpfile));
-        BufferedWriter fbw = new BufferedWriter(new OutputStreamWriter(out, cs));
-        T lastLine = null;
         try {
-            for (T r : tmplist) {
-                // Write if  filterPredicate return true and line is not duplicate
-                if (!distinct || (lastLine == null || (lastLine != null && cmp.compare(r, lastLine) != 0))) {
-                    fbw.write(typeToString.apply(r));
-                    fbw.write('\n');
-                    lastLine = r;
+            OutputStream out = algorithm.getOutputStream(new FileOutputStream(newtmpfile));
+            BufferedWriter fbw = new BufferedWriter(new OutputStreamWriter(out, cs));
+            T lastLine = null;
+            try {
+                for (T r : tmplist) {
+                    // Write if  filterPredicate return true and line is not duplicate
+                    if (!distinct || (lastLine == null || (lastLine != null && cmp.compare(r, lastLine) != 0))) {
+                        fbw.write(typeToString.apply(r));
+                        fbw.write('\n');
+                        lastLine = r;
+                    }
                 }
+            } finally {
+                fbw.close();
             }
-        } finally {
-            fbw.close();
+        } catch (IOException | RuntimeException e) {
+            newtmpfile.delete();
+            throw e;
         }
         return newtmpfile;
     }
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.cursor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.jackrabbit.oak.api.Result.SizePrecision;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+
+/**
+ * A cursor that reads the rows of another cursor in the background, so that
+ * reading from the index overlaps with processing the rows, or with reading
+ * from other indexes.
+ * <p>
+ * The rows are read in batches. Reading the first batch starts when the
+ * cursor is created, and the next batch is only read once the caller needs
+ * the current one, so that the wrapped cursor is never used by two threads
+ * at the same time. The first batch is small, and the size of the following
+ * batches grows, so that not much more is read than needed if the caller
+ * stops early (for example because of a limit). If the executor does not
+ * accept the task, the batch is read by the caller.
+ */
+class AsyncCursor extends AbstractCursor {
+
+    static final int MIN_BATCH_SIZE = 16;
+
+    static final int MAX_BATCH_SIZE = 1024;
+
+    private final Cursor cursor;
+    private final Executor executor;
+    private int batchSize = MIN_BATCH_SIZE;
+    private Iterator<IndexRow> current = Collections.emptyIterator();
+    private FutureTask<List<IndexRow>> pending;
+
+    AsyncCursor(Cursor cursor, Executor executor) {
+        this.cursor = cursor;
+        this.executor = executor;
+        readAhead();
+    }
+
+    @Override
+    public long getSize(SizePrecision precision, long max) {
+        if (pending != null) {
+            // wait until the cursor is no longer used by another thread
+            await(pending);
+        }
+        return cursor.getSize(precision, max);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (pending == null) {
+                return false;
+            }
+            List<IndexRow> rows = await(pending);
+            pending = null;
+            if (rows.size() == batchSize) {
+                // there might be more rows
+                batchSize = Math.min(MAX_BATCH_SIZE, batchSize * 2);
+                readAhead();
+            }
+            current = rows.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public IndexRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    private void readAhead() {
+        int size = batchSize;
+        FutureTask<List<IndexRow>> task = new FutureTask<>(() -> read(size));
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+        pending = task;
+    }
+
+    private List<IndexRow> read(int size) {
+        List<IndexRow> rows = new ArrayList<>(size);
+        while (rows.size() < size && cursor.hasNext()) {
+            rows.add(cursor.next());
+        }
+        return rows;
+    }
+
+    private static List<IndexRow> await(FutureTask<List<IndexRow>> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading from the index", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+}
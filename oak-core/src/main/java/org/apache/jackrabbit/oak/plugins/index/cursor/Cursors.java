@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.oak.plugins.index.cursor;
 
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.apache.jackrabbit.oak.query.FilterIterators;
 import org.apache.jackrabbit.oak.spi.query.Cursor;
@@ -58,6 +59,18 @@ public class Cursors {
         return new PrefetchCursor(cursor, store, prefetchCount, rootState, prefetchRelative);
     }
 
+    /**
+     * Creates a cursor that reads the rows of the given cursor in the
+     * background, using the given executor.
+     *
+     * @param cursor the cursor to read from
+     * @param executor the executor
+     * @return the cursor
+     */
+    public static Cursor newAsyncCursor(Cursor cursor, Executor executor) {
+        return new AsyncCursor(cursor, executor);
+    }
+
     /**
      * Creates a {@link Cursor} over paths.
      *
@@ -28,6 +28,7 @@ import static org.apache.jackrabbit.oak.commons.PathUtils.concat;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.DECLARING_NODE_TYPES;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.PROPERTY_NAMES;
+import static org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexStatistics.STATISTICS_NODE_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexUtil.encode;
 import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
 
@@ -113,6 +114,12 @@ class PropertyIndexEditor implements IndexEditor {
 
     private final MountInfoProvider mountInfoProvider;
 
+    /**
+     * Whether statistics are updated, or {@code null} if not yet known.
+     * Only used for the root editor.
+     */
+    private Boolean statisticsEnabled;
+
     public PropertyIndexEditor(NodeBuilder definition, NodeState root,
                                IndexUpdateCallback updateCallback, MountInfoProvider mountInfoProvider) {
         this.parent = null;
@@ -179,6 +186,21 @@ class PropertyIndexEditor implements IndexEditor {
        return propertyNames;
     }
 
+    /**
+     * Whether the statistics of the index are updated. This is only checked
+     * when needed, as the index content may be removed (for reindexing)
+     * after the editor is created.
+     */
+    private boolean isStatisticsEnabled() {
+        if (parent != null) {
+            return parent.isStatisticsEnabled();
+        }
+        if (statisticsEnabled == null) {
+            statisticsEnabled = PropertyIndexStatistics.isEnabled(definition);
+        }
+        return statisticsEnabled;
+    }
+
     /**
      * Returns the path of this node, building it lazily when first requested.
      */
@@ -288,6 +310,10 @@ class PropertyIndexEditor implements IndexEditor {
 
             if (!beforeKeys.isEmpty() || !afterKeys.isEmpty()) {
                 updateCallback.indexUpdate();
+                if (isStatisticsEnabled()) {
+                    PropertyIndexStatistics.update(definition.child(STATISTICS_NODE_NAME),
+                            getPath(), beforeKeys, afterKeys);
+                }
                 String properties = definition.getString(PROPERTY_NAMES);
                 boolean uniqueIndex = keysToCheckForUniqueness != null;
                 for (IndexStoreStrategy strategy : getStrategies(uniqueIndex)) {
@@ -314,6 +340,13 @@ class PropertyIndexEditor implements IndexEditor {
 
     private void checkUniquenessConstraints() throws CommitFailedException {
         if (parent == null) {
+            if (isStatisticsEnabled()) {
+                // make sure the statistics exist, so that they are
+                // updated from now on, even with no content; the path
+                // histogram is created in the same commit, so that
+                // concurrent updates don't both add it
+                definition.child(STATISTICS_NODE_NAME).child(PropertyIndexStatistics.PATHS);
+            }
             // make sure that the index node exist, even with no content
             definition.child(INDEX_CONTENT_NODE_NAME);
 
@@ -262,6 +262,10 @@ public class PropertyIndexPlan {
             }
         }
         buffer.append("\n");
+        PropertyIndexStatistics statistics = PropertyIndexStatistics.read(definition);
+        if (statistics != null) {
+            buffer.append("    statistics: ").append(statistics).append("\n");
+        }
         buffer.append("    estimatedCost: ").append(cost).append("\n");
         return buffer.toString();
     }
@@ -0,0 +1,362 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.plugins.index.counter.ApproximateCounter;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Statistics of a property index, used to estimate the cost of a query.
+ * The statistics are maintained by the index editor, if the index definition
+ * has the property {@code statistics} set to true, and stored in the hidden
+ * child node {@code :statistics} of the index definition. They are:
+ * <ul>
+ * <li>the approximate number of entries in the index,</li>
+ * <li>the estimated number of distinct values (keys), using a HyperLogLog
+ * sketch,</li>
+ * <li>a histogram of the approximate number of entries per path, for the
+ * first two levels of the content tree, to estimate the selectivity of a
+ * path restriction.</li>
+ * </ul>
+ * Counts are updated using the {@link ApproximateCounter}, so that
+ * concurrent updates do not conflict. For the same reason, the HyperLogLog
+ * registers are not stored in one property: each update that increases
+ * registers adds a uniquely named property with the new values of those
+ * registers, and the properties are merged (using the maximum) when reading.
+ * As registers only increase rarely, there are few such properties. The
+ * number of distinct values is not reduced when values are removed, so that
+ * it is an upper bound.
+ * <p>
+ * The nodes of the path histogram are created when the first entry is added
+ * to a subtree. If two cluster nodes do that concurrently, the commits
+ * conflict, as they do when adding the first entry for a key to the index
+ * content; the merge is then retried on top of the other change.
+ * <p>
+ * The statistics are only collected if they are complete, that is, if the
+ * index is new or is reindexed after enabling them.
+ */
+public class PropertyIndexStatistics {
+
+    /**
+     * Whether statistics are maintained for the index (boolean property of
+     * the index definition).
+     */
+    public static final String STATISTICS_PROPERTY_NAME = "statistics";
+
+    /**
+     * The hidden child node of the index definition that contains the
+     * statistics.
+     */
+    public static final String STATISTICS_NODE_NAME = ":statistics";
+
+    /**
+     * The prefix of the properties that contain HyperLogLog registers, as a
+     * hex encoded string of register index and value pairs.
+     */
+    static final String DISTINCT_VALUES_PREFIX = ":distinct_";
+
+    /**
+     * The child node that contains the path histogram.
+     */
+    static final String PATHS = "paths";
+
+    /**
+     * The number of levels of the path histogram.
+     */
+    static final int PATH_DEPTH = 2;
+
+    /**
+     * The number of HyperLogLog registers (the standard error is about 13%).
+     */
+    private static final int REGISTER_BITS = 6;
+
+    private static final int REGISTERS = 1 << REGISTER_BITS;
+
+    private final NodeState statistics;
+
+    private PropertyIndexStatistics(NodeState statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Read the statistics of an index.
+     *
+     * @param definition the index definition
+     * @return the statistics, or null if there are none
+     */
+    @Nullable
+    public static PropertyIndexStatistics read(@NotNull NodeState definition) {
+        NodeState statistics = definition.getChildNode(STATISTICS_NODE_NAME);
+        if (!statistics.exists()) {
+            return null;
+        }
+        return new PropertyIndexStatistics(statistics);
+    }
+
+    /**
+     * Whether statistics should be updated for the given index. This is the
+     * case if they are enabled, and either already exist, or the index
+     * content is new (so that the statistics are complete).
+     *
+     * @param definition the index definition
+     * @return true if the statistics should be updated
+     */
+    static boolean isEnabled(NodeBuilder definition) {
+        if (!definition.getBoolean(STATISTICS_PROPERTY_NAME)) {
+            return false;
+        }
+        return definition.hasChildNode(STATISTICS_NODE_NAME) ||
+                !definition.hasChildNode(INDEX_CONTENT_NODE_NAME);
+    }
+
+    /**
+     * Update the statistics for a changed node.
+     *
+     * @param statistics the statistics node
+     * @param path the path of the node, relative to the index
+     * @param beforeKeys the removed (encoded) values
+     * @param afterKeys the added (encoded) values
+     */
+    static void update(NodeBuilder statistics, String path,
+            Set<String> beforeKeys, Set<String> afterKeys) {
+        long offset = afterKeys.size() - beforeKeys.size();
+        if (offset != 0) {
+            ApproximateCounter.adjustCountSync(statistics, offset);
+            NodeBuilder node = statistics.child(PATHS);
+            int depth = 0;
+            for (String name : PathUtils.elements(path)) {
+                if (++depth > PATH_DEPTH) {
+                    break;
+                }
+                node = node.child(name);
+                ApproximateCounter.adjustCountSync(node, offset);
+            }
+        }
+        if (!afterKeys.isEmpty()) {
+            byte[] before = mergeRegisters(statistics.getProperties());
+            byte[] registers = before.clone();
+            for (String key : afterKeys) {
+                add(registers, key);
+            }
+            if (!Arrays.equals(before, registers)) {
+                setRegisters(statistics, before, registers);
+            }
+        }
+    }
+
+    /**
+     * Store the registers that were increased. They are added to the register
+     * property of the current commit if there is one, and otherwise to a new
+     * property, so that concurrent commits don't change the same property.
+     */
+    private static void setRegisters(NodeBuilder statistics, byte[] before, byte[] registers) {
+        NodeState base = statistics.getBaseState();
+        String name = null;
+        byte[] changed = new byte[REGISTERS];
+        for (PropertyState p : statistics.getProperties()) {
+            if (p.getName().startsWith(DISTINCT_VALUES_PREFIX) && !base.hasProperty(p.getName())) {
+                name = p.getName();
+                changed = readRegisters(p.getValue(Type.STRING));
+                break;
+            }
+        }
+        if (name == null) {
+            name = DISTINCT_VALUES_PREFIX + UUID.randomUUID();
+        }
+        for (int i = 0; i < REGISTERS; i++) {
+            if (registers[i] > before[i]) {
+                changed[i] = registers[i];
+            }
+        }
+        statistics.setProperty(name, writeRegisters(changed));
+    }
+
+    /**
+     * Get the approximate number of entries.
+     *
+     * @return the number of entries, or -1 if not known
+     */
+    public long getEntryCount() {
+        return ApproximateCounter.getCountSync(statistics);
+    }
+
+    /**
+     * Get the approximate number of entries for nodes in the given subtree.
+     * For paths deeper than the histogram, the count of the ancestor is
+     * returned.
+     *
+     * @param path the path, relative to the index
+     * @return the number of entries, or -1 if not known
+     */
+    public long getEntryCount(@NotNull String path) {
+        if (PathUtils.denotesRoot(path)) {
+            return getEntryCount();
+        }
+        NodeState node = statistics.getChildNode(PATHS);
+        int depth = 0;
+        for (String name : PathUtils.elements(path)) {
+            if (++depth > PATH_DEPTH) {
+                break;
+            }
+            node = node.getChildNode(name);
+            if (!node.exists()) {
+                // there never were entries in this subtree
+                return 0;
+            }
+        }
+        return ApproximateCounter.getCountSync(node);
+    }
+
+    /**
+     * Get the estimated number of distinct values (keys).
+     *
+     * @return the number of distinct values, or -1 if not known
+     */
+    public long getDistinctValueCount() {
+        boolean hasRegisters = false;
+        for (PropertyState p : statistics.getProperties()) {
+            if (p.getName().startsWith(DISTINCT_VALUES_PREFIX)) {
+                hasRegisters = true;
+                break;
+            }
+        }
+        if (!hasRegisters) {
+            return -1;
+        }
+        return estimate(mergeRegisters(statistics.getProperties()));
+    }
+
+    /**
+     * Merge the registers of all register properties, using the maximum
+     * value of each register.
+     */
+    private static byte[] mergeRegisters(Iterable<? extends PropertyState> properties) {
+        byte[] registers = new byte[REGISTERS];
+        for (PropertyState p : properties) {
+            if (!p.getName().startsWith(DISTINCT_VALUES_PREFIX)) {
+                continue;
+            }
+            byte[] r = readRegisters(p.getValue(Type.STRING));
+            for (int i = 0; i < REGISTERS; i++) {
+                registers[i] = (byte) Math.max(registers[i], r[i]);
+            }
+        }
+        return registers;
+    }
+
+    static boolean add(byte[] registers, String key) {
+        long hash = hash(key);
+        int index = (int) (hash & (REGISTERS - 1));
+        long w = hash >>> REGISTER_BITS;
+        int rank = Long.numberOfLeadingZeros(w) - REGISTER_BITS + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+            return true;
+        }
+        return false;
+    }
+
+    static long estimate(byte[] registers) {
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) {
+                zeros++;
+            }
+        }
+        double m = REGISTERS;
+        double e = 0.709 * m * m / sum;
+        if (e <= 2.5 * m && zeros > 0) {
+            // small range correction (linear counting)
+            e = m * Math.log(m / zeros);
+        }
+        return Math.round(e);
+    }
+
+    /**
+     * Read registers from a string of (index, value) pairs, each encoded as
+     * two hex digits. Registers that are not listed are 0.
+     */
+    static byte[] readRegisters(String s) {
+        byte[] registers = new byte[REGISTERS];
+        if (s != null) {
+            for (int i = 0; i + 4 <= s.length(); i += 4) {
+                int index = Integer.parseInt(s.substring(i, i + 2), 16);
+                if (index < REGISTERS) {
+                    registers[index] = (byte) Integer.parseInt(s.substring(i + 2, i + 4), 16);
+                }
+            }
+        }
+        return registers;
+    }
+
+    /**
+     * Write the registers that are not 0 as (index, value) pairs.
+     */
+    static String writeRegisters(byte[] registers) {
+        StringBuilder buff = new StringBuilder();
+        for (int i = 0; i < registers.length; i++) {
+            byte r = registers[i];
+            if (r != 0) {
+                appendHex(buff, i);
+                appendHex(buff, r);
+            }
+        }
+        return buff.toString();
+    }
+
+    private static void appendHex(StringBuilder buff, int x) {
+        buff.append(Character.forDigit(x >> 4, 16)).append(Character.forDigit(x & 15, 16));
+    }
+
+    /**
+     * A 64 bit hash (FNV-1a, followed by the finalization step of MurmurHash3,
+     * so that all bits are well distributed).
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "entries: " + getEntryCount() + ", distinct values: " + getDistinctValueCount();
+    }
+
+}
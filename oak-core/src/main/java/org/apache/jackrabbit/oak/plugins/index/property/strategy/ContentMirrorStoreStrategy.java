@@ -32,6 +32,7 @@ import org.apache.jackrabbit.oak.plugins.index.IndexUtils;
 import org.apache.jackrabbit.oak.plugins.index.counter.ApproximateCounter;
 import org.apache.jackrabbit.oak.plugins.index.counter.NodeCounterEditor;
 import org.apache.jackrabbit.oak.plugins.index.counter.jmx.NodeCounter;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexStatistics;
 import org.apache.jackrabbit.oak.plugins.memory.MemoryChildNodeEntry;
 import org.apache.jackrabbit.oak.query.FilterIterators;
 import org.apache.jackrabbit.oak.spi.query.Filter;
@@ -212,6 +213,7 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
     long count(Filter filter, NodeState root, NodeState indexMeta, final String indexStorageNodeName,
             Set<String> values, int max) {
         NodeState index = indexMeta.getChildNode(indexStorageNodeName);
+        PropertyIndexStatistics statistics = PropertyIndexStatistics.read(indexMeta);
         long count = -1;
         if (values == null) {
             // property is not null
@@ -248,6 +250,8 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
                     ec = indexMeta.getProperty(KEY_COUNT_PROPERTY_NAME);
                     if (ec != null) {
                         keyCount = ec.getValue(Type.LONG);
+                    } else if (statistics != null && statistics.getDistinctValueCount() > 0) {
+                        keyCount = statistics.getDistinctValueCount();
                     }
                     // cast to double to avoid overflow 
                     // (entryCount could be Long.MAX_VALUE)
@@ -285,12 +289,14 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
             if (count < 0) {
                 count = 0;
                 max = Math.max(10, max / size);
+                boolean extrapolated = false;
                 int i = 0;
                 for (String p : values) {
                     if (count > max && i > 3) {
                         // the total count is extrapolated from the the number
                         // of values counted so far to the total number of values
                         count = count * size / i;
+                        extrapolated = true;
                         break;
                     }
                     NodeState s = index.getChildNode(p);
@@ -298,9 +304,19 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
                         CountingNodeVisitor v = new CountingNodeVisitor(max);
                         v.visit(s);
                         count += v.getEstimatedCount();
+                        extrapolated |= v.getCount() >= max;
                     }
                     i++;
                 }
+                if (extrapolated && statistics != null) {
+                    // there are more entries than were counted: the average
+                    // number of entries per value is a better estimate, if higher
+                    long entries = statistics.getEntryCount();
+                    long distinct = statistics.getDistinctValueCount();
+                    if (entries > 0 && distinct > 0) {
+                        count = Math.max(count, (long) ((double) entries / distinct * size));
+                    }
+                }
             }
         }
 
@@ -310,6 +326,18 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
             filterRootPath = filter.getPath();
         }
 
+        if (filterRootPath != null && statistics != null) {
+            // scale cost according to the number of entries in the subtree
+            long total = statistics.getEntryCount();
+            String relativePath = getRelativePath(filterRootPath);
+            long subtree = relativePath == null ? -1 : statistics.getEntryCount(relativePath);
+            if (total > 0 && subtree >= 0) {
+                double selectivity = Math.min(1.0, (double) subtree / total);
+                count = (long) Math.ceil(count * selectivity);
+                filterRootPath = null;
+            }
+        }
+
         if (filterRootPath != null) {
             // scale cost according to path restriction
             long totalNodesCount = NodeCounter.getEstimatedNodeCount(root, "/", true);
@@ -332,6 +360,23 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
         return count;
     }
 
+    /**
+     * Get the path relative to the node that contains the index.
+     *
+     * @param path the absolute path
+     * @return the relative path (starting with "/"), or null if the path is
+     *         not within the subtree of the index
+     */
+    @Nullable
+    private String getRelativePath(String path) {
+        if (pathPrefix.isEmpty()) {
+            return path;
+        } else if (PathUtils.isAncestor(pathPrefix, path)) {
+            return "/" + PathUtils.relativize(pathPrefix, path);
+        }
+        return null;
+    }
+
     /**
      * An iterator over paths within an index node.
      */
@@ -13,14 +13,28 @@
  */
 package org.apache.jackrabbit.oak.query;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 
+import org.apache.jackrabbit.oak.commons.Compression;
+import org.apache.jackrabbit.oak.commons.sort.ExternalSort;
+import org.apache.jackrabbit.oak.query.stats.QueryStatsData.QueryExecutionStats;
 import org.apache.jackrabbit.oak.spi.query.QueryLimits;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -78,7 +92,33 @@ public class FilterIterators {
     public static <K> Iterator<K> newCombinedFilter(
             Iterator<K> it, boolean distinct, long limit, long offset, 
             Comparator<K> orderBy, QueryLimits settings) {
-        if (distinct) {
+        return newCombinedFilter(it, distinct, limit, offset, orderBy, settings, null, null);
+    }
+
+    /**
+     * Combine the filters. If a codec is set, sorting does not keep more
+     * entries in memory than allowed by the settings, but writes sorted runs
+     * to temporary files. In this case, duplicate entries are removed while
+     * sorting, which requires that equal entries also compare equal with the
+     * given order.
+     *
+     * @param it the source
+     * @param distinct whether to remove duplicate entries
+     * @param limit the maximum number of entries to return
+     * @param offset the number of entries to skip
+     * @param orderBy the order, or null
+     * @param settings the query engine settings
+     * @param codec the codec used to write entries to temporary files, or
+     *            null to sort in memory only
+     * @param stats the statistics to update, or null
+     * @return the filtered iterator
+     */
+    public static <K> Iterator<K> newCombinedFilter(
+            Iterator<K> it, boolean distinct, long limit, long offset,
+            Comparator<K> orderBy, QueryLimits settings,
+            @Nullable EntryCodec<K> codec, @Nullable QueryExecutionStats stats) {
+        boolean distinctWhileSorting = distinct && orderBy != null && codec != null;
+        if (distinct && !distinctWhileSorting) {
             it = FilterIterators.newDistinct(it, settings);
         }
         if (orderBy != null) {
@@ -86,7 +126,8 @@ public class FilterIterators {
             int max = (int) Math.min(Integer.MAX_VALUE, 
                     Math.min(Integer.MAX_VALUE, offset) + 
                     Math.min(Integer.MAX_VALUE, limit));
-            it = FilterIterators.newSort(it, orderBy, max, settings);
+            it = new SortIterator<K>(it, orderBy, max, settings,
+                    distinctWhileSorting, codec, stats, null);
         }
         if (offset != 0) {
             it = FilterIterators.newOffset(it, offset);
@@ -110,7 +151,42 @@ public class FilterIterators {
     }
     
     public static <K> Iterator<K> newSort(Iterator<K> it, Comparator<K> orderBy, int max, QueryLimits settings) {
-        return new SortIterator<K>(it, orderBy, max, settings);
+        return new SortIterator<K>(it, orderBy, max, settings, false, null, null, null);
+    }
+
+    /**
+     * Converts entries to and from a single line of text, so that they can be
+     * written to temporary files.
+     *
+     * @param <K> the entry type
+     */
+    public interface EntryCodec<K> {
+
+        /**
+         * Whether the entry can be converted.
+         *
+         * @param entry the entry
+         * @return true if it can be converted
+         */
+        boolean canEncode(@NotNull K entry);
+
+        /**
+         * Convert an entry to text. The text must not contain line breaks.
+         *
+         * @param entry the entry
+         * @return the text
+         */
+        @NotNull
+        String encode(@NotNull K entry);
+
+        /**
+         * Convert text back to an entry.
+         *
+         * @param line the text
+         * @return the entry
+         */
+        @NotNull
+        K decode(@NotNull String line);
     }
 
     /**
@@ -181,6 +257,14 @@ public class FilterIterators {
      * An iterator that returns entries in sorted order. The internal list of
      * sorted entries can be limited to a given number of entries, and the
      * entries are only read when needed (on demand).
+     * <p>
+     * If the number of entries to keep is not larger than the in-memory limit,
+     * only the first entries are kept in a heap (top-K). Otherwise, if a codec
+     * is set, the entries are sorted in runs of at most the in-memory limit,
+     * which are written to temporary files and then merged lazily. A run file
+     * is deleted as soon as it is opened for merging, so that no files are
+     * left behind if the iterator is not read to the end. Without codec, the
+     * in-memory limit is enforced as usual.
      * 
      * @param <K> the entry type
      */
@@ -191,49 +275,160 @@ public class FilterIterators {
         private final Comparator<K> orderBy;
         private Iterator<K> result;
         private final int max;
+        private final boolean distinct;
+        private final EntryCodec<K> codec;
+        private final QueryExecutionStats stats;
+        private long maxInMemory;
+        private long spilled;
+        private final List<File> runs = new ArrayList<>();
+        private final File directory;
 
-        SortIterator(Iterator<K> source, Comparator<K> orderBy, int max, QueryLimits settings) {
+        SortIterator(Iterator<K> source, Comparator<K> orderBy, int max, QueryLimits settings,
+                boolean distinct, @Nullable EntryCodec<K> codec, @Nullable QueryExecutionStats stats,
+                @Nullable File directory) {
             this.source = source;
             this.orderBy = orderBy;
             this.max = max;
             this.settings = settings;
+            this.distinct = distinct;
+            this.codec = codec;
+            this.stats = stats;
+            this.directory = directory;
         }
         
         private void init() {
             if (result != null) {
                 return;
             }
+            if (max <= settings.getLimitInMemory()) {
+                result = topK();
+            } else {
+                result = sortAll();
+            }
+            if (distinct) {
+                result = new SortedDistinctIterator<K>(result, orderBy);
+            }
+            if (stats != null) {
+                stats.sort(maxInMemory, spilled, runs.size());
+            }
+        }
+
+        /**
+         * Keep the first entries in memory. Once there are more entries than
+         * that, they are moved to a heap with the largest entry on top, so
+         * that each further entry needs one comparison unless it is smaller.
+         * The order of equal entries is retained, as with a stable sort.
+         */
+        private Iterator<K> topK() {
+            if (max == 0) {
+                // read the source anyway, so that the number of rows is known
+                while (source.hasNext()) {
+                    source.next();
+                }
+                return Collections.emptyIterator();
+            }
             ArrayList<K> list = new ArrayList<K>();
+            Comparator<Entry<K>> comp = Entry.comparator(orderBy);
+            PriorityQueue<Entry<K>> heap = null;
+            // the entries kept so far, to remove duplicates
+            HashSet<K> set = distinct ? new HashSet<K>() : null;
+            long seq = 0;
             while (source.hasNext()) {
                 K x = source.next();
-                list.add(x);
-                checkMemoryLimit(list.size(), settings);
-                // from time to time, sort and truncate
-                // this should need less than O(n*log(3*keep)) operations,
-                // which is close to the optimum O(n*log(keep))
-                if (list.size() > (long) max * 2) {
-                    // remove tail entries right now, to save memory
-                    Collections.sort(list, orderBy);
-                    keepFirst(list, max);
+                if (set != null && set.contains(x)) {
+                    continue;
+                }
+                if (heap == null && list.size() < max) {
+                    list.add(x);
+                    seq++;
+                } else {
+                    if (heap == null) {
+                        heap = new PriorityQueue<>(max, comp.reversed());
+                        for (int i = 0; i < list.size(); i++) {
+                            heap.add(new Entry<K>(list.get(i), i));
+                        }
+                        list.clear();
+                    }
+                    Entry<K> e = new Entry<K>(x, seq++);
+                    if (comp.compare(e, heap.peek()) >= 0) {
+                        continue;
+                    }
+                    Entry<K> removed = heap.poll();
+                    if (set != null) {
+                        set.remove(removed.value);
+                    }
+                    heap.add(e);
+                }
+                if (set != null) {
+                    set.add(x);
                 }
             }
-            Collections.sort(list, orderBy);
-            keepFirst(list, max);
-            result = list.iterator();
+            if (heap == null) {
+                maxInMemory = list.size();
+                Collections.sort(list, orderBy);
+                return list.iterator();
+            }
+            maxInMemory = heap.size();
+            ArrayList<Entry<K>> entries = new ArrayList<>(heap);
+            heap.clear();
+            Collections.sort(entries, comp);
+            for (Entry<K> e : entries) {
+                list.add(e.value);
+            }
+            return list.iterator();
         }
-        
+
         /**
-         * Truncate a list.
-         * 
-         * @param list the list
-         * @param keep the maximum number of entries to keep
+         * Sort all entries, in memory or, if that is not possible because
+         * there are too many, in sorted runs that are written to disk.
          */
-        private static <K> void keepFirst(ArrayList<K> list, int keep) {
-            while (list.size() > keep) {
-                // remove the entries starting at the end, 
-                // to avoid n^2 performance
-                list.remove(list.size() - 1);
-            }        
+        private Iterator<K> sortAll() {
+            ArrayList<K> list = new ArrayList<K>();
+            boolean canSpill = codec != null;
+            long limit = settings.getLimitInMemory();
+            try {
+                while (source.hasNext()) {
+                    K x = source.next();
+                    list.add(x);
+                    canSpill = canSpill && codec.canEncode(x);
+                    maxInMemory = Math.max(maxInMemory, list.size());
+                    if (canSpill && list.size() >= limit) {
+                        spill(list);
+                        list.clear();
+                    } else {
+                        checkMemoryLimit(list.size(), settings);
+                    }
+                }
+            } catch (RuntimeException e) {
+                deleteRuns();
+                throw e;
+            }
+            Collections.sort(list, orderBy);
+            if (runs.isEmpty()) {
+                return list.iterator();
+            }
+            LOG.debug("Merging {} sorted runs with {} rows written to disk", runs.size(), spilled);
+            // duplicates are only removed after merging
+            return new MergeIterator<K>(runs, list, orderBy, codec,
+                    distinct ? Integer.MAX_VALUE : max);
+        }
+
+        private void spill(ArrayList<K> list) {
+            try {
+                runs.add(ExternalSort.sortAndSave(list, orderBy, StandardCharsets.UTF_8,
+                        directory, false, Compression.NONE, codec::encode));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write sorted rows to disk", e);
+            }
+            spilled += list.size();
+        }
+
+        private void deleteRuns() {
+            for (File f : runs) {
+                if (!f.delete()) {
+                    LOG.debug("Failed to delete {}", f);
+                }
+            }
         }
 
         @Override
@@ -254,6 +449,269 @@ public class FilterIterators {
         }
         
     }
+
+    /**
+     * An entry with a sequence number, which is used as the tie-breaker
+     * so that equal entries keep their order.
+     *
+     * @param <K> the entry type
+     */
+    private static final class Entry<K> {
+
+        final K value;
+        final long seq;
+
+        Entry(K value, long seq) {
+            this.value = value;
+            this.seq = seq;
+        }
+
+        static <K> Comparator<Entry<K>> comparator(Comparator<K> orderBy) {
+            return (a, b) -> {
+                int comp = orderBy.compare(a.value, b.value);
+                return comp != 0 ? comp : Long.compare(a.seq, b.seq);
+            };
+        }
+    }
+
+    /**
+     * An iterator that lazily merges sorted runs from temporary files and a
+     * sorted list of entries that are still in memory. Entries of earlier runs
+     * are returned first if they are equal.
+     *
+     * @param <K> the entry type
+     */
+    static class MergeIterator<K> implements Iterator<K> {
+
+        private final PriorityQueue<Entry<PeekingIterator<K>>> queue;
+        private final List<Run<K>> runs = new ArrayList<>();
+        private final int max;
+        private int count;
+
+        MergeIterator(List<File> files, List<K> remaining, Comparator<K> orderBy,
+                EntryCodec<K> codec, int max) {
+            this.max = max;
+            this.queue = new PriorityQueue<>(files.size() + 1, (a, b) -> {
+                int comp = orderBy.compare(a.value.peek(), b.value.peek());
+                return comp != 0 ? comp : Long.compare(a.seq, b.seq);
+            });
+            try {
+                for (File f : files) {
+                    runs.add(new Run<K>(f, codec));
+                }
+            } catch (IOException e) {
+                close();
+                for (File f : files) {
+                    f.delete();
+                }
+                throw new UncheckedIOException("Failed to read sorted rows from disk", e);
+            }
+            long seq = 0;
+            for (Run<K> r : runs) {
+                add(new PeekingIterator<K>(r), seq++);
+            }
+            add(new PeekingIterator<K>(remaining.iterator()), seq);
+        }
+
+        private void add(PeekingIterator<K> it, long seq) {
+            if (it.hasNext()) {
+                queue.add(new Entry<PeekingIterator<K>>(it, seq));
+            }
+        }
+
+        private void close() {
+            for (Run<K> r : runs) {
+                r.close();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (count < max && !queue.isEmpty()) {
+                return true;
+            }
+            // the remaining entries are not needed
+            close();
+            return false;
+        }
+
+        @Override
+        public K next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<PeekingIterator<K>> e = queue.poll();
+            K x = e.value.next();
+            if (e.value.hasNext()) {
+                queue.add(e);
+            }
+            count++;
+            return x;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * An iterator that allows to look at the next entry.
+     *
+     * @param <K> the entry type
+     */
+    private static final class PeekingIterator<K> implements Iterator<K> {
+
+        private final Iterator<K> source;
+        private K next;
+
+        PeekingIterator(Iterator<K> source) {
+            this.source = source;
+            this.next = source.hasNext() ? source.next() : null;
+        }
+
+        K peek() {
+            return next;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public K next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            K x = next;
+            next = source.hasNext() ? source.next() : null;
+            return x;
+        }
+    }
+
+    /**
+     * The entries of a sorted run file. The file is deleted right after it is
+     * opened, as the open reader still has access to the content. If that is
+     * not possible, it is deleted when the run is closed. The reader is closed
+     * when the run was fully read or when the merge is done; if the iterator
+     * is abandoned earlier, it is released once it is garbage collected.
+     *
+     * @param <K> the entry type
+     */
+    private static final class Run<K> implements Iterator<K> {
+
+        private final File file;
+        private final EntryCodec<K> codec;
+        private BufferedReader reader;
+        private String line;
+        private final boolean deleted;
+
+        Run(File file, EntryCodec<K> codec) throws IOException {
+            this.file = file;
+            this.codec = codec;
+            this.reader = new BufferedReader(new InputStreamReader(
+                    Files.newInputStream(file.toPath()), StandardCharsets.UTF_8));
+            this.deleted = file.delete();
+            fetch();
+        }
+
+        private void fetch() {
+            try {
+                line = reader == null ? null : reader.readLine();
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException("Failed to read sorted rows from disk", e);
+            }
+            if (line == null) {
+                close();
+            }
+        }
+
+        void close() {
+            if (reader == null) {
+                return;
+            }
+            try {
+                reader.close();
+            } catch (IOException e) {
+                LOG.debug("Failed to close {}", file, e);
+            }
+            reader = null;
+            line = null;
+            if (!deleted && !file.delete()) {
+                LOG.debug("Failed to delete {}", file);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return line != null;
+        }
+
+        @Override
+        public K next() {
+            if (line == null) {
+                throw new NoSuchElementException();
+            }
+            K x = codec.decode(line);
+            fetch();
+            return x;
+        }
+    }
+
+    /**
+     * An iterator that removes duplicates from sorted entries. Duplicates
+     * compare equal, so only the entries that compare equal to the current
+     * entry are kept in memory.
+     *
+     * @param <K> the entry type
+     */
+    static class SortedDistinctIterator<K> implements Iterator<K> {
+
+        private final Iterator<K> source;
+        private final Comparator<K> orderBy;
+        private final HashSet<K> group = new HashSet<K>();
+        private K first;
+        private K current;
+
+        SortedDistinctIterator(Iterator<K> source, Comparator<K> orderBy) {
+            this.source = source;
+            this.orderBy = orderBy;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (current == null && source.hasNext()) {
+                K x = source.next();
+                if (first == null || orderBy.compare(first, x) != 0) {
+                    group.clear();
+                    first = x;
+                }
+                if (group.add(x)) {
+                    current = x;
+                }
+            }
+            return current != null;
+        }
+
+        @Override
+        public K next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            K x = current;
+            current = null;
+            return x;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
     
     /**
      * An iterator that ignores the first number of entries. Entries are only
@@ -16,6 +16,7 @@ package org.apache.jackrabbit.oak.query;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.Result;
@@ -51,6 +52,15 @@ public interface Query {
 
     void setTraversalEnabled(boolean traversalEnabled);
 
+    /**
+     * Set the executor used to read from the indexes in the background, so
+     * that reading overlaps with the execution of other queries (for example
+     * the other branch of a union).
+     *
+     * @param executor the executor, or null to read in the calling thread
+     */
+    void setExecutor(@Nullable Executor executor);
+
     Result executeQuery();
 
     List<String> getBindVariableNames();
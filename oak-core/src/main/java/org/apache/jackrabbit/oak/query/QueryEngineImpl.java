@@ -190,8 +190,13 @@ public abstract class QueryEngineImpl implements QueryEngine {
             parser.setSupportSQL1(true);
             q = parser.parse(statement, false);
         } else if (XPATH.equals(language)) {
-            XPathToSQL2Converter converter = new XPathToSQL2Converter(settings);
-            String sql2 = converter.convert(statement);
+            QueryPlanCache cache = settings.getQueryPlanCache();
+            String sql2 = cache.getConvertedStatement(statement);
+            if (sql2 == null) {
+                XPathToSQL2Converter converter = new XPathToSQL2Converter(settings);
+                sql2 = converter.convert(statement);
+                cache.putConvertedStatement(statement, sql2);
+            }
             LOG.debug("XPath > SQL2: {}", sql2);
             try {
                 // OAK-874: No artificial XPath selector name in wildcards
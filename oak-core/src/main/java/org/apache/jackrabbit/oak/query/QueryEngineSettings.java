@@ -19,7 +19,12 @@
 package org.apache.jackrabbit.oak.query;
 
 import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.jackrabbit.guava.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.jackrabbit.oak.api.StrictPathRestriction;
 import org.apache.jackrabbit.oak.api.jmx.QueryEngineSettingsMBean;
 import org.apache.jackrabbit.oak.query.stats.QueryStatsMBean;
@@ -69,6 +74,34 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
     private static final boolean DEFAULT_FAIL_TRAVERSAL =
             Boolean.getBoolean(OAK_QUERY_FAIL_TRAVERSAL);
 
+    /**
+     * Whether sorting may write rows to temporary files instead of failing
+     * when more than {@link #getLimitInMemory()} rows need to be sorted.
+     * {@code -Doak.query.spillToDisk}
+     */
+    public static final String OAK_QUERY_SPILL_TO_DISK = "oak.query.spillToDisk";
+    private static final boolean DEFAULT_SPILL_TO_DISK =
+            Boolean.getBoolean(OAK_QUERY_SPILL_TO_DISK);
+
+    /**
+     * Whether joins may read the rows of the right hand side once into an
+     * in-memory lookup (hash join), instead of querying them for each row
+     * of the left hand side, if that is estimated to be cheaper.
+     * {@code -Doak.query.hashJoin}
+     */
+    public static final String OAK_QUERY_HASH_JOIN = "oak.query.hashJoin";
+    private static final boolean DEFAULT_HASH_JOIN =
+            Boolean.getBoolean(OAK_QUERY_HASH_JOIN);
+
+    /**
+     * The number of threads used to read from the indexes of the branches
+     * of a union query concurrently, or 0 to read them one after another.
+     * {@code -Doak.query.unionThreads}
+     */
+    public static final String OAK_QUERY_UNION_THREADS = "oak.query.unionThreads";
+    private static final int DEFAULT_UNION_THREADS =
+            Integer.getInteger(OAK_QUERY_UNION_THREADS, 0);
+
     private static final boolean DEFAULT_FULL_TEXT_COMPARISON_WITHOUT_INDEX =
             Boolean.getBoolean("oak.queryFullTextComparisonWithoutIndex");
     
@@ -79,6 +112,14 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
     private int prefetchCount = DEFAULT_PREFETCH_COUNT;
 
     private boolean failTraversal = DEFAULT_FAIL_TRAVERSAL;
+
+    private boolean spillToDisk = DEFAULT_SPILL_TO_DISK;
+
+    private boolean hashJoin = DEFAULT_HASH_JOIN;
+
+    private int unionThreads = DEFAULT_UNION_THREADS;
+
+    private ThreadPoolExecutor unionExecutor;
     
     private boolean fullTextComparisonWithoutIndex = 
             DEFAULT_FULL_TEXT_COMPARISON_WITHOUT_INDEX;
@@ -101,6 +142,8 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
 
     private final QueryValidator queryValidator = new QueryValidator();
 
+    private final QueryPlanCache queryPlanCache = new QueryPlanCache();
+
     private String[] classNamesIgnoredInCallTrace = new String[] {};
 
 
@@ -173,6 +216,8 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
     public void setAutoOptionsMappingJson(String json) {
         autoOptionsMappingJson = json;
         autoOptionsMapping = new QueryOptions.AutomaticQueryOptionsMapping(json);
+        // the options are added when converting XPath queries
+        queryPlanCache.invalidate();
     }
 
     @Override
@@ -221,6 +266,66 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
         return fullTextComparisonWithoutIndex;
     }
     
+    public void setSpillToDisk(boolean spillToDisk) {
+        this.spillToDisk = spillToDisk;
+    }
+
+    public boolean isSpillToDisk() {
+        return spillToDisk;
+    }
+
+    public void setHashJoin(boolean hashJoin) {
+        this.hashJoin = hashJoin;
+    }
+
+    public boolean isHashJoin() {
+        return hashJoin;
+    }
+
+    public synchronized void setUnionThreads(int unionThreads) {
+        this.unionThreads = unionThreads;
+        if (unionExecutor != null && unionThreads > 0) {
+            if (unionThreads > unionExecutor.getMaximumPoolSize()) {
+                unionExecutor.setMaximumPoolSize(unionThreads);
+                unionExecutor.setCorePoolSize(unionThreads);
+            } else {
+                unionExecutor.setCorePoolSize(unionThreads);
+                unionExecutor.setMaximumPoolSize(unionThreads);
+            }
+        }
+    }
+
+    public synchronized int getUnionThreads() {
+        return unionThreads;
+    }
+
+    /**
+     * Get the executor used to read from the indexes of the branches of a
+     * union query concurrently. The number of threads and the number of
+     * waiting tasks are bounded; tasks that are not accepted are run by the
+     * caller.
+     *
+     * @return the executor, or null if the branches are read one after
+     *         another
+     */
+    @Nullable
+    public synchronized Executor getUnionExecutor() {
+        if (unionThreads <= 0) {
+            return null;
+        }
+        if (unionExecutor == null) {
+            unionExecutor = new ThreadPoolExecutor(unionThreads, unionThreads,
+                    60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(unionThreads * 16),
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("oak-query-union-%d")
+                            .setDaemon(true)
+                            .build());
+            unionExecutor.allowCoreThreadTimeOut(true);
+        }
+        return unionExecutor;
+    }
+
     public boolean isSql2Optimisation() {
         return sql2Optimisation;
     }
@@ -250,6 +355,10 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
     public QueryValidator getQueryValidator() {
         return queryValidator;
     }
+
+    public QueryPlanCache getQueryPlanCache() {
+        return queryPlanCache;
+    }
     
     public void setIgnoredClassNamesInCallTrace(@NotNull String[] packageNames) {
         classNamesIgnoredInCallTrace = packageNames;
@@ -265,6 +374,9 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
                 "limitInMemory=" + limitInMemory +
                 ", limitReads=" + limitReads +
                 ", failTraversal=" + failTraversal +
+                ", spillToDisk=" + spillToDisk +
+                ", hashJoin=" + hashJoin +
+                ", unionThreads=" + unionThreads +
                 ", fullTextComparisonWithoutIndex=" + fullTextComparisonWithoutIndex +
                 ", sql2Optimisation=" + sql2Optimisation +
                 ", fastQuerySize=" + fastQuerySize +
@@ -28,8 +28,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.Result.SizePrecision;
@@ -101,6 +103,7 @@ import org.apache.jackrabbit.oak.stats.HistogramStats;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.jackrabbit.oak.stats.StatsOptions;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -156,6 +159,11 @@ public class QueryImpl implements Query {
      * purposes.
      */
     private boolean traversalEnabled = true;
+
+    /**
+     * The executor used to read from the indexes in the background, or null.
+     */
+    private Executor executor;
     
     /**
      * The query option to be used for this query.
@@ -618,6 +626,12 @@ public class QueryImpl implements Query {
             logDebug("query plan " + getPlan());
         }
         final RowIterator rowIt = new RowIterator(context.getBaseState());
+        if (executor != null) {
+            // start reading from the index now, and not only when the first
+            // row is needed, so that the other branches of a union can be
+            // read at the same time
+            rowIt.start();
+        }
         Comparator<ResultRowImpl> orderBy;
         if (isSortedByIndex) {
             orderBy = null;
@@ -626,8 +640,13 @@ public class QueryImpl implements Query {
         }
         long localLimit = limit.orElse(Long.MAX_VALUE);
         long localOffset = offset.orElse(0L);
+        FilterIterators.EntryCodec<ResultRowImpl> codec = null;
+        if (orderBy != null && settings.isSpillToDisk()) {
+            codec = ResultRowImpl.getCodec(this, distinctColumns);
+        }
         Iterator<ResultRowImpl> it =
-                FilterIterators.newCombinedFilter(rowIt, distinct, localLimit, localOffset, orderBy, settings);
+                FilterIterators.newCombinedFilter(rowIt, distinct, localLimit, localOffset, orderBy, settings,
+                        codec, stats);
         if (orderBy != null) {
             // this will force the rows to be read, so that the size is known
             it.hasNext();
@@ -921,16 +940,20 @@ public class QueryImpl implements Query {
             return rowIndex;
         }
 
+        void start() {
+            if (!started) {
+                source.execute(rootState);
+                started = true;
+            }
+        }
+
         private void fetchNext() {
             if (end) {
                 return;
             }
             long nanos = System.nanoTime();
             long oldIndex = rowIndex;
-            if (!started) {
-                source.execute(rootState);
-                started = true;
-            }
+            start();
             while (true) {
                 if (source.next()) {
                     if (constraint == null || constraint.evaluate()) {
@@ -1065,6 +1088,16 @@ public class QueryImpl implements Query {
         this.traversalEnabled = traversalEnabled;
     }
 
+    @Override
+    public void setExecutor(@Nullable Executor executor) {
+        this.executor = executor;
+    }
+
+    @Nullable
+    public Executor getExecutor() {
+        return executor;
+    }
+
     @Override
     public void setQueryOptions(QueryOptions options) {
         this.queryOptions = options;
@@ -1075,9 +1108,46 @@ public class QueryImpl implements Query {
                 context.getIndexProvider(), traversalEnabled);
     }
 
+    /**
+     * Get the best plan to read the rows of a selector for a join lookup.
+     * Unlike {@link #getBestSelectorExecutionPlan(FilterImpl)}, this does not
+     * affect whether the query is considered to be slow.
+     *
+     * @param filter the filter
+     * @return the plan, or null if the plan would traverse the repository
+     */
+    @Nullable
+    public SelectorExecutionPlan getBestLookupPlan(FilterImpl filter) {
+        boolean slow = potentiallySlowTraversalQuery;
+        try {
+            SelectorExecutionPlan plan = getBestSelectorExecutionPlan(filter);
+            if (potentiallySlowTraversalQuery || plan.getIndex() == null) {
+                return null;
+            }
+            return plan;
+        } finally {
+            potentiallySlowTraversalQuery = slow;
+        }
+    }
+
     private SelectorExecutionPlan getBestSelectorExecutionPlan(
             NodeState rootState, FilterImpl filter,
             QueryIndexProvider indexProvider, boolean traversalEnabled) {
+        QueryPlanCache cache = getSettings().getQueryPlanCache();
+        String cacheKey = null;
+        if (cache.isEnabled() && source instanceof SelectorImpl) {
+            // joins are not cached, as the filter depends on the join order
+            cacheKey = statement + "\n" + toString();
+            QueryPlanCache.IndexChoice choice = cache.getIndexChoice(cacheKey);
+            if (choice != null) {
+                SelectorExecutionPlan plan = getCachedSelectorExecutionPlan(
+                        rootState, filter, indexProvider, choice);
+                if (plan != null) {
+                    return plan;
+                }
+                cache.removeIndexChoice(cacheKey);
+            }
+        }
         QueryIndex bestIndex = null;
         if (LOG.isDebugEnabled()) {
             logDebug("cost using filter " + filter);
@@ -1122,18 +1192,7 @@ public class QueryImpl implements Query {
                         filter, sortOrder, rootState);
                 cost = Double.POSITIVE_INFINITY;
                 for (IndexPlan p : ipList) {
-                    
-                    long entryCount = p.getEstimatedEntryCount();
-                    if (p.getSupportsPathRestriction()) {
-                        entryCount = scaleEntryCount(rootState, filter, entryCount);
-                    }
-                    if (sortOrder == null || p.getSortOrder() != null) {
-                        // if the query is unordered, or
-                        // if the query contains "order by" and the index can sort on that,
-                        // then we don't need to read all entries from the index
-                        entryCount = Math.min(maxEntryCount, entryCount);
-                    }
-                    double c = p.getCostPerExecution() + entryCount * p.getCostPerEntry();
+                    double c = getCost(p, rootState, filter, sortOrder, maxEntryCount);
 
                     if (LOG.isDebugEnabled()) {
                         String plan = advIndex.getPlanDescription(p, rootState);
@@ -1220,9 +1279,74 @@ public class QueryImpl implements Query {
             }
         }
 
+        if (cacheKey != null && !potentiallySlowTraversalQuery
+                && bestIndex != null && !(bestIndex instanceof TraversingIndex)) {
+            cache.putIndexChoice(cacheKey, new QueryPlanCache.IndexChoice(
+                    bestIndex.getIndexName(), bestPlan == null ? null : bestPlan.getPlanName()));
+        }
+
         return new SelectorExecutionPlan(filter.getSelector(), bestIndex,
                 bestPlan, bestCost);
     }
+
+    /**
+     * Get the plan of the index that was chosen for this query before.
+     *
+     * @return the plan, or null if the index can not be used
+     */
+    @Nullable
+    private SelectorExecutionPlan getCachedSelectorExecutionPlan(
+            NodeState rootState, FilterImpl filter,
+            QueryIndexProvider indexProvider, QueryPlanCache.IndexChoice choice) {
+        long maxEntryCount = saturatedAdd(offset.orElse(0L), limit.orElse(Long.MAX_VALUE));
+        for (QueryIndex index : indexProvider.getQueryIndexes(rootState)) {
+            if (!choice.getIndexName().equals(index.getIndexName())) {
+                continue;
+            }
+            double bestCost = Double.POSITIVE_INFINITY;
+            IndexPlan bestPlan = null;
+            if (index instanceof AdvancedQueryIndex) {
+                List<OrderEntry> sortOrder = getSortOrder(filter);
+                for (IndexPlan p : ((AdvancedQueryIndex) index).getPlans(filter, sortOrder, rootState)) {
+                    if (!Objects.equals(choice.getPlanName(), p.getPlanName())) {
+                        continue;
+                    }
+                    double c = getCost(p, rootState, filter, sortOrder, maxEntryCount);
+                    if (c < bestCost) {
+                        bestCost = c;
+                        bestPlan = p;
+                    }
+                }
+            } else {
+                bestCost = index.getCost(filter, rootState);
+            }
+            if (bestCost == Double.POSITIVE_INFINITY) {
+                return null;
+            }
+            if (LOG.isDebugEnabled()) {
+                logDebug("cost for cached " + index.getIndexName() + " is " + bestCost);
+            }
+            potentiallySlowTraversalQuery = false;
+            return new SelectorExecutionPlan(filter.getSelector(), index,
+                    bestPlan, bestCost);
+        }
+        return null;
+    }
+
+    private double getCost(IndexPlan p, NodeState rootState, FilterImpl filter,
+            List<OrderEntry> sortOrder, long maxEntryCount) {
+        long entryCount = p.getEstimatedEntryCount();
+        if (p.getSupportsPathRestriction()) {
+            entryCount = scaleEntryCount(rootState, filter, entryCount);
+        }
+        if (sortOrder == null || p.getSortOrder() != null) {
+            // if the query is unordered, or
+            // if the query contains "order by" and the index can sort on that,
+            // then we don't need to read all entries from the index
+            entryCount = Math.min(maxEntryCount, entryCount);
+        }
+        return p.getCostPerExecution() + entryCount * p.getCostPerEntry();
+    }
     
     private long scaleEntryCount(NodeState rootState, FilterImpl filter, long count) {
         PathRestriction r = filter.getPathRestriction();
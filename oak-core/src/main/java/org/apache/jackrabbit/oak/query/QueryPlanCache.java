@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A least-recently-used cache for the work done before a query can be
+ * executed, so that it is not repeated for statements that are run often.
+ * The cache contains:
+ * <ul>
+ * <li>XPath statements converted to SQL-2, keyed by the XPath statement,</li>
+ * <li>the index that was chosen for a query, keyed by the statement and the
+ * query (a statement may result in multiple queries, for example a union).
+ * Only the cached index is then asked for a plan, instead of all indexes.
+ * The plan is still created for the given filter, so that a different
+ * value of a bind variable is taken into account, but no other index is
+ * considered.</li>
+ * </ul>
+ * The abstract syntax tree itself is not cached, as it is not immutable.
+ * <p>
+ * Entries expire after a while, so that new or changed indexes are picked
+ * up. The cache should be {@link #invalidate() invalidated} when index
+ * definitions change. If the cached index no longer exists or can no longer
+ * be used for a query, then the entry is removed.
+ * <p>
+ * The cache is disabled by default, and enabled by setting the system
+ * property {@code oak.query.planCacheSize} to the maximum number of entries.
+ */
+public class QueryPlanCache {
+
+    public static final String OAK_QUERY_PLAN_CACHE_SIZE = "oak.query.planCacheSize";
+
+    public static final String OAK_QUERY_PLAN_CACHE_EXPIRY = "oak.query.planCacheExpirySeconds";
+
+    private static final int DEFAULT_SIZE =
+            Integer.getInteger(OAK_QUERY_PLAN_CACHE_SIZE, 0);
+
+    private static final long DEFAULT_EXPIRY_MILLIS = TimeUnit.SECONDS.toMillis(
+            Long.getLong(OAK_QUERY_PLAN_CACHE_EXPIRY, 60));
+
+    private static final String XPATH_PREFIX = "xpath:";
+
+    private static final String INDEX_PREFIX = "index:";
+
+    private final int size;
+
+    private final long expiryMillis;
+
+    private final Map<String, Entry> map;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    public QueryPlanCache() {
+        this(DEFAULT_SIZE, DEFAULT_EXPIRY_MILLIS);
+    }
+
+    /**
+     * Create a cache.
+     *
+     * @param size the maximum number of entries, 0 to disable
+     * @param expiryMillis the time after which entries expire
+     */
+    public QueryPlanCache(int size, long expiryMillis) {
+        this.size = size;
+        this.expiryMillis = expiryMillis;
+        this.map = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, QueryPlanCache.Entry> eldest) {
+                return size() > QueryPlanCache.this.size;
+            }
+
+        };
+    }
+
+    public boolean isEnabled() {
+        return size > 0;
+    }
+
+    /**
+     * Get the SQL-2 statement for the given XPath statement.
+     *
+     * @param xpath the XPath statement
+     * @return the SQL-2 statement, or null if not cached
+     */
+    @Nullable
+    public String getConvertedStatement(@NotNull String xpath) {
+        return (String) get(XPATH_PREFIX + xpath);
+    }
+
+    public void putConvertedStatement(@NotNull String xpath, @NotNull String sql2) {
+        put(XPATH_PREFIX + xpath, sql2);
+    }
+
+    /**
+     * Get the index that was chosen for a query.
+     *
+     * @param key the statement and the query
+     * @return the index, or null if not cached
+     */
+    @Nullable
+    public IndexChoice getIndexChoice(@NotNull String key) {
+        return (IndexChoice) get(INDEX_PREFIX + key);
+    }
+
+    public void putIndexChoice(@NotNull String key, @NotNull IndexChoice choice) {
+        put(INDEX_PREFIX + key, choice);
+    }
+
+    public void removeIndexChoice(@NotNull String key) {
+        synchronized (map) {
+            map.remove(INDEX_PREFIX + key);
+        }
+    }
+
+    /**
+     * Remove all entries, for example because index definitions changed.
+     */
+    public void invalidate() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public void resetStats() {
+        hitCount.set(0);
+        missCount.set(0);
+    }
+
+    private Object get(String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Entry e;
+        synchronized (map) {
+            e = map.get(key);
+            if (e != null && System.currentTimeMillis() - e.created > expiryMillis) {
+                map.remove(key);
+                e = null;
+            }
+        }
+        if (e == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return e.value;
+    }
+
+    private void put(String key, Object value) {
+        if (!isEnabled()) {
+            return;
+        }
+        Entry e = new Entry(value, System.currentTimeMillis());
+        synchronized (map) {
+            map.put(key, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "QueryPlanCache{" +
+                "size=" + size() +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                '}';
+    }
+
+    /**
+     * The index that was chosen for a query.
+     */
+    public static final class IndexChoice {
+
+        private final String indexName;
+
+        private final String planName;
+
+        public IndexChoice(@NotNull String indexName, @Nullable String planName) {
+            this.indexName = indexName;
+            this.planName = planName;
+        }
+
+        /**
+         * @return the name of the index, as returned by
+         *         {@code QueryIndex.getIndexName()}
+         */
+        @NotNull
+        public String getIndexName() {
+            return indexName;
+        }
+
+        /**
+         * @return the name of the plan, for advanced query indexes, or null
+         */
+        @Nullable
+        public String getPlanName() {
+            return planName;
+        }
+
+    }
+
+    private static final class Entry {
+
+        final Object value;
+
+        final long created;
+
+        Entry(Object value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+
+    }
+
+}
@@ -16,18 +16,27 @@
  */
 package org.apache.jackrabbit.oak.query;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.jackrabbit.JcrConstants;
+import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.ResultRow;
 import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
+import org.apache.jackrabbit.oak.commons.json.JsopReader;
+import org.apache.jackrabbit.oak.commons.json.JsopTokenizer;
 import org.apache.jackrabbit.oak.query.ast.ColumnImpl;
 import org.apache.jackrabbit.oak.query.ast.OrderingImpl;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyStates;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
 import org.apache.jackrabbit.oak.spi.query.QueryConstants;
+import org.jetbrains.annotations.NotNull;
 
 /**
  * A query result row that keeps all data (for this row only) in memory.
@@ -277,4 +286,133 @@ public class ResultRowImpl implements ResultRow {
         return new ResultRowImpl(delegate.query, delegate.trees, mappedVals,
                 delegate.distinctValues, delegate.orderValues);
     }
-}
\ No newline at end of file
+
+    /**
+     * Get a codec that converts the rows of a query to and from text, so that
+     * they can be written to temporary files while sorting. Trees are stored
+     * as paths, and read again from the query when the row is converted back.
+     * Rows with binary values can not be converted.
+     *
+     * @param query the query
+     * @param distinctValues the distinct columns of the rows
+     * @return the codec
+     */
+    static FilterIterators.EntryCodec<ResultRowImpl> getCodec(
+            final Query query, final boolean[] distinctValues) {
+        return new FilterIterators.EntryCodec<ResultRowImpl>() {
+
+            @Override
+            public boolean canEncode(@NotNull ResultRowImpl row) {
+                return canEncode(row.values) && canEncode(row.orderValues);
+            }
+
+            private boolean canEncode(PropertyValue[] values) {
+                if (values != null) {
+                    for (PropertyValue v : values) {
+                        if (v != null && v.getType().tag() == Type.BINARY.tag()) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+
+            @NotNull
+            @Override
+            public String encode(@NotNull ResultRowImpl row) {
+                JsopBuilder buff = new JsopBuilder();
+                buff.array();
+                for (Tree t : row.trees) {
+                    buff.value(t == null ? null : t.getPath());
+                }
+                buff.endArray();
+                encode(buff, row.values);
+                encode(buff, row.orderValues);
+                return buff.toString();
+            }
+
+            private void encode(JsopBuilder buff, PropertyValue[] values) {
+                if (values == null) {
+                    buff.value(null);
+                    return;
+                }
+                buff.array();
+                for (PropertyValue v : values) {
+                    if (v == null) {
+                        buff.value(null);
+                        continue;
+                    }
+                    buff.array().value(v.getType().tag());
+                    if (v.isArray()) {
+                        buff.array();
+                        for (String x : v.getValue(Type.STRINGS)) {
+                            buff.value(x);
+                        }
+                        buff.endArray();
+                    } else {
+                        buff.value(v.getValue(Type.STRING));
+                    }
+                    buff.endArray();
+                }
+                buff.endArray();
+            }
+
+            @NotNull
+            @Override
+            public ResultRowImpl decode(@NotNull String line) {
+                JsopTokenizer t = new JsopTokenizer(line);
+                t.read('[');
+                List<Tree> trees = new ArrayList<>();
+                while (!t.matches(']')) {
+                    if (!t.matches(JsopReader.NULL)) {
+                        trees.add(query.getTree(t.readString()));
+                    } else {
+                        trees.add(null);
+                    }
+                    t.matches(',');
+                }
+                t.read(',');
+                PropertyValue[] values = decodeValues(t);
+                t.read(',');
+                PropertyValue[] orderValues = decodeValues(t);
+                return new ResultRowImpl(query, trees.toArray(Tree.EMPTY_ARRAY),
+                        values, distinctValues, orderValues);
+            }
+
+            private PropertyValue[] decodeValues(JsopTokenizer t) {
+                if (t.matches(JsopReader.NULL)) {
+                    return null;
+                }
+                t.read('[');
+                List<PropertyValue> values = new ArrayList<>();
+                while (!t.matches(']')) {
+                    if (t.matches(JsopReader.NULL)) {
+                        values.add(null);
+                    } else {
+                        t.read('[');
+                        int tag = Integer.parseInt(t.read(JsopReader.NUMBER));
+                        t.read(',');
+                        PropertyState p;
+                        if (t.matches('[')) {
+                            List<String> list = new ArrayList<>();
+                            while (!t.matches(']')) {
+                                list.add(t.readString());
+                                t.matches(',');
+                            }
+                            p = PropertyStates.createProperty("", list, Type.STRINGS);
+                            p = PropertyStates.convert(p, Type.fromTag(tag, true));
+                        } else {
+                            p = PropertyStates.createProperty("", t.readString(), Type.STRING);
+                            p = PropertyStates.convert(p, Type.fromTag(tag, false));
+                        }
+                        values.add(PropertyValues.create(p));
+                        t.read(']');
+                    }
+                    t.matches(',');
+                }
+                return values.toArray(new PropertyValue[0]);
+            }
+        };
+    }
+
+}
@@ -21,6 +21,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.Result;
@@ -35,6 +36,7 @@ import org.apache.jackrabbit.oak.query.ast.OrderingImpl;
 import org.apache.jackrabbit.oak.query.facet.FacetResult;
 import org.apache.jackrabbit.oak.query.stats.QueryStatsData.QueryExecutionStats;
 import org.apache.jackrabbit.oak.spi.query.QueryConstants;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -126,6 +128,12 @@ public class UnionQueryImpl implements Query {
         right.setTraversalEnabled(traversal);
     }
     
+    @Override
+    public void setExecutor(@Nullable Executor executor) {
+        left.setExecutor(executor);
+        right.setExecutor(executor);
+    }
+
     @Override
     public  void setQueryOptions(QueryOptions options) {
         left.setQueryOptions(options);
@@ -311,6 +319,11 @@ public class UnionQueryImpl implements Query {
         boolean distinct = !unionAll;
         Comparator<ResultRowImpl> orderBy = ResultRowImpl.getComparator(orderings);
 
+        Executor executor = settings.getUnionExecutor();
+        if (executor != null) {
+            // read from the indexes of both branches at the same time
+            setExecutor(executor);
+        }
         FacetMerger facetMerger = new FacetMerger(left, right);
 
         Iterator<ResultRowImpl> it;
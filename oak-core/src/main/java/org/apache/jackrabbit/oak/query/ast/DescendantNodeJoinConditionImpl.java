@@ -97,6 +97,16 @@ public class DescendantNodeJoinConditionImpl extends JoinConditionImpl {
         return available.contains(descendantSelector) && available.contains(ancestorSelector);
     }
 
+    @Override
+    JoinLookup createLookup(SelectorImpl s) {
+        if (s.equals(descendantSelector)) {
+            return new JoinLookup.DescendantLookup(descendantSelector, ancestorSelector);
+        } else if (s.equals(ancestorSelector)) {
+            return new JoinLookup.AncestorLookup(ancestorSelector, descendantSelector);
+        }
+        return null;
+    }
+
     @Override
     public AstElement copyOf() {
         return new DescendantNodeJoinConditionImpl(descendantSelectorName, ancestorSelectorName);
@@ -172,6 +172,16 @@ public class EquiJoinConditionImpl extends JoinConditionImpl {
         return available.contains(selector1) && available.contains(selector2);
     }
 
+    @Override
+    JoinLookup createLookup(SelectorImpl s) {
+        if (s.equals(selector1)) {
+            return new JoinLookup.ValueLookup(selector1, property1Name, selector2, property2Name);
+        } else if (s.equals(selector2)) {
+            return new JoinLookup.ValueLookup(selector2, property2Name, selector1, property1Name);
+        }
+        return null;
+    }
+
     @Override
     public AstElement copyOf() {
         return new EquiJoinConditionImpl(selector1Name, property1Name, selector2Name, property2Name);
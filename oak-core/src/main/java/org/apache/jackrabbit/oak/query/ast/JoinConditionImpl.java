@@ -81,4 +81,16 @@ public abstract class JoinConditionImpl extends AstElement {
      */
     public abstract boolean canEvaluate(Set<SourceImpl> available);
 
+    /**
+     * Create a lookup for the rows of the given selector, so that the rows
+     * matching the other selector can be found without running a query for
+     * each row of the other selector.
+     *
+     * @param s the selector on the right hand side of the join
+     * @return the (empty) lookup, or null if not supported
+     */
+    JoinLookup createLookup(SelectorImpl s) {
+        return null;
+    }
+
 }
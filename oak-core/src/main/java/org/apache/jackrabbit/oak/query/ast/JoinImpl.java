@@ -16,19 +16,34 @@ package org.apache.jackrabbit.oak.query.ast;
 import static org.apache.jackrabbit.oak.query.ast.AstElementFactory.copyElementAndCheckReference;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.jackrabbit.oak.api.Result.SizePrecision;
+import org.apache.jackrabbit.oak.query.QueryEngineSettings;
 import org.apache.jackrabbit.oak.query.plan.ExecutionPlan;
 import org.apache.jackrabbit.oak.query.plan.JoinExecutionPlan;
+import org.apache.jackrabbit.oak.query.plan.SelectorExecutionPlan;
 import org.apache.jackrabbit.oak.spi.query.Filter;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A join. This object contains the left hand side source, the right hand side
  * source, the join type, and the join condition.
+ * <p>
+ * By default, joins are nested loops: for each row of the left hand side, the
+ * right hand side is queried using the join condition. If enabled in the
+ * settings, and if the right hand side is a selector, then the rows of the
+ * right hand side may instead be read once into a {@link JoinLookup}, if that
+ * is estimated to be cheaper. If the lookup would contain more entries than
+ * allowed in memory, the join falls back to the nested loop.
  */
 public class JoinImpl extends SourceImpl {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JoinImpl.class);
+
     private final JoinConditionImpl joinCondition;
     private JoinType joinType;
     private SourceImpl left;
@@ -42,6 +57,10 @@ public class JoinImpl extends SourceImpl {
     
     private JoinExecutionPlan plan;
 
+    private JoinLookup lookup;
+    private NodeState lookupRootState;
+    private boolean lookupFailed;
+
     public JoinImpl(SourceImpl left, SourceImpl right, JoinType joinType,
             JoinConditionImpl joinCondition) {
         this.left = left;
@@ -107,6 +126,10 @@ public class JoinImpl extends SourceImpl {
             append(right.getPlan(rootState)).
             append(" on ").
             append(joinCondition);
+        if (plan != null && plan.getLookupPlan() != null) {
+            JoinLookup l = joinCondition.createLookup((SelectorImpl) right);
+            buff.append(" /* ").append(l.getType()).append(" join */");
+        }
         return buff.toString();
     }
 
@@ -133,6 +156,9 @@ public class JoinImpl extends SourceImpl {
         left.unprepare();
         right.unprepare();
         plan = null;
+        lookup = null;
+        lookupRootState = null;
+        lookupFailed = false;
     }
     
     private void applyJoinConditions() {
@@ -176,6 +202,9 @@ public class JoinImpl extends SourceImpl {
         applyJoinConditions();
         left.prepare(joinPlan.getLeftPlan());
         right.prepare(joinPlan.getRightPlan());
+        if (joinPlan.getLookupPlan() != null) {
+            ((SelectorImpl) right).setLookupPlan(joinPlan.getLookupPlan());
+        }
     }
 
     @Override
@@ -191,10 +220,54 @@ public class JoinImpl extends SourceImpl {
         ExecutionPlan leftPlan = left.prepare();
         ExecutionPlan rightPlan = right.prepare();
         double cost = leftPlan.getEstimatedCost() + 2 * rightPlan.getEstimatedCost();
-        plan = new JoinExecutionPlan(this, leftPlan, rightPlan, cost);
+        SelectorExecutionPlan lookupPlan = prepareLookup(leftPlan, rightPlan);
+        if (lookupPlan != null) {
+            // the right selector is read once,
+            // then there is one lookup per row on the left selector
+            double lookupCost = leftPlan.getEstimatedCost() + lookupPlan.getEstimatedCost()
+                    + estimatedRows(leftPlan);
+            cost = Math.min(cost, lookupCost);
+        }
+        plan = new JoinExecutionPlan(this, leftPlan, rightPlan, lookupPlan, cost);
         return plan;
     }
 
+    /**
+     * Get the plan to read the right hand side into a lookup, if that is
+     * supported and cheaper than querying the right hand side for each row
+     * of the left hand side.
+     *
+     * @return the plan, or null for a nested loop join
+     */
+    private SelectorExecutionPlan prepareLookup(ExecutionPlan leftPlan, ExecutionPlan rightPlan) {
+        if (!(right instanceof SelectorImpl)) {
+            return null;
+        }
+        SelectorImpl s = (SelectorImpl) right;
+        QueryEngineSettings settings = s.query.getSettings();
+        if (!settings.isHashJoin() || joinCondition.createLookup(s) == null) {
+            return null;
+        }
+        SelectorExecutionPlan lookupPlan = s.prepareLookup();
+        if (lookupPlan == null || estimatedRows(lookupPlan) > settings.getLimitInMemory()) {
+            return null;
+        }
+        double nestedLoopCost = estimatedRows(leftPlan) * rightPlan.getEstimatedCost();
+        double lookupCost = lookupPlan.getEstimatedCost() + estimatedRows(leftPlan);
+        return lookupCost < nestedLoopCost ? lookupPlan : null;
+    }
+
+    private static double estimatedRows(ExecutionPlan p) {
+        if (p instanceof SelectorExecutionPlan) {
+            SelectorExecutionPlan sp = (SelectorExecutionPlan) p;
+            if (sp.getIndexPlan() != null) {
+                return sp.getIndexPlan().getEstimatedEntryCount();
+            }
+        }
+        // for other indexes, the cost is about the number of rows
+        return p.getEstimatedCost();
+    }
+
     @Override
     public SelectorImpl getSelector(String selectorName) {
         SelectorImpl s = left.getSelector(selectorName);
@@ -255,7 +328,7 @@ public class JoinImpl extends SourceImpl {
                 rightNeedExecute = true;
             }
             if (rightNeedExecute) {
-                right.execute(rootState);
+                executeRight();
                 foundJoinedRow = false;
                 rightNeedExecute = false;
             }
@@ -275,6 +348,45 @@ public class JoinImpl extends SourceImpl {
         }
     }
     
+    private void executeRight() {
+        if (plan == null || plan.getLookupPlan() == null || lookupFailed) {
+            right.execute(rootState);
+            return;
+        }
+        if (lookup == null || lookupRootState != rootState) {
+            lookup = buildLookup();
+            lookupRootState = rootState;
+            if (lookup == null) {
+                lookupFailed = true;
+                right.execute(rootState);
+                return;
+            }
+        }
+        Collection<String> paths = lookup.find();
+        if (paths == null) {
+            // the lookup can not be used for this row
+            right.execute(rootState);
+        } else {
+            ((SelectorImpl) right).execute(rootState, paths);
+        }
+    }
+
+    private JoinLookup buildLookup() {
+        SelectorImpl s = (SelectorImpl) right;
+        JoinLookup l = joinCondition.createLookup(s);
+        long limit = s.query.getSettings().getLimitInMemory();
+        s.executeLookup(rootState);
+        while (s.next()) {
+            if (!l.add() || l.size() > limit) {
+                LOG.debug("Using a nested loop join for {}", this);
+                // read again with the join condition
+                return null;
+            }
+        }
+        l.seal();
+        return l;
+    }
+
     @Override
     public boolean isOuterJoinRightHandSide() {
         return left.isOuterJoinRightHandSide() || right.isOuterJoinRightHandSide();
@@ -0,0 +1,320 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.query.ast;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.PropertyType;
+
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The rows of the right hand side selector of a join, kept in memory, so
+ * that the matching rows for each row of the left hand side can be found
+ * without running a query on the right hand side for each of them.
+ * <p>
+ * The lookup returns candidate paths. The join condition is still evaluated
+ * for each of them, so a lookup may return more paths than needed, but never
+ * fewer.
+ */
+abstract class JoinLookup {
+
+    /**
+     * Add the current row of the selector.
+     *
+     * @return false if the row can not be added, in which case the lookup
+     *         can not be used
+     */
+    abstract boolean add();
+
+    /**
+     * Called after all rows were added.
+     */
+    void seal() {
+    }
+
+    /**
+     * Get the paths of the rows that may match the current row of the other
+     * selector.
+     *
+     * @return the paths, or null if the rows need to be read from the index
+     */
+    @Nullable
+    abstract Collection<String> find();
+
+    /**
+     * @return the number of entries
+     */
+    abstract int size();
+
+    /**
+     * @return the type of join, for the query plan
+     */
+    abstract String getType();
+
+    /**
+     * A hash lookup by property value, for the "a.x = b.y" join condition.
+     */
+    static class ValueLookup extends JoinLookup {
+
+        private final SelectorImpl selector;
+        private final String propertyName;
+        private final SelectorImpl other;
+        private final String otherPropertyName;
+
+        /**
+         * The paths by value. Empty arrays are stored with the null key.
+         */
+        private final Map<String, List<String>> map = new HashMap<>();
+        private int type = PropertyType.UNDEFINED;
+        private int size;
+
+        ValueLookup(SelectorImpl selector, String propertyName,
+                SelectorImpl other, String otherPropertyName) {
+            this.selector = selector;
+            this.propertyName = propertyName;
+            this.other = other;
+            this.otherPropertyName = otherPropertyName;
+        }
+
+        @Override
+        boolean add() {
+            PropertyValue v = selector.currentProperty(propertyName);
+            if (v == null) {
+                // can not match
+                return true;
+            }
+            int t = v.getType().tag();
+            if (!isCanonical(t) || (type != PropertyType.UNDEFINED && type != getTypeClass(t))) {
+                // values of different types are converted before
+                // comparing, which would need to be done for each row
+                return false;
+            }
+            type = getTypeClass(t);
+            String path = selector.currentPath();
+            if (v.isArray() && v.count() == 0) {
+                put(null, path);
+            } else {
+                for (String x : v.getValue(Type.STRINGS)) {
+                    put(x, path);
+                }
+            }
+            return true;
+        }
+
+        private void put(String key, String path) {
+            map.computeIfAbsent(key, k -> new ArrayList<>(1)).add(path);
+            size++;
+        }
+
+        @Override
+        Collection<String> find() {
+            PropertyValue v = other.currentProperty(otherPropertyName);
+            if (v == null || map.isEmpty()) {
+                return Collections.emptyList();
+            }
+            if (getTypeClass(v.getType().tag()) != type) {
+                return null;
+            }
+            if (!v.isArray()) {
+                return get(v.getValue(Type.STRING));
+            } else if (v.count() == 0) {
+                return get(null);
+            }
+            Set<String> result = new LinkedHashSet<>();
+            for (String x : v.getValue(Type.STRINGS)) {
+                result.addAll(get(x));
+            }
+            return result;
+        }
+
+        private List<String> get(String key) {
+            List<String> list = map.get(key);
+            return list == null ? Collections.emptyList() : list;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        String getType() {
+            return "hash";
+        }
+
+        /**
+         * Get the class of types that can be compared by their string
+         * representation. Converting between string, reference, weak
+         * reference and URI values doesn't change the string, so that for
+         * example "[a].[jcr:uuid] = [b].[ref]" can use the lookup.
+         */
+        private static int getTypeClass(int type) {
+            switch (type) {
+            case PropertyType.REFERENCE:
+            case PropertyType.WEAKREFERENCE:
+            case PropertyType.URI:
+                return PropertyType.STRING;
+            default:
+                return type;
+            }
+        }
+
+        /**
+         * Whether equal values of this type always have the same string
+         * representation.
+         */
+        private static boolean isCanonical(int type) {
+            switch (type) {
+            case PropertyType.STRING:
+            case PropertyType.NAME:
+            case PropertyType.PATH:
+            case PropertyType.REFERENCE:
+            case PropertyType.WEAKREFERENCE:
+            case PropertyType.URI:
+            case PropertyType.LONG:
+            case PropertyType.BOOLEAN:
+                return true;
+            default:
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A lookup of the descendants of a node, for the "isdescendantnode(a, b)"
+     * join condition, where the right hand side is the descendant. The paths
+     * are sorted, so that the descendants of a node are a range of entries.
+     */
+    static class DescendantLookup extends JoinLookup {
+
+        private final SelectorImpl descendant;
+        private final SelectorImpl ancestor;
+        private final ArrayList<String> paths = new ArrayList<>();
+
+        DescendantLookup(SelectorImpl descendant, SelectorImpl ancestor) {
+            this.descendant = descendant;
+            this.ancestor = ancestor;
+        }
+
+        @Override
+        boolean add() {
+            paths.add(descendant.currentPath());
+            return true;
+        }
+
+        @Override
+        void seal() {
+            Collections.sort(paths);
+        }
+
+        @Override
+        Collection<String> find() {
+            String a = ancestor.currentPath();
+            if (a == null) {
+                return Collections.emptyList();
+            }
+            String prefix = PathUtils.denotesRoot(a) ? a : a + "/";
+            int start = Collections.binarySearch(paths, prefix);
+            if (start < 0) {
+                start = -start - 1;
+            }
+            int end = start;
+            while (end < paths.size() && paths.get(end).startsWith(prefix)) {
+                end++;
+            }
+            if (start < end && paths.get(start).equals(a)) {
+                // only for the root node, which is not its own descendant
+                start++;
+            }
+            return paths.subList(start, end);
+        }
+
+        @Override
+        int size() {
+            return paths.size();
+        }
+
+        @Override
+        String getType() {
+            return "sorted";
+        }
+    }
+
+    /**
+     * A hash lookup of the ancestors of a node, for the
+     * "isdescendantnode(a, b)" join condition, where the right hand side is
+     * the ancestor.
+     */
+    static class AncestorLookup extends JoinLookup {
+
+        private final SelectorImpl ancestor;
+        private final SelectorImpl descendant;
+        private final Set<String> paths = new HashSet<>();
+
+        AncestorLookup(SelectorImpl ancestor, SelectorImpl descendant) {
+            this.ancestor = ancestor;
+            this.descendant = descendant;
+        }
+
+        @Override
+        boolean add() {
+            paths.add(ancestor.currentPath());
+            return true;
+        }
+
+        @Override
+        Collection<String> find() {
+            String d = descendant.currentPath();
+            if (d == null) {
+                return Collections.emptyList();
+            }
+            List<String> result = new ArrayList<>();
+            while (!PathUtils.denotesRoot(d)) {
+                d = PathUtils.getParentPath(d);
+                if (paths.contains(d)) {
+                    result.add(d);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        int size() {
+            return paths.size();
+        }
+
+        @Override
+        String getType() {
+            return "hash";
+        }
+    }
+
+}
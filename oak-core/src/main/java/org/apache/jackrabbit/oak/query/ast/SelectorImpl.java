@@ -23,9 +23,11 @@ import static org.apache.jackrabbit.guava.common.collect.Lists.newArrayList;
 import static org.apache.jackrabbit.JcrConstants.NT_BASE;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.jackrabbit.oak.api.PropertyState;
@@ -107,6 +109,18 @@ public class SelectorImpl extends SourceImpl {
      */
     private JoinConditionImpl joinCondition;
 
+    /**
+     * The plan to read the rows of this selector without the join condition,
+     * if the join reads them into a {@link JoinLookup}.
+     */
+    private SelectorExecutionPlan lookupPlan;
+
+    /**
+     * Whether the join condition is ignored, while reading the rows for a
+     * {@link JoinLookup}.
+     */
+    private boolean ignoreJoinCondition;
+
     /**
      * The node type associated with the {@link #nodeTypeName}
      */
@@ -271,6 +285,7 @@ public class SelectorImpl extends SourceImpl {
     @Override
     public void unprepare() {
         plan = null;
+        lookupPlan = null;
         planIndexName = null;
         timerDuration = null;
         selectorConstraints.clear();
@@ -316,6 +331,29 @@ public class SelectorImpl extends SourceImpl {
     public SelectorExecutionPlan getExecutionPlan() {
         return plan;
     }
+
+    /**
+     * Prepare the plan to read the rows of this selector without the join
+     * condition. The selector needs to be prepared first.
+     *
+     * @return the plan, or null if there is no plan that doesn't traverse
+     */
+    @Nullable
+    SelectorExecutionPlan prepareLookup() {
+        if (lookupPlan == null) {
+            ignoreJoinCondition = true;
+            try {
+                lookupPlan = query.getBestLookupPlan(createFilter(true));
+            } finally {
+                ignoreJoinCondition = false;
+            }
+        }
+        return lookupPlan;
+    }
+
+    void setLookupPlan(@Nullable SelectorExecutionPlan lookupPlan) {
+        this.lookupPlan = lookupPlan;
+    }
     
     @Override
     public void setQueryConstraint(ConstraintImpl queryConstraint) {
@@ -343,21 +381,50 @@ public class SelectorImpl extends SourceImpl {
     public void execute(NodeState rootState) {
         long start = startTimer();
         try {
-            executeInternal(rootState);
+            ignoreJoinCondition = false;
+            executeInternal(rootState, plan);
         } finally {
             stopTimer(start, true);
         }
     }
+
+    /**
+     * Execute using the lookup plan, that is, read all rows of this selector
+     * without the join condition.
+     *
+     * @param rootState the root
+     */
+    void executeLookup(NodeState rootState) {
+        long start = startTimer();
+        try {
+            ignoreJoinCondition = true;
+            executeInternal(rootState, lookupPlan);
+        } finally {
+            stopTimer(start, true);
+        }
+    }
+
+    /**
+     * Execute by reading the given paths only, which were found in a
+     * {@link JoinLookup}. The conditions are still evaluated.
+     *
+     * @param rootState the root
+     * @param paths the paths
+     */
+    void execute(NodeState rootState, Collection<String> paths) {
+        ignoreJoinCondition = false;
+        cursor = Cursors.newPathCursor(paths, query.getSettings());
+    }
     
-    private void executeInternal(NodeState rootState) {
-        QueryIndex index = plan.getIndex();
+    private void executeInternal(NodeState rootState, SelectorExecutionPlan selectorPlan) {
+        QueryIndex index = selectorPlan.getIndex();
         timerDuration = null;
         if (index == null) {
             cursor = Cursors.newPathCursor(new ArrayList<String>(), query.getSettings());
             planIndexName = "traverse";
             return;
         }
-        IndexPlan p = plan.getIndexPlan();
+        IndexPlan p = selectorPlan.getIndexPlan();
         if (p != null) {
             planIndexName = p.getPlanName();
             p.setFilter(createFilter(false));
@@ -375,6 +442,12 @@ public class SelectorImpl extends SourceImpl {
             cursor = Cursors.newPrefetchCursor(cursor, store, prefetchCount,
                     rootState, query.getQueryOptions().prefetch);
         }
+        Executor executor = query.getExecutor();
+        if (executor != null && joinCondition == null) {
+            // the right hand side of a join is queried for each row
+            // of the left hand side, so it is not read in the background
+            cursor = Cursors.newAsyncCursor(cursor, executor);
+        }
     }
     
     private long startTimer() {
@@ -468,7 +541,7 @@ public class SelectorImpl extends SourceImpl {
     public FilterImpl createFilter(boolean preparing) {
         FilterImpl f = new FilterImpl(this, query.getStatement(), query.getSettings());
         f.setPreparing(preparing);
-        if (joinCondition != null) {
+        if (joinCondition != null && !ignoreJoinCondition) {
             joinCondition.restrict(f);
         }
         // rep:excerpt handling: create a (fake) restriction
@@ -608,7 +681,7 @@ public class SelectorImpl extends SourceImpl {
                 return false;
             }
         }
-        if (joinCondition != null && !joinCondition.evaluate()) {
+        if (joinCondition != null && !ignoreJoinCondition && !joinCondition.evaluate()) {
             return false;
         }
         return true;
@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.oak.query.plan;
 
 import org.apache.jackrabbit.oak.query.ast.JoinImpl;
+import org.jetbrains.annotations.Nullable;
 
 
 /**
@@ -26,12 +27,19 @@ public class JoinExecutionPlan implements ExecutionPlan {
 
     private final JoinImpl join;
     private final ExecutionPlan leftPlan, rightPlan;
+    private final SelectorExecutionPlan lookupPlan;
     private final double estimatedCost;
     
     public JoinExecutionPlan(JoinImpl join, ExecutionPlan leftPlan, ExecutionPlan rightPlan, double estimatedCost) {
+        this(join, leftPlan, rightPlan, null, estimatedCost);
+    }
+
+    public JoinExecutionPlan(JoinImpl join, ExecutionPlan leftPlan, ExecutionPlan rightPlan,
+            @Nullable SelectorExecutionPlan lookupPlan, double estimatedCost) {
         this.join = join;
         this.leftPlan = leftPlan;
         this.rightPlan = rightPlan;
+        this.lookupPlan = lookupPlan;
         this.estimatedCost = estimatedCost;
     }
     
@@ -52,4 +60,15 @@ public class JoinExecutionPlan implements ExecutionPlan {
         return rightPlan;
     }
 
+    /**
+     * Get the plan to read all rows of the right hand side once, for a hash
+     * or sorted join.
+     *
+     * @return the plan, or null for a nested loop join
+     */
+    @Nullable
+    public SelectorExecutionPlan getLookupPlan() {
+        return lookupPlan;
+    }
+
 }
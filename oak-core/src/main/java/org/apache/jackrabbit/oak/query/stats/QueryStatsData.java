@@ -39,6 +39,13 @@ public class QueryStatsData {
      */
     private long totalRowsScanned;
     private long maxRowsScanned;
+
+    /**
+     * Rows kept in memory and written to disk when sorting.
+     */
+    private long maxRowsInMemory;
+    private long totalRowsSpilled;
+    private long totalSpillFiles;
     private long planNanos;
     private long readNanos;
     private long maxTimeNanos;
@@ -74,6 +81,18 @@ public class QueryStatsData {
         return maxRowsScanned;
     }
     
+    public long getMaxRowsInMemory() {
+        return maxRowsInMemory;
+    }
+
+    public long getTotalRowsSpilled() {
+        return totalRowsSpilled;
+    }
+
+    public long getTotalSpillFiles() {
+        return totalSpillFiles;
+    }
+
     public void setCaptureStackTraces(boolean captureStackTraces) {
         this.captureStackTraces = captureStackTraces;
     }
@@ -125,6 +144,9 @@ public class QueryStatsData {
             key("maxRowsRead").value(maxRowsRead).
             key("totalRowsScanned").value(totalRowsScanned).
             key("maxRowsScanned").value(maxRowsScanned).
+            key("maxRowsInMemory").value(maxRowsInMemory).
+            key("totalRowsSpilled").value(totalRowsSpilled).
+            key("totalSpillFiles").value(totalSpillFiles).
             key("planNanos").value(planNanos).
             key("readNanos").value(readNanos).
             key("maxTimeNanos").value(maxTimeNanos).
@@ -179,6 +201,12 @@ public class QueryStatsData {
             totalRowsScanned += count;
             maxRowsScanned = Math.max(maxRowsScanned, max);
         }
+
+        public void sort(long rowsInMemory, long rowsSpilled, int files) {
+            maxRowsInMemory = Math.max(maxRowsInMemory, rowsInMemory);
+            totalRowsSpilled += rowsSpilled;
+            totalSpillFiles += files;
+        }
     }
 
 }
\ No newline at end of file
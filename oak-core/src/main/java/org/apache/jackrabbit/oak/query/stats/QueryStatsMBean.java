@@ -54,5 +54,17 @@ public interface QueryStatsMBean {
     void setCaptureStackTraces(boolean captureStackTraces);
     
     boolean getCaptureStackTraces();
+
+    @Description("Get the number of lookups in the query plan cache that found an entry.")
+    long getPlanCacheHitCount();
+
+    @Description("Get the number of lookups in the query plan cache that did not find an entry.")
+    long getPlanCacheMissCount();
+
+    @Description("Get the ratio of lookups in the query plan cache that found an entry.")
+    double getPlanCacheHitRatio();
+
+    @Description("Remove all entries from the query plan cache, for example after index definitions changed.")
+    void invalidatePlanCache();
     
 }
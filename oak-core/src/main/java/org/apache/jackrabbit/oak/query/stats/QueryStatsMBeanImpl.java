@@ -95,6 +95,7 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
     @Override
     public void resetStats() {
         statistics.clear();
+        settings.getQueryPlanCache().resetStats();
     }
     
     @Override
@@ -106,6 +107,28 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
     public boolean getCaptureStackTraces() {
         return captureStackTraces;
     }
+
+    @Override
+    public long getPlanCacheHitCount() {
+        return settings.getQueryPlanCache().getHitCount();
+    }
+
+    @Override
+    public long getPlanCacheMissCount() {
+        return settings.getQueryPlanCache().getMissCount();
+    }
+
+    @Override
+    public double getPlanCacheHitRatio() {
+        long hits = getPlanCacheHitCount();
+        long total = hits + getPlanCacheMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public void invalidatePlanCache() {
+        settings.getQueryPlanCache().invalidate();
+    }
     
     @Override
     public String asJson() {
@@ -209,6 +232,7 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
         private final static String[] names = { "position", 
                 "maxTimeMillis", "totalTimeMillis", "executeCount", 
                 "rowsRead", "rowsScanned", "maxRowsRead", "maxRowsScanned",
+                "maxRowsInMemory", "rowsSpilled", "spillFiles",
                 "language", "statement", "lastExecuted",
                 "lastThread"};
 
@@ -218,6 +242,7 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
         private final static OpenType[] types = {SimpleType.LONG,
                     SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
                     SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+                    SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
                     SimpleType.STRING, SimpleType.STRING, SimpleType.STRING,
                     SimpleType.STRING};
 
@@ -230,6 +255,7 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
             return new Object[] { (long) position,
                     q.getMaxTimeNanos() / 1000000, q.getTotalTimeNanos() / 1000000, q.getExecuteCount(), 
                     q.getTotalRowsRead(), q.getTotalRowsScanned(), q.getMaxRowsRead(), q.getMaxRowsScanned(),
+                    q.getMaxRowsInMemory(), q.getTotalRowsSpilled(), q.getTotalSpillFiles(),
                     q.getLanguage(), q.getQuery(), QueryStatsData.getTimeString(q.getLastExecutedMillis()),
                     q.isInternal() ? "(internal query)" : q.getLastThreadName()};
         }
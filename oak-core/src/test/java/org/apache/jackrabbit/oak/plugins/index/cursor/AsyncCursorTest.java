@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.cursor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncCursorTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void readAll() {
+        for (int count : new int[] {0, 1, 15, 16, 17, 100, 5000}) {
+            List<String> paths = paths(count);
+            Cursor c = Cursors.newAsyncCursor(new TestCursor(paths.iterator()), executor);
+            assertEquals(String.join(", ", paths), CursorUtils.toString(c));
+            assertFalse(c.hasNext());
+        }
+    }
+
+    @Test
+    public void readsAheadOneBatch() {
+        AtomicInteger read = new AtomicInteger();
+        Iterator<String> it = paths(5000).iterator();
+        // run the background reads only when the test says so
+        List<Runnable> tasks = new ArrayList<>();
+        Cursor c = Cursors.newAsyncCursor(new TestCursor(new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public String next() {
+                read.incrementAndGet();
+                return it.next();
+            }
+        }), tasks::add);
+        assertEquals(1, tasks.size());
+        assertEquals(0, read.get());
+        tasks.get(0).run();
+        assertEquals(AsyncCursor.MIN_BATCH_SIZE, read.get());
+
+        // using the first batch schedules the second one
+        assertTrue(c.hasNext());
+        assertEquals("/n0", c.next().getPath());
+        assertEquals(2, tasks.size());
+        tasks.get(1).run();
+        assertEquals(AsyncCursor.MIN_BATCH_SIZE * 3, read.get());
+
+        // the third batch is only read once the second one is needed
+        for (int i = 1; i < AsyncCursor.MIN_BATCH_SIZE; i++) {
+            assertEquals("/n" + i, c.next().getPath());
+        }
+        assertEquals(2, tasks.size());
+        assertTrue(c.hasNext());
+        assertEquals(3, tasks.size());
+    }
+
+    @Test
+    public void rejected() {
+        List<String> paths = paths(100);
+        Cursor c = Cursors.newAsyncCursor(new TestCursor(paths.iterator()), command -> {
+            throw new RejectedExecutionException();
+        });
+        assertEquals(String.join(", ", paths), CursorUtils.toString(c));
+    }
+
+    @Test
+    public void exception() {
+        Cursor c = Cursors.newAsyncCursor(new TestCursor(new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public String next() {
+                throw new IllegalArgumentException("failed");
+            }
+        }), executor);
+        try {
+            c.hasNext();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("failed", e.getMessage());
+        }
+    }
+
+    private static List<String> paths(int count) {
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            list.add("/n" + i);
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property;
+
+import static org.apache.jackrabbit.JcrConstants.NT_BASE;
+import static org.apache.jackrabbit.oak.InitialContentHelper.INITIAL_CONTENT;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.REINDEX_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexStatistics.DISTINCT_VALUES_PREFIX;
+import static org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexStatistics.STATISTICS_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexStatistics.STATISTICS_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.plugins.index.IndexUpdateProvider;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
+import org.apache.jackrabbit.oak.query.NodeStateNodeTypeInfoProvider;
+import org.apache.jackrabbit.oak.query.QueryEngineSettings;
+import org.apache.jackrabbit.oak.query.ast.NodeTypeInfo;
+import org.apache.jackrabbit.oak.query.ast.SelectorImpl;
+import org.apache.jackrabbit.oak.query.index.FilterImpl;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EditorHook;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Test;
+
+import org.apache.jackrabbit.guava.common.collect.ImmutableSet;
+
+public class PropertyIndexStatisticsTest {
+
+    private static final EditorHook HOOK = new EditorHook(
+            new IndexUpdateProvider(new PropertyIndexEditorProvider()));
+
+    @Test
+    public void distinctValues() {
+        for (int count : new int[] {1, 10, 100, 1000, 100000}) {
+            byte[] registers = PropertyIndexStatistics.readRegisters(null);
+            for (int i = 0; i < count; i++) {
+                PropertyIndexStatistics.add(registers, "x" + i);
+                // duplicates don't change the estimate
+                PropertyIndexStatistics.add(registers, "x" + i);
+            }
+            long estimate = PropertyIndexStatistics.estimate(registers);
+            assertTrue("count " + count + " estimate " + estimate,
+                    Math.abs(estimate - count) <= Math.max(1, count * 0.4));
+            String s = PropertyIndexStatistics.writeRegisters(registers);
+            assertEquals(s, PropertyIndexStatistics.writeRegisters(
+                    PropertyIndexStatistics.readRegisters(s)));
+        }
+    }
+
+    @Test
+    public void maintainedByEditor() throws Exception {
+        NodeBuilder builder = INITIAL_CONTENT.builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, false, ImmutableSet.of("foo"), null)
+                .setProperty(STATISTICS_PROPERTY_NAME, true);
+        NodeState before = builder.getNodeState();
+        for (int i = 0; i < 2000; i++) {
+            builder.child("a").child("b").child("n" + i).setProperty("foo", "x" + i % 50);
+        }
+        NodeState indexed = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+
+        PropertyIndexStatistics statistics = PropertyIndexStatistics.read(
+                indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo"));
+        assertNotNull(statistics);
+        long distinct = statistics.getDistinctValueCount();
+        assertTrue("distinct " + distinct, distinct >= 30 && distinct <= 70);
+        assertTrue(statistics.getEntryCount() > 0);
+        assertTrue(statistics.getEntryCount("/a") > 0);
+        assertTrue(statistics.getEntryCount("/a/b/n1") > 0);
+        assertEquals(0, statistics.getEntryCount("/c"));
+        assertEquals(0, statistics.getEntryCount("/a/c"));
+    }
+
+    @Test
+    public void concurrentUpdates() {
+        NodeState before = EMPTY_NODE;
+        NodeBuilder a = before.builder();
+        NodeBuilder b = before.builder();
+        for (int i = 0; i < 100; i++) {
+            PropertyIndexStatistics.update(a, "/a", Collections.emptySet(), Collections.singleton("a" + i));
+            PropertyIndexStatistics.update(b, "/b", Collections.emptySet(), Collections.singleton("b" + i));
+        }
+        // each commit adds one property, with a unique name,
+        // so that the registers of both commits can be merged
+        assertEquals(1, registerProperties(a));
+        assertEquals(1, registerProperties(b));
+        NodeBuilder merged = a.getNodeState().builder();
+        for (PropertyState p : b.getProperties()) {
+            if (p.getName().startsWith(DISTINCT_VALUES_PREFIX)) {
+                assertFalse(merged.hasProperty(p.getName()));
+                merged.setProperty(p);
+            }
+        }
+        NodeBuilder definition = EMPTY_NODE.builder();
+        definition.setChildNode(STATISTICS_NODE_NAME, merged.getNodeState());
+        long distinct = PropertyIndexStatistics.read(definition.getNodeState()).getDistinctValueCount();
+        assertTrue("distinct " + distinct, distinct >= 120 && distinct <= 280);
+
+        // a later commit adds a new property
+        NodeBuilder c = merged.getNodeState().builder();
+        for (int i = 0; i < 1000; i++) {
+            PropertyIndexStatistics.update(c, "/c", Collections.emptySet(), Collections.singleton("c" + i));
+        }
+        assertEquals(3, registerProperties(c));
+    }
+
+    private static int registerProperties(NodeBuilder statistics) {
+        int count = 0;
+        for (PropertyState p : statistics.getProperties()) {
+            if (p.getName().startsWith(DISTINCT_VALUES_PREFIX)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void onlyCompleteStatistics() throws Exception {
+        NodeBuilder builder = INITIAL_CONTENT.builder();
+        NodeBuilder index = createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, false, ImmutableSet.of("foo"), null);
+        NodeState before = builder.getNodeState();
+        builder.child("n1").setProperty("foo", "x");
+        NodeState indexed = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+
+        // enabling statistics for an existing index needs a reindex
+        builder = indexed.builder();
+        index = builder.child(INDEX_DEFINITIONS_NAME).child("foo");
+        index.setProperty(STATISTICS_PROPERTY_NAME, true);
+        builder.child("n2").setProperty("foo", "y");
+        indexed = HOOK.processCommit(indexed, builder.getNodeState(), CommitInfo.EMPTY);
+        NodeState definition = indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo");
+        assertFalse(definition.hasChildNode(STATISTICS_NODE_NAME));
+        assertNull(PropertyIndexStatistics.read(definition));
+
+        builder = indexed.builder();
+        builder.child(INDEX_DEFINITIONS_NAME).child("foo").setProperty(REINDEX_PROPERTY_NAME, true);
+        indexed = HOOK.processCommit(indexed, builder.getNodeState(), CommitInfo.EMPTY);
+        definition = indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo");
+        PropertyIndexStatistics statistics = PropertyIndexStatistics.read(definition);
+        assertNotNull(statistics);
+        long distinct = statistics.getDistinctValueCount();
+        assertTrue("distinct " + distinct, distinct >= 1 && distinct <= 3);
+    }
+
+    @Test
+    public void pathSelectivity() throws Exception {
+        NodeBuilder builder = INITIAL_CONTENT.builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, false, ImmutableSet.of("foo"), null)
+                .setProperty(STATISTICS_PROPERTY_NAME, true);
+        NodeState before = builder.getNodeState();
+        for (int i = 0; i < 2000; i++) {
+            builder.child("a").child("n" + i).setProperty("foo", "x" + i % 2);
+        }
+        builder.child("b");
+        NodeState indexed = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+        PropertyIndexLookup lookup = new PropertyIndexLookup(indexed);
+
+        FilterImpl f = createFilter(indexed);
+        double all = lookup.getCost(f, "foo", PropertyValues.newString("x1"));
+        assertTrue("cost " + all, all > PropertyIndexLookup.COST_OVERHEAD);
+
+        f = createFilter(indexed);
+        f.restrictPath("/b", Filter.PathRestriction.ALL_CHILDREN);
+        assertEquals(PropertyIndexLookup.COST_OVERHEAD,
+                lookup.getCost(f, "foo", PropertyValues.newString("x1")), 0);
+
+        f = createFilter(indexed);
+        f.restrictPath("/a", Filter.PathRestriction.ALL_CHILDREN);
+        assertTrue(lookup.getCost(f, "foo", PropertyValues.newString("x1")) <= all);
+    }
+
+    private static FilterImpl createFilter(NodeState root) {
+        NodeTypeInfo type = new NodeStateNodeTypeInfoProvider(root).getNodeTypeInfo(NT_BASE);
+        SelectorImpl selector = new SelectorImpl(type, NT_BASE);
+        return new FilterImpl(selector, "SELECT * FROM [" + NT_BASE + "]", new QueryEngineSettings());
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.jackrabbit.oak.InitialContentHelper;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexProvider;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.whiteboard.DefaultWhiteboard;
+import org.apache.jackrabbit.oak.spi.whiteboard.Whiteboard;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests joins that read the right hand side into a lookup.
+ */
+public class HashJoinTest extends AbstractQueryTest {
+
+    private final QueryEngineSettings settings = new QueryEngineSettings();
+
+    private int indexQueries;
+
+    @Override
+    protected ContentRepository createRepository() {
+        // Oak only copies some values of settings passed with with(settings),
+        // but uses the settings registered in the whiteboard as they are
+        Whiteboard whiteboard = new DefaultWhiteboard();
+        whiteboard.register(QueryEngineSettings.class, settings, Collections.emptyMap());
+        PropertyIndexProvider indexProvider = new PropertyIndexProvider();
+        return new Oak(new MemoryNodeStore(InitialContentHelper.INITIAL_CONTENT))
+                .with(whiteboard)
+                .with(new OpenSecurityProvider())
+                .with(new QueryIndexProvider() {
+                    @Override
+                    public List<? extends QueryIndex> getQueryIndexes(NodeState nodeState) {
+                        List<QueryIndex> list = new ArrayList<>();
+                        for (QueryIndex index : indexProvider.getQueryIndexes(nodeState)) {
+                            list.add(new CountingIndex(index));
+                        }
+                        return list;
+                    }
+                })
+                .with(new PropertyIndexEditorProvider())
+                .createContentRepository();
+    }
+
+    @Before
+    public void createContent() throws Exception {
+        Tree index = root.getTree("/oak:index");
+        for (String p : new String[] {"type", "p", "kind"}) {
+            createIndexDefinition(index, p, false, new String[] {p});
+        }
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < 10; i++) {
+            Tree folder = test.addChild("f" + i);
+            folder.setProperty("type", "folder");
+            folder.setProperty("id", "x" + i);
+            for (int j = 0; j < 5; j++) {
+                folder.addChild("c" + j).setProperty("p", i < 3 && j == 0 ? "z" : "y");
+            }
+        }
+        // some references point to folders that don't exist,
+        // and the "ref" property is not indexed
+        Tree refs = root.getTree("/").addChild("refs");
+        for (int i = 0; i < 30; i++) {
+            Tree r = refs.addChild("r" + i);
+            r.setProperty("kind", "ref");
+            r.setProperty("ref", "x" + (i % 15));
+        }
+        root.commit();
+    }
+
+    @Test
+    public void descendantJoin() {
+        String query = "select [a].[jcr:path], [b].[jcr:path] " +
+                "from [nt:base] as [a] " +
+                "inner join [nt:base] as [b] on isdescendantnode([b], [a]) " +
+                "where [a].[type] = 'folder' and [b].[p] is not null";
+        List<String> nestedLoop = executeQuery(query, SQL2);
+        assertEquals(50, nestedLoop.size());
+        assertFalse(explain(query).contains("join */"));
+
+        settings.setHashJoin(true);
+        assertTrue(explain(query).contains("/* sorted join */"));
+        assertEquals(nestedLoop, executeQuery(query, SQL2));
+    }
+
+    @Test
+    public void ancestorJoin() {
+        String query = "select [a].[jcr:path], [b].[jcr:path] " +
+                "from [nt:base] as [b] " +
+                "inner join [nt:base] as [a] on isdescendantnode([b], [a]) " +
+                "where [a].[type] = 'folder' and [b].[p] = 'z'";
+        List<String> nestedLoop = executeQuery(query, SQL2);
+        assertEquals(3, nestedLoop.size());
+
+        settings.setHashJoin(true);
+        assertTrue(explain(query).contains("/* hash join */"));
+        assertEquals(nestedLoop, executeQuery(query, SQL2));
+    }
+
+    @Test
+    public void equiJoin() {
+        String query = "select [a].[jcr:path], [b].[jcr:path] " +
+                "from [nt:base] as [a] " +
+                "inner join [nt:base] as [b] on [a].[id] = [b].[ref] " +
+                "where [a].[type] = 'folder' and [b].[kind] = 'ref'";
+        List<String> nestedLoop = executeQuery(query, SQL2);
+        assertEquals(20, nestedLoop.size());
+
+        settings.setHashJoin(true);
+        assertTrue(explain(query).contains("/* hash join */"));
+        assertEquals(nestedLoop, executeQuery(query, SQL2));
+    }
+
+    @Test
+    public void referenceJoin() throws Exception {
+        // otherwise, [a] is read with the uuid index, once per row of [b]
+        root.getTree("/oak:index/uuid").remove();
+        Tree refs = root.getTree("/").addChild("uuidRefs");
+        for (int i = 0; i < 10; i++) {
+            String uuid = UUID.nameUUIDFromBytes(("f" + i).getBytes(StandardCharsets.UTF_8)).toString();
+            root.getTree("/test/f" + i).setProperty("jcr:uuid", uuid);
+            if (i < 5) {
+                Tree r = refs.addChild("u" + i);
+                r.setProperty("kind", "uuidRef");
+                r.setProperty("ref", uuid, Type.REFERENCE);
+            }
+        }
+        root.commit();
+        // the string values of the left hand side are looked up in the
+        // reference values of the right hand side
+        String query = "select [a].[jcr:path], [b].[jcr:path] " +
+                "from [nt:base] as [a] " +
+                "inner join [nt:base] as [b] on [a].[jcr:uuid] = [b].[ref] " +
+                "where [a].[type] = 'folder' and [b].[kind] = 'uuidRef'";
+        List<String> nestedLoop = executeQuery(query, SQL2);
+        assertEquals(5, nestedLoop.size());
+
+        settings.setHashJoin(true);
+        assertTrue(explain(query).contains("/* hash join */"));
+        indexQueries = 0;
+        assertEquals(nestedLoop, executeQuery(query, SQL2));
+        // once for each side, and not once per row of the left hand side
+        assertEquals(2, indexQueries);
+    }
+
+    @Test
+    public void tooManyRows() {
+        String query = "select [a].[jcr:path], [b].[jcr:path] " +
+                "from [nt:base] as [a] " +
+                "inner join [nt:base] as [b] on isdescendantnode([b], [a]) " +
+                "where [a].[type] = 'folder' and [b].[p] is not null";
+        settings.setHashJoin(true);
+        settings.setLimitInMemory(10);
+        assertFalse(explain(query).contains("join */"));
+        assertEquals(50, executeQuery(query, SQL2).size());
+    }
+
+    private String explain(String query) {
+        return executeQuery("explain " + query, SQL2).get(0);
+    }
+
+    /**
+     * An index that counts how often it is queried.
+     */
+    private class CountingIndex implements QueryIndex {
+
+        private final QueryIndex index;
+
+        CountingIndex(QueryIndex index) {
+            this.index = index;
+        }
+
+        @Override
+        public double getMinimumCost() {
+            return index.getMinimumCost();
+        }
+
+        @Override
+        public double getCost(Filter filter, NodeState rootState) {
+            return index.getCost(filter, rootState);
+        }
+
+        @Override
+        public Cursor query(Filter filter, NodeState rootState) {
+            indexQueries++;
+            return index.query(filter, rootState);
+        }
+
+        @Override
+        public String getPlan(Filter filter, NodeState rootState) {
+            return index.getPlan(filter, rootState);
+        }
+
+        @Override
+        public String getIndexName() {
+            return index.getIndexName();
+        }
+
+    }
+}
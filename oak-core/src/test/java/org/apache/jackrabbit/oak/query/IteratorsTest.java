@@ -21,21 +21,32 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import org.apache.jackrabbit.guava.common.collect.Lists;
+import org.apache.jackrabbit.oak.query.stats.QueryStatsData;
 
 /**
  * Tests the filtering iterators.
  */
 public class IteratorsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
     
     private QueryEngineSettings settings = new QueryEngineSettings();
     
@@ -194,6 +205,116 @@ public class IteratorsTest {
 
 }
 
+    @Test
+    public void sortTopKIsStable() {
+        // compare by the first digit only
+        Comparator<String> comp = Comparator.comparing(x -> x.charAt(0));
+        assertEquals("1a, 1b, 1c", toString(FilterIterators.newSort(
+                it("2a", "1a", "2b", "1b", "3a", "1c", "1d"), comp, 3, settings)));
+        assertEquals("1a, 1b, 1c, 1d, 2a", toString(FilterIterators.newSort(
+                it("2a", "1a", "2b", "1b", "3a", "1c", "1d"), comp, 5, settings)));
+    }
+
+    @Test
+    public void spillToDisk() {
+        QueryEngineSettings s = new QueryEngineSettings();
+        s.setLimitInMemory(100);
+        QueryStatsData data = new QueryStatsData("test", "test");
+        QueryStatsData.QueryExecutionStats stats = data.new QueryExecutionStats();
+
+        Random r = new Random(1);
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 1050; i++) {
+            list.add(r.nextInt(500));
+        }
+        List<Integer> expected = new ArrayList<>(list);
+        Collections.sort(expected);
+
+        // without codec, the limit applies
+        try {
+            toString(FilterIterators.newCombinedFilter(
+                    list.iterator(), false, Long.MAX_VALUE, 0, INT_COMP, s));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        List<Integer> result = Lists.newArrayList(FilterIterators.newCombinedFilter(
+                list.iterator(), false, Long.MAX_VALUE, 0, INT_COMP, s, INT_CODEC, stats));
+        assertEquals(expected, result);
+        assertEquals(100, data.getMaxRowsInMemory());
+        assertEquals(1000, data.getTotalRowsSpilled());
+        assertEquals(10, data.getTotalSpillFiles());
+
+        // offset and limit larger than what fits in memory
+        result = Lists.newArrayList(FilterIterators.newCombinedFilter(
+                list.iterator(), false, 200, 20, INT_COMP, s, INT_CODEC, stats));
+        assertEquals(expected.subList(20, 220), result);
+
+        // distinct
+        List<Integer> distinct = new ArrayList<>(new TreeSet<>(list));
+        result = Lists.newArrayList(FilterIterators.newCombinedFilter(
+                list.iterator(), true, Long.MAX_VALUE, 0, INT_COMP, s, INT_CODEC, stats));
+        assertEquals(distinct, result);
+    }
+
+    @Test
+    public void abandonSpilledSort() throws Exception {
+        QueryEngineSettings s = new QueryEngineSettings();
+        s.setLimitInMemory(100);
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 1050; i++) {
+            list.add(1050 - i);
+        }
+        File directory = folder.newFolder();
+        Iterator<Integer> it = new FilterIterators.SortIterator<Integer>(list.iterator(), INT_COMP,
+                Integer.MAX_VALUE, s, false, INT_CODEC, null, directory);
+        for (int i = 1; i <= 500; i++) {
+            assertEquals(i, it.next().intValue());
+        }
+        // the query is not read to the end
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void topKDistinct() {
+        QueryEngineSettings s = new QueryEngineSettings();
+        s.setLimitInMemory(100);
+        QueryStatsData data = new QueryStatsData("test", "test");
+        QueryStatsData.QueryExecutionStats stats = data.new QueryExecutionStats();
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            list.add(i % 50);
+        }
+        // the limit is smaller than the in-memory limit: no spilling
+        List<Integer> result = Lists.newArrayList(FilterIterators.newCombinedFilter(
+                list.iterator(), true, 10, 5, INT_COMP, s, INT_CODEC, stats));
+        assertEquals(Lists.newArrayList(5, 6, 7, 8, 9, 10, 11, 12, 13, 14), result);
+        assertEquals(15, data.getMaxRowsInMemory());
+        assertEquals(0, data.getTotalRowsSpilled());
+    }
+
+    private static final FilterIterators.EntryCodec<Integer> INT_CODEC =
+            new FilterIterators.EntryCodec<Integer>() {
+
+        @Override
+        public boolean canEncode(@NotNull Integer entry) {
+            return true;
+        }
+
+        @NotNull
+        @Override
+        public String encode(@NotNull Integer entry) {
+            return entry.toString();
+        }
+
+        @NotNull
+        @Override
+        public Integer decode(@NotNull String line) {
+            return Integer.valueOf(line);
+        }
+    };
+
     private static <K> Iterator<K> it(K... x) {
         return Collections.unmodifiableCollection(Lists.newArrayList(x)).iterator();
     }
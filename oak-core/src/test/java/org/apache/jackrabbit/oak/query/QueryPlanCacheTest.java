@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.oak.InitialContentHelper;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexProvider;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.query.stats.QueryStatsMBean;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.whiteboard.DefaultWhiteboard;
+import org.apache.jackrabbit.oak.spi.whiteboard.Whiteboard;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueryPlanCacheTest extends AbstractQueryTest {
+
+    private final QueryPlanCache cache = new QueryPlanCache(100, TimeUnit.MINUTES.toMillis(1));
+
+    private final QueryEngineSettings settings = new QueryEngineSettings() {
+        @Override
+        public QueryPlanCache getQueryPlanCache() {
+            return cache;
+        }
+    };
+
+    private final UnusedIndex unused = new UnusedIndex();
+
+    @Override
+    protected ContentRepository createRepository() {
+        // Oak only copies some values of settings passed with with(settings),
+        // but uses the settings registered in the whiteboard as they are
+        Whiteboard whiteboard = new DefaultWhiteboard();
+        whiteboard.register(QueryEngineSettings.class, settings, Collections.emptyMap());
+        return new Oak(new MemoryNodeStore(InitialContentHelper.INITIAL_CONTENT))
+                .with(whiteboard)
+                .with(new OpenSecurityProvider())
+                .with(new PropertyIndexProvider())
+                .with(new PropertyIndexEditorProvider())
+                .with(new QueryIndexProvider() {
+                    @Override
+                    public List<? extends QueryIndex> getQueryIndexes(NodeState nodeState) {
+                        return Collections.singletonList(unused);
+                    }
+                })
+                .createContentRepository();
+    }
+
+    @Before
+    public void createContent() throws Exception {
+        createIndexDefinition(root.getTree("/oak:index"), "p", false, new String[] {"p"});
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < 10; i++) {
+            test.addChild("n" + i).setProperty("p", i % 2 == 0 ? "x" : "y");
+        }
+        root.commit();
+        cache.resetStats();
+    }
+
+    @Test
+    public void indexChoice() {
+        String query = "select [jcr:path] from [nt:base] where [p] = 'x'";
+        List<String> result = executeQuery(query, SQL2);
+        assertEquals(5, result.size());
+        int calls = unused.calls;
+        assertTrue(calls > 0);
+        assertEquals(0, cache.getHitCount());
+
+        // only the cached index is asked for a plan
+        assertEquals(result, executeQuery(query, SQL2));
+        assertEquals(calls, unused.calls);
+        assertEquals(1, cache.getHitCount());
+
+        // another statement is planned as usual
+        assertEquals(5, executeQuery(query.replace("'x'", "'y'"), SQL2).size());
+        assertTrue(unused.calls > calls);
+        calls = unused.calls;
+
+        cache.invalidate();
+        assertEquals(result, executeQuery(query, SQL2));
+        assertTrue(unused.calls > calls);
+    }
+
+    @Test
+    public void traversalNotCached() {
+        String query = "select [jcr:path] from [nt:base] where [q] = 'x'";
+        executeQuery(query, SQL2);
+        int calls = unused.calls;
+        executeQuery(query, SQL2);
+        assertTrue(unused.calls > calls);
+    }
+
+    @Test
+    public void xpath() {
+        String query = "/jcr:root/test/*[@p = 'x']";
+        List<String> result = executeQuery(query, XPATH);
+        assertEquals(5, result.size());
+        long misses = cache.getMissCount();
+        assertEquals(0, cache.getHitCount());
+
+        // the converted statement and the index choice
+        assertEquals(result, executeQuery(query, XPATH));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(misses, cache.getMissCount());
+
+        QueryStatsMBean stats = settings.getQueryStats();
+        assertEquals(2, stats.getPlanCacheHitCount());
+        assertEquals(misses, stats.getPlanCacheMissCount());
+        assertEquals(2.0 / (2 + misses), stats.getPlanCacheHitRatio(), 0.0001);
+        stats.invalidatePlanCache();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsed() {
+        QueryPlanCache c = new QueryPlanCache(2, TimeUnit.MINUTES.toMillis(1));
+        c.putConvertedStatement("a", "1");
+        c.putConvertedStatement("b", "2");
+        assertEquals("1", c.getConvertedStatement("a"));
+        c.putConvertedStatement("c", "3");
+        assertEquals(2, c.size());
+        assertNull(c.getConvertedStatement("b"));
+        assertEquals("1", c.getConvertedStatement("a"));
+        assertEquals("3", c.getConvertedStatement("c"));
+        assertEquals(3, c.getHitCount());
+        assertEquals(1, c.getMissCount());
+    }
+
+    @Test
+    public void expiry() {
+        QueryPlanCache c = new QueryPlanCache(10, -1);
+        c.putConvertedStatement("a", "1");
+        assertNull(c.getConvertedStatement("a"));
+        assertEquals(0, c.size());
+    }
+
+    @Test
+    public void disabled() {
+        QueryPlanCache c = new QueryPlanCache(0, TimeUnit.MINUTES.toMillis(1));
+        c.putConvertedStatement("a", "1");
+        assertNull(c.getConvertedStatement("a"));
+        assertEquals(0, c.size());
+        assertEquals(0, c.getMissCount());
+    }
+
+    /**
+     * An index that can not be used for any query, and counts how often
+     * it is asked.
+     */
+    private static class UnusedIndex implements QueryIndex {
+
+        int calls;
+
+        @Override
+        public double getMinimumCost() {
+            return 0;
+        }
+
+        @Override
+        public double getCost(Filter filter, NodeState rootState) {
+            calls++;
+            return Double.POSITIVE_INFINITY;
+        }
+
+        @Override
+        public Cursor query(Filter filter, NodeState rootState) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getPlan(Filter filter, NodeState rootState) {
+            return "unused";
+        }
+
+        @Override
+        public String getIndexName() {
+            return "unused";
+        }
+
+    }
+}
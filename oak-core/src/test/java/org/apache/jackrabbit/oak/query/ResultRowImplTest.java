@@ -19,14 +19,19 @@ package org.apache.jackrabbit.oak.query;
 
 import org.apache.jackrabbit.guava.common.collect.Maps;
 import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Tree;
 import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Map;
 
 import static org.apache.jackrabbit.oak.plugins.memory.PropertyValues.newString;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -53,4 +58,39 @@ public class ResultRowImplTest {
         assertEquals("origVal", mappedVals[0].getValue(Type.STRING));
         assertEquals("val1", mappedVals[1].getValue(Type.STRING));
     }
+
+    @Test
+    public void codec() {
+        Query query = mock(Query.class);
+        Tree tree = mock(Tree.class);
+        when(tree.getPath()).thenReturn("/content/a\nb");
+        when(query.getTree("/content/a\nb")).thenReturn(tree);
+        boolean[] distinct = new boolean[] {true, false, true};
+
+        PropertyValue[] values = new PropertyValue[] {
+                newString("x\ny"),
+                null,
+                PropertyValues.newName(Arrays.asList("a", "b"))};
+        PropertyValue[] orderValues = new PropertyValue[] {
+                PropertyValues.newDouble(1.5),
+                PropertyValues.newDate("2024-01-02T03:04:05.678Z")};
+        ResultRowImpl row = new ResultRowImpl(query, new Tree[] {tree, null}, values, distinct, orderValues);
+
+        FilterIterators.EntryCodec<ResultRowImpl> codec = ResultRowImpl.getCodec(query, distinct);
+        assertTrue(codec.canEncode(row));
+        String line = codec.encode(row);
+        assertFalse(line.contains("\n"));
+        ResultRowImpl row2 = codec.decode(line);
+
+        assertEquals(row, row2);
+        assertEquals(row.hashCode(), row2.hashCode());
+        assertArrayEquals(values, row2.getValues());
+        assertArrayEquals(orderValues, row2.getOrderValues());
+        assertEquals(Type.NAMES, row2.getValues()[2].getType());
+        assertEquals(Type.DATE, row2.getOrderValues()[1].getType());
+
+        ResultRowImpl binary = new ResultRowImpl(query, new Tree[] {tree}, 
+                new PropertyValue[] {PropertyValues.newBinary(new byte[1])}, null, null);
+        assertFalse(codec.canEncode(binary));
+    }
 }
@@ -231,6 +231,25 @@ public class UnionQueryTest extends AbstractQueryTest {
         }
     }
 
+    @Test
+    public void testConcurrentBranches() throws Exception {
+        String left = "SELECT [jcr:path] FROM [nt:base] AS a WHERE ISDESCENDANTNODE(a, '/UnionQueryTest2')";
+        String right = "SELECT [jcr:path] FROM [nt:base] AS a WHERE ISDESCENDANTNODE(a, '/UnionQueryTest/a')";
+        String[] unions = {
+                String.format("%s UNION %s", left, right),
+                String.format("%s UNION %s ORDER BY [jcr:path]", left, right),
+                String.format("%s UNION %s ORDER BY [jcr:path] DESC OPTION(LIMIT 2, OFFSET 1)", left, right)
+        };
+        for (String union : unions) {
+            qeSettings.setUnionThreads(0);
+            List<String> expected = executeQuery(union, QueryEngineImpl.SQL2);
+            qeSettings.setUnionThreads(2);
+            assertNotNull(qeSettings.getUnionExecutor());
+            assertEquals(expected, executeQuery(union, QueryEngineImpl.SQL2));
+        }
+        qeSettings.setUnionThreads(0);
+    }
+
     @Test
     public void testOrderLimitOption() throws Exception {
         String left = "SELECT [jcr:path] FROM [nt:base] AS a WHERE ISDESCENDANTNODE(a, '/UnionQueryTest')";
@@ -61,6 +61,10 @@ class CheckCommand implements Command {
             .withValuesSeparatedBy(',')
             .defaultsTo("all");
         OptionSpec<?> ioStatistics = parser.accepts("io-stats", "Print I/O statistics (only for oak-segment-tar)");
+        OptionSpec<Integer> threads = parser.accepts("threads", "number of threads traversing each checked tree (default: 1)")
+            .withRequiredArg()
+            .ofType(Integer.class)
+            .defaultsTo(1);
         OptionSpec<File> dir = parser.nonOptions()
             .describedAs("path")
             .ofType(File.class);
@@ -83,6 +87,7 @@ class CheckCommand implements Command {
             .withCheckpoints(toCheckpointsSet(options, head, cp))
             .withFilterPaths(toSet(options, filter))
             .withIOStatistics(options.has(ioStatistics))
+            .withConcurrency(threads.value(options))
             .withOutWriter(new PrintWriter(System.out, true))
             .withErrWriter(new PrintWriter(System.err, true));
 
@@ -259,7 +259,7 @@ public class SegmentStoreMigrator implements Closeable  {
         void write(SegmentArchiveWriter writer) throws IOException {
             final byte[] array = data.array();
             final int offset = 0;
-            writer.writeSegment(entry.getMsb(), entry.getLsb(), array, offset, entry.getLength(), entry.getGeneration(),
+            writer.writeSegment(entry.getMsb(), entry.getLsb(), array, offset, data.remaining(), entry.getGeneration(),
                     entry.getFullGeneration(), entry.isCompacted());
         }
 
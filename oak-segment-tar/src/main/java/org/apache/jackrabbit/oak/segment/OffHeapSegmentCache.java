@@ -0,0 +1,479 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment;
+
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkNotNull;
+import static org.apache.jackrabbit.oak.segment.Segment.MAX_SEGMENT_SIZE;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiFunction;
+
+import org.apache.jackrabbit.oak.cache.AbstractCacheStats;
+import org.apache.jackrabbit.oak.commons.Buffer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link SegmentCache} keeping the bytes of cached {@link
+ * SegmentId#isDataSegmentId() data} segments in off-heap slabs.
+ * <p>
+ * The cache memory is divided in a fixed number of direct slabs, which are
+ * filled sequentially. When no slab has room for a new segment, the oldest
+ * slab is evicted as a whole and replaced by a newly allocated one. Slab memory
+ * is never overwritten, so {@link Segment} instances created over an evicted
+ * slab stay valid until they are garbage collected. The segments of an evicted
+ * slab are no longer memoised in their ids, so that the slab can be freed
+ * once no caller refers to them any more.
+ * <p>
+ * Cached segments are located through an open-addressing index keyed by the
+ * most and least significant bits of their id. Lookups never lock: the index
+ * is only modified by writers holding the monitor of this instance and
+ * published through an {@link AtomicReferenceArray}.
+ * <p>
+ * Only a bounded number of {@code Segment} views are memoised in their {@link
+ * SegmentId} (see {@code SegmentId#loaded}). Every time a view is pushed out
+ * of this bounded set, its memoised segment is discarded and the next access
+ * creates a new view over the off-heap bytes.
+ */
+class OffHeapSegmentCache extends SegmentCache {
+
+    /**
+     * Default number of segment views memoised in their segment ids.
+     */
+    static final int DEFAULT_VIEW_COUNT = 1024;
+
+    private static final String NAME = "Segment Cache (off-heap)";
+
+    /**
+     * Maximum size of a single slab.
+     */
+    private static final int MAX_SLAB_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Minimum number of slabs, so that evicting a slab never evicts more
+     * than a fraction of the cache.
+     */
+    private static final int MIN_SLAB_COUNT = 4;
+
+    private static final int MIN_INDEX_CAPACITY = 64;
+
+    /**
+     * Marker for removed entries in the index. Its id can never match a
+     * data segment.
+     */
+    private static final Entry TOMBSTONE = new Entry(null, 0, 0, null, 0, 0);
+
+    @NotNull
+    private final BiFunction<SegmentId, Buffer, Segment> segmentFactory;
+
+    @NotNull
+    private final Slab[] slabs;
+
+    private final int slabSize;
+
+    /**
+     * The ids whose segment views are currently memoised. Displaced ids are
+     * unloaded.
+     */
+    @NotNull
+    private final AtomicReferenceArray<SegmentId> views;
+
+    @NotNull
+    private final AtomicLong viewCursor = new AtomicLong();
+
+    @NotNull
+    private final Stats stats;
+
+    /**
+     * Open-addressing index over all cached segments. Written only while
+     * holding the monitor of this instance, read without locking.
+     */
+    @NotNull
+    private volatile AtomicReferenceArray<Entry> index = new AtomicReferenceArray<>(MIN_INDEX_CAPACITY);
+
+    /**
+     * Number of live entries in {@link #index}.
+     */
+    private volatile long size;
+
+    /**
+     * Number of {@link #TOMBSTONE} entries in {@link #index}.
+     */
+    private int tombstones;
+
+    /**
+     * Index of the slab currently being filled.
+     */
+    private int currentSlab;
+
+    /**
+     * Create a new off-heap cache of the given size.
+     *
+     * @param cacheSizeMB    size of the cache in megabytes.
+     * @param viewCount      maximum number of segment views memoised in their ids.
+     * @param segmentFactory factory for {@code Segment} instances over the
+     *                       off-heap bytes of a cached segment.
+     */
+    OffHeapSegmentCache(
+            long cacheSizeMB,
+            int viewCount,
+            @NotNull BiFunction<SegmentId, Buffer, Segment> segmentFactory
+    ) {
+        checkArgument(cacheSizeMB > 0, "cacheSizeMB must be strictly positive");
+        checkArgument(viewCount > 0, "viewCount must be strictly positive");
+        long maximumWeight = cacheSizeMB * 1024 * 1024;
+        this.segmentFactory = checkNotNull(segmentFactory);
+        this.slabSize = (int) Math.max(MAX_SEGMENT_SIZE, Math.min(MAX_SLAB_SIZE, maximumWeight / MIN_SLAB_COUNT));
+        this.slabs = new Slab[(int) Math.max(2, maximumWeight / slabSize)];
+        for (int i = 0; i < slabs.length; i++) {
+            slabs[i] = new Slab();
+        }
+        this.views = new AtomicReferenceArray<>(Integer.highestOneBit(Math.max(1, viewCount - 1)) << 1);
+        this.stats = new Stats(NAME, (long) slabs.length * slabSize, () -> size);
+    }
+
+    @Override
+    @NotNull
+    public Segment getSegment(@NotNull SegmentId id, @NotNull Callable<Segment> loader) throws ExecutionException {
+        if (!id.isDataSegmentId()) {
+            try {
+                return loader.call();
+            } catch (Exception e) {
+                throw new ExecutionException(e);
+            }
+        }
+
+        Entry entry = lookup(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (entry != null) {
+            stats.hitCount.incrementAndGet();
+            return memoise(entry);
+        }
+
+        Segment segment;
+        try {
+            long t0 = System.nanoTime();
+            segment = loader.call();
+            stats.loadSuccessCount.incrementAndGet();
+            stats.loadTime.addAndGet(System.nanoTime() - t0);
+            stats.missCount.incrementAndGet();
+        } catch (Exception e) {
+            stats.loadExceptionCount.incrementAndGet();
+            throw new ExecutionException(e);
+        }
+
+        return memoise(insert(segment));
+    }
+
+    @Override
+    public void putSegment(@NotNull Segment segment) {
+        SegmentId id = segment.getSegmentId();
+        if (id.isDataSegmentId()) {
+            memoise(insert(segment));
+        }
+    }
+
+    @Override
+    public boolean containsSegment(@NotNull SegmentId id) {
+        return lookup(id.getMostSignificantBits(), id.getLeastSignificantBits()) != null;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (int i = 0; i < views.length(); i++) {
+            SegmentId id = views.getAndSet(i, null);
+            if (id != null) {
+                id.unloaded();
+            }
+        }
+        for (Slab slab : slabs) {
+            for (Entry entry : slab.entries) {
+                entry.id.unloaded();
+            }
+            slab.release();
+        }
+        stats.evictionCount.addAndGet(size);
+        stats.currentWeight.set(0);
+        index = new AtomicReferenceArray<>(MIN_INDEX_CAPACITY);
+        size = 0;
+        tombstones = 0;
+        currentSlab = 0;
+    }
+
+    @Override
+    @NotNull
+    public AbstractCacheStats getCacheStats() {
+        return stats;
+    }
+
+    @Override
+    public void recordHit() {
+        stats.hitCount.incrementAndGet();
+    }
+
+    /**
+     * Create a segment view over the bytes of {@code entry} and memoise it
+     * in its id.
+     */
+    @NotNull
+    private Segment memoise(@NotNull Entry entry) {
+        SegmentId id = entry.id;
+        Segment segment = segmentFactory.apply(id, entry.slice());
+        id.loaded(segment);
+        if (lookup(entry.msb, entry.lsb) != entry) {
+            // the slab was evicted concurrently: don't keep it reachable
+            id.unloaded();
+        }
+        int slot = (int) (viewCursor.getAndIncrement() & (views.length() - 1));
+        SegmentId displaced = views.getAndSet(slot, id);
+        if (displaced != null && displaced != id) {
+            displaced.unloaded();
+        }
+        return segment;
+    }
+
+    // --------------------------------------------------------< index >--
+
+    private static int hash(long msb, long lsb) {
+        long h = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Nullable
+    private Entry lookup(long msb, long lsb) {
+        AtomicReferenceArray<Entry> index = this.index;
+        int mask = index.length() - 1;
+        int slot = hash(msb, lsb) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            Entry entry = index.get(slot);
+            if (entry == null) {
+                return null;
+            }
+            if (entry != TOMBSTONE && entry.msb == msb && entry.lsb == lsb) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Copy the bytes of {@code segment} to a slab and add it to the index,
+     * unless it is already cached.
+     *
+     * @return the index entry for {@code segment}
+     */
+    @NotNull
+    private synchronized Entry insert(@NotNull Segment segment) {
+        SegmentId id = segment.getSegmentId();
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+
+        Entry entry = lookup(msb, lsb);
+        if (entry != null) {
+            return entry;
+        }
+
+        int length = segment.size();
+        Slab slab = reserve(length);
+        Buffer buffer = slab.buffer();
+        int offset = slab.position;
+        try {
+            segment.writeTo(new BufferOutputStream(buffer.duplicate().position(offset)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to copy segment " + id, e);
+        }
+        slab.position += length;
+
+        entry = new Entry(id, msb, lsb, buffer, offset, length);
+        slab.entries.add(entry);
+        stats.currentWeight.addAndGet(length);
+
+        if ((size + tombstones + 1) * 2 > index.length()) {
+            rehash();
+        }
+        AtomicReferenceArray<Entry> index = this.index;
+        int mask = index.length() - 1;
+        int slot = hash(msb, lsb) & mask;
+        while (true) {
+            Entry existing = index.get(slot);
+            if (existing == null) {
+                break;
+            }
+            if (existing == TOMBSTONE) {
+                tombstones--;
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        index.set(slot, entry);
+        size++;
+        return entry;
+    }
+
+    /**
+     * Find a slab with room for {@code length} bytes, evicting the oldest
+     * slab if necessary.
+     */
+    @NotNull
+    private Slab reserve(int length) {
+        checkArgument(length <= slabSize, "Segment too large for the cache: %s", length);
+        Slab slab = slabs[currentSlab];
+        if (slab.position + length > slabSize) {
+            currentSlab = (currentSlab + 1) % slabs.length;
+            slab = slabs[currentSlab];
+            evict(slab);
+        }
+        return slab;
+    }
+
+    private void evict(@NotNull Slab slab) {
+        AtomicReferenceArray<Entry> index = this.index;
+        int mask = index.length() - 1;
+        for (Entry entry : slab.entries) {
+            int slot = hash(entry.msb, entry.lsb) & mask;
+            while (index.get(slot) != entry) {
+                slot = (slot + 1) & mask;
+            }
+            index.set(slot, TOMBSTONE);
+            // memoised views would keep the slab reachable
+            entry.id.unloaded();
+            tombstones++;
+            size--;
+            stats.currentWeight.addAndGet(-entry.length);
+        }
+        stats.evictionCount.addAndGet(slab.entries.size());
+        slab.release();
+    }
+
+    /**
+     * Rebuild the index without tombstones, growing it if necessary. Readers
+     * still probing the old index find the same entries there.
+     */
+    private void rehash() {
+        int capacity = MIN_INDEX_CAPACITY;
+        while (capacity < (size + 1) * 4) {
+            capacity <<= 1;
+        }
+        AtomicReferenceArray<Entry> oldIndex = this.index;
+        AtomicReferenceArray<Entry> newIndex = new AtomicReferenceArray<>(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldIndex.length(); i++) {
+            Entry entry = oldIndex.get(i);
+            if (entry != null && entry != TOMBSTONE) {
+                int slot = hash(entry.msb, entry.lsb) & mask;
+                while (newIndex.get(slot) != null) {
+                    slot = (slot + 1) & mask;
+                }
+                newIndex.set(slot, entry);
+            }
+        }
+        tombstones = 0;
+        index = newIndex;
+    }
+
+    /**
+     * Location of a cached segment.
+     */
+    private static final class Entry {
+        final SegmentId id;
+        final long msb;
+        final long lsb;
+        final Buffer buffer;
+        final int offset;
+        final int length;
+
+        Entry(SegmentId id, long msb, long lsb, Buffer buffer, int offset, int length) {
+            this.id = id;
+            this.msb = msb;
+            this.lsb = lsb;
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * @return the bytes of the cached segment
+         */
+        @NotNull
+        Buffer slice() {
+            Buffer slice = buffer.duplicate();
+            slice.position(offset);
+            slice.limit(offset + length);
+            return slice.slice();
+        }
+    }
+
+    /**
+     * A region of direct memory filled sequentially with segments. Only
+     * accessed while holding the monitor of the enclosing cache.
+     */
+    private final class Slab {
+        private Buffer buffer;
+        int position;
+        final List<Entry> entries = new ArrayList<>();
+
+        /**
+         * The direct memory of this slab, allocated on first use.
+         */
+        @NotNull
+        Buffer buffer() {
+            if (buffer == null) {
+                buffer = Buffer.allocateDirect(slabSize);
+            }
+            return buffer;
+        }
+
+        /**
+         * Drop the memory of this slab. It is never reused as segment views
+         * may still refer to it.
+         */
+        void release() {
+            buffer = null;
+            position = 0;
+            entries.clear();
+        }
+    }
+
+    private static final class BufferOutputStream extends OutputStream {
+        private final Buffer buffer;
+
+        BufferOutputStream(Buffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) {
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte @NotNull [] b, int off, int len) {
+            buffer.put(b, off, len);
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 import org.apache.jackrabbit.guava.common.base.Supplier;
 import org.apache.jackrabbit.guava.common.cache.CacheBuilder;
@@ -58,6 +59,13 @@ public abstract class RecordCache<K> implements Cache<K, RecordId> {
     @NotNull
     public abstract CacheStats getStats();
 
+    /**
+     * Pass every mapping currently held by this cache to {@code consumer}.
+     * This implementation does nothing.
+     * @param consumer  consumer of the mappings
+     */
+    public void forEach(@NotNull BiConsumer<? super K, ? super RecordId> consumer) { }
+
     /**
      * Factory method for creating {@code RecordCache} instances. The returned
      * instances are all thread safe. They implement a simple LRU behaviour where
@@ -188,6 +196,11 @@ public abstract class RecordCache<K> implements Cache<K, RecordId> {
             return cache.getIfPresent(key);
         }
 
+        @Override
+        public void forEach(@NotNull BiConsumer<? super K, ? super RecordId> consumer) {
+            cache.asMap().forEach(consumer);
+        }
+
         @Override
         public long size() {
             return cache.size();
@@ -26,6 +26,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
 import java.util.function.Supplier;
 
 import org.apache.jackrabbit.guava.common.cache.Cache;
@@ -33,6 +34,7 @@ import org.apache.jackrabbit.guava.common.cache.CacheBuilder;
 import org.apache.jackrabbit.guava.common.cache.CacheStats;
 import org.apache.jackrabbit.guava.common.cache.RemovalNotification;
 import org.apache.jackrabbit.oak.cache.AbstractCacheStats;
+import org.apache.jackrabbit.oak.commons.Buffer;
 import org.apache.jackrabbit.oak.segment.CacheWeights.SegmentCacheWeigher;
 import org.jetbrains.annotations.NotNull;
 
@@ -70,6 +72,27 @@ public abstract class SegmentCache {
         }
     }
 
+    /**
+     * Create a new segment cache of the given size keeping the bytes of the
+     * cached segments off-heap. Returns an always empty cache for {@code
+     * cacheSizeMB <= 0}.
+     *
+     * @param cacheSizeMB    size of the cache in megabytes.
+     * @param segmentFactory factory for {@code Segment} instances reading from
+     *                       the off-heap copy of a cached segment.
+     */
+    @NotNull
+    public static SegmentCache newOffHeapSegmentCache(
+            long cacheSizeMB,
+            @NotNull BiFunction<SegmentId, Buffer, Segment> segmentFactory
+    ) {
+        if (cacheSizeMB > 0) {
+            return new OffHeapSegmentCache(cacheSizeMB, OffHeapSegmentCache.DEFAULT_VIEW_COUNT, segmentFactory);
+        } else {
+            return new EmptyCache();
+        }
+    }
+
     /**
      * Retrieve an segment from the cache or load it and cache it if not yet in
      * the cache.
@@ -91,6 +114,15 @@ public abstract class SegmentCache {
      */
     public abstract void putSegment(@NotNull Segment segment);
 
+    /**
+     * Determine whether the segment with the given id is currently cached.
+     *
+     * @param id the id of the segment
+     * @return {@code true} iff the segment identified by {@code id} is in
+     * this cache.
+     */
+    public abstract boolean containsSegment(@NotNull SegmentId id);
+
     /**
      * Clear all segment from the cache
      */
@@ -198,6 +230,11 @@ public abstract class SegmentCache {
             }
         }
 
+        @Override
+        public boolean containsSegment(@NotNull SegmentId id) {
+            return cache.getIfPresent(id) != null;
+        }
+
         @Override
         public void clear() {
             cache.invalidateAll();
@@ -242,6 +279,11 @@ public abstract class SegmentCache {
             segment.getSegmentId().unloaded();
         }
 
+        @Override
+        public boolean containsSegment(@NotNull SegmentId id) {
+            return false;
+        }
+
         @Override
         public void clear() {}
 
@@ -262,7 +304,7 @@ public abstract class SegmentCache {
      * cache hits are taken by {@link SegmentId#getSegment()} and thus never
      * seen by the cache.
      */
-    private static class Stats extends AbstractCacheStats {
+    static class Stats extends AbstractCacheStats {
         private final long maximumWeight;
 
         @NotNull
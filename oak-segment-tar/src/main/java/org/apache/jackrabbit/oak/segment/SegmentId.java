@@ -181,6 +181,11 @@ public class SegmentId implements Comparable<SegmentId> {
         return gcInfo;
     }
 
+    /* For testing only */
+    boolean isLoaded() {
+        return segment != null;
+    }
+
     /**
      * Notify this id about the reclamation of its segment (e.g. by
      * the garbage collector).
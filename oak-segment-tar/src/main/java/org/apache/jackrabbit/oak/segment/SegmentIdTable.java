@@ -18,52 +18,50 @@
  */
 package org.apache.jackrabbit.oak.segment;
 
-import static org.apache.jackrabbit.guava.common.collect.Lists.newArrayList;
-import static org.apache.jackrabbit.guava.common.collect.Maps.newHashMapWithExpectedSize;
-import static java.util.Collections.nCopies;
-
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
 import org.jetbrains.annotations.NotNull;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Hash table of weak references to segment identifiers.
+ * <p>
+ * Lookups of already tracked identifiers do not lock. Only the creation of
+ * new identifiers and the reclamation of garbage collected ones synchronize on
+ * the monitor of this table. {@link SegmentTracker} stripes identifiers over
+ * several tables to reduce contention on that monitor.
  */
 public class SegmentIdTable {
 
+    private static final int INITIAL_SIZE = 1024;
+
     /**
-     * The list of weak references to segment identifiers that are currently
-     * being accessed. This represents a hash table that uses open addressing
-     * with linear probing. It is not a hash map, to speed up read access.
-     * <p>
-     * The size of the table is always a power of two, so that we can use
-     * bitwise "and" instead of modulo.
-     * <p>
-     * The table is indexed by the random identifier bits, which guarantees
-     * uniform distribution of entries.
-     * <p>
-     * Open addressing with linear probing is used. Each table entry is either
-     * null (when there are no matching identifiers), a weak references to the
-     * matching identifier, or a weak reference to another identifier.
-     * There are no tombstone entries as there is no explicit remove operation,
-     * but a referent can become null if the entry is garbage collected.
-     * <p>
-     * The array is not sorted (we could; lookup might be faster, but adding
-     * entries would be slower).
+     * The current table. It is replaced by a new instance whenever it is
+     * resized or cleared of garbage collected entries, but an instance is
+     * never shrunk nor cleared in place. Lookups that race with a rebuild
+     * still find every id that was present when they started.
      */
-    private final ArrayList<WeakReference<SegmentId>> references =
-            newArrayList(nCopies(1024, (WeakReference<SegmentId>) null));
+    private volatile Table table = new Table(INITIAL_SIZE);
 
-    private static final Logger LOG = LoggerFactory.getLogger(SegmentIdTable.class);
+    /**
+     * Queue of references whose segment id has been garbage collected.
+     */
+    private final ReferenceQueue<SegmentId> cleared = new ReferenceQueue<>();
 
+    /**
+     * The number of entries in {@link #table} whose segment id has been
+     * garbage collected. Guarded by the monitor of this instance.
+     */
+    private int clearedCount;
 
     /**
      * The refresh count (for diagnostics and testing).
@@ -71,9 +69,10 @@ public class SegmentIdTable {
     private int rebuildCount;
 
     /**
-     * The number of used entries (WeakReferences) in this table.
+     * The number of used entries in this table, including those whose
+     * segment id has been garbage collected and not yet reclaimed.
      */
-    private int entryCount;
+    private volatile int entryCount;
 
     /**
      * Get the segment id, and reference it in the weak references map. If the
@@ -87,122 +86,117 @@ public class SegmentIdTable {
      * @return the segment id
      */
     @NotNull
-    synchronized SegmentId newSegmentId(long msb, long lsb, SegmentIdFactory maker) {
-        int index = getIndex(lsb);
-        boolean shouldRefresh = false;
+    SegmentId newSegmentId(long msb, long lsb, SegmentIdFactory maker) {
+        SegmentId id = table.get(msb, lsb);
+        if (id != null) {
+            return id;
+        }
+        return putIfAbsent(msb, lsb, maker);
+    }
 
-        WeakReference<SegmentId> reference = references.get(index);
+    @NotNull
+    private synchronized SegmentId putIfAbsent(long msb, long lsb, SegmentIdFactory maker) {
+        reclaimCleared();
+        if (clearedCount > entryCount / 4) {
+            rebuild();
+        }
+
+        Table table = this.table;
+        int index = table.getIndex(lsb);
+        SegmentIdReference reference = table.references.get(index);
         while (reference != null) {
-            SegmentId id = reference.get();
-            if (id != null
-                    && id.getMostSignificantBits() == msb
-                    && id.getLeastSignificantBits() == lsb) {
+            if (reference.msb == msb && reference.lsb == lsb) {
+                SegmentId id = reference.get();
+                if (id != null) {
+                    return id;
+                }
+                // Re-use the entry of the garbage collected id
+                if (reference.counted) {
+                    clearedCount--;
+                }
+                id = maker.newSegmentId(msb, lsb);
+                table.references.set(index, new SegmentIdReference(id, cleared));
                 return id;
             }
-            // shouldRefresh if we have a garbage collected entry
-            shouldRefresh = shouldRefresh || id == null;
-            // open addressing / linear probing
-            index = (index + 1) % references.size();
-            reference = references.get(index);
+            index = (index + 1) & table.mask;
+            reference = table.references.get(index);
         }
 
         SegmentId id = maker.newSegmentId(msb, lsb);
-        references.set(index, new WeakReference<SegmentId>(id));
+        table.msbs[index] = msb;
+        table.lsbs[index] = lsb;
+        table.references.set(index, new SegmentIdReference(id, cleared));
         entryCount++;
-        if (entryCount > references.size() * 0.75) {
-            // more than 75% full
-            shouldRefresh = true;
-        }
-        if (shouldRefresh) {
-            refresh();
+        if (entryCount > table.size() * 0.75) {
+            rebuild();
         }
         return id;
     }
 
     /**
-     * Returns all segment identifiers that are currently referenced in memory.
-     *
-     * @param ids referenced segment identifiers
+     * Count the entries of the current table whose segment id has been
+     * garbage collected since the last call. References enqueued for an
+     * entry that has since been replaced or dropped are ignored.
      */
-    void collectReferencedIds(Collection<SegmentId> ids) {
-        ids.addAll(refresh());
-    }
-
-    private synchronized Collection<SegmentId> refresh() {
-        int size = references.size();
-        Map<SegmentId, WeakReference<SegmentId>> ids =
-                newHashMapWithExpectedSize(size);
-
-        boolean hashCollisions = false;
-        boolean emptyReferences = false;
-        for (int i = 0; i < size; i++) {
-            WeakReference<SegmentId> reference = references.get(i);
-            if (reference != null) {
-                SegmentId id = reference.get();
-                if (id != null) {
-                    ids.put(id, reference);
-                    hashCollisions = hashCollisions || (i != getIndex(id));
-                } else {
-                    references.set(i, null);
-                    entryCount--;
-                    emptyReferences = true;
-                }
+    private void reclaimCleared() {
+        Table table = this.table;
+        Reference<? extends SegmentId> reference = cleared.poll();
+        while (reference != null) {
+            SegmentIdReference r = (SegmentIdReference) reference;
+            if (!r.counted && table.contains(r)) {
+                r.counted = true;
+                clearedCount++;
             }
+            reference = cleared.poll();
         }
+    }
 
-        if (entryCount != ids.size()) {
-            // something is wrong, possibly a concurrency problem, a SegmentId
-            // hashcode or equals bug, or a problem with this hash table
-            // algorithm
-            LOG.warn("Unexpected entry count mismatch, expected {} got {}", entryCount, ids.size());
-            // we fix the count, because having a wrong entry count would be
-            // very problematic; even worse than having a concurrency problem
-            entryCount = ids.size();
+    /**
+     * Replace the current table with a new one containing only the entries
+     * whose segment id has not been garbage collected, growing it if
+     * necessary.
+     */
+    private void rebuild() {
+        Table oldTable = this.table;
+        List<SegmentIdReference> live = new ArrayList<>(entryCount);
+        for (int i = 0; i < oldTable.size(); i++) {
+            SegmentIdReference reference = oldTable.references.get(i);
+            if (reference != null && reference.get() != null) {
+                live.add(reference);
+            }
         }
 
-        while (2 * ids.size() > size) {
+        int size = oldTable.size();
+        while (2 * live.size() > size) {
             size *= 2;
         }
 
-        // we need to re-build the table if the new size is different,
-        // but also if we removed some of the entries (because an entry was
-        // garbage collected) and there is at least one entry at the "wrong"
-        // location (due to open addressing)
-        if ((hashCollisions && emptyReferences) || size != references.size()) {
-            rebuildCount++;
-            references.clear();
-            references.addAll(nCopies(size, (WeakReference<SegmentId>) null));
-
-            for (Map.Entry<SegmentId, WeakReference<SegmentId>> entry
-                    : ids.entrySet()) {
-                int index = getIndex(entry.getKey());
-                while (references.get(index) != null) {
-                    index = (index + 1) % size;
-                }
-                references.set(index, entry.getValue());
-            }
+        Table newTable = new Table(size);
+        for (SegmentIdReference reference : live) {
+            newTable.add(reference);
         }
 
-        return ids.keySet();
+        rebuildCount++;
+        entryCount = live.size();
+        clearedCount = 0;
+        table = newTable;
     }
 
-    private int getIndex(SegmentId id) {
-        return getIndex(id.getLeastSignificantBits());
-    }
-
-    private int getIndex(long lsb) {
-        return ((int) lsb) & (references.size() - 1);
+    /**
+     * Returns all segment identifiers that are currently referenced in memory.
+     *
+     * @param ids referenced segment identifiers
+     */
+    void collectReferencedIds(Collection<SegmentId> ids) {
+        table.forEach(ids::add);
     }
 
-    synchronized void clearSegmentIdTables(@NotNull Set<UUID> reclaimed, @NotNull String gcInfo) {
-        for (WeakReference<SegmentId> reference : references) {
-            if (reference != null) {
-                SegmentId id = reference.get();
-                if (id != null && reclaimed.contains(id.asUUID())) {
-                    id.reclaimed(gcInfo);
-                }
+    void clearSegmentIdTables(@NotNull Set<UUID> reclaimed, @NotNull String gcInfo) {
+        table.forEach(id -> {
+            if (reclaimed.contains(id.asUUID())) {
+                id.reclaimed(gcInfo);
             }
-        }
+        });
     }
 
     /**
@@ -210,7 +204,7 @@ public class SegmentIdTable {
      *
      * @return the rebuild count
      */
-    int getMapRebuildCount() {
+    synchronized int getMapRebuildCount() {
         return rebuildCount;
     }
 
@@ -229,7 +223,7 @@ public class SegmentIdTable {
      * @return the map size
      */
     int getMapSize() {
-        return references.size();
+        return table.size();
     }
 
     /**
@@ -238,16 +232,119 @@ public class SegmentIdTable {
      * @return the raw list
      */
     List<SegmentId> getRawSegmentIdList() {
-        ArrayList<SegmentId> list = new ArrayList<SegmentId>();
-        for (WeakReference<SegmentId> ref : references) {
-            if (ref != null) {
-                SegmentId id = ref.get();
-                if (id != null) {
-                    list.add(id);
+        List<SegmentId> list = new ArrayList<>();
+        table.forEach(list::add);
+        return list;
+    }
+
+    /**
+     * Weak reference to a segment id, remembering the id's bits so that it
+     * can be located in the table after the id has been garbage collected.
+     */
+    private static class SegmentIdReference extends WeakReference<SegmentId> {
+
+        final long msb;
+
+        final long lsb;
+
+        /**
+         * Whether this reference has been accounted for in {@link
+         * #clearedCount}. Guarded by the monitor of the table.
+         */
+        boolean counted;
+
+        SegmentIdReference(SegmentId id, ReferenceQueue<SegmentId> queue) {
+            super(id, queue);
+            this.msb = id.getMostSignificantBits();
+            this.lsb = id.getLeastSignificantBits();
+        }
+
+    }
+
+    /**
+     * An open addressing hash table with linear probing, indexed by the
+     * random least significant bits of the ids. The size is always a power of
+     * two.
+     * <p>
+     * Entries are only ever added, or replaced by an entry for the same id,
+     * while holding the monitor of the enclosing {@code SegmentIdTable}. The
+     * bits of an entry are written before its reference is published, so a
+     * reader seeing a non-{@code null} reference also sees its bits.
+     */
+    private static class Table {
+
+        final long[] msbs;
+
+        final long[] lsbs;
+
+        final AtomicReferenceArray<SegmentIdReference> references;
+
+        final int mask;
+
+        Table(int size) {
+            this.msbs = new long[size];
+            this.lsbs = new long[size];
+            this.references = new AtomicReferenceArray<>(size);
+            this.mask = size - 1;
+        }
+
+        int size() {
+            return mask + 1;
+        }
+
+        int getIndex(long lsb) {
+            return ((int) lsb) & mask;
+        }
+
+        @Nullable
+        SegmentId get(long msb, long lsb) {
+            int index = getIndex(lsb);
+            SegmentIdReference reference = references.get(index);
+            while (reference != null) {
+                if (msbs[index] == msb && lsbs[index] == lsb) {
+                    return reference.get();
                 }
+                index = (index + 1) & mask;
+                reference = references.get(index);
             }
+            return null;
         }
-        return list;
+
+        boolean contains(SegmentIdReference target) {
+            int index = getIndex(target.lsb);
+            SegmentIdReference reference = references.get(index);
+            while (reference != null) {
+                if (reference == target) {
+                    return true;
+                }
+                index = (index + 1) & mask;
+                reference = references.get(index);
+            }
+            return false;
+        }
+
+        void add(SegmentIdReference reference) {
+            int index = getIndex(reference.lsb);
+            while (references.get(index) != null) {
+                index = (index + 1) & mask;
+            }
+            msbs[index] = reference.msb;
+            lsbs[index] = reference.lsb;
+            references.set(index, reference);
+        }
+
+        void forEach(Consumer<SegmentId> consumer) {
+            for (int i = 0; i < size(); i++) {
+                SegmentIdReference reference = references.get(i);
+                if (reference != null) {
+                    SegmentId id = reference.get();
+                    if (id != null) {
+                        consumer.accept(id);
+                    }
+                }
+            }
+        }
+
     }
 
 }
@@ -60,6 +60,9 @@ public class SegmentNodeStoreStats implements SegmentNodeStoreStatsMBean, Segmen
     public static final String COMMIT_QUEUE_SIZE = "COMMIT_QUEUE_SIZE";
     public static final String COMMIT_TIME = "COMMIT_TIME";
     public static final String QUEUEING_TIME = "QUEUEING_TIME";
+    public static final String SEGMENT_PREFETCH_COUNT = "SEGMENT_PREFETCH_COUNT";
+    public static final String SEGMENT_PREFETCH_DROPPED_COUNT = "SEGMENT_PREFETCH_DROPPED_COUNT";
+    public static final String SEGMENT_PREFETCH_TIME = "SEGMENT_PREFETCH_TIME";
 
     private final StatisticsProvider statisticsProvider;
     private final MeterStats commitsCount;
@@ -126,6 +129,21 @@ public class SegmentNodeStoreStats implements SegmentNodeStoreStatsMBean, Segmen
         return asCompositeData(getTimeSeries(QUEUEING_TIME), QUEUEING_TIME);
     }
 
+    @Override
+    public CompositeData getPrefetchedSegmentsCount() {
+        return asCompositeData(getTimeSeries(SEGMENT_PREFETCH_COUNT), SEGMENT_PREFETCH_COUNT);
+    }
+
+    @Override
+    public CompositeData getDroppedPrefetchesCount() {
+        return asCompositeData(getTimeSeries(SEGMENT_PREFETCH_DROPPED_COUNT), SEGMENT_PREFETCH_DROPPED_COUNT);
+    }
+
+    @Override
+    public CompositeData getPrefetchTimes() {
+        return asCompositeData(getTimeSeries(SEGMENT_PREFETCH_TIME), SEGMENT_PREFETCH_TIME);
+    }
+
     @Override
     public TabularData getCommitsCountPerWriterGroupLastMinute() throws OpenDataException {
         return createTabularDataFromCountMap(commitsTracker.getCommitsCountPerGroupLastMinute(), "commitsPerWriterGroup",
@@ -45,6 +45,23 @@ public interface SegmentNodeStoreStatsMBean {
      * @return  time series of the queuing times
      */
     CompositeData getQueuingTimes();
+
+    /**
+     * @return  time series of the number of segments loaded into the segment
+     *          cache by read-ahead
+     */
+    CompositeData getPrefetchedSegmentsCount();
+
+    /**
+     * @return  time series of the number of segments whose read-ahead was
+     *          skipped because the prefetch queue was full
+     */
+    CompositeData getDroppedPrefetchesCount();
+
+    /**
+     * @return  time series of the time spent prefetching batches of segments
+     */
+    CompositeData getPrefetchTimes();
     
     /**
      * @return tabular data of the form &lt;commits,writerGroup&gt; collected 
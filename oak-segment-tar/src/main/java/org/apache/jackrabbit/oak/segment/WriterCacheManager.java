@@ -28,6 +28,7 @@ import static org.apache.jackrabbit.oak.segment.RecordCache.newRecordCache;
 
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
 
 import org.apache.jackrabbit.guava.common.cache.CacheStats;
 import org.apache.jackrabbit.oak.api.jmx.CacheStatsMBean;
@@ -278,6 +279,12 @@ public abstract class WriterCacheManager {
                 return generations.get(generation).get();
             }
 
+            @Nullable
+            T getGenerationIfPresent(int generation) {
+                Supplier<T> cache = generations.get(generation);
+                return cache == null ? null : cache.get();
+            }
+
             @NotNull
             @Override
             public Iterator<T> iterator() {
@@ -337,6 +344,29 @@ public abstract class WriterCacheManager {
             };
         }
 
+        /**
+         * Pass all mappings of the string cache of the given {@code generation}
+         * to {@code consumer}. No cache is created if the generation has none yet.
+         * @param generation  the generation of the string cache
+         * @param consumer    consumer of the mappings
+         */
+        public void forEachString(int generation, @NotNull BiConsumer<? super String, ? super RecordId> consumer) {
+            RecordCache<String> cache = stringCaches.getGenerationIfPresent(generation);
+            if (cache != null) {
+                cache.forEach(consumer);
+            }
+        }
+
+        /**
+         * Pass all mappings of the given {@code generation} of the node cache
+         * to {@code consumer}, together with their cost.
+         * @param generation  the generation of the mappings
+         * @param consumer    consumer of the mappings
+         */
+        public void forEachNode(int generation, @NotNull PriorityCache.EntryConsumer<String, RecordId> consumer) {
+            nodeCache().forEach(generation, consumer);
+        }
+
         @Nullable
         @Override
         public CacheStatsMBean getStringCacheStats() {
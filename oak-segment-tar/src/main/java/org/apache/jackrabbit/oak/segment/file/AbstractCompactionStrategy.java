@@ -269,6 +269,11 @@ abstract class AbstractCompactionStrategy implements CompactionStrategy {
                 context.getSuccessfulCompactionListener().onSuccessfulCompaction(getCompactionType());
                 context.getCompactionMonitor().finished();
 
+                if (writer.getReusedNodes() > 0) {
+                    context.getGCListener().info("compaction reused {} subtrees of the compacted tail",
+                            writer.getReusedNodes());
+                }
+
                 if (compacted.isComplete()) {
                     context.getGCListener().info("compaction succeeded in {}, after {} cycles", watch, cycles);
                     return compactionSucceeded(context, targetGeneration, compacted.getRecordId());
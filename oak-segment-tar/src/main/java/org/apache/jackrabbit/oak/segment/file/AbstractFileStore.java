@@ -18,6 +18,7 @@
  */
 package org.apache.jackrabbit.oak.segment.file;
 
+import static org.apache.jackrabbit.oak.segment.SegmentCache.newOffHeapSegmentCache;
 import static org.apache.jackrabbit.oak.segment.SegmentCache.newSegmentCache;
 import static org.apache.jackrabbit.oak.segment.data.SegmentData.newSegmentData;
 
@@ -87,14 +88,33 @@ public abstract class AbstractFileStore implements SegmentStore, Closeable {
      * implementation. The maximum supported store version has to be greater
      * than zero and greater than or equal to the minimum store version.
      */
-    private static final int MAX_STORE_VERSION = 2;
+    private static final int MAX_STORE_VERSION = 3;
+
+    /**
+     * The store version written by an implementation that does not compress
+     * segments.
+     */
+    private static final int UNCOMPRESSED_STORE_VERSION = 2;
+
+    /**
+     * The store version written by an implementation that compresses
+     * segments. Stores of this version cannot be read by implementations
+     * not supporting compressed segments.
+     */
+    private static final int COMPRESSED_STORE_VERSION = 3;
 
     static ManifestChecker newManifestChecker(SegmentNodeStorePersistence persistence, boolean strictVersionCheck) throws IOException {
+        return newManifestChecker(persistence, strictVersionCheck, false);
+    }
+
+    static ManifestChecker newManifestChecker(SegmentNodeStorePersistence persistence, boolean strictVersionCheck, boolean segmentCompression) throws IOException {
+        int storeVersion = segmentCompression ? COMPRESSED_STORE_VERSION : UNCOMPRESSED_STORE_VERSION;
         return ManifestChecker.newManifestChecker(
                 persistence.getManifestFile(),
                 persistence.segmentFilesExist(),
-                strictVersionCheck ? MAX_STORE_VERSION : MIN_STORE_VERSION,
-                MAX_STORE_VERSION
+                strictVersionCheck ? storeVersion : MIN_STORE_VERSION,
+                MAX_STORE_VERSION,
+                storeVersion
         );
     }
 
@@ -115,6 +135,13 @@ public abstract class AbstractFileStore implements SegmentStore, Closeable {
     @NotNull
     final SegmentCache segmentCache;
 
+    /**
+     * Read-ahead of the segments referenced by loaded segments, or {@code
+     * null} if disabled.
+     */
+    @Nullable
+    final SegmentPrefetcher segmentPrefetcher;
+
     final TarRecovery recovery = new TarRecovery() {
 
         @Override
@@ -142,7 +169,28 @@ public abstract class AbstractFileStore implements SegmentStore, Closeable {
             }
         });
         this.blobStore = builder.getBlobStore();
-        this.segmentCache = newSegmentCache(builder.getSegmentCacheSize());
+        if (builder.getOffHeapSegmentCache()) {
+            this.segmentCache = newOffHeapSegmentCache(builder.getSegmentCacheSize(), this::newSegment);
+        } else {
+            this.segmentCache = newSegmentCache(builder.getSegmentCacheSize());
+        }
+        this.segmentBufferMonitor = new SegmentBufferMonitor(builder.getStatsProvider());
+        if (builder.getSegmentPrefetchDepth() > 0 && builder.getSegmentCacheSize() > 0) {
+            this.segmentPrefetcher = new SegmentPrefetcher(
+                segmentCache,
+                tracker,
+                (id, buffer) -> {
+                    segmentBufferMonitor.trackAllocation(buffer);
+                    return newSegment(id, buffer);
+                },
+                builder.getSegmentPrefetchThreads(),
+                builder.getSegmentPrefetchDepth(),
+                SegmentPrefetcher.DEFAULT_QUEUE_SIZE,
+                builder.getStatsProvider()
+            );
+        } else {
+            this.segmentPrefetcher = null;
+        }
         this.segmentReader = new CachingSegmentReader(
             this::getWriter,
             blobStore,
@@ -154,7 +202,6 @@ public abstract class AbstractFileStore implements SegmentStore, Closeable {
         this.offHeapAccess = builder.getOffHeapAccess();
         this.ioMonitor = builder.getIOMonitor();
         this.remoteStoreMonitor = builder.getRemoteStoreMonitor();
-        this.segmentBufferMonitor = new SegmentBufferMonitor(builder.getStatsProvider());
         this.binariesInlineThreshold = builder.getBinariesInlineThreshold();
     }
 
@@ -233,7 +280,7 @@ public abstract class AbstractFileStore implements SegmentStore, Closeable {
         w.recoverEntry(msb, lsb, data, 0, data.length, generation);
         if (SegmentId.isDataSegmentId(lsb)) {
             SegmentId segmentId = tracker.newSegmentId(msb, lsb);
-            Segment segment = new Segment(tracker, segmentReader, segmentId, buffer);
+            Segment segment = newSegment(segmentId, buffer);
             segmentCache.putSegment(segment);
             w.addSegment(segment);
             populateTarGraph(segment, w);
@@ -298,6 +345,18 @@ public abstract class AbstractFileStore implements SegmentStore, Closeable {
             throw new SegmentNotFoundException(id);
         }
         segmentBufferMonitor.trackAllocation(buffer);
+        Segment segment = newSegment(id, buffer);
+        if (segmentPrefetcher != null) {
+            segmentPrefetcher.onSegmentLoaded(tarFiles, segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Create a segment of this store over the given bytes.
+     */
+    @NotNull
+    Segment newSegment(SegmentId id, Buffer buffer) {
         return new Segment(tracker, segmentReader, id, buffer);
     }
 
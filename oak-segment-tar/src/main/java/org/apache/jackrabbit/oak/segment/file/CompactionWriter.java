@@ -32,6 +32,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.apache.jackrabbit.oak.segment.file.CompactedNodeState.PartiallyCompactedNodeState;
 import static org.apache.jackrabbit.oak.segment.file.CompactedNodeState.FullyCompactedNodeState;
@@ -45,6 +46,7 @@ public class CompactionWriter {
     private final @NotNull GCIncrement gcIncrement;
     private final @NotNull SegmentWriter partialWriter;
     private final @NotNull SegmentWriter targetWriter;
+    private final @NotNull AtomicLong reusedNodes = new AtomicLong();
 
     public CompactionWriter(
             @NotNull SegmentReader reader,
@@ -96,10 +98,21 @@ public class CompactionWriter {
             return null;
         }
         SegmentNodeState segmentNodeState = (SegmentNodeState) nodeState;
-        if (!gcIncrement.isFullyCompacted(segmentNodeState.getGcGeneration())) {
+        GCGeneration generation = segmentNodeState.getGcGeneration();
+        if (gcIncrement.isInCompactedTail(generation)) {
+            reusedNodes.incrementAndGet();
+        } else if (!gcIncrement.isFullyCompacted(generation)) {
             return null;
         }
         RecordId nodeId = segmentNodeState.getRecordId();
         return new FullyCompactedNodeState(reader, targetWriter, blobStore, nodeId);
     }
+
+    /**
+     * @return the number of subtrees that were already part of the compacted tail
+     * and have been referenced instead of being compacted again.
+     */
+    public long getReusedNodes() {
+        return reusedNodes.get();
+    }
 }
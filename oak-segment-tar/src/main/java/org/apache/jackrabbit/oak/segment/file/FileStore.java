@@ -61,6 +61,7 @@ import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.jackrabbit.oak.stats.TimerStats;
 import org.apache.jackrabbit.oak.stats.TimerStats.Context;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -137,6 +138,9 @@ public class FileStore extends AbstractFileStore {
 
     private final boolean eagerSegmentCaching;
 
+    @Nullable
+    private final WriterCacheSnapshot writerCacheSnapshot;
+
     FileStore(final FileStoreBuilder builder) throws InvalidFileStoreVersionException, IOException {
         super(builder);
 
@@ -151,7 +155,7 @@ public class FileStore extends AbstractFileStore {
                         .withAccessTracking("WRITE", statsProvider))
                 .build(this);
 
-        newManifestChecker(persistence, builder.getStrictVersionCheck()).checkAndUpdateManifest();
+        newManifestChecker(persistence, builder.getStrictVersionCheck(), builder.getSegmentCompression()).checkAndUpdateManifest();
 
         this.stats = new FileStoreStats(statsProvider, this, 0);
 
@@ -167,6 +171,7 @@ public class FileStore extends AbstractFileStore {
                 .withRemoteStoreMonitor(remoteStoreMonitor)
                 .withFileStoreMonitor(stats)
                 .withMaxFileSize(builder.getMaxFileSize() * MB)
+                .withConcurrentWrites(builder.getConcurrentSegmentWrites())
                 .withPersistence(builder.getPersistence())
                 .withReaderCountStats(readerCountStats)
                 .withSegmentCountStats(segmentCountStats)
@@ -209,6 +214,8 @@ public class FileStore extends AbstractFileStore {
 
         this.eagerSegmentCaching = builder.getEagerSegmentCaching();
 
+        this.writerCacheSnapshot = builder.getWriterCacheSnapshot();
+
         TimerStats flushTimer = statsProvider.getTimer("oak.segment.flush", METRICS_ONLY);
         fileStoreScheduler.scheduleWithFixedDelay(format("TarMK flush [%s]", directory), 5, SECONDS, () -> {
             Context timer = flushTimer.time();
@@ -245,6 +252,13 @@ public class FileStore extends AbstractFileStore {
         try (ShutDownCloser ignored = shutDown.keepAlive()) {
             this.revisions = revisions;
             this.revisions.bind(this, tracker, initialNode());
+            if (writerCacheSnapshot != null) {
+                try {
+                    writerCacheSnapshot.load(getGcGeneration(), tracker, this::containsSegment);
+                } catch (IOException e) {
+                    log.warn("Unable to load the writer cache snapshot", e);
+                }
+            }
             return this;
         }
     }
@@ -477,12 +491,24 @@ public class FileStore extends AbstractFileStore {
             // thread before acquiring the synchronization lock
             fileStoreScheduler.close();
 
+            if (segmentPrefetcher != null) {
+                segmentPrefetcher.close();
+            }
+
             try {
                 doFlush();
             } catch (IOException e) {
                 log.warn("Unable to flush the store", e);
             }
 
+            if (writerCacheSnapshot != null) {
+                try {
+                    writerCacheSnapshot.save(getGcGeneration());
+                } catch (IOException e) {
+                    log.warn("Unable to save the writer cache snapshot", e);
+                }
+            }
+
             Closer closer = Closer.create();
             closer.register(repositoryLock::unlock);
             closer.register(tarFiles) ;
@@ -548,7 +574,7 @@ public class FileStore extends AbstractFileStore {
                     data = Buffer.wrap(buffer, offset, length);
                 }
 
-                segment = new Segment(tracker, segmentReader, id, data);
+                segment = newSegment(id, data);
 
                 if (eagerSegmentCaching) {
                     segmentCache.putSegment(segment);
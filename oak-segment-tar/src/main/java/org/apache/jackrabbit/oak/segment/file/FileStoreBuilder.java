@@ -98,11 +98,30 @@ public class FileStoreBuilder {
     private boolean memoryMapping = MEMORY_MAPPING_DEFAULT;
 
     private boolean offHeapAccess = getBoolean("access.off.heap");
+
+    private boolean offHeapSegmentCache = getBoolean("oak.segment.cache.offHeap");
+
+    private int segmentPrefetchDepth = Integer.getInteger("oak.segment.prefetch.depth", 0);
+
+    private int segmentPrefetchThreads = Integer.getInteger("oak.segment.prefetch.threads", 4);
+
+    private boolean segmentCompression = getBoolean("oak.segment.compression");
+
+    private boolean concurrentSegmentWrites = getBoolean("oak.segment.concurrentWrites");
+
+    private boolean writerCacheSnapshot = getBoolean("oak.segment.writerCacheSnapshot");
     
     private int binariesInlineThreshold = Segment.MEDIUM_LIMIT;
 
+    /**
+     * The persistence of the store, or {@code null} until first needed if
+     * the default {@link TarPersistence} is used.
+     */
+    @Nullable
     private SegmentNodeStorePersistence persistence;
 
+    private boolean customPersistence;
+
     @NotNull
     private StatisticsProvider statsProvider = StatisticsProvider.NOOP;
 
@@ -112,6 +131,9 @@ public class FileStoreBuilder {
     @Nullable
     private EvictingWriteCacheManager cacheManager;
 
+    @Nullable
+    private WriterCacheSnapshot cacheSnapshot;
+
     private class FileStoreGCListener extends DelegatingGCMonitor implements GCListener {
         @Override
         public void compactionSucceeded(@NotNull GCGeneration newGeneration) {
@@ -119,6 +141,13 @@ public class FileStoreBuilder {
             if (cacheManager != null) {
                 cacheManager.evictOldGeneration(newGeneration.getGeneration());
             }
+            if (cacheSnapshot != null) {
+                try {
+                    cacheSnapshot.save(newGeneration);
+                } catch (IOException e) {
+                    LOG.warn("Unable to save the writer cache snapshot", e);
+                }
+            }
         }
 
         @Override
@@ -161,7 +190,6 @@ public class FileStoreBuilder {
     private FileStoreBuilder(@NotNull File directory) {
         this.directory = checkNotNull(directory);
         this.gcListener.registerGCMonitor(new LoggingGCMonitor(LOG));
-        this.persistence = new TarPersistence(directory);
     }
 
     /**
@@ -369,6 +397,100 @@ public class FileStoreBuilder {
         return this;
     }
 
+    /**
+     * Keep the content of the segment cache off-heap. With this option
+     * enabled, cached segments are stored in direct memory slabs of the
+     * size given by {@link #withSegmentCacheSize(int)} and only lightweight
+     * views over them are kept on the heap.
+     *
+     * @param offHeapSegmentCache enables the off-heap segment cache iff {@code true}.
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withOffHeapSegmentCache(boolean offHeapSegmentCache) {
+        this.offHeapSegmentCache = offHeapSegmentCache;
+        return this;
+    }
+
+    /**
+     * Number of levels of segment references to read ahead into the segment
+     * cache whenever a segment is loaded. Read-ahead is disabled for {@code
+     * 0}, which is the default, and when the segment cache is disabled.
+     *
+     * @param segmentPrefetchDepth None negative prefetch depth
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withSegmentPrefetchDepth(int segmentPrefetchDepth) {
+        checkArgument(segmentPrefetchDepth >= 0, "segmentPrefetchDepth must not be negative");
+        this.segmentPrefetchDepth = segmentPrefetchDepth;
+        return this;
+    }
+
+    /**
+     * Number of background threads reading ahead segments.
+     *
+     * @param segmentPrefetchThreads number of threads, strictly positive
+     * @return this instance
+     * @see #withSegmentPrefetchDepth(int)
+     */
+    @NotNull
+    public FileStoreBuilder withSegmentPrefetchThreads(int segmentPrefetchThreads) {
+        checkArgument(segmentPrefetchThreads > 0, "segmentPrefetchThreads must be strictly positive");
+        this.segmentPrefetchThreads = segmentPrefetchThreads;
+        return this;
+    }
+
+    /**
+     * Compress segments when writing them to the TAR files. Compressed segments
+     * are always read transparently, independently of this setting. Once
+     * enabled the store cannot be opened anymore by versions of Oak not
+     * supporting compressed segments. This setting has no effect with a
+     * {@link #withCustomPersistence(SegmentNodeStorePersistence) custom
+     * persistence}.
+     *
+     * @param segmentCompression enables segment compression iff {@code true}.
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withSegmentCompression(boolean segmentCompression) {
+        this.segmentCompression = segmentCompression;
+        return this;
+    }
+
+    /**
+     * Write segments to the current TAR file concurrently instead of one
+     * after the other. Every segment reserves its space in the TAR file
+     * and is written independently of the others. This setting has no
+     * effect if the persistence does not support concurrent writes.
+     *
+     * @param concurrentSegmentWrites enables concurrent segment writes iff
+     *                                {@code true}.
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withConcurrentSegmentWrites(boolean concurrentSegmentWrites) {
+        this.concurrentSegmentWrites = concurrentSegmentWrites;
+        return this;
+    }
+
+    /**
+     * Persist the string and node deduplication caches of the segment writers
+     * to a snapshot in the directory of the store when the store is closed
+     * and after every successful compaction. The snapshot is loaded back when
+     * the store is opened again, as long as it belongs to the GC generation
+     * of the head state.
+     *
+     * @param writerCacheSnapshot enables the snapshot of the deduplication
+     *                            caches iff {@code true}.
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withWriterCacheSnapshot(boolean writerCacheSnapshot) {
+        this.writerCacheSnapshot = writerCacheSnapshot;
+        return this;
+    }
+
     /**
      * Enable strict version checking. With strict version checking enabled Oak
      * will fail to start if the store version does not exactly match this Oak version.
@@ -386,6 +508,7 @@ public class FileStoreBuilder {
 
     public FileStoreBuilder withCustomPersistence(SegmentNodeStorePersistence persistence) {
         this.persistence = persistence;
+        this.customPersistence = persistence != null;
         return this;
     }
 
@@ -413,7 +536,7 @@ public class FileStoreBuilder {
     }
 
     public Backend buildProcBackend(AbstractFileStore fileStore) throws IOException {
-        return new FileStoreProcBackend(fileStore, persistence);
+        return new FileStoreProcBackend(fileStore, getPersistence());
     }
 
     /**
@@ -438,7 +561,7 @@ public class FileStoreBuilder {
         checkState(!built, "Cannot re-use builder");
         built = true;
         directory.mkdirs();
-        TarRevisions revisions = new TarRevisions(persistence);
+        TarRevisions revisions = new TarRevisions(getPersistence());
         LOG.info("Creating file store {}", this);
         FileStore store;
         try {
@@ -478,7 +601,7 @@ public class FileStoreBuilder {
         checkState(directory.exists() && directory.isDirectory(),
                 "%s does not exist or is not a directory", directory);
         built = true;
-        ReadOnlyRevisions revisions = new ReadOnlyRevisions(persistence);
+        ReadOnlyRevisions revisions = new ReadOnlyRevisions(getPersistence());
         LOG.info("Creating file store {}", this);
         ReadOnlyFileStore store;
         try {
@@ -529,6 +652,46 @@ public class FileStoreBuilder {
         return offHeapAccess;
     }
 
+    boolean getOffHeapSegmentCache() {
+        return offHeapSegmentCache;
+    }
+
+    int getSegmentPrefetchDepth() {
+        return segmentPrefetchDepth;
+    }
+
+    int getSegmentPrefetchThreads() {
+        return segmentPrefetchThreads;
+    }
+
+    /**
+     * @return {@code true} if segments are written compressed, that is, if
+     * compression is enabled and the builder creates the persistence.
+     * @see #withSegmentCompression(boolean)
+     */
+    boolean getSegmentCompression() {
+        return segmentCompression && !customPersistence;
+    }
+
+    boolean getConcurrentSegmentWrites() {
+        return concurrentSegmentWrites;
+    }
+
+    /**
+     * @return the snapshot of the deduplication caches of the {@code
+     * WriterCacheManager} returned by {@link #getCacheManager()} or {@code
+     * null} if it is not enabled.
+     * @see #withWriterCacheSnapshot(boolean)
+     */
+    @Nullable
+    WriterCacheSnapshot getWriterCacheSnapshot() {
+        if (writerCacheSnapshot && cacheSnapshot == null) {
+            getCacheManager();
+            cacheSnapshot = new WriterCacheSnapshot(new File(directory, WriterCacheSnapshot.FILE_NAME), cacheManager);
+        }
+        return cacheSnapshot;
+    }
+
     @NotNull
     GCListener getGcListener() {
         return gcListener;
@@ -550,6 +713,9 @@ public class FileStoreBuilder {
     }
 
     SegmentNodeStorePersistence getPersistence() {
+        if (persistence == null) {
+            persistence = new TarPersistence(directory, segmentCompression);
+        }
         return persistence;
     }
 
@@ -603,6 +769,11 @@ public class FileStoreBuilder {
                 ", binariesInlineThreshold=" + binariesInlineThreshold +
                 ", maxFileSize=" + maxFileSize +
                 ", segmentCacheSize=" + segmentCacheSize +
+                ", offHeapSegmentCache=" + offHeapSegmentCache +
+                ", segmentPrefetchDepth=" + segmentPrefetchDepth +
+                ", segmentCompression=" + segmentCompression +
+                ", concurrentSegmentWrites=" + concurrentSegmentWrites +
+                ", writerCacheSnapshot=" + writerCacheSnapshot +
                 ", stringCacheSize=" + stringCacheSize +
                 ", templateCacheSize=" + templateCacheSize +
                 ", stringDeduplicationCacheSize=" + stringDeduplicationCacheSize +
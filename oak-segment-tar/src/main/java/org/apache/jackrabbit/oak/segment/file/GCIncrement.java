@@ -55,6 +55,24 @@ public class GCIncrement {
         return (generation.compareWith(baseGeneration) > 0) && generation.equals(targetGeneration);
     }
 
+    /**
+     * Tail compaction extends the compacted tail of the current full generation,
+     * and tail cleanup never reclaims the segments in this tail. Records written by
+     * previous compactions to this tail can therefore be referenced as they are
+     * instead of being compacted again.
+     * <p>
+     * The records of the base generation are excluded: the output of a partial
+     * compaction shares its generation with the base and may still reference
+     * records that are not compacted.
+     */
+    boolean isInCompactedTail(GCGeneration generation) {
+        return targetGeneration.compareFullGenerationWith(baseGeneration) == 0
+                && targetGeneration.compareWith(baseGeneration) > 0
+                && generation.isCompacted()
+                && generation.compareFullGenerationWith(baseGeneration) == 0
+                && generation.compareWith(baseGeneration) < 0;
+    }
+
     @Override
     public String toString() {
         return "GCIncrement{\n" +
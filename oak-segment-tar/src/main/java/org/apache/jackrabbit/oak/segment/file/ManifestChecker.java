@@ -26,10 +26,15 @@ import java.io.IOException;
 public class ManifestChecker {
 
     public static ManifestChecker newManifestChecker(ManifestFile file, boolean shouldExist, int minStoreVersion, int maxStoreVersion) {
+        return newManifestChecker(file, shouldExist, minStoreVersion, maxStoreVersion, maxStoreVersion);
+    }
+
+    public static ManifestChecker newManifestChecker(ManifestFile file, boolean shouldExist, int minStoreVersion, int maxStoreVersion, int storeVersion) {
         checkArgument(file != null, "file");
         checkArgument(minStoreVersion > 0, "minStoreVersion");
         checkArgument(maxStoreVersion > 0, "maxStoreVersion");
-        return new ManifestChecker(file, shouldExist, minStoreVersion, maxStoreVersion);
+        checkArgument(storeVersion > 0 && storeVersion <= maxStoreVersion, "storeVersion");
+        return new ManifestChecker(file, shouldExist, minStoreVersion, maxStoreVersion, storeVersion);
     }
 
     private final ManifestFile file;
@@ -40,11 +45,14 @@ public class ManifestChecker {
 
     private final int maxStoreVersion;
 
-    private ManifestChecker(ManifestFile file, boolean shouldExist, int minStoreVersion, int maxStoreVersion) {
+    private final int storeVersion;
+
+    private ManifestChecker(ManifestFile file, boolean shouldExist, int minStoreVersion, int maxStoreVersion, int storeVersion) {
         this.file = file;
         this.shouldExist = shouldExist;
         this.minStoreVersion = minStoreVersion;
         this.maxStoreVersion = maxStoreVersion;
+        this.storeVersion = storeVersion;
     }
 
     void checkAndUpdateManifest() throws IOException, InvalidFileStoreVersionException {
@@ -87,12 +95,12 @@ public class ManifestChecker {
     }
 
     private void updateManifest(Manifest manifest) throws IOException {
-        // Always update the store version to the maximum supported store
-        // version. In doing so, we prevent older implementations from tampering
-        // with the store's data, which from this moment on could be written in
-        // a format that an older implementation might not be able to
-        // understand.
-        manifest.setStoreVersion(maxStoreVersion);
+        // Always update the store version to the version written by this
+        // implementation, but never downgrade it. In doing so, we prevent
+        // older implementations from tampering with the store's data, which
+        // from this moment on could be written in a format that an older
+        // implementation might not be able to understand.
+        manifest.setStoreVersion(Math.max(storeVersion, manifest.getStoreVersion(storeVersion)));
         manifest.save(file);
     }
 
@@ -373,6 +373,40 @@ public class PriorityCache<K, V> {
         }
     }
 
+    /**
+     * Consumer of the mappings of a {@link PriorityCache}.
+     * @see #forEach(int, EntryConsumer)
+     */
+    public interface EntryConsumer<K, V> {
+        void accept(@NotNull K key, @NotNull V value, byte cost);
+    }
+
+    /**
+     * Pass all mappings of the given {@code generation} to {@code consumer},
+     * together with their current cost. Each segment of the cache is locked
+     * while its mappings are passed to the consumer.
+     * @param generation  the generation of the mappings
+     * @param consumer    consumer of the mappings
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(int generation, @NotNull EntryConsumer<K, V> consumer) {
+        int numSegments = segments.length;
+        int entriesPerSegment = entries.length / numSegments;
+        for (int s = 0; s < numSegments; s++) {
+            segments[s].lock();
+            try {
+                for (int i = 0; i < entriesPerSegment; i++) {
+                    Entry<?, ?> entry = entries[i + s * entriesPerSegment];
+                    if (entry != Entry.NULL && entry.generation == generation) {
+                        consumer.accept((K) entry.key, (V) entry.value, entry.cost);
+                    }
+                }
+            } finally {
+                segments[s].unlock();
+            }
+        }
+    }
+
     private int weighEntry(Entry<?, ?> entry) {
         return weigher.weigh((K) entry.key, (V) entry.value);
     }
@@ -133,6 +133,9 @@ public class ReadOnlyFileStore extends AbstractFileStore {
 
     @Override
     public void close() {
+        if (segmentPrefetcher != null) {
+            segmentPrefetcher.close();
+        }
         Closer closer = Closer.create();
         closer.register(tarFiles);
         closer.register(revisions);
@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static java.lang.Thread.currentThread;
+import static java.util.concurrent.Executors.defaultThreadFactory;
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkNotNull;
+import static org.apache.jackrabbit.oak.segment.SegmentNodeStoreStats.SEGMENT_PREFETCH_COUNT;
+import static org.apache.jackrabbit.oak.segment.SegmentNodeStoreStats.SEGMENT_PREFETCH_DROPPED_COUNT;
+import static org.apache.jackrabbit.oak.segment.SegmentNodeStoreStats.SEGMENT_PREFETCH_TIME;
+import static org.apache.jackrabbit.oak.stats.StatsOptions.DEFAULT;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import org.apache.jackrabbit.oak.commons.Buffer;
+import org.apache.jackrabbit.oak.segment.Segment;
+import org.apache.jackrabbit.oak.segment.SegmentCache;
+import org.apache.jackrabbit.oak.segment.SegmentId;
+import org.apache.jackrabbit.oak.segment.SegmentIdProvider;
+import org.apache.jackrabbit.oak.segment.file.tar.TarFiles;
+import org.apache.jackrabbit.oak.stats.MeterStats;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+import org.apache.jackrabbit.oak.stats.TimerStats;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-ahead of segments into the {@link SegmentCache}. Whenever a segment is
+ * loaded from the TAR files, the segments it references are read in the
+ * background by a bounded pool of threads, so that a traversal does not have
+ * to wait for each random read before learning the next segments it needs.
+ * <p>
+ * The referenced segments of a segment are read as one batch through {@link
+ * TarFiles#readSegments(java.util.Collection)}, which coalesces the reads of
+ * segments stored next to each other. Prefetched segments have their own
+ * references prefetched in turn, up to the configured depth. Batches are
+ * dropped when the queue of pending batches is full.
+ */
+class SegmentPrefetcher implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentPrefetcher.class);
+
+    /**
+     * Maximum number of batches of segments waiting to be prefetched.
+     */
+    static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    @NotNull
+    private final SegmentCache segmentCache;
+
+    @NotNull
+    private final SegmentIdProvider idProvider;
+
+    @NotNull
+    private final BiFunction<SegmentId, Buffer, Segment> segmentFactory;
+
+    private final int depth;
+
+    @NotNull
+    private final Executor executor;
+
+    private volatile boolean closed;
+
+    @NotNull
+    private final MeterStats prefetched;
+
+    @NotNull
+    private final MeterStats dropped;
+
+    @NotNull
+    private final TimerStats prefetchTime;
+
+    /**
+     * @param segmentCache   the cache to fill
+     * @param idProvider     provider for the ids of referenced segments
+     * @param segmentFactory factory for segments over the buffers read from
+     *                       the TAR files
+     * @param threads        number of prefetch threads
+     * @param depth          how many levels of references to prefetch below a
+     *                       loaded segment
+     * @param queueSize      maximum number of pending batches
+     * @param statsProvider  provider for the prefetch metrics
+     */
+    SegmentPrefetcher(
+            @NotNull SegmentCache segmentCache,
+            @NotNull SegmentIdProvider idProvider,
+            @NotNull BiFunction<SegmentId, Buffer, Segment> segmentFactory,
+            int threads,
+            int depth,
+            int queueSize,
+            @NotNull StatisticsProvider statsProvider
+    ) {
+        this(segmentCache, idProvider, segmentFactory, depth,
+                newPrefetchExecutor(threads, queueSize), statsProvider);
+    }
+
+    /**
+     * @param segmentCache   the cache to fill
+     * @param idProvider     provider for the ids of referenced segments
+     * @param segmentFactory factory for segments over the buffers read from
+     *                       the TAR files
+     * @param depth          how many levels of references to prefetch below a
+     *                       loaded segment
+     * @param executor       executor for the batches of segments to
+     *                       prefetch, rejecting batches it can't accept
+     * @param statsProvider  provider for the prefetch metrics
+     */
+    SegmentPrefetcher(
+            @NotNull SegmentCache segmentCache,
+            @NotNull SegmentIdProvider idProvider,
+            @NotNull BiFunction<SegmentId, Buffer, Segment> segmentFactory,
+            int depth,
+            @NotNull Executor executor,
+            @NotNull StatisticsProvider statsProvider
+    ) {
+        checkArgument(depth > 0, "depth must be strictly positive");
+        this.segmentCache = checkNotNull(segmentCache);
+        this.idProvider = checkNotNull(idProvider);
+        this.segmentFactory = checkNotNull(segmentFactory);
+        this.depth = depth;
+        this.executor = checkNotNull(executor);
+        this.prefetched = statsProvider.getMeter(SEGMENT_PREFETCH_COUNT, DEFAULT);
+        this.dropped = statsProvider.getMeter(SEGMENT_PREFETCH_DROPPED_COUNT, DEFAULT);
+        this.prefetchTime = statsProvider.getTimer(SEGMENT_PREFETCH_TIME, DEFAULT);
+    }
+
+    private static ThreadPoolExecutor newPrefetchExecutor(int threads, int queueSize) {
+        checkArgument(threads > 0, "threads must be strictly positive");
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                new PrefetchThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Schedule the segments referenced by {@code segment} to be prefetched.
+     *
+     * @param tarFiles the TAR files to read the referenced segments from
+     * @param segment  a segment that has just been loaded
+     */
+    void onSegmentLoaded(@NotNull TarFiles tarFiles, @NotNull Segment segment) {
+        submit(tarFiles, segment, 1);
+    }
+
+    private void submit(TarFiles tarFiles, Segment segment, int level) {
+        if (closed || !segment.getSegmentId().isDataSegmentId()) {
+            return;
+        }
+        Map<UUID, SegmentId> ids = uncachedReferences(segment);
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            executor.execute(() -> prefetch(tarFiles, ids, level));
+        } catch (RejectedExecutionException e) {
+            dropped.mark(ids.size());
+        }
+    }
+
+    private Map<UUID, SegmentId> uncachedReferences(Segment segment) {
+        Map<UUID, SegmentId> ids = new LinkedHashMap<>();
+        for (int i = 0; i < segment.getReferencedSegmentIdCount(); i++) {
+            UUID uuid = segment.getReferencedSegmentId(i);
+            SegmentId id = idProvider.newSegmentId(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if (id.isDataSegmentId() && !segmentCache.containsSegment(id)) {
+                ids.put(uuid, id);
+            }
+        }
+        return ids;
+    }
+
+    private void prefetch(TarFiles tarFiles, Map<UUID, SegmentId> ids, int level) {
+        TimerStats.Context timer = prefetchTime.time();
+        try {
+            ids.values().removeIf(segmentCache::containsSegment);
+            if (ids.isEmpty()) {
+                return;
+            }
+            for (Map.Entry<UUID, Buffer> entry : tarFiles.readSegments(ids.keySet()).entrySet()) {
+                SegmentId id = ids.get(entry.getKey());
+                if (segmentCache.containsSegment(id)) {
+                    continue;
+                }
+                Segment segment = segmentFactory.apply(id, entry.getValue());
+                segmentCache.putSegment(segment);
+                prefetched.mark();
+                if (level < depth) {
+                    submit(tarFiles, segment, level + 1);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Prefetching is best effort. Failures surface when the
+            // segment is actually read.
+            log.debug("Unable to prefetch segments {}", ids.keySet(), e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Stop prefetching. Pending batches are discarded and batches in flight
+     * are waited for without interrupting them, as interrupting a thread
+     * reading from a {@code FileChannel} closes that channel.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (!(executor instanceof ThreadPoolExecutor)) {
+            return;
+        }
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+        pool.shutdown();
+        pool.getQueue().clear();
+        try {
+            if (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("Segment prefetch threads did not terminate");
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for segment prefetch threads to terminate", e);
+            currentThread().interrupt();
+        }
+    }
+
+    private static class PrefetchThreadFactory implements ThreadFactory {
+        private final ThreadFactory threadFactory = defaultThreadFactory();
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NotNull Runnable runnable) {
+            Thread thread = threadFactory.newThread(runnable);
+            thread.setName("TarMK segment prefetch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.apache.jackrabbit.oak.segment.file.tar.GCGeneration.newGCGeneration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.apache.jackrabbit.oak.segment.Cache;
+import org.apache.jackrabbit.oak.segment.RecordId;
+import org.apache.jackrabbit.oak.segment.SegmentId;
+import org.apache.jackrabbit.oak.segment.SegmentIdProvider;
+import org.apache.jackrabbit.oak.segment.WriterCacheManager;
+import org.apache.jackrabbit.oak.segment.file.tar.GCGeneration;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A snapshot of the string and node deduplication caches of a {@link
+ * WriterCacheManager.Default}, persisted to a file to survive a restart of
+ * the store.
+ * <p>
+ * A snapshot contains the mappings of a single GC generation and is only
+ * loaded back if that generation is still the generation of the head state.
+ * Every mapping is further only loaded if the segment of its record is still
+ * contained in the store. The template cache is not part of the snapshot, as
+ * templates can't be serialized without the records of their property names.
+ */
+class WriterCacheSnapshot {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriterCacheSnapshot.class);
+
+    /**
+     * Name of the file containing the snapshot in the directory of the store.
+     */
+    static final String FILE_NAME = "writer-cache.snapshot";
+
+    /**
+     * Magic number identifying a snapshot: {@code "\nWC\n"}.
+     */
+    private static final int MAGIC = 0x0a57430a;
+
+    /**
+     * Marks the end of a section of mappings.
+     */
+    private static final byte END = 0;
+
+    /**
+     * Precedes every mapping of a section.
+     */
+    private static final byte MAPPING = 1;
+
+    @NotNull
+    private final File file;
+
+    @NotNull
+    private final WriterCacheManager.Default cacheManager;
+
+    WriterCacheSnapshot(@NotNull File file, @NotNull WriterCacheManager.Default cacheManager) {
+        this.file = file;
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * Write the mappings of {@code generation} to the snapshot file,
+     * replacing any previous snapshot.
+     *
+     * @param generation the GC generation of the mappings.
+     * @throws IOException if an error occurs while writing the snapshot.
+     */
+    void save(@NotNull GCGeneration generation) throws IOException {
+        int cacheGeneration = generation.getGeneration();
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        int[] counts = new int[2];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(generation.getGeneration());
+            out.writeInt(generation.getFullGeneration());
+
+            cacheManager.forEachString(cacheGeneration, (string, recordId) -> {
+                writeMapping(out, string, recordId);
+                counts[0]++;
+            });
+            out.writeByte(END);
+
+            cacheManager.forEachNode(cacheGeneration, (stableId, recordId, cost) -> {
+                writeMapping(out, stableId, recordId);
+                writeByte(out, cost);
+                counts[1]++;
+            });
+            out.writeByte(END);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(temp.toPath(), file.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+        LOG.info("Saved {} strings and {} nodes of generation {} to the writer cache snapshot",
+                counts[0], counts[1], generation);
+    }
+
+    private static void writeMapping(DataOutputStream out, String key, RecordId recordId) {
+        try {
+            byte[] bytes = key.getBytes(UTF_8);
+            out.writeByte(MAPPING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeLong(recordId.getSegmentId().getMostSignificantBits());
+            out.writeLong(recordId.getSegmentId().getLeastSignificantBits());
+            out.writeInt(recordId.getRecordNumber());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeByte(DataOutputStream out, byte value) {
+        try {
+            out.writeByte(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Load the mappings of the snapshot file into the caches of the cache
+     * manager, if the snapshot has been taken for the GC generation of the
+     * head state. Mappings to records in segments not contained in the store
+     * anymore are skipped.
+     *
+     * @param head       the GC generation of the head state.
+     * @param idProvider the provider of the identifiers of the segments.
+     * @param exists     predicate telling whether a segment is contained in
+     *                   the store.
+     * @throws IOException if an error occurs while reading the snapshot.
+     */
+    void load(
+        @NotNull GCGeneration head,
+        @NotNull SegmentIdProvider idProvider,
+        @NotNull Predicate<SegmentId> exists
+    ) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                LOG.warn("Ignoring invalid writer cache snapshot {}", file);
+                return;
+            }
+            GCGeneration generation = newGCGeneration(in.readInt(), in.readInt(), false);
+            if (!generation.equals(head.nonGC())) {
+                LOG.info("Ignoring writer cache snapshot of generation {}, the head state is of generation {}",
+                        generation, head);
+                return;
+            }
+
+            Map<SegmentId, Boolean> segments = new HashMap<>();
+            Predicate<RecordId> valid = recordId -> segments.computeIfAbsent(recordId.getSegmentId(), exists::test);
+
+            Cache<String, RecordId> stringCache = cacheManager.getStringCache(head.getGeneration());
+            int strings = 0;
+            while (in.readByte() == MAPPING) {
+                String string = readString(in);
+                RecordId recordId = readRecordId(in, idProvider);
+                if (valid.test(recordId)) {
+                    stringCache.put(string, recordId);
+                    strings++;
+                }
+            }
+
+            Cache<String, RecordId> nodeCache = cacheManager.getNodeCache(head.getGeneration());
+            int nodes = 0;
+            while (in.readByte() == MAPPING) {
+                String stableId = readString(in);
+                RecordId recordId = readRecordId(in, idProvider);
+                byte cost = in.readByte();
+                if (valid.test(recordId)) {
+                    nodeCache.put(stableId, recordId, cost);
+                    nodes++;
+                }
+            }
+
+            LOG.info("Loaded {} strings and {} nodes of generation {} from the writer cache snapshot",
+                    strings, nodes, generation);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static RecordId readRecordId(DataInputStream in, SegmentIdProvider idProvider) throws IOException {
+        SegmentId segmentId = idProvider.newSegmentId(in.readLong(), in.readLong());
+        return new RecordId(segmentId, in.readInt());
+    }
+
+}
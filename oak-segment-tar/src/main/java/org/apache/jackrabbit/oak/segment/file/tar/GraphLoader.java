@@ -73,14 +73,11 @@ public final class GraphLoader {
 
         Buffer graph = readerAtEnd.readAtEnd(bytes, bytes);
 
-        byte[] b = new byte[bytes - FOOTER_SIZE];
-
-        graph.mark();
-        graph.get(b);
-        graph.reset();
+        Buffer data = graph.duplicate();
+        data.limit(data.position() + bytes - FOOTER_SIZE);
 
         CRC32 checksum = new CRC32();
-        checksum.update(b);
+        data.update(checksum);
 
         if (crc32 != (int) checksum.getValue()) {
             log.warn("Invalid graph checksum in tar file");
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file.tar;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.jackrabbit.oak.commons.Buffer;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Compression of the segments stored in a TAR file.
+ * <p>
+ * A compressed segment is stored as the length of the uncompressed segment,
+ * as a four bytes integer, followed by the segment compressed with a raw
+ * deflate stream. The entries of compressed segments are flagged in the
+ * index of the TAR file and the names of their TAR entries end with {@link
+ * #COMPRESSED_SUFFIX}, so that they can be recognised when recovering a TAR
+ * file without a valid index.
+ */
+final class SegmentCompression {
+
+    /**
+     * Suffix of the names of the TAR entries of compressed segments.
+     */
+    static final String COMPRESSED_SUFFIX = ".z";
+
+    /**
+     * Size of the header preceding the compressed data.
+     */
+    private static final int HEADER_SIZE = 4;
+
+    private SegmentCompression() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Compress a segment.
+     *
+     * @param data   the array containing the segment
+     * @param offset the offset of the segment in {@code data}
+     * @param size   the size of the segment
+     * @return the compressed segment, or {@code null} if compressing would not
+     * reduce the size of the segment.
+     */
+    @Nullable
+    static byte[] compress(byte[] data, int offset, int size) {
+        byte[] compressed = new byte[size];
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(data, offset, size);
+            deflater.finish();
+            int length = HEADER_SIZE;
+            while (!deflater.finished() && length < compressed.length) {
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            if (!deflater.finished()) {
+                return null;
+            }
+            Buffer.wrap(compressed).putInt(size);
+            return Arrays.copyOf(compressed, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompress a segment compressed with {@link #compress(byte[], int,
+     * int)}.
+     *
+     * @param buffer the compressed segment, from its position to its limit.
+     * @return a buffer containing the segment.
+     * @throws IOException if the compressed segment is corrupt.
+     */
+    static Buffer decompress(Buffer buffer) throws IOException {
+        Buffer compressed = buffer.duplicate();
+        int size = compressed.getInt();
+        if (size < 0) {
+            throw new IOException("Invalid size of compressed segment");
+        }
+        byte[] input = new byte[compressed.remaining()];
+        compressed.get(input);
+
+        byte[] data = new byte[size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+            int length = 0;
+            while (length < size) {
+                int n = inflater.inflate(data, length, size - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != size) {
+                throw new IOException("Truncated compressed segment");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed segment", e);
+        } finally {
+            inflater.end();
+        }
+        return Buffer.wrap(data);
+    }
+
+}
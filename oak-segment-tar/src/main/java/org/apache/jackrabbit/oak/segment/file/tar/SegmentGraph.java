@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file.tar;
+
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.apache.jackrabbit.oak.commons.Buffer;
+
+/**
+ * A read-only view of the pre-compiled graph of a TAR file.
+ * <p>
+ * The view reads the entries of the graph directly from the buffer they were
+ * loaded into, which is a slice of the memory mapped TAR file when memory
+ * mapping is enabled. The only additional structure is an open addressing
+ * table of the offsets of the entries, which allows to look up the references
+ * of a segment without materializing the graph as a map.
+ * <p>
+ * Every entry of the graph is stored as the identifier of a segment, the
+ * number of segments it references and the identifiers of these segments.
+ */
+final class SegmentGraph {
+
+    /**
+     * Size of the identifier of a segment and of the number of its references.
+     */
+    private static final int ENTRY_HEADER_SIZE = 20;
+
+    /**
+     * Size of the identifier of a referenced segment.
+     */
+    private static final int VERTEX_SIZE = 16;
+
+    private final Buffer buffer;
+
+    /**
+     * Offsets of the entries in {@link #buffer}, incremented by one, so that
+     * zero marks an empty slot.
+     */
+    private final int[] table;
+
+    private SegmentGraph(Buffer buffer, int[] table) {
+        this.buffer = buffer;
+        this.table = table;
+    }
+
+    /**
+     * Create a view of the graph contained in the buffer returned by {@link
+     * GraphLoader#loadGraph(org.apache.jackrabbit.oak.segment.util.ReaderAtEnd)}.
+     * The buffer is neither copied nor modified.
+     *
+     * @param buffer the graph entry, including its footer.
+     * @return an instance of {@link SegmentGraph}.
+     */
+    static SegmentGraph newSegmentGraph(Buffer buffer) {
+        Buffer graph = buffer.slice();
+        int count = graph.getInt(graph.limit() - 12);
+        int[] table = new int[Integer.highestOneBit(Math.max(count, 1)) << 2];
+        int mask = table.length - 1;
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = hash(graph.getLong(offset), graph.getLong(offset + 8)) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = offset + 1;
+            offset += ENTRY_HEADER_SIZE + VERTEX_SIZE * graph.getInt(offset + 16);
+        }
+        return new SegmentGraph(graph, table);
+    }
+
+    private static int hash(long msb, long lsb) {
+        return Long.hashCode(msb ^ lsb);
+    }
+
+    private int find(long msb, long lsb) {
+        int mask = table.length - 1;
+        int slot = hash(msb, lsb) & mask;
+        while (table[slot] != 0) {
+            int offset = table[slot] - 1;
+            if (buffer.getLong(offset) == msb && buffer.getLong(offset + 8) == lsb) {
+                return offset;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Pass every segment referenced by a segment to a consumer.
+     *
+     * @param id       the identifier of the referencing segment.
+     * @param consumer the consumer of the referenced segments.
+     */
+    void forEachReference(UUID id, Consumer<UUID> consumer) {
+        int offset = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (offset < 0) {
+            return;
+        }
+        int count = buffer.getInt(offset + 16);
+        int vertex = offset + ENTRY_HEADER_SIZE;
+        for (int i = 0; i < count; i++, vertex += VERTEX_SIZE) {
+            consumer.accept(new UUID(buffer.getLong(vertex), buffer.getLong(vertex + 8)));
+        }
+    }
+
+    /**
+     * Pass every edge of the graph to a consumer, as the identifiers of the
+     * referencing and of the referenced segment.
+     *
+     * @param consumer the consumer of the edges.
+     */
+    void forEachEdge(BiConsumer<UUID, UUID> consumer) {
+        for (int slot : table) {
+            if (slot == 0) {
+                continue;
+            }
+            int offset = slot - 1;
+            UUID from = new UUID(buffer.getLong(offset), buffer.getLong(offset + 8));
+            int count = buffer.getInt(offset + 16);
+            int vertex = offset + ENTRY_HEADER_SIZE;
+            for (int i = 0; i < count; i++, vertex += VERTEX_SIZE) {
+                consumer.accept(from, new UUID(buffer.getLong(vertex), buffer.getLong(vertex + 8)));
+            }
+        }
+    }
+
+}
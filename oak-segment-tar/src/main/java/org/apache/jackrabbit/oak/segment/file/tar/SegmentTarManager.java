@@ -20,6 +20,8 @@ package org.apache.jackrabbit.oak.segment.file.tar;
 
 import static org.apache.jackrabbit.guava.common.base.Charsets.UTF_8;
 import static org.apache.jackrabbit.oak.commons.Buffer.wrap;
+import static org.apache.jackrabbit.oak.segment.file.tar.SegmentCompression.COMPRESSED_SUFFIX;
+import static org.apache.jackrabbit.oak.segment.file.tar.SegmentCompression.decompress;
 import static org.apache.jackrabbit.oak.segment.file.tar.TarConstants.BLOCK_SIZE;
 
 import java.io.File;
@@ -69,13 +71,21 @@ public class SegmentTarManager implements SegmentArchiveManager {
 
     private final boolean offHeapAccess;
 
+    private final boolean compression;
+
     public SegmentTarManager(File segmentstoreDir, FileStoreMonitor fileStoreMonitor, IOMonitor ioMonitor, boolean memoryMapping,
             boolean offHeapAccess) {
+        this(segmentstoreDir, fileStoreMonitor, ioMonitor, memoryMapping, offHeapAccess, false);
+    }
+
+    public SegmentTarManager(File segmentstoreDir, FileStoreMonitor fileStoreMonitor, IOMonitor ioMonitor, boolean memoryMapping,
+            boolean offHeapAccess, boolean compression) {
         this.segmentstoreDir = segmentstoreDir;
         this.fileStoreMonitor = fileStoreMonitor;
         this.ioMonitor = ioMonitor;
         this.memoryMapping = memoryMapping;
         this.offHeapAccess = offHeapAccess;
+        this.compression = compression;
     }
 
     @Override
@@ -134,7 +144,7 @@ public class SegmentTarManager implements SegmentArchiveManager {
 
     @Override
     public SegmentArchiveWriter create(String archiveName) {
-        return new SegmentTarWriter(new File(segmentstoreDir, archiveName), fileStoreMonitor, ioMonitor);
+        return new SegmentTarWriter(new File(segmentstoreDir, archiveName), fileStoreMonitor, ioMonitor, compression);
     }
 
     @Override
@@ -260,6 +270,18 @@ public class SegmentTarManager implements SegmentArchiveManager {
                         access.seek(position + (BLOCK_SIZE - remainder));
                     }
 
+                    if (COMPRESSED_SUFFIX.equals(matcher.group(4))) {
+                        try {
+                            Buffer segment = decompress(wrap(data));
+                            data = new byte[segment.remaining()];
+                            segment.get(data);
+                        } catch (IOException e) {
+                            log.warn("Corrupt compressed entry {} in tar file {}, skipping...",
+                                    name, file);
+                            continue;
+                        }
+                    }
+
                     if (checksum != null) {
                         CRC32 crc = new CRC32();
                         crc.update(data, 0, data.length);
@@ -18,6 +18,7 @@
  */
 package org.apache.jackrabbit.oak.segment.file.tar;
 
+import static org.apache.jackrabbit.oak.segment.file.tar.SegmentCompression.decompress;
 import static org.apache.jackrabbit.oak.segment.file.tar.SegmentTarWriter.getPaddingSize;
 import static org.apache.jackrabbit.oak.segment.file.tar.TarConstants.BLOCK_SIZE;
 import static org.apache.jackrabbit.oak.segment.file.tar.index.IndexLoader.newIndexLoader;
@@ -25,8 +26,14 @@ import static org.apache.jackrabbit.oak.segment.file.tar.index.IndexLoader.newIn
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.jackrabbit.guava.common.base.Stopwatch;
@@ -51,6 +58,12 @@ public class SegmentTarReader implements SegmentArchiveReader {
 
     private static final IndexLoader indexLoader = newIndexLoader(BLOCK_SIZE);
 
+    /**
+     * Maximum number of bytes read at once when coalescing the reads of
+     * adjacent segments.
+     */
+    private static final int MAX_COALESCED_READ_SIZE = 4 * 1024 * 1024;
+
     private final FileAccess access;
 
     private final File file;
@@ -83,9 +96,84 @@ public class SegmentTarReader implements SegmentArchiveReader {
         Buffer buffer = access.read(indexEntry.getPosition(), indexEntry.getLength());
         long elapsed = stopwatch.elapsed(TimeUnit.NANOSECONDS);
         ioMonitor.afterSegmentRead(file, msb, lsb, indexEntry.getLength(), elapsed);
+        if (indexEntry.isCompressed()) {
+            return decompress(buffer);
+        }
         return buffer;
     }
 
+    @Override
+    public Map<UUID, Buffer> readSegments(Collection<UUID> ids) throws IOException {
+        List<IndexEntry> entries = new ArrayList<>(ids.size());
+        for (UUID id : new LinkedHashSet<>(ids)) {
+            int i = index.findEntry(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (i != -1) {
+                entries.add(index.entry(i));
+            }
+        }
+        entries.sort(IndexEntry.POSITION_ORDER);
+
+        Map<UUID, Buffer> segments = new HashMap<>();
+        int start = 0;
+        while (start < entries.size()) {
+            int end = start + 1;
+            int position = entries.get(start).getPosition();
+            while (end < entries.size() && isNext(entries.get(end - 1), entries.get(end))
+                    && entries.get(end).getPosition() + entries.get(end).getLength() - position <= MAX_COALESCED_READ_SIZE) {
+                end++;
+            }
+            readAdjacentSegments(entries.subList(start, end), segments);
+            start = end;
+        }
+        return segments;
+    }
+
+    /**
+     * Determine whether the segment of {@code next} immediately follows the
+     * one of {@code entry} in this TAR file.
+     */
+    private static boolean isNext(IndexEntry entry, IndexEntry next) {
+        int length = entry.getLength();
+        return entry.getPosition() + length + getPaddingSize(length) + BLOCK_SIZE == next.getPosition();
+    }
+
+    /**
+     * Read segments stored next to each other with a single read.
+     */
+    private void readAdjacentSegments(List<IndexEntry> entries, Map<UUID, Buffer> segments) throws IOException {
+        IndexEntry first = entries.get(0);
+        IndexEntry last = entries.get(entries.size() - 1);
+        int position = first.getPosition();
+        int length = last.getPosition() + last.getLength() - position;
+
+        for (IndexEntry entry : entries) {
+            ioMonitor.beforeSegmentRead(file, entry.getMsb(), entry.getLsb(), entry.getLength());
+        }
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        Buffer buffer = access.read(position, length);
+        long elapsed = stopwatch.elapsed(TimeUnit.NANOSECONDS);
+
+        for (IndexEntry entry : entries) {
+            Buffer segment = buffer.duplicate();
+            segment.position(entry.getPosition() - position);
+            segment.limit(entry.getPosition() - position + entry.getLength());
+            segment = segment.slice();
+            if (entry.isCompressed()) {
+                segment = decompress(segment);
+            } else if (entries.size() > 1 && !access.isMemoryMapped()) {
+                // Don't let a single cached segment retain the whole read
+                Buffer copy = segment.isDirect()
+                        ? Buffer.allocateDirect(entry.getLength())
+                        : Buffer.allocate(entry.getLength());
+                copy.put(segment);
+                copy.flip();
+                segment = copy;
+            }
+            segments.put(new UUID(entry.getMsb(), entry.getLsb()), segment);
+            ioMonitor.afterSegmentRead(file, entry.getMsb(), entry.getLsb(), entry.getLength(), elapsed / entries.size());
+        }
+    }
+
     @Override
     public boolean containsSegment(long msb, long lsb) {
         return index.findEntry(msb, lsb) != -1;
@@ -20,18 +20,26 @@ package org.apache.jackrabbit.oak.segment.file.tar;
 
 import static org.apache.jackrabbit.guava.common.base.Charsets.UTF_8;
 import static org.apache.jackrabbit.guava.common.base.Preconditions.checkState;
+import static org.apache.jackrabbit.oak.segment.file.tar.SegmentCompression.COMPRESSED_SUFFIX;
+import static org.apache.jackrabbit.oak.segment.file.tar.SegmentCompression.compress;
+import static org.apache.jackrabbit.oak.segment.file.tar.SegmentCompression.decompress;
 import static org.apache.jackrabbit.oak.segment.file.tar.TarConstants.BLOCK_SIZE;
 
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.zip.CRC32;
 
 import org.apache.jackrabbit.guava.common.base.Stopwatch;
@@ -46,6 +54,16 @@ import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Writer for TAR files on the local file system.
+ * <p>
+ * Segments can be written concurrently. A writer reserves the space for its
+ * entry by advancing the length of the file atomically and then writes the
+ * entry with positional I/O, independently of the other writers. The entry
+ * is added to the index, and becomes visible to readers, only after it has
+ * been completely written. Flushing the file waits for the writes in progress,
+ * so that the file contains no gap before any entry it makes durable.
+ */
 public class SegmentTarWriter implements SegmentArchiveWriter {
 
     private static final Logger log = LoggerFactory.getLogger(SegmentTarWriter.class);
@@ -64,6 +82,11 @@ public class SegmentTarWriter implements SegmentArchiveWriter {
 
     private final IOMonitor ioMonitor;
 
+    /**
+     * Whether segments are compressed before being written.
+     */
+    private final boolean compression;
+
     /**
      * Map of the entries that have already been written. Used by the
      * {@link #containsSegment(long, long)} and {@link #readSegment(long, long)}
@@ -78,18 +101,33 @@ public class SegmentTarWriter implements SegmentArchiveWriter {
     /**
      * File handle. Initialized lazily in {@link #writeSegment(long, long, byte[], int, int, int, int, boolean)}
      * to avoid creating an extra empty file when just reading from the repository.
-     * Should only be accessed from synchronized code.
      */
-    private RandomAccessFile access = null;
+    private volatile RandomAccessFile access = null;
 
-    private FileChannel channel = null;
+    private volatile FileChannel channel = null;
 
-    private volatile long length;
+    /**
+     * Length of the file, including the space reserved by the writes in
+     * progress. Entries are written at the position returned when reserving
+     * their space.
+     */
+    private final AtomicLong length = new AtomicLong();
+
+    /**
+     * Segment writes share the read lock of this lock. Flushing and closing
+     * the file acquire the write lock to wait for the writes in progress.
+     */
+    private final ReadWriteLock writes = new ReentrantReadWriteLock();
 
     public SegmentTarWriter(File file, FileStoreMonitor monitor, IOMonitor ioMonitor) {
+        this(file, monitor, ioMonitor, false);
+    }
+
+    public SegmentTarWriter(File file, FileStoreMonitor monitor, IOMonitor ioMonitor, boolean compression) {
         this.file = file;
         this.monitor = monitor;
         this.ioMonitor = ioMonitor;
+        this.compression = compression;
     }
 
     @Override
@@ -98,38 +136,76 @@ public class SegmentTarWriter implements SegmentArchiveWriter {
         CRC32 checksum = new CRC32();
         checksum.update(data, offset, size);
         String entryName = String.format("%s.%08x", uuid, checksum.getValue());
+
+        // Segments that don't shrink when compressed are stored as they are
+        byte[] compressed = compression ? compress(data, offset, size) : null;
+        if (compressed != null) {
+            entryName += COMPRESSED_SUFFIX;
+            data = compressed;
+            offset = 0;
+            size = compressed.length;
+        }
+
         byte[] header = newEntryHeader(entryName, size);
+        int padding = getPaddingSize(size);
+        int entrySize = header.length + size + padding;
 
         log.debug("Writing segment {} to {}", uuid, file);
 
-        if (access == null) {
-            access = new RandomAccessFile(file, "rw");
-            channel = access.getChannel();
-        }
+        Lock lock = writes.readLock();
+        lock.lock();
+        try {
+            FileChannel channel = getChannel();
 
-        int padding = getPaddingSize(size);
+            long initialLength = length.getAndAdd(entrySize);
+            long dataOffset = initialLength + header.length;
 
-        long initialLength = access.getFilePointer();
+            write(channel, initialLength, header, 0, header.length);
 
-        access.write(header);
+            ioMonitor.beforeSegmentWrite(file, msb, lsb, size);
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            write(channel, dataOffset, data, offset, size);
+            ioMonitor.afterSegmentWrite(file, msb, lsb, size, stopwatch.elapsed(TimeUnit.NANOSECONDS));
 
-        long dataOffset = access.getFilePointer();
+            if (padding > 0) {
+                write(channel, dataOffset + size, ZERO_BYTES, 0, padding);
+            }
 
-        ioMonitor.beforeSegmentWrite(file, msb, lsb, size);
-        Stopwatch stopwatch = Stopwatch.createStarted();
-        access.write(data, offset, size);
-        ioMonitor.afterSegmentWrite(file, msb, lsb, size, stopwatch.elapsed(TimeUnit.NANOSECONDS));
+            monitor.written(entrySize);
 
-        if (padding > 0) {
-            access.write(ZERO_BYTES, 0, padding);
+            index.put(uuid, new SimpleIndexEntry(msb, lsb, (int) dataOffset, size, generation, fullGeneration, compacted, compressed != null));
+        } finally {
+            lock.unlock();
         }
+    }
 
-        long currentLength = access.getFilePointer();
-        monitor.written(currentLength - initialLength);
+    private FileChannel getChannel() throws IOException {
+        FileChannel current = channel;
+        if (current == null) {
+            synchronized (this) {
+                if (channel == null) {
+                    access = new RandomAccessFile(file, "rw");
+                    channel = access.getChannel();
+                }
+                current = channel;
+            }
+        }
+        return current;
+    }
 
-        length = currentLength;
+    private static void write(FileChannel channel, long position, byte[] data, int offset, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, size);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
 
-        index.put(new UUID(msb, lsb), new SimpleIndexEntry(msb, lsb, (int) dataOffset, size, generation, fullGeneration, compacted));
+    /**
+     * Append data at the end of the file. Only used while closing the file,
+     * when no segment is written concurrently.
+     */
+    private void append(byte[] data, int offset, int size) throws IOException {
+        write(channel, length.getAndAdd(size), data, offset, size);
     }
 
     @Override
@@ -144,6 +220,9 @@ public class SegmentTarWriter implements SegmentArchiveWriter {
             throw new EOFException();
         }
         data.rewind();
+        if (indexEntry.isCompressed()) {
+            return decompress(data);
+        }
         return data;
     }
 
@@ -156,33 +235,29 @@ public class SegmentTarWriter implements SegmentArchiveWriter {
     public void writeGraph(byte[] data) throws IOException {
         int paddingSize = getPaddingSize(data.length);
         byte[] header = newEntryHeader(file.getName() + ".gph", data.length + paddingSize);
-        access.write(header);
+        append(header, 0, header.length);
         if (paddingSize > 0) {
-            access.write(ZERO_BYTES, 0, paddingSize);
+            append(ZERO_BYTES, 0, paddingSize);
         }
-        access.write(data);
+        append(data, 0, data.length);
         monitor.written(header.length + paddingSize + data.length);
-
-        length = access.getFilePointer();
     }
 
     @Override
     public void writeBinaryReferences(byte[] data) throws IOException {
         int paddingSize = getPaddingSize(data.length);
         byte[] header = newEntryHeader(file.getName() + ".brf", data.length + paddingSize);
-        access.write(header);
+        append(header, 0, header.length);
         if (paddingSize > 0) {
-            access.write(ZERO_BYTES, 0, paddingSize);
+            append(ZERO_BYTES, 0, paddingSize);
         }
-        access.write(data);
+        append(data, 0, data.length);
         monitor.written(header.length + paddingSize + data.length);
-
-        length = access.getFilePointer();
     }
 
     @Override
     public long getLength() {
-        return length;
+        return length.get();
     }
 
     @Override
@@ -201,29 +276,34 @@ public class SegmentTarWriter implements SegmentArchiveWriter {
                     entry.getLength(),
                     entry.getGeneration(),
                     entry.getFullGeneration(),
-                    entry.isCompacted()
+                    entry.isCompacted(),
+                    entry.isCompressed()
             );
         }
 
         byte[] data = writer.write();
 
         byte[] header = newEntryHeader(file.getName() + ".idx", data.length);
-        access.write(header);
-        access.write(data);
+        append(header, 0, header.length);
+        append(data, 0, data.length);
         monitor.written(header.length + data.length);
-
-        length = access.getFilePointer();
     }
 
     @Override
     public void close() throws IOException {
-        writeIndex();
-
-        access.write(ZERO_BYTES);
-        access.write(ZERO_BYTES);
-        access.close();
-
-        monitor.written(BLOCK_SIZE * 2);
+        Lock lock = writes.writeLock();
+        lock.lock();
+        try {
+            writeIndex();
+
+            append(ZERO_BYTES, 0, ZERO_BYTES.length);
+            append(ZERO_BYTES, 0, ZERO_BYTES.length);
+            access.close();
+
+            monitor.written(BLOCK_SIZE * 2);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -233,9 +313,20 @@ public class SegmentTarWriter implements SegmentArchiveWriter {
 
     @Override
     public void flush() throws IOException {
+        // Wait for the writes in progress, so that every entry written so
+        // far is complete when the file is synced. New writes can proceed
+        // while the file is being synced.
+        Lock lock = writes.writeLock();
+        lock.lock();
+        lock.unlock();
         access.getFD().sync();
     }
 
+    @Override
+    public boolean isConcurrent() {
+        return true;
+    }
+
     @Override
     public String getName() {
         return file.getName();
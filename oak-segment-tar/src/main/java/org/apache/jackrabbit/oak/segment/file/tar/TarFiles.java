@@ -30,6 +30,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -129,6 +130,8 @@ public class TarFiles implements Closeable {
 
         private long maxFileSize;
 
+        private boolean concurrentWrites;
+
         private boolean readOnly;
 
         private SegmentNodeStorePersistence persistence;
@@ -184,6 +187,11 @@ public class TarFiles implements Closeable {
             return this;
         }
 
+        public Builder withConcurrentWrites(boolean concurrentWrites) {
+            this.concurrentWrites = concurrentWrites;
+            return this;
+        }
+
         public Builder withReadOnly() {
             this.readOnly = true;
             return this;
@@ -335,6 +343,11 @@ public class TarFiles implements Closeable {
 
     private final long maxFileSize;
 
+    /**
+     * If {@code true}, segments are written to the TAR writer concurrently.
+     */
+    private final boolean concurrentWrites;
+
     private SegmentArchiveManager archiveManager;
 
     /**
@@ -392,6 +405,7 @@ public class TarFiles implements Closeable {
 
     private TarFiles(Builder builder) throws IOException {
         maxFileSize = builder.maxFileSize;
+        concurrentWrites = builder.concurrentWrites;
         archiveManager = builder.buildArchiveManager();
         readerCount = builder.readerCountStats;
         segmentCount = builder.segmentCountStats;
@@ -429,7 +443,7 @@ public class TarFiles implements Closeable {
             if (indices.length > 0) {
                 writeNumber = indices[indices.length - 1] + 1;
             }
-            writer = new TarWriter(archiveManager, writeNumber, segmentCount);
+            writer = new TarWriter(archiveManager, writeNumber, segmentCount, concurrentWrites);
         }
 
         initialised = true;
@@ -624,28 +638,62 @@ public class TarFiles implements Closeable {
         return null;
     }
 
-    public void writeSegment(UUID id, byte[] buffer, int offset, int length, GCGeneration generation, Set<UUID> references, Set<String> binaryReferences) throws IOException {
-        checkInitialised();
-        lock.writeLock().lock();
+    /**
+     * Read several segments at once. Segments still in the TAR writer are
+     * read from there, the reads of the others are grouped per TAR reader,
+     * which may coalesce the reads of segments stored next to each other.
+     *
+     * @param ids the identifiers of the segments to read
+     * @return the byte buffers of the segments found, keyed by their
+     * identifier.
+     */
+    public Map<UUID, Buffer> readSegments(Collection<UUID> ids) {
+        Map<UUID, Buffer> segments = new HashMap<>();
+        Set<UUID> missing = new HashSet<>(ids);
         try {
-            long size = writer.writeEntry(
-                    id.getMostSignificantBits(),
-                    id.getLeastSignificantBits(),
-                    buffer,
-                    offset,
-                    length,
-                    generation
-            );
-            if (references != null) {
-                for (UUID reference : references) {
-                    writer.addGraphEdge(id, reference);
+            Node head;
+
+            lock.readLock().lock();
+            try {
+                if (writer != null) {
+                    for (Iterator<UUID> it = missing.iterator(); it.hasNext(); ) {
+                        UUID id = it.next();
+                        Buffer b = writer.readEntry(id.getMostSignificantBits(), id.getLeastSignificantBits());
+                        if (b != null) {
+                            segments.put(id, b);
+                            it.remove();
+                        }
+                    }
                 }
+                head = readers;
+            } finally {
+                lock.readLock().unlock();
             }
-            if (binaryReferences != null) {
-                for (String reference : binaryReferences) {
-                    writer.addBinaryReference(generation, id, reference);
+
+            for (TarReader reader : iterable(head)) {
+                if (missing.isEmpty()) {
+                    break;
                 }
+                Map<UUID, Buffer> found = reader.readEntries(missing);
+                segments.putAll(found);
+                missing.removeAll(found.keySet());
             }
+        } catch (IOException e) {
+            log.warn("Unable to read from TAR file", e);
+        }
+
+        return segments;
+    }
+
+    public void writeSegment(UUID id, byte[] buffer, int offset, int length, GCGeneration generation, Set<UUID> references, Set<String> binaryReferences) throws IOException {
+        checkInitialised();
+        if (concurrentWrites) {
+            writeSegmentConcurrently(id, buffer, offset, length, generation, references, binaryReferences);
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            long size = writeEntry(writer, id, buffer, offset, length, generation, references, binaryReferences);
             if (size >= maxFileSize) {
                 internalNewWriter();
             }
@@ -654,6 +702,58 @@ public class TarFiles implements Closeable {
         }
     }
 
+    /**
+     * Write a segment while holding {@link #lock} in read mode, so that
+     * segments are written concurrently with each other and with reads. The
+     * lock is acquired in write mode only to replace a full TAR writer.
+     */
+    private void writeSegmentConcurrently(UUID id, byte[] buffer, int offset, int length, GCGeneration generation, Set<UUID> references, Set<String> binaryReferences) throws IOException {
+        TarWriter current;
+        long size;
+
+        lock.readLock().lock();
+        try {
+            current = writer;
+            size = writeEntry(current, id, buffer, offset, length, generation, references, binaryReferences);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (size >= maxFileSize) {
+            lock.writeLock().lock();
+            try {
+                // Another thread might have replaced the TAR writer already.
+                if (writer == current) {
+                    internalNewWriter();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static long writeEntry(TarWriter writer, UUID id, byte[] buffer, int offset, int length, GCGeneration generation, Set<UUID> references, Set<String> binaryReferences) throws IOException {
+        long size = writer.writeEntry(
+                id.getMostSignificantBits(),
+                id.getLeastSignificantBits(),
+                buffer,
+                offset,
+                length,
+                generation
+        );
+        if (references != null) {
+            for (UUID reference : references) {
+                writer.addGraphEdge(id, reference);
+            }
+        }
+        if (binaryReferences != null) {
+            for (String reference : binaryReferences) {
+                writer.addBinaryReference(generation, id, reference);
+            }
+        }
+        return size;
+    }
+
     /**
      * Creates a new TAR writer with a higher index number, reopens the previous
      * TAR writer as a TAR reader, and adds the TAR reader to the linked list.
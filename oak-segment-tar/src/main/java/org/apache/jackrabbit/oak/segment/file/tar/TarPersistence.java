@@ -52,19 +52,37 @@ public class TarPersistence implements SegmentNodeStorePersistence {
 
     private final File journal;
 
+    private final boolean compression;
+
     public TarPersistence(File directory) {
         this(directory, new File(directory, JOURNAL_FILE_NAME));
     }
 
+    public TarPersistence(File directory, boolean compression) {
+        this(directory, new File(directory, JOURNAL_FILE_NAME), compression);
+    }
+
     public TarPersistence(File directory, File journal) {
+        this(directory, journal, false);
+    }
+
+    /**
+     * @param directory   the directory of the TAR files
+     * @param journal     the journal file
+     * @param compression whether segments are written compressed. Compressed
+     *                    segments are always readable, independently of this
+     *                    setting.
+     */
+    public TarPersistence(File directory, File journal, boolean compression) {
         this.directory = directory;
         this.journal = journal;
+        this.compression = compression;
     }
 
     @Override
     public SegmentArchiveManager createArchiveManager(boolean memoryMapping, boolean offHeapAccess, IOMonitor ioMonitor,
                                                       FileStoreMonitor fileStoreMonitor, RemoteStoreMonitor remoteStoreMonitor) {
-        return new SegmentTarManager(directory, fileStoreMonitor, ioMonitor, memoryMapping, offHeapAccess);
+        return new SegmentTarManager(directory, fileStoreMonitor, ioMonitor, memoryMapping, offHeapAccess, compression);
     }
 
     @Override
@@ -29,6 +29,7 @@ import static org.apache.jackrabbit.oak.segment.file.tar.GCGeneration.newGCGener
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -335,32 +336,26 @@ public class TarReader implements Closeable {
     }
 
     /**
-     * Read the entries in this TAR file.
+     * Get the byte buffers of those of the given segments that are in this
+     * file. Reads of segments stored next to each other may be coalesced.
      *
-     * @return An array of {@link IndexEntry}.
+     * @param ids the identifiers of the segments
+     * @return the byte buffers of the segments found in this file, keyed by
+     * their identifier.
      */
-    @NotNull
-    SegmentArchiveEntry[] getEntries() {
-        List<SegmentArchiveEntry> entryList = archive.listSegments();
-        return entryList.toArray(new SegmentArchiveEntry[entryList.size()]);
+    Map<UUID, Buffer> readEntries(Collection<UUID> ids) throws IOException {
+        return archive.readSegments(ids);
     }
 
     /**
-     * Read the references of an entry in this TAR file.
+     * Read the entries in this TAR file.
      *
-     * @param id    The identifier of the entry.
-     * @param graph The content of the graph of this TAR file.
-     * @return The references of the provided TAR entry.
+     * @return An array of {@link IndexEntry}.
      */
     @NotNull
-    private static List<UUID> getReferences(UUID id, Map<UUID, List<UUID>> graph) {
-        List<UUID> references = graph.get(id);
-
-        if (references == null) {
-            return Collections.emptyList();
-        }
-
-        return references;
+    SegmentArchiveEntry[] getEntries() {
+        List<SegmentArchiveEntry> entryList = archive.listSegments();
+        return entryList.toArray(new SegmentArchiveEntry[entryList.size()]);
     }
 
     /**
@@ -429,7 +424,7 @@ public class TarReader implements Closeable {
      * @param context     An instance of {@link CleanupContext}.
      */
     void mark(Set<UUID> references, Set<UUID> reclaimable, CleanupContext context) throws IOException {
-        Map<UUID, List<UUID>> graph = getGraph();
+        SegmentGraph graph = getSegmentGraph();
         SegmentArchiveEntry[] entries = getEntries();
         for (int i = entries.length - 1; i >= 0; i--) {
             // A bulk segments is *always* written before any data segment referencing it.
@@ -443,11 +438,11 @@ public class TarReader implements Closeable {
             if (context.shouldReclaim(id, generation, references.remove(id))) {
                 reclaimable.add(id);
             } else {
-                for (UUID refId : getReferences(id, graph)) {
+                graph.forEachReference(id, refId -> {
                     if (context.shouldFollow(id, refId)) {
                         references.add(refId);
                     }
-                }
+                });
             }
         }
     }
@@ -542,37 +537,21 @@ public class TarReader implements Closeable {
             if (entry != null) {
                 long msb = entry.getMsb();
                 long lsb = entry.getLsb();
-                int size = entry.getLength();
                 GCGeneration gen = GCGeneration.newGCGeneration(entry);
-                byte[] data = new byte[size];
-                archive.readSegment(msb, lsb).get(data);
-                writer.writeEntry(msb, lsb, data, 0, size, gen);
+                Buffer buffer = archive.readSegment(msb, lsb);
+                byte[] data = new byte[buffer.remaining()];
+                buffer.get(data);
+                writer.writeEntry(msb, lsb, data, 0, data.length, gen);
             }
         }
 
         // Reconstruct the graph index for non-cleaned segments.
 
-        Map<UUID, List<UUID>> graph = getGraph();
-
-        for (Entry<UUID, List<UUID>> e : graph.entrySet()) {
-            if (cleaned.contains(e.getKey())) {
-                continue;
-            }
-
-            Set<UUID> vertices = newHashSet();
-
-            for (UUID vertex : e.getValue()) {
-                if (cleaned.contains(vertex)) {
-                    continue;
-                }
-
-                vertices.add(vertex);
+        getSegmentGraph().forEachEdge((from, to) -> {
+            if (!cleaned.contains(from) && !cleaned.contains(to)) {
+                writer.addGraphEdge(from, to);
             }
-
-            for (UUID vertex : vertices) {
-                writer.addGraphEdge(e.getKey(), vertex);
-            }
-        }
+        });
 
         // Reconstruct the binary reference index for non-cleaned segments.
 
@@ -619,6 +598,21 @@ public class TarReader implements Closeable {
         }
     }
 
+    /**
+     * Loads the optional pre-compiled graph entry from the given tar file as a
+     * view over the loaded entry, without parsing it.
+     *
+     * @return The graph, or {@code null} if one was not found.
+     */
+    SegmentGraph getSegmentGraph() throws IOException {
+        Buffer buffer = archive.getGraph();
+        if (buffer == null) {
+            return null;
+        } else {
+            return SegmentGraph.newSegmentGraph(buffer);
+        }
+    }
+
     private boolean hasGraph() {
         return archive.hasGraph();
     }
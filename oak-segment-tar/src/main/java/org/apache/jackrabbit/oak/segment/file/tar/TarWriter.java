@@ -22,8 +22,6 @@ package org.apache.jackrabbit.oak.segment.file.tar;
 import static org.apache.jackrabbit.guava.common.base.Preconditions.checkNotNull;
 import static org.apache.jackrabbit.guava.common.base.Preconditions.checkPositionIndexes;
 import static org.apache.jackrabbit.guava.common.base.Preconditions.checkState;
-import static org.apache.jackrabbit.guava.common.collect.Maps.newHashMap;
-import static org.apache.jackrabbit.guava.common.collect.Sets.newHashSet;
 import static java.lang.String.format;
 import static org.apache.jackrabbit.oak.segment.file.tar.TarConstants.FILE_NAME_FORMAT;
 import static org.apache.jackrabbit.oak.segment.file.tar.TarConstants.GRAPH_MAGIC;
@@ -35,6 +33,10 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.zip.CRC32;
 
 import org.apache.jackrabbit.oak.commons.Buffer;
@@ -72,7 +74,7 @@ class TarWriter implements Closeable {
     /**
      * Graph of references between segments.
      */
-    private final Map<UUID, Set<UUID>> graph = newHashMap();
+    private final Map<UUID, Set<UUID>> graph = new ConcurrentHashMap<>();
 
     private final SegmentArchiveManager archiveManager;
 
@@ -89,6 +91,19 @@ class TarWriter implements Closeable {
      */
     private final CounterStats segmentCount;
 
+    /**
+     * If {@code true}, entries are written to the archive concurrently instead
+     * of one after the other.
+     */
+    private final boolean concurrent;
+
+    /**
+     * Writes of entries share the read lock of this lock, so that {@link
+     * #close()} can wait for the writes in progress by acquiring its write
+     * lock.
+     */
+    private final ReadWriteLock writes = new ReentrantReadWriteLock();
+
     /**
      * Used for maintenance operations (GC or recovery) via the TarReader and
      * tests
@@ -98,14 +113,26 @@ class TarWriter implements Closeable {
         this.archive = archiveManager.create(archiveName);
         this.writeIndex = -1;
         this.segmentCount = NoopStats.INSTANCE;
+        this.concurrent = false;
     }
 
     TarWriter(SegmentArchiveManager archiveManager, int writeIndex, CounterStats segmentCountStats)
+    throws IOException {
+        this(archiveManager, writeIndex, segmentCountStats, false);
+    }
+
+    /**
+     * @param concurrent if {@code true}, entries are written concurrently if
+     *                   the archive supports it, see {@link
+     *                   SegmentArchiveWriter#isConcurrent()}.
+     */
+    TarWriter(SegmentArchiveManager archiveManager, int writeIndex, CounterStats segmentCountStats, boolean concurrent)
     throws IOException {
         this.archiveManager = archiveManager;
         this.archive = archiveManager.create(format(FILE_NAME_FORMAT, writeIndex, "a"));
         this.writeIndex = writeIndex;
         this.segmentCount = segmentCountStats;
+        this.concurrent = concurrent && archive.isConcurrent();
     }
 
     synchronized boolean containsEntry(long msb, long lsb) {
@@ -139,31 +166,48 @@ class TarWriter implements Closeable {
         checkNotNull(data);
         checkPositionIndexes(offset, offset + size, data.length);
 
-        synchronized (this) {
-            checkState(!closed);
+        Lock lock = writes.readLock();
+        lock.lock();
+        try {
+            if (concurrent) {
+                synchronized (this) {
+                    checkState(!closed);
+                }
+                return writeSegment(msb, lsb, data, offset, size, generation);
+            }
+            synchronized (this) {
+                checkState(!closed);
+                return writeSegment(msb, lsb, data, offset, size, generation);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            archive.writeSegment(msb, lsb, data, offset, size, generation.getGeneration(), generation.getFullGeneration(), generation.isCompacted());
-            segmentCount.inc();
-            long currentLength = archive.getLength();
+    private long writeSegment(long msb, long lsb, byte[] data, int offset, int size, GCGeneration generation) throws IOException {
+        archive.writeSegment(msb, lsb, data, offset, size, generation.getGeneration(), generation.getFullGeneration(), generation.isCompacted());
+        segmentCount.inc();
+        long currentLength = archive.getLength();
 
-            checkState(currentLength <= Integer.MAX_VALUE);
+        checkState(currentLength <= Integer.MAX_VALUE);
 
-            return currentLength;
-        }
+        return currentLength;
     }
 
     void addBinaryReference(GCGeneration generation, UUID segmentId, String reference) {
-        binaryReferences.addEntry(
-            generation.getGeneration(),
-            generation.getFullGeneration(),
-            generation.isCompacted(),
-            segmentId,
-            reference
-        );
+        synchronized (binaryReferences) {
+            binaryReferences.addEntry(
+                generation.getGeneration(),
+                generation.getFullGeneration(),
+                generation.isCompacted(),
+                segmentId,
+                reference
+            );
+        }
     }
 
     void addGraphEdge(UUID from, UUID to) {
-        graph.computeIfAbsent(from, k -> newHashSet()).add(to);
+        graph.computeIfAbsent(from, k -> ConcurrentHashMap.newKeySet()).add(to);
     }
 
     /**
@@ -199,11 +243,18 @@ class TarWriter implements Closeable {
         // Mark this writer as closed. Note that we only need to synchronize
         // this part, as no other synchronized methods should get invoked
         // once close() has been initiated (see related checkState calls).
-        synchronized (this) {
-            if (closed) {
-                return;
+        // Acquiring the write lock waits for the writes in progress.
+        Lock lock = writes.writeLock();
+        lock.lock();
+        try {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
             }
-            closed = true;
+        } finally {
+            lock.unlock();
         }
 
         // If nothing was written to this file, then we're already done.
@@ -243,11 +294,15 @@ class TarWriter implements Closeable {
         }
         close();
         int newIndex = writeIndex + 1;
-        return new TarWriter(archiveManager, newIndex, segmentCount);
+        return new TarWriter(archiveManager, newIndex, segmentCount, concurrent);
     }
 
     private void writeBinaryReferences() throws IOException {
-        archive.writeBinaryReferences(binaryReferences.write());
+        byte[] data;
+        synchronized (binaryReferences) {
+            data = binaryReferences.write();
+        }
+        archive.writeBinaryReferences(data);
     }
 
     private void writeGraph() throws IOException {
@@ -17,12 +17,17 @@
 
 package org.apache.jackrabbit.oak.segment.file.tar.binaries;
 
-import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 
+import org.apache.jackrabbit.guava.common.base.Charsets;
+import org.apache.jackrabbit.oak.commons.Buffer;
+
 /**
  * An index of binary references.
+ * <p>
+ * The index is a read-only view of the serialized index. Its entries are
+ * decoded from the underlying buffer every time they are iterated, so that
+ * the index does not hold more memory than the buffer it was loaded into.
  */
 public class BinaryReferencesIndex {
 
@@ -48,10 +53,23 @@ public class BinaryReferencesIndex {
 
     }
 
-    private final Map<Generation, Map<UUID, Set<String>>> references;
+    private final Buffer data;
+
+    private final int count;
+
+    private final boolean fullGenerations;
 
-    BinaryReferencesIndex(Map<Generation, Map<UUID, Set<String>>> references) {
-        this.references = references;
+    /**
+     * @param data            the entries of the index, without its footer.
+     * @param count           the number of generations in the index.
+     * @param fullGenerations {@code true} if every generation is stored with
+     *                        its full generation and its compacted flag, as
+     *                        in the second version of the index.
+     */
+    BinaryReferencesIndex(Buffer data, int count, boolean fullGenerations) {
+        this.data = data;
+        this.count = count;
+        this.fullGenerations = fullGenerations;
     }
 
     /**
@@ -60,19 +78,26 @@ public class BinaryReferencesIndex {
      * @param consumer An instance of {@link EntryConsumer}.
      */
     public void forEach(EntryConsumer consumer) {
-        references.forEach((generation, entries) -> {
-            entries.forEach((segment, references) -> {
-                references.forEach(reference -> {
-                    consumer.consume(
-                        generation.generation,
-                        generation.full,
-                        generation.compacted,
-                        segment,
-                        reference
-                    );
-                });
-            });
-        });
+        Buffer buffer = data.duplicate();
+        for (int i = 0; i < count; i++) {
+            int generation = buffer.getInt();
+            int full = generation;
+            boolean compacted = true;
+            if (fullGenerations) {
+                full = buffer.getInt();
+                compacted = buffer.get() != 0;
+            }
+            int segments = buffer.getInt();
+            for (int j = 0; j < segments; j++) {
+                UUID segment = new UUID(buffer.getLong(), buffer.getLong());
+                int references = buffer.getInt();
+                for (int k = 0; k < references; k++) {
+                    byte[] reference = new byte[buffer.getInt()];
+                    buffer.get(reference);
+                    consumer.consume(generation, full, compacted, segment, new String(reference, Charsets.UTF_8));
+                }
+            }
+        }
     }
 
 }
@@ -18,15 +18,8 @@
 package org.apache.jackrabbit.oak.segment.file.tar.binaries;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.UUID;
 import java.util.zip.CRC32;
 
-import org.apache.jackrabbit.guava.common.base.Charsets;
-
 import org.apache.jackrabbit.oak.commons.Buffer;
 import org.apache.jackrabbit.oak.segment.util.ReaderAtEnd;
 
@@ -88,65 +81,6 @@ class BinaryReferencesIndexLoaderV2 {
             throw new InvalidBinaryReferencesIndexException("Invalid checksum");
         }
 
-        return new BinaryReferencesIndex(parseBinaryReferencesIndex(count, data));
-    }
-
-    private static Map<Generation, Map<UUID, Set<String>>> parseBinaryReferencesIndex(int count, Buffer buffer) {
-        Map<Generation, Map<UUID, Set<String>>> result = new HashMap<>(count);
-        for (int i = 0; i < count; i++) {
-            Generation k = parseGeneration(buffer);
-            Map<UUID, Set<String>> v = parseEntriesBySegment(buffer);
-            result.put(k, v);
-        }
-        return result;
-    }
-
-    private static Generation parseGeneration(Buffer buffer) {
-        int generation = buffer.getInt();
-        int full = buffer.getInt();
-        boolean compacted = buffer.get() != 0;
-        return new Generation(generation, full, compacted);
-    }
-
-    private static Map<UUID, Set<String>> parseEntriesBySegment(Buffer buffer) {
-        return parseEntriesBySegment(buffer.getInt(), buffer);
-    }
-
-    private static Map<UUID, Set<String>> parseEntriesBySegment(int count, Buffer buffer) {
-        Map<UUID, Set<String>> result = new HashMap<>(count);
-        for (int i = 0; i < count; i++) {
-            UUID k = parseUUID(buffer);
-            Set<String> v = parseEntries(buffer);
-            result.put(k, v);
-        }
-        return result;
-    }
-
-    private static UUID parseUUID(Buffer buffer) {
-        long msb = buffer.getLong();
-        long lsb = buffer.getLong();
-        return new UUID(msb, lsb);
-    }
-
-    private static Set<String> parseEntries(Buffer buffer) {
-        return parseEntries(buffer.getInt(), buffer);
-    }
-
-    private static Set<String> parseEntries(int count, Buffer buffer) {
-        Set<String> entries = new HashSet<>(count);
-        for (int i = 0; i < count; i++) {
-            entries.add(parseString(buffer));
-        }
-        return entries;
-    }
-
-    private static String parseString(Buffer buffer) {
-        return parseString(buffer.getInt(), buffer);
-    }
-
-    private static String parseString(int length, Buffer buffer) {
-        byte[] data = new byte[length];
-        buffer.get(data);
-        return new String(data, Charsets.UTF_8);
+        return new BinaryReferencesIndex(data, count, true);
     }
 }
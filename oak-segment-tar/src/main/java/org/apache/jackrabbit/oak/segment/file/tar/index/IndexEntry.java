@@ -75,6 +75,17 @@ public interface IndexEntry extends SegmentArchiveEntry {
      */
     boolean isCompacted();
 
+    /**
+     * Return {@code true} if the segment of this entry is stored compressed in
+     * the TAR file. The length of a compressed entry is its length in the TAR
+     * file, not the length of the segment.
+     *
+     * @return {@code true} if the segment of this entry is stored compressed.
+     */
+    default boolean isCompressed() {
+        return false;
+    }
+
     Comparator<IndexEntry> POSITION_ORDER = new Comparator<IndexEntry>() {
         @Override
         public int compare(IndexEntry a, IndexEntry b) {
@@ -23,6 +23,18 @@ class IndexEntryV2 implements IndexEntry {
 
     static final int SIZE = 33;
 
+    /**
+     * Flag set in the last byte of an entry if the entry was generated by a
+     * compaction operation.
+     */
+    static final byte COMPACTED = 1;
+
+    /**
+     * Flag set in the last byte of an entry if the segment is stored
+     * compressed.
+     */
+    static final byte COMPRESSED = 2;
+
     private final Buffer index;
 
     private final int position;
@@ -64,7 +76,12 @@ class IndexEntryV2 implements IndexEntry {
 
     @Override
     public boolean isCompacted() {
-        return index.get(position + 32) != 0;
+        return (index.get(position + 32) & COMPACTED) != 0;
+    }
+
+    @Override
+    public boolean isCompressed() {
+        return (index.get(position + 32) & COMPRESSED) != 0;
     }
 
 }
@@ -47,6 +47,8 @@ public class IndexWriter {
 
         boolean isCompacted;
 
+        boolean isCompressed;
+
     }
 
     /**
@@ -85,6 +87,25 @@ public class IndexWriter {
      *                       compaction operation.
      */
     public void addEntry(long msb, long lsb, int offset, int size, int generation, int fullGeneration, boolean isCompacted) {
+        addEntry(msb, lsb, offset, size, generation, fullGeneration, isCompacted, false);
+    }
+
+    /**
+     * Add an entry to this index.
+     *
+     * @param msb            The most significant bits of the entry identifier.
+     * @param lsb            The least significant bits of the entry
+     *                       identifier.
+     * @param offset         The position of the entry in the file.
+     * @param size           The size of the entry in the file.
+     * @param generation     The generation of the entry.
+     * @param fullGeneration The full generation of the entry.
+     * @param isCompacted    Whether the entry is generated as part of a
+     *                       compaction operation.
+     * @param isCompressed   Whether the segment of the entry is stored
+     *                       compressed.
+     */
+    public void addEntry(long msb, long lsb, int offset, int size, int generation, int fullGeneration, boolean isCompacted, boolean isCompressed) {
         Entry entry = new Entry();
         entry.msb = msb;
         entry.lsb = lsb;
@@ -93,6 +114,7 @@ public class IndexWriter {
         entry.generation = generation;
         entry.fullGeneration = fullGeneration;
         entry.isCompacted = isCompacted;
+        entry.isCompressed = isCompressed;
         entries.add(entry);
     }
 
@@ -133,7 +155,7 @@ public class IndexWriter {
             buffer.putInt(entry.size);
             buffer.putInt(entry.generation);
             buffer.putInt(entry.fullGeneration);
-            buffer.put((byte) (entry.isCompacted ? 1 : 0));
+            buffer.put(flags(entry));
         }
 
         CRC32 checksum = new CRC32();
@@ -147,4 +169,15 @@ public class IndexWriter {
         return buffer.array();
     }
 
+    private static byte flags(Entry entry) {
+        int flags = 0;
+        if (entry.isCompacted) {
+            flags |= IndexEntryV2.COMPACTED;
+        }
+        if (entry.isCompressed) {
+            flags |= IndexEntryV2.COMPRESSED;
+        }
+        return (byte) flags;
+    }
+
 }
@@ -32,7 +32,13 @@ public class SimpleIndexEntry implements IndexEntry {
 
     private final boolean compacted;
 
+    private final boolean compressed;
+
     public SimpleIndexEntry(long msb, long lsb, int position, int length, int generation, int fullGeneration, boolean compacted) {
+        this(msb, lsb, position, length, generation, fullGeneration, compacted, false);
+    }
+
+    public SimpleIndexEntry(long msb, long lsb, int position, int length, int generation, int fullGeneration, boolean compacted, boolean compressed) {
         this.msb = msb;
         this.lsb = lsb;
         this.position = position;
@@ -40,6 +46,7 @@ public class SimpleIndexEntry implements IndexEntry {
         this.generation = generation;
         this.fullGeneration = fullGeneration;
         this.compacted = compacted;
+        this.compressed = compressed;
     }
 
     @Override
@@ -76,4 +83,9 @@ public class SimpleIndexEntry implements IndexEntry {
     public boolean isCompacted() {
         return compacted;
     }
+
+    @Override
+    public boolean isCompressed() {
+        return compressed;
+    }
 }
@@ -19,6 +19,7 @@
 
 package org.apache.jackrabbit.oak.segment.file.tooling;
 
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
 import static org.apache.jackrabbit.oak.api.Type.BINARIES;
 import static org.apache.jackrabbit.oak.api.Type.BINARY;
 import static org.apache.jackrabbit.oak.commons.PathUtils.concat;
@@ -33,11 +34,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.jackrabbit.oak.api.Blob;
 import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.segment.RecordId;
 import org.apache.jackrabbit.oak.segment.SegmentBlob;
+import org.apache.jackrabbit.oak.segment.SegmentNodeState;
 import org.apache.jackrabbit.oak.segment.SegmentNodeStore;
 import org.apache.jackrabbit.oak.segment.SegmentNodeStoreBuilders;
 import org.apache.jackrabbit.oak.segment.SegmentNotFoundException;
@@ -49,6 +59,58 @@ import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
 
 public class ConsistencyChecker {
 
+    /**
+     * Consistent subtrees of at least this many nodes are remembered, so that
+     * they are not traversed again when they are shared between the trees
+     * being checked, e.g. between the head state and the checkpoints.
+     */
+    private static final int VISITED_SUBTREE_MIN_SIZE = 1000;
+
+    /**
+     * A child is checked by the current thread instead of being forked when
+     * there are already this many tasks waiting to be stolen.
+     */
+    private static final int MAX_SURPLUS_QUEUED_TASKS = 3;
+
+    /**
+     * Interval between successive calls to {@link #onCheckTreeProgress(long,
+     * long, long)}.
+     */
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+
+    private final int concurrency;
+
+    /**
+     * Results of the consistent subtrees already checked, by record id of
+     * their root node.
+     */
+    private final Map<RecordId, SubtreeResult> visited = new ConcurrentHashMap<>();
+
+    /**
+     * Create a consistency checker traversing the trees on the calling thread.
+     */
+    public ConsistencyChecker() {
+        this(1);
+    }
+
+    /**
+     * Create a consistency checker traversing the trees with {@code
+     * concurrency} threads. The result of the check does not depend on the
+     * concurrency. With more than one thread, {@link #onCheckNode(String)},
+     * {@link #onCheckProperty()} and {@link #onCheckPropertyEnd(String,
+     * PropertyState)} are not called during the traversal of a tree. {@link
+     * #onCheckNodes(int, int)} is called at its end instead and {@link
+     * #onCheckTreeProgress(long, long, long)} periodically while it runs. All
+     * callbacks are invoked on the calling thread.
+     *
+     * @param concurrency number of threads traversing a tree, strictly
+     *                    positive.
+     */
+    public ConsistencyChecker(int concurrency) {
+        checkArgument(concurrency > 0, "concurrency must be strictly positive");
+        this.concurrency = concurrency;
+    }
+
     private static NodeState getDescendantOrNull(NodeState root, String path) {
         NodeState descendant = NodeStateUtils.getNode(root, path);
         if (descendant.exists()) {
@@ -131,6 +193,27 @@ public class ConsistencyChecker {
         // Do nothing.
     }
 
+    /**
+     * Called at the end of the concurrent traversal of a tree with the number
+     * of nodes and properties checked, as they would have been reported by
+     * {@link #onCheckNode(String)} and {@link #onCheckProperty()} for a
+     * traversal on a single thread.
+     */
+    protected void onCheckNodes(int nodeCount, int propertyCount) {
+        // Do nothing.
+    }
+
+    /**
+     * Called periodically during the concurrent traversal of a tree.
+     *
+     * @param nodeCount     number of nodes checked so far
+     * @param propertyCount number of properties checked so far
+     * @param elapsedMillis time since the start of the traversal
+     */
+    protected void onCheckTreeProgress(long nodeCount, long propertyCount, long elapsedMillis) {
+        // Do nothing.
+    }
+
     public static class Revision {
 
         private final String revision;
@@ -212,6 +295,9 @@ public class ConsistencyChecker {
             return path;
         }
 
+        if (concurrency > 1) {
+            return checkNodeAndDescendantsConcurrently(node, path, binaries);
+        }
         return checkNodeAndDescendants(node, path, binaries);
     }
 
@@ -468,27 +554,7 @@ public class ConsistencyChecker {
     private String checkNode(NodeState node, String path, boolean checkBinaries) {
         try {
             onCheckNode(path);
-            for (PropertyState propertyState : node.getProperties()) {
-                Type<?> type = propertyState.getType();
-                boolean checked = false;
-
-                if (type == BINARY) {
-                    checked = traverse(propertyState.getValue(BINARY), checkBinaries);
-                } else if (type == BINARIES) {
-                    for (Blob blob : propertyState.getValue(BINARIES)) {
-                        checked = checked | traverse(blob, checkBinaries);
-                    }
-                } else {
-                    propertyState.getValue(type);
-                    onCheckProperty();
-                    checked = true;
-                }
-
-                if (checked) {
-                    onCheckPropertyEnd(path, propertyState);
-                }
-            }
-
+            checkProperties(node, path, checkBinaries, null);
             return null;
         } catch (RuntimeException | IOException e) {
             onCheckNodeError(path, e);
@@ -496,6 +562,45 @@ public class ConsistencyChecker {
         }
     }
 
+    /**
+     * Checks the properties of a node. Checked properties are reported to
+     * {@link #onCheckProperty()} and {@link #onCheckPropertyEnd(String,
+     * PropertyState)} if {@code result} is {@code null}, and counted in
+     * {@code result} otherwise.
+     */
+    private void checkProperties(NodeState node, String path, boolean checkBinaries, SubtreeResult result) throws IOException {
+        for (PropertyState propertyState : node.getProperties()) {
+            Type<?> type = propertyState.getType();
+            boolean checked = false;
+
+            if (type == BINARY) {
+                checked = checkProperty(traverse(propertyState.getValue(BINARY), checkBinaries), result);
+            } else if (type == BINARIES) {
+                for (Blob blob : propertyState.getValue(BINARIES)) {
+                    checked = checked | checkProperty(traverse(blob, checkBinaries), result);
+                }
+            } else {
+                propertyState.getValue(type);
+                checked = checkProperty(true, result);
+            }
+
+            if (checked && result == null) {
+                onCheckPropertyEnd(path, propertyState);
+            }
+        }
+    }
+
+    private boolean checkProperty(boolean checked, SubtreeResult result) {
+        if (checked) {
+            if (result == null) {
+                onCheckProperty();
+            } else {
+                result.propertyCount++;
+            }
+        }
+        return checked;
+    }
+
     /**
      * Recursively checks the consistency of a node and its descendants at the
      * given path.
@@ -530,7 +635,202 @@ public class ConsistencyChecker {
         }
     }
 
-    private boolean traverse(Blob blob, boolean checkBinaries) throws IOException {
+    /**
+     * Checks the consistency of a node and its descendants like {@link
+     * #checkNodeAndDescendants(NodeState, String, boolean)}, splitting the
+     * traversal across {@link #concurrency} threads. The first inconsistency
+     * in traversal order is reported, with the same node and property counts
+     * as a traversal on a single thread.
+     */
+    private String checkNodeAndDescendantsConcurrently(NodeState node, String path, boolean checkBinaries) {
+        Traversal traversal = new Traversal(checkBinaries);
+        SubtreeCheck check = new SubtreeCheck(traversal, node, path);
+        ForkJoinPool pool = new ForkJoinPool(concurrency);
+        long start = System.currentTimeMillis();
+        try {
+            pool.execute(check);
+            SubtreeResult result = null;
+            while (result == null) {
+                try {
+                    result = check.get(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    onCheckTreeProgress(traversal.nodeCount.sum(), traversal.propertyCount.sum(), System.currentTimeMillis() - start);
+                }
+            }
+
+            onCheckNodes(result.nodeCount, result.propertyCount);
+            if (result.corruptPath != null) {
+                if (result.treeError) {
+                    onCheckTreeError(result.corruptPath, result.error);
+                } else {
+                    onCheckNodeError(result.corruptPath, result.error);
+                }
+            }
+            return result.corruptPath;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while checking " + path, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unexpected failure while checking " + path, e.getCause());
+        } finally {
+            // Speculative checks still running stop at their next node. They
+            // are not interrupted, so that they can't break the TAR readers
+            // shared with the check of the remaining revisions.
+            traversal.done = true;
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static RecordId getRecordId(NodeState node) {
+        if (node instanceof SegmentNodeState) {
+            return ((SegmentNodeState) node).getRecordId();
+        }
+        return null;
+    }
+
+    /**
+     * Outcome of the check of a subtree.
+     */
+    private static class SubtreeResult {
+
+        final boolean checkBinaries;
+
+        int nodeCount;
+
+        int propertyCount;
+
+        /**
+         * Path of the first inconsistency, or {@code null} if the subtree is
+         * consistent.
+         */
+        String corruptPath;
+
+        Exception error;
+
+        /**
+         * Whether {@link #error} was raised while iterating over the children
+         * of {@link #corruptPath} rather than while checking its properties.
+         */
+        boolean treeError;
+
+        SubtreeResult(boolean checkBinaries) {
+            this.checkBinaries = checkBinaries;
+        }
+
+    }
+
+    /**
+     * State shared by the tasks checking a tree.
+     */
+    private static class Traversal {
+
+        final boolean checkBinaries;
+
+        final LongAdder nodeCount = new LongAdder();
+
+        final LongAdder propertyCount = new LongAdder();
+
+        volatile boolean done;
+
+        Traversal(boolean checkBinaries) {
+            this.checkBinaries = checkBinaries;
+        }
+
+    }
+
+    private class SubtreeCheck extends RecursiveTask<SubtreeResult> {
+
+        private final Traversal traversal;
+
+        private final NodeState node;
+
+        private final String path;
+
+        SubtreeCheck(Traversal traversal, NodeState node, String path) {
+            this.traversal = traversal;
+            this.node = node;
+            this.path = path;
+        }
+
+        @Override
+        protected SubtreeResult compute() {
+            RecordId id = getRecordId(node);
+            if (id != null) {
+                SubtreeResult result = visited.get(id);
+                if (result != null && result.checkBinaries == traversal.checkBinaries) {
+                    traversal.nodeCount.add(result.nodeCount);
+                    traversal.propertyCount.add(result.propertyCount);
+                    return result;
+                }
+            }
+
+            SubtreeResult result = new SubtreeResult(traversal.checkBinaries);
+            result.nodeCount = 1;
+            try {
+                checkProperties(node, path, traversal.checkBinaries, result);
+            } catch (RuntimeException | IOException e) {
+                result.corruptPath = path;
+                result.error = e;
+            }
+            traversal.nodeCount.increment();
+            traversal.propertyCount.add(result.propertyCount);
+            if (result.corruptPath != null || traversal.done) {
+                return result;
+            }
+
+            // Fork the children while other threads are looking for work and
+            // check them directly otherwise. A child checked directly and
+            // found inconsistent ends the iteration, as it would on a single
+            // thread.
+            List<SubtreeCheck> children = new ArrayList<>();
+            RuntimeException treeError = null;
+            try {
+                for (ChildNodeEntry cne : node.getChildNodeEntries()) {
+                    SubtreeCheck child = new SubtreeCheck(traversal, cne.getNodeState(), concat(path, cne.getName()));
+                    children.add(child);
+                    if (getSurplusQueuedTaskCount() < MAX_SURPLUS_QUEUED_TASKS) {
+                        child.fork();
+                    } else if (child.invoke().corruptPath != null) {
+                        break;
+                    }
+                }
+            } catch (RuntimeException e) {
+                treeError = e;
+            }
+
+            for (int i = 0; i < children.size(); i++) {
+                SubtreeResult child = children.get(i).join();
+                result.nodeCount += child.nodeCount;
+                result.propertyCount += child.propertyCount;
+                if (child.corruptPath != null) {
+                    result.corruptPath = child.corruptPath;
+                    result.error = child.error;
+                    result.treeError = child.treeError;
+                    for (SubtreeCheck sibling : children.subList(i + 1, children.size())) {
+                        sibling.cancel(false);
+                    }
+                    return result;
+                }
+            }
+
+            if (treeError != null) {
+                result.corruptPath = path;
+                result.error = treeError;
+                result.treeError = true;
+            } else if (id != null && !traversal.done && result.nodeCount >= VISITED_SUBTREE_MIN_SIZE) {
+                visited.putIfAbsent(id, result);
+            }
+            return result;
+        }
+
+    }
+
+    private static boolean traverse(Blob blob, boolean checkBinaries) throws IOException {
         if (checkBinaries && !isExternal(blob)) {
             try (InputStream s = blob.getNewStream()) {
                 byte[] buffer = new byte[8192];
@@ -539,7 +839,6 @@ public class ConsistencyChecker {
                     l = s.read(buffer, 0, buffer.length);
                 }
             }
-            onCheckProperty();
             return true;
         }
 
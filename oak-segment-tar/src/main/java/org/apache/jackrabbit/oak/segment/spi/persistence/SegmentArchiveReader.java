@@ -20,7 +20,11 @@ package org.apache.jackrabbit.oak.segment.spi.persistence;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 import org.apache.jackrabbit.oak.commons.Buffer;
 import org.jetbrains.annotations.NotNull;
@@ -42,6 +46,27 @@ public interface SegmentArchiveReader extends Closeable {
     @Nullable
     Buffer readSegment(long msb, long lsb) throws IOException;
 
+    /**
+     * Read several segments at once. Implementations may coalesce the reads
+     * of segments stored next to each other in the archive. The default
+     * implementation reads the segments one by one.
+     *
+     * @param ids the identifiers of the segments to read
+     * @return byte buffers containing the data of the segments found in this
+     * archive, keyed by their identifier
+     */
+    @NotNull
+    default Map<UUID, Buffer> readSegments(@NotNull Collection<UUID> ids) throws IOException {
+        Map<UUID, Buffer> segments = new HashMap<>();
+        for (UUID id : ids) {
+            Buffer buffer = readSegment(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (buffer != null) {
+                segments.put(id, buffer);
+            }
+        }
+        return segments;
+    }
+
     /**
      * Check if the segment exists.
      *
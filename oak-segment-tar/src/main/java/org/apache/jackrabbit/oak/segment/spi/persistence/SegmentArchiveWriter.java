@@ -40,7 +40,10 @@ import org.jetbrains.annotations.Nullable;
  *     <li>{@link #writeGraph(byte[])} (optionally)</li>
  *     <li>{@link #close()}</li>
  * </ol>
- * All the calls above are synchronized by the caller.
+ * All the calls above are synchronized by the caller, unless the archive
+ * declares to be {@linkplain #isConcurrent() concurrent}. In this case,
+ * {@link #writeSegment(long, long, byte[], int, int, int, int, boolean)} and
+ * {@link #flush()} may be invoked concurrently by multiple threads.
  * In the first phase of the writer lifecycle, the
  * write() and the flush() will be called many times, in an unspecified order. At
  * the end of the writer life cycle, the rest of the methods (2-4) will be called.
@@ -133,6 +136,18 @@ public interface SegmentArchiveWriter {
      */
     void flush() throws IOException;
 
+    /**
+     * Check if segments can be written to this archive by multiple threads
+     * concurrently. A concurrent archive adds a segment to the archive only
+     * once it has been completely written, and its {@link #flush()} saves
+     * all the segments written before it was invoked.
+     *
+     * @return {@code true} if segments can be written concurrently
+     */
+    default boolean isConcurrent() {
+        return false;
+    }
+
     /**
      * Get the name of the archive.
      *
@@ -17,11 +17,21 @@
 
 package org.apache.jackrabbit.oak.segment.standby.client;
 
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
+
 import java.io.File;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
@@ -71,6 +81,7 @@ class StandbyClient implements AutoCloseable {
         private String clientId;
         private boolean secure;
         private int readTimeoutMs;
+        private int requestWindow = 1;
         private File spoolFolder;
         private String sslKeyFile;
         private String sslKeyPassword;
@@ -109,6 +120,12 @@ class StandbyClient implements AutoCloseable {
             return this;
         }
 
+        public Builder withRequestWindow(int requestWindow) {
+            checkArgument(requestWindow > 0, "requestWindow must be positive");
+            this.requestWindow = requestWindow;
+            return this;
+        }
+
         public Builder withSpoolFolder(File spoolFolder) {
             this.spoolFolder = spoolFolder;
             return this;
@@ -151,13 +168,20 @@ class StandbyClient implements AutoCloseable {
 
     private final int readTimeoutMs;
 
+    private final int requestWindow;
+
     private final String clientId;
 
     private Channel channel;
 
+    private long requestCount;
+
+    private long requestNanos;
+
     StandbyClient(Builder builder) throws InterruptedException {
         this.clientId = builder.clientId;
         this.readTimeoutMs = builder.readTimeoutMs;
+        this.requestWindow = builder.requestWindow;
 
         Bootstrap b = new Bootstrap()
             .group(builder.group)
@@ -286,8 +310,116 @@ class StandbyClient implements AutoCloseable {
         return response.getReferences();
     }
 
+    /**
+     * Fetch the content of many segments, keeping up to the request window
+     * of requests outstanding on the channel at any time. The responses are
+     * passed to the consumer in the order they are received.
+     *
+     * @param segmentIds the identifiers of the segments to fetch.
+     * @param consumer   the consumer of the identifier and of the content of
+     *                   every segment.
+     * @return {@code false} if no response has been received within the read
+     * timeout, {@code true} otherwise.
+     */
+    boolean getSegments(List<String> segmentIds, BiConsumer<String, byte[]> consumer) throws InterruptedException {
+        return pipeline(
+            segmentIds,
+            segmentId -> new GetSegmentRequest(clientId, segmentId),
+            segmentQueue,
+            GetSegmentResponse::getSegmentId,
+            response -> consumer.accept(response.getSegmentId(), response.getSegmentData())
+        );
+    }
+
+    /**
+     * Fetch the references of many segments, keeping up to the request window
+     * of requests outstanding on the channel at any time. The responses are
+     * passed to the consumer in the order they are received.
+     *
+     * @param segmentIds the identifiers of the segments whose references to
+     *                   fetch.
+     * @param consumer   the consumer of the identifier and of the references
+     *                   of every segment.
+     * @return {@code false} if no response has been received within the read
+     * timeout, {@code true} otherwise.
+     */
+    boolean getReferences(List<String> segmentIds, BiConsumer<String, Iterable<String>> consumer) throws InterruptedException {
+        return pipeline(
+            segmentIds,
+            segmentId -> new GetReferencesRequest(clientId, segmentId),
+            referencesQueue,
+            GetReferencesResponse::getSegmentId,
+            response -> consumer.accept(response.getSegmentId(), response.getReferences())
+        );
+    }
+
+    private <R> boolean pipeline(
+        List<String> segmentIds,
+        Function<String, Object> newRequest,
+        BlockingQueue<R> queue,
+        Function<R, String> segmentIdOf,
+        Consumer<R> consumer
+    ) throws InterruptedException {
+        Map<UUID, Long> pending = new HashMap<>();
+        Iterator<String> ids = segmentIds.iterator();
+
+        while (ids.hasNext() || !pending.isEmpty()) {
+            boolean sent = false;
+
+            while (ids.hasNext() && pending.size() < requestWindow) {
+                String segmentId = ids.next();
+                if (pending.putIfAbsent(UUID.fromString(segmentId), System.nanoTime()) == null) {
+                    channel.write(newRequest.apply(segmentId));
+                    sent = true;
+                }
+            }
+
+            if (sent) {
+                channel.flush();
+            }
+
+            R response = queue.poll(readTimeoutMs, TimeUnit.MILLISECONDS);
+
+            if (response == null) {
+                return false;
+            }
+
+            Long start = pending.remove(UUID.fromString(segmentIdOf.apply(response)));
+
+            if (start == null) {
+                log.debug("Discarding unexpected response for segment {}", segmentIdOf.apply(response));
+                continue;
+            }
+
+            requestCount++;
+            requestNanos += System.nanoTime() - start;
+            consumer.accept(response);
+        }
+
+        return true;
+    }
+
     public int getReadTimeoutMs() {
         return readTimeoutMs;
     }
+
+    int getRequestWindow() {
+        return requestWindow;
+    }
+
+    /**
+     * @return the number of pipelined requests that received a response.
+     */
+    long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return the time in nanoseconds between sending the pipelined requests
+     * and receiving their responses, summed over all the requests.
+     */
+    long getRequestNanos() {
+        return requestNanos;
+    }
     
 }
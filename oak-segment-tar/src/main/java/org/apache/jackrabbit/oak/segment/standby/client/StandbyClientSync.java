@@ -19,6 +19,8 @@
 
 package org.apache.jackrabbit.oak.segment.standby.client;
 
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
+
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
@@ -56,6 +58,7 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
         private FileStore fileStore;
         private boolean secure;
         private int readTimeoutMs;
+        private int requestWindow = DEFAULT_REQUEST_WINDOW;
         private boolean autoClean;
         private File spoolFolder;
         private String sslKeyFile;
@@ -90,6 +93,12 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
             return this;
         }
 
+        public Builder withRequestWindow(int requestWindow) {
+            checkArgument(requestWindow > 0, "requestWindow must be positive");
+            this.requestWindow = requestWindow;
+            return this;
+        }
+
         public Builder withAutoClean(boolean autoClean) {
             this.autoClean = autoClean;
             return this;
@@ -127,6 +136,12 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
 
     public static final String CLIENT_ID_PROPERTY_NAME = "standbyID";
 
+    /**
+     * Default maximum number of segment and reference requests outstanding
+     * on the connection to the primary.
+     */
+    public static final int DEFAULT_REQUEST_WINDOW = 32;
+
     private static final Logger log = LoggerFactory.getLogger(StandbyClientSync.class);
 
     private static final AtomicInteger standbyRunCounter = new AtomicInteger();
@@ -137,6 +152,8 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
 
     private final int readTimeoutMs;
 
+    private final int requestWindow;
+
     private final boolean autoClean;
 
     private final CommunicationObserver observer;
@@ -173,6 +190,14 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
 
     private long syncEndTimestamp;
 
+    private volatile long segmentsFetched;
+
+    private volatile long bytesFetched;
+
+    private volatile long fetchThroughput;
+
+    private volatile long meanRequestLatencyMicros;
+
     private static String clientId() {
         String s = System.getProperty(CLIENT_ID_PROPERTY_NAME);
 
@@ -193,6 +218,7 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
         this.port = builder.port;
         this.secure = builder.secure;
         this.readTimeoutMs = builder.readTimeoutMs;
+        this.requestWindow = builder.requestWindow;
         this.autoClean = builder.autoClean;
         this.fileStore = builder.fileStore;
         this.observer = new CommunicationObserver(clientId());
@@ -260,12 +286,14 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
                      .withClientId(observer.getID())
                      .withSecure(secure)
                      .withReadTimeoutMs(readTimeoutMs)
+                     .withRequestWindow(requestWindow)
                      .withSpoolFolder(spoolFolder)
                      .withSSLKeyFile(sslKeyFile)
                      .withSSLKeyPassword(sslKeyPassword)
                      .withSSLChainFile(sslChainFile)
                      .withSSLSubjectPattern(sslSubjectPattern).build()) {
                     execution.execute(client);
+                    updateFetchStats(client, System.currentTimeMillis() - startTimestamp);
                 }
 
                 fileStore.flush();
@@ -292,6 +320,14 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
         }
     }
 
+    private void updateFetchStats(StandbyClient client, long durationMs) {
+        long requests = client.getRequestCount();
+        this.segmentsFetched = execution.getSegmentCount();
+        this.bytesFetched = execution.getSegmentBytes();
+        this.fetchThroughput = bytesFetched * 1000 / Math.max(durationMs, 1);
+        this.meanRequestLatencyMicros = requests == 0 ? 0 : client.getRequestNanos() / requests / 1000;
+    }
+
     @NotNull
     private static GCGeneration headGeneration(FileStore fileStore) {
         return fileStore.getHead().getRecordId().getSegment().getGcGeneration();
@@ -371,6 +407,31 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
         return syncEndTimestamp;
     }
 
+    @Override
+    public int getRequestWindow() {
+        return requestWindow;
+    }
+
+    @Override
+    public long getSegmentsFetched() {
+        return segmentsFetched;
+    }
+
+    @Override
+    public long getBytesFetched() {
+        return bytesFetched;
+    }
+
+    @Override
+    public long getFetchThroughput() {
+        return fetchThroughput;
+    }
+
+    @Override
+    public long getMeanRequestLatencyMicros() {
+        return meanRequestLatencyMicros;
+    }
+
     private void closeGroup() {
         if (group == null) {
             return;
@@ -17,11 +17,21 @@
 
 package org.apache.jackrabbit.oak.segment.standby.client;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.function.BiConsumer;
 
 import org.apache.jackrabbit.guava.common.base.Stopwatch;
 import org.apache.jackrabbit.guava.common.base.Supplier;
@@ -52,6 +62,10 @@ class StandbyClientSyncExecution {
 
     private final Supplier<Boolean> running;
 
+    private long segmentCount;
+
+    private long segmentBytes;
+
     StandbyClientSyncExecution(FileStore store, Supplier<Boolean> running) {
         this.store = store;
         this.idProvider = store.getSegmentIdProvider();
@@ -59,6 +73,9 @@ class StandbyClientSyncExecution {
     }
 
     void execute(StandbyClient client) throws Exception {
+        segmentCount = 0;
+        segmentBytes = 0;
+
         RecordId remoteHead = getHead(client);
 
         if (remoteHead == null) {
@@ -106,55 +123,95 @@ class StandbyClientSyncExecution {
 
     private void copySegmentHierarchyFromPrimary(StandbyClient client, UUID segmentId) throws Exception {
         Set<UUID> visited = new HashSet<>();
-        List<UUID> bulk = new LinkedList<>();
-        List<UUID> data = new LinkedList<>();
+        Map<UUID, List<UUID>> graph = new LinkedHashMap<>();
+        List<UUID> bulk = new ArrayList<>();
 
-        deriveTopologicalOrder(client, segmentId, visited, data, bulk);
+        // Use BFS to discover the missing segments, so that the
+        // references of a whole level of the segment graph are
+        // requested at once and can be pipelined
 
-        for (UUID id : bulk) {
-            log.info("Copying bulk segment {} from primary", id);
-            copySegmentFromPrimary(client, id);
-        }
+        List<UUID> level = Collections.singletonList(segmentId);
 
-        for (UUID id : data) {
-            log.info("Copying data segment {} from primary", id);
-            copySegmentFromPrimary(client, id);
-        }
-    }
-
-    private void deriveTopologicalOrder(StandbyClient client, UUID id, Set<UUID> visited, List<UUID> data, List<UUID> bulk) throws Exception {
-        if (visited.contains(id) || isLocal(id)) {
-            return;
-        }
+        while (!level.isEmpty()) {
+            List<String> data = new ArrayList<>();
 
-        // Use DFS to traverse segment graph and make sure
-        // to add each data segment to the data list only
-        // after all its references were already added
+            for (UUID id : level) {
+                if (!visited.add(id) || isLocal(id)) {
+                    continue;
+                }
 
-        log.debug("Inspecting segment {}", id);
-        visited.add(id);
+                log.debug("Inspecting segment {}", id);
 
-        if (SegmentId.isDataSegmentId(id.getLeastSignificantBits())) {
-            for (String s : readReferences(client, id)) {
-                UUID referenced = UUID.fromString(s);
-                log.debug("Found reference from {} to {}", id, referenced);
-                deriveTopologicalOrder(client, referenced, visited, data, bulk);
+                if (SegmentId.isDataSegmentId(id.getLeastSignificantBits())) {
+                    data.add(id.toString());
+                } else {
+                    bulk.add(id);
+                }
             }
 
-            data.add(id);
-        } else {
-            bulk.add(id);
+            List<UUID> next = new ArrayList<>();
+
+            readReferences(client, data, (id, references) -> {
+                List<UUID> referenced = new ArrayList<>();
+                for (String s : references) {
+                    log.debug("Found reference from {} to {}", id, s);
+                    referenced.add(UUID.fromString(s));
+                }
+                graph.put(UUID.fromString(id), referenced);
+                next.addAll(referenced);
+            });
+
+            level = next;
         }
+
+        copySegmentsFromPrimary(client, bulk, "bulk");
+        copySegmentsFromPrimary(client, topologicalOrder(graph), "data");
     }
 
-    private Iterable<String> readReferences(StandbyClient client, UUID id) throws InterruptedException {
-        Iterable<String> references = client.getReferences(id.toString());
+    /**
+     * Order the data segments such that every segment comes after all the
+     * segments it references. This guarantees that a segment is only written
+     * locally when its references already are, so that a local segment never
+     * has to be inspected again.
+     */
+    private static List<UUID> topologicalOrder(Map<UUID, List<UUID>> graph) {
+        List<UUID> order = new ArrayList<>(graph.size());
+        Set<UUID> visited = new HashSet<>();
+        Deque<UUID> path = new ArrayDeque<>();
+        Deque<Iterator<UUID>> references = new ArrayDeque<>();
+
+        for (Map.Entry<UUID, List<UUID>> entry : graph.entrySet()) {
+            if (!visited.add(entry.getKey())) {
+                continue;
+            }
 
-        if (references == null) {
-            throw new IllegalStateException(String.format("Unable to read references of segment %s from primary", id));
+            path.push(entry.getKey());
+            references.push(entry.getValue().iterator());
+
+            while (!path.isEmpty()) {
+                Iterator<UUID> it = references.peek();
+
+                if (it.hasNext()) {
+                    UUID referenced = it.next();
+                    List<UUID> next = graph.get(referenced);
+                    if (next != null && visited.add(referenced)) {
+                        path.push(referenced);
+                        references.push(next.iterator());
+                    }
+                } else {
+                    references.pop();
+                    order.add(path.pop());
+                }
+            }
         }
 
-        return references;
+        return order;
+    }
+
+    private static void readReferences(StandbyClient client, List<String> ids, BiConsumer<String, Iterable<String>> consumer) throws InterruptedException {
+        if (!client.getReferences(ids, consumer)) {
+            throw new IllegalStateException(String.format("Unable to read references of segments %s from primary", ids));
+        }
     }
 
     private boolean isLocal(UUID id) {
@@ -164,17 +221,70 @@ class StandbyClientSyncExecution {
         ));
     }
 
-    private void copySegmentFromPrimary(StandbyClient client, UUID uuid) throws Exception {
-        byte[] data = client.getSegment(uuid.toString());
+    private void copySegmentsFromPrimary(StandbyClient client, List<UUID> ids, String type) throws Exception {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        // Responses are buffered until all the segments preceding them
+        // have been written, to preserve the order of the segments
+
+        Map<UUID, byte[]> received = new HashMap<>();
+        Iterator<UUID> pending = ids.iterator();
+        UUID[] head = {pending.next()};
+
+        List<String> requests = new ArrayList<>(ids.size());
+        for (UUID id : ids) {
+            requests.add(id.toString());
+        }
+
+        boolean complete;
+
+        try {
+            complete = client.getSegments(requests, (id, data) -> {
+                received.put(UUID.fromString(id), data);
+                while (head[0] != null && received.containsKey(head[0])) {
+                    log.info("Copying {} segment {} from primary", type, head[0]);
+                    writeSegment(head[0], received.remove(head[0]));
+                    head[0] = pending.hasNext() ? pending.next() : null;
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
 
-        if (data == null) {
-            throw new IllegalStateException("Unable to read segment " + uuid);
+        if (!complete || head[0] != null) {
+            throw new IllegalStateException("Unable to read segment " + head[0]);
         }
+    }
 
+    private void writeSegment(UUID uuid, byte[] data) {
         long msb = uuid.getMostSignificantBits();
         long lsb = uuid.getLeastSignificantBits();
         SegmentId segmentId = idProvider.newSegmentId(msb, lsb);
-        store.writeSegment(segmentId, data, 0, data.length);
+        try {
+            store.writeSegment(segmentId, data, 0, data.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segmentCount++;
+        segmentBytes += data.length;
+    }
+
+    /**
+     * @return the number of segments copied from the primary by the last
+     * execution.
+     */
+    long getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * @return the number of bytes of the segments copied from the primary by
+     * the last execution.
+     */
+    long getSegmentBytes() {
+        return segmentBytes;
     }
 
 }
@@ -33,6 +33,21 @@ public interface ClientStandbyStatusMBean extends StandbyStatusMBean {
     @Description("Local timestamp of the moment when the last sync cycle ended")
     long getSyncEndTimestamp();
 
+    @Description("maximum number of segment and reference requests outstanding on the connection to the primary")
+    int getRequestWindow();
+
+    @Description("number of segments fetched from the primary during the last sync cycle")
+    long getSegmentsFetched();
+
+    @Description("number of bytes of the segments fetched from the primary during the last sync cycle")
+    long getBytesFetched();
+
+    @Description("number of bytes of segments fetched per second during the last sync cycle")
+    long getFetchThroughput();
+
+    @Description("mean latency in microseconds of the segment and reference requests of the last sync cycle")
+    long getMeanRequestLatencyMicros();
+
     // expose the informations as operations, too
 
     @Description("number of consecutive failed requests")
@@ -112,6 +112,12 @@ public class StandbyStoreService {
         )
         int standby_readtimeout() default 60000;
 
+        @AttributeDefinition(
+            name = "Standby Request Window",
+            description = "Maximum number of segment and reference requests the standby instance keeps outstanding on the connection to the primary"
+        )
+        int standby_requestwindow() default StandbyClientSync.DEFAULT_REQUEST_WINDOW;
+
         @AttributeDefinition(
             name = "Standby Automatic Cleanup",
             description = "Call the cleanup method when the root segment Garbage Collector (GC) generation number increases"
@@ -224,6 +230,7 @@ public class StandbyStoreService {
             .withFileStore(fileStore)
             .withSecureConnection(config.secure())
             .withReadTimeoutMs(config.standby_readtimeout())
+            .withRequestWindow(config.standby_requestwindow())
             .withAutoClean(config.standby_autoclean())
             .withSpoolFolder(new File(StandardSystemProperty.JAVA_IO_TMPDIR.value()))
             .withSecureConnection(config.secure())
@@ -94,6 +94,8 @@ public class Check {
 
         private boolean failFast;
 
+        private int concurrency = 1;
+
         private Builder() {
             // Prevent external instantiation.
         }
@@ -264,6 +266,22 @@ public class Check {
             return this;
         }
 
+        /**
+         * Number of threads traversing each checked tree. With more than one
+         * thread, the paths of the traversed nodes and properties are not
+         * printed and the progress of the traversal is printed every {@link
+         * #withDebugInterval(long) debug interval} instead. This parameter is
+         * not required and defaults to {@code 1}.
+         *
+         * @param concurrency number of threads, strictly positive.
+         * @return this builder.
+         */
+        public Builder withConcurrency(int concurrency) {
+            checkArgument(concurrency > 0, "concurrency must be strictly positive");
+            this.concurrency = concurrency;
+            return this;
+        }
+
         /**
          * Create an executable version of the {@link Check} command.
          *
@@ -334,6 +352,8 @@ public class Check {
 
     private final boolean failFast;
 
+    private final int concurrency;
+
     private int currentNodeCount;
 
     private int currentPropertyCount;
@@ -359,6 +379,7 @@ public class Check {
         this.journal = journalPath(builder.path, builder.journal);
         this.revisionsCount = revisionsToCheckCount(builder.revisionsCount);
         this.failFast = builder.failFast;
+        this.concurrency = builder.concurrency;
     }
 
     private static File journalPath(File segmentStore, File journal) {
@@ -458,7 +479,7 @@ public class Check {
     }
 
     private ConsistencyChecker newConsistencyChecker() {
-        return new ConsistencyChecker() {
+        return new ConsistencyChecker(concurrency) {
 
             @Override
             protected void onCheckRevision(String revision) {
@@ -535,6 +556,17 @@ public class Check {
                 debug("Checked {0}/{1}", path, property);
             }
 
+            @Override
+            protected void onCheckNodes(int nodeCount, int propertyCount) {
+                currentNodeCount += nodeCount;
+                currentPropertyCount += propertyCount;
+            }
+
+            @Override
+            protected void onCheckTreeProgress(long nodeCount, long propertyCount, long elapsedMillis) {
+                debug("Checked {0} nodes and {1} properties so far ({2} nodes/s)", nodeCount, propertyCount, nodeCount * 1000 / Math.max(elapsedMillis, 1));
+            }
+
             @Override
             protected void onCheckNodeError(String path, Exception e) {
                 printError("Error while traversing {0}: {1}", path, e);
@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment;
+
+import static org.apache.jackrabbit.oak.segment.file.FileStoreBuilder.fileStoreBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.jackrabbit.oak.cache.AbstractCacheStats;
+import org.apache.jackrabbit.oak.commons.Buffer;
+import org.apache.jackrabbit.oak.segment.file.FileStore;
+import org.apache.jackrabbit.oak.segment.file.InvalidFileStoreVersionException;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OffHeapSegmentCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    private FileStore fileStore;
+
+    private Segment segment;
+
+    private OffHeapSegmentCache cache;
+
+    @Before
+    public void setup() throws IOException, InvalidFileStoreVersionException {
+        fileStore = fileStoreBuilder(folder.getRoot()).build();
+        segment = fileStore.getHead().getRecordId().getSegmentId().getSegment();
+        cache = new OffHeapSegmentCache(1, 4, this::newSegment);
+    }
+
+    @After
+    public void tearDown() {
+        fileStore.close();
+    }
+
+    private Segment newSegment(SegmentId id, Buffer buffer) {
+        return new Segment(fileStore.getSegmentIdProvider(), fileStore.getReader(), id, buffer);
+    }
+
+    private Segment copyOf(Segment segment, long n) throws IOException {
+        SegmentId id = fileStore.getSegmentIdProvider().newSegmentId(n, 0xa000000000000000L | n);
+        return newSegment(id, Buffer.wrap(bytes(segment)));
+    }
+
+    private static byte[] bytes(Segment segment) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        segment.writeTo(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void putAndGet() throws Exception {
+        Segment copy = copyOf(segment, 1);
+        SegmentId id = copy.getSegmentId();
+        cache.putSegment(copy);
+
+        Segment cached = cache.getSegment(id, () -> {
+            fail("Cache should not need to load " + id);
+            return null;
+        });
+        assertNotSame(copy, cached);
+        assertEquals(id, cached.getSegmentId());
+        assertTrue(Arrays.equals(bytes(copy), bytes(cached)));
+    }
+
+    @Test
+    public void loadOnMiss() throws Exception {
+        Segment copy = copyOf(segment, 1);
+        SegmentId id = copy.getSegmentId();
+        AbstractCacheStats stats = cache.getCacheStats();
+
+        AtomicBoolean loaded = new AtomicBoolean();
+        cache.getSegment(id, () -> {
+            loaded.set(true);
+            return copy;
+        });
+        assertTrue(loaded.get());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(1, stats.getElementCount());
+        assertEquals(copy.size(), stats.estimateCurrentWeight());
+
+        loaded.set(false);
+        cache.getSegment(id, () -> {
+            loaded.set(true);
+            return copy;
+        });
+        assertFalse(loaded.get());
+        assertEquals(1, stats.getHitCount());
+    }
+
+    @Test
+    public void clearUnloadsViews() throws Exception {
+        Segment copy = copyOf(segment, 1);
+        cache.putSegment(copy);
+        cache.clear();
+
+        AbstractCacheStats stats = cache.getCacheStats();
+        assertEquals(0, stats.getElementCount());
+        assertEquals(0, stats.estimateCurrentWeight());
+        assertEquals(1, stats.getEvictionCount());
+
+        AtomicBoolean loaded = new AtomicBoolean();
+        cache.getSegment(copy.getSegmentId(), () -> {
+            loaded.set(true);
+            return copy;
+        });
+        assertTrue(loaded.get());
+    }
+
+    @Test
+    public void evictionBoundsWeight() throws Exception {
+        AbstractCacheStats stats = cache.getCacheStats();
+        int count = (int) (2 * stats.getMaxTotalWeight() / segment.size());
+        for (int n = 1; n <= count; n++) {
+            cache.putSegment(copyOf(segment, n));
+        }
+
+        assertTrue(stats.getEvictionCount() > 0);
+        assertTrue(stats.estimateCurrentWeight() <= stats.getMaxTotalWeight());
+        assertEquals(count - stats.getEvictionCount(), stats.getElementCount());
+
+        // The most recently added segment must still be cached
+        Segment last = copyOf(segment, count);
+        AtomicBoolean loaded = new AtomicBoolean();
+        Segment cached = cache.getSegment(last.getSegmentId(), () -> {
+            loaded.set(true);
+            return last;
+        });
+        assertFalse(loaded.get());
+        assertTrue(Arrays.equals(bytes(last), bytes(cached)));
+    }
+
+    @Test
+    public void evictionUnloadsViews() throws Exception {
+        // memoise more views than fit in the cache
+        OffHeapSegmentCache cache = new OffHeapSegmentCache(1, 1 << 16, this::newSegment);
+        AbstractCacheStats stats = cache.getCacheStats();
+        Segment first = copyOf(segment, 1);
+        cache.putSegment(first);
+        assertTrue(first.getSegmentId().isLoaded());
+
+        int count = (int) (2 * stats.getMaxTotalWeight() / segment.size());
+        for (int n = 2; n <= count; n++) {
+            cache.putSegment(copyOf(segment, n));
+        }
+        assertFalse(cache.containsSegment(first.getSegmentId()));
+        assertFalse(first.getSegmentId().isLoaded());
+    }
+
+    @Test
+    public void concurrentReadAndEvict() throws Exception {
+        OffHeapSegmentCache cache = new OffHeapSegmentCache(1, 1 << 16, this::newSegment);
+        AbstractCacheStats stats = cache.getCacheStats();
+        int count = (int) (3 * stats.getMaxTotalWeight() / segment.size());
+        byte[] expected = bytes(segment);
+        List<Segment> copies = new ArrayList<>();
+        for (int n = 1; n <= count; n++) {
+            copies.add(copyOf(segment, n));
+        }
+
+        int threadCount = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                int seed = t;
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 2000; i++) {
+                        Segment copy = copies.get(random.nextInt(count));
+                        Segment cached = cache.getSegment(copy.getSegmentId(), () -> copy);
+                        assertEquals(copy.getSegmentId(), cached.getSegmentId());
+                        assertTrue(Arrays.equals(expected, bytes(cached)));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(stats.getEvictionCount() > 0);
+        assertTrue(stats.estimateCurrentWeight() <= stats.getMaxTotalWeight());
+        for (Segment copy : copies) {
+            SegmentId id = copy.getSegmentId();
+            if (!cache.containsSegment(id)) {
+                assertFalse("evicted segment is still memoised: " + id, id.isLoaded());
+            }
+        }
+    }
+
+    @Test
+    public void fileStoreWithOffHeapCache() throws Exception {
+        fileStore.close();
+        fileStore = fileStoreBuilder(folder.getRoot())
+                .withSegmentCacheSize(8)
+                .withOffHeapSegmentCache(true)
+                .build();
+        SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(fileStore).build();
+
+        NodeBuilder builder = nodeStore.getRoot().builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.child("node-" + i).setProperty("p", "value-" + i);
+        }
+        nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        fileStore.flush();
+
+        fileStore.getSegmentCacheStats().resetStats();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("value-" + i, nodeStore.getRoot()
+                    .getChildNode("node-" + i)
+                    .getString("p"));
+        }
+        assertTrue(fileStore.getSegmentCacheStats().getElementCount() > 0);
+    }
+
+}
@@ -18,15 +18,38 @@
  */
 package org.apache.jackrabbit.oak.segment;
 
-import java.io.IOException;
+import static org.apache.jackrabbit.guava.common.collect.Lists.newArrayList;
+import static java.util.Collections.nCopies;
+
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.jackrabbit.oak.segment.memory.MemoryStore;
 import org.jetbrains.annotations.NotNull;
 
+/**
+ * Compares the lookup throughput of {@link SegmentIdTable} with the former
+ * {@code synchronized} implementation for an increasing number of reader
+ * threads.
+ */
 public class SegmentIdTableBenchmark {
 
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    private static final int ID_COUNT = 100_000;
+
+    private static final int LOOKUPS_PER_THREAD = 2_000_000;
+
+    interface Table {
+        SegmentId newSegmentId(long msb, long lsb, SegmentIdFactory maker);
+    }
+
     private static SegmentIdFactory newSegmentIdMaker(final SegmentStore store) {
         return new SegmentIdFactory() {
 
@@ -39,105 +62,148 @@ public class SegmentIdTableBenchmark {
         };
     }
 
-    public static void main(String... args) throws IOException {
-        test();
-        test();
-        test();
-        test();
-        test();
-        test();
+    public static void main(String... args) throws Exception {
+        // warm up
+        test(false);
+        test(true);
     }
 
-    private static void test() throws IOException {
-        long time;
-        int repeat = 10000;
-        int count = 10000;
-        
-        long[] array = new long[count];
+    private static void test(boolean print) throws Exception {
+        long[] msbs = new long[ID_COUNT];
+        long[] lsbs = new long[ID_COUNT];
         Random r = new Random(1);
-        for (int i = 0; i < array.length; i++) {
-            array[i] = r.nextLong();
+        for (int i = 0; i < ID_COUNT; i++) {
+            msbs[i] = r.nextLong();
+            lsbs[i] = r.nextLong();
         }
-        
-        time = System.currentTimeMillis();
+
         MemoryStore store = new MemoryStore();
         SegmentIdFactory maker = newSegmentIdMaker(store);
-        final SegmentIdTable tbl = new SegmentIdTable();
-        for (int i = 0; i < repeat; i++) {
-            for (int j = 0; j < count; j++) {
-                tbl.newSegmentId(j, array[j], maker);
+
+        for (int threads : THREADS) {
+            SegmentIdTable current = new SegmentIdTable();
+            long currentTime = run(current::newSegmentId, maker, msbs, lsbs, threads);
+
+            SynchronizedTable synchronizedTable = new SynchronizedTable();
+            long synchronizedTime = run(synchronizedTable::newSegmentId, maker, msbs, lsbs, threads);
+
+            if (print) {
+                System.out.printf(
+                        "threads=%2d SegmentIdTable: %6d ms, synchronized table: %6d ms%n",
+                        threads, currentTime, synchronizedTime);
             }
         }
-        time = System.currentTimeMillis() - time;
-        System.out.println("SegmentIdTable: " + time);
-        
-        time = System.currentTimeMillis();
-        ConcurrentTable cm = new ConcurrentTable(store, 16 * 1024);
-        for (int i = 0; i < repeat; i++) {
-            for (int j = 0; j < count; j++) {
-                cm.getSegmentId(j, array[j]);
+    }
+
+    private static long run(Table table, SegmentIdFactory maker, long[] msbs, long[] lsbs, int threads) throws Exception {
+        // Keep the ids strongly reachable for the duration of the run
+        List<SegmentId> ids = new ArrayList<>(msbs.length);
+        for (int i = 0; i < msbs.length; i++) {
+            ids.add(table.newSegmentId(msbs[i], lsbs[i], maker));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int seed = t;
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    start.await();
+                    for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+                        int k = random.nextInt(msbs.length);
+                        table.newSegmentId(msbs[k], lsbs[k], maker);
+                    }
+                    return null;
+                }));
+            }
+            long time = System.currentTimeMillis();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            time = System.currentTimeMillis() - time;
+            if (ids.size() != msbs.length) {
+                throw new IllegalStateException();
             }
+            return time;
+        } finally {
+            executor.shutdown();
         }
-        time = System.currentTimeMillis() - time;
-        System.out.println("ConcurrentTable: " + time);
-        
-//        time = System.currentTimeMillis();
-//        WeakHashMap<SegmentId, SegmentId> map = new WeakHashMap<SegmentId, SegmentId>(count);
-//        for (int i = 0; i < repeat; i++) {
-//            for (int j = 0; j < count; j++) {
-//                SegmentId id = new SegmentId(tracker, j, j);
-//                if (map.get(id) == null) {
-//                    map.put(id, id);
-//                }
-//            }
-//        }
-//        time = System.currentTimeMillis() - time;
-//        System.out.println("WeakHashMap: " + time);
     }
-    
-    static class ConcurrentTable {
-        private final SegmentStore store;
-        volatile WeakReference<SegmentId>[] map;
-        @SuppressWarnings("unchecked")
-        ConcurrentTable(SegmentStore store, int size) {
-            this.store = store;
-            map = (WeakReference<SegmentId>[]) new WeakReference[size];
+
+    /**
+     * The former {@code synchronized} implementation of the segment id table,
+     * kept as a baseline.
+     */
+    static class SynchronizedTable {
+
+        private final ArrayList<WeakReference<SegmentId>> references =
+                newArrayList(nCopies(1024, (WeakReference<SegmentId>) null));
+
+        private int entryCount;
+
+        synchronized SegmentId newSegmentId(long msb, long lsb, SegmentIdFactory maker) {
+            int index = getIndex(lsb);
+            boolean shouldRefresh = false;
+
+            WeakReference<SegmentId> reference = references.get(index);
+            while (reference != null) {
+                SegmentId id = reference.get();
+                if (id != null
+                        && id.getMostSignificantBits() == msb
+                        && id.getLeastSignificantBits() == lsb) {
+                    return id;
+                }
+                shouldRefresh = shouldRefresh || id == null;
+                index = (index + 1) % references.size();
+                reference = references.get(index);
+            }
+
+            SegmentId id = maker.newSegmentId(msb, lsb);
+            references.set(index, new WeakReference<>(id));
+            entryCount++;
+            if (entryCount > references.size() * 0.75) {
+                shouldRefresh = true;
+            }
+            if (shouldRefresh) {
+                refresh();
+            }
+            return id;
         }
-        SegmentId getSegmentId(long a, long b) {
-            outer:
-            while (true) {
-                int increment = 1;
-                WeakReference<SegmentId>[] m = map;
-                int length = m.length;
-                int index = (int) (b & (length - 1));
-                while (true) {
-                    WeakReference<SegmentId> ref = m[index];
-                    if (ref == null) {
-                        SegmentId id = new SegmentId(store, a, b);
-                        ref = new WeakReference<SegmentId>(id);
-                        m[index] = ref;
-                        if (m != map) {
-                            continue outer;
-                        }
-                        return id;
-                    }
-                    SegmentId id = ref.get();
-                    if (id != null) {
-                        if (id.getMostSignificantBits() == a && id.getLeastSignificantBits() == b) {
-                            return id;
-                        }
-                    }
-                    // guaranteed to work for power of 2 table sizes, see
-                    // http://stackoverflow.com/questions/2348187/moving-from-linear-probing-to-quadratic-probing-hash-collisons
-                    // http://stackoverflow.com/questions/12121217/limit-for-quadratic-probing-a-hash-table
-                    index = (index + increment) & (length - 1);
-                    increment++;
-                    if (increment > 100) {
-                        System.out.println("inc " + increment);
-                    }
+
+        private void refresh() {
+            List<WeakReference<SegmentId>> live = new ArrayList<>();
+            for (WeakReference<SegmentId> reference : references) {
+                if (reference != null && reference.get() != null) {
+                    live.add(reference);
                 }
             }
+            int size = references.size();
+            while (2 * live.size() > size) {
+                size *= 2;
+            }
+            references.clear();
+            references.addAll(nCopies(size, (WeakReference<SegmentId>) null));
+            for (WeakReference<SegmentId> reference : live) {
+                SegmentId id = reference.get();
+                if (id == null) {
+                    continue;
+                }
+                int index = getIndex(id.getLeastSignificantBits());
+                while (references.get(index) != null) {
+                    index = (index + 1) % size;
+                }
+                references.set(index, reference);
+            }
+            entryCount = live.size();
+        }
+
+        private int getIndex(long lsb) {
+            return ((int) lsb) & (references.size() - 1);
         }
+
     }
 
 }
@@ -22,6 +22,7 @@ import static org.apache.jackrabbit.guava.common.collect.Sets.newHashSet;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -32,6 +33,7 @@ import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -216,4 +218,39 @@ public class SegmentIdTableTest {
         }
         assertEquals(2, tbl.getMapRebuildCount());
     }
+
+    @Test
+    public void concurrentLookups() throws Exception {
+        SegmentIdFactory maker = newSegmentIdMaker();
+        final SegmentIdTable tbl = new SegmentIdTable();
+
+        int count = 4 * 1024;
+        List<Callable<List<SegmentId>>> tasks = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            tasks.add(() -> {
+                List<SegmentId> ids = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    ids.add(tbl.newSegmentId(i, i % 256, maker));
+                }
+                return ids;
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<SegmentId> first = null;
+            for (Future<List<SegmentId>> f : executor.invokeAll(tasks)) {
+                List<SegmentId> ids = f.get();
+                if (first == null) {
+                    first = ids;
+                }
+                for (int i = 0; i < count; i++) {
+                    assertSame(first.get(i), ids.get(i));
+                }
+            }
+            assertEquals(count, tbl.getEntryCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
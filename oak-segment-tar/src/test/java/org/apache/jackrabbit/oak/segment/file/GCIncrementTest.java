@@ -60,4 +60,34 @@ public class GCIncrementTest {
         assertTrue(increment.isFullyCompacted(base.nextFull()));
     }
 
+    @Test
+    public void testIsInCompactedTail() {
+        GCGeneration base = newGCGeneration(3, 1, false);
+        GCIncrement increment = new GCIncrement(base, base.nextPartial(), base.nextTail());
+
+        assertTrue(increment.isInCompactedTail(newGCGeneration(1, 1, true)));
+        assertTrue(increment.isInCompactedTail(newGCGeneration(2, 1, true)));
+        assertFalse(increment.isInCompactedTail(newGCGeneration(2, 1, false)));
+        assertFalse(increment.isInCompactedTail(newGCGeneration(2, 0, true)));
+        assertFalse(increment.isInCompactedTail(base.nextPartial()));
+        assertFalse(increment.isInCompactedTail(base.nextTail()));
+    }
+
+    @Test
+    public void testIsInCompactedTailFull() {
+        GCGeneration base = newGCGeneration(3, 1, false);
+        GCIncrement increment = new GCIncrement(base, base.nextPartial(), base.nextFull());
+
+        assertFalse(increment.isInCompactedTail(newGCGeneration(2, 1, true)));
+        assertFalse(increment.isInCompactedTail(base.nextFull()));
+    }
+
+    @Test
+    public void testIsInCompactedTailSameGeneration() {
+        GCGeneration base = newGCGeneration(3, 1, false);
+        GCIncrement increment = new GCIncrement(base, base, base);
+
+        assertFalse(increment.isInCompactedTail(newGCGeneration(2, 1, true)));
+    }
+
 }
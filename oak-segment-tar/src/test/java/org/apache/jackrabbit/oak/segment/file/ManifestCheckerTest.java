@@ -83,6 +83,15 @@ public class ManifestCheckerTest {
         assertEquals(3, Manifest.load(manifest).getStoreVersion(0));
     }
 
+    @Test
+    public void testUpdateDoesNotDowngradeVersion() throws Exception {
+        Manifest before = Manifest.load(manifest);
+        before.setStoreVersion(3);
+        before.save(manifest);
+        newManifestChecker(manifest, true, 1, 3, 2).checkAndUpdateManifest();
+        assertEquals(3, Manifest.load(manifest).getStoreVersion(0));
+    }
+
     @Test
     public void testUpdateNonExistingManifest() throws Exception {
         Files.delete(file.toPath());
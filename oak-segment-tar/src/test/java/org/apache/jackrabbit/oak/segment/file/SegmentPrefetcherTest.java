@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static java.util.Collections.singleton;
+import static org.apache.jackrabbit.oak.segment.SegmentCache.newSegmentCache;
+import static org.apache.jackrabbit.oak.segment.file.FileStoreBuilder.fileStoreBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.jackrabbit.oak.segment.Segment;
+import org.apache.jackrabbit.oak.segment.SegmentCache;
+import org.apache.jackrabbit.oak.segment.SegmentId;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStore;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStoreBuilders;
+import org.apache.jackrabbit.oak.segment.file.tar.TarFiles;
+import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitorAdapter;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentPrefetcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private void createContent(File directory) throws Exception {
+        try (FileStore store = fileStoreBuilder(directory).build()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(store).build();
+            for (int c = 0; c < 10; c++) {
+                NodeBuilder builder = nodeStore.getRoot().builder();
+                NodeBuilder commit = builder.child("commit-" + c);
+                for (int i = 0; i < 1000; i++) {
+                    commit.child("node-" + i).setProperty("p", "value-" + c + "-" + i);
+                }
+                nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+                store.flush();
+            }
+            // the head segment then only references the segment of the
+            // last commit, which references the segments of the others
+            NodeBuilder builder = nodeStore.getRoot().builder();
+            builder.setProperty("done", true);
+            nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+            store.flush();
+        }
+    }
+
+    private static TarFiles newTarFiles(File directory) throws Exception {
+        return TarFiles.builder()
+                .withDirectory(directory)
+                .withTarRecovery((id, data, recovery) -> {
+                    // Intentionally left blank
+                })
+                .withIOMonitor(new IOMonitorAdapter())
+                .withRemoteStoreMonitor(new RemoteStoreMonitorAdapter())
+                .withReadOnly()
+                .build();
+    }
+
+    private SegmentPrefetcher newPrefetcher(ReadOnlyFileStore store, SegmentCache cache) {
+        return new SegmentPrefetcher(cache, store.getSegmentIdProvider(), store::newSegment,
+                2, tasks::add, StatisticsProvider.NOOP);
+    }
+
+    private static Segment readHead(ReadOnlyFileStore store) {
+        return store.readSegment(store.getRevisions().getHead().getSegmentId());
+    }
+
+    private static Set<SegmentId> references(ReadOnlyFileStore store, Set<SegmentId> ids) {
+        Set<SegmentId> references = new HashSet<>();
+        for (SegmentId id : ids) {
+            Segment segment = store.readSegment(id);
+            for (int i = 0; i < segment.getReferencedSegmentIdCount(); i++) {
+                UUID uuid = segment.getReferencedSegmentId(i);
+                SegmentId reference = store.getSegmentIdProvider().newSegmentId(
+                        uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+                if (reference.isDataSegmentId()) {
+                    references.add(reference);
+                }
+            }
+        }
+        references.removeAll(ids);
+        return references;
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    @Test
+    public void prefetchReferencedSegments() throws Exception {
+        File directory = folder.getRoot();
+        createContent(directory);
+
+        try (ReadOnlyFileStore store = fileStoreBuilder(directory).buildReadOnly();
+             TarFiles tarFiles = newTarFiles(directory)) {
+            SegmentCache cache = newSegmentCache(64);
+            SegmentPrefetcher prefetcher = newPrefetcher(store, cache);
+            Segment head = readHead(store);
+            Set<SegmentId> level1 = references(store, singleton(head.getSegmentId()));
+            Set<SegmentId> level2 = references(store, level1);
+            level2.removeAll(level1);
+            Set<SegmentId> level3 = references(store, level2);
+            level3.removeAll(level1);
+            level3.removeAll(level2);
+            assertFalse(level1.isEmpty());
+            assertFalse(level2.isEmpty());
+
+            // the referenced segments are read as one batch
+            prefetcher.onSegmentLoaded(tarFiles, head);
+            assertEquals(1, tasks.size());
+            tasks.remove(0).run();
+            for (SegmentId id : level1) {
+                assertTrue(cache.containsSegment(id));
+            }
+            for (SegmentId id : level2) {
+                assertFalse(cache.containsSegment(id));
+            }
+
+            // and then their references, up to the configured depth
+            runTasks();
+            for (SegmentId id : level2) {
+                assertTrue(cache.containsSegment(id));
+            }
+            for (SegmentId id : level3) {
+                assertFalse(cache.containsSegment(id));
+            }
+            assertEquals(level1.size() + level2.size(), cache.getCacheStats().getElementCount());
+
+            // nothing to do when all references are cached
+            prefetcher.onSegmentLoaded(tarFiles, head);
+            assertTrue(tasks.isEmpty());
+        }
+    }
+
+    @Test
+    public void noPrefetchAfterClose() throws Exception {
+        File directory = folder.getRoot();
+        createContent(directory);
+
+        try (ReadOnlyFileStore store = fileStoreBuilder(directory).buildReadOnly();
+             TarFiles tarFiles = newTarFiles(directory)) {
+            SegmentCache cache = newSegmentCache(64);
+            SegmentPrefetcher prefetcher = newPrefetcher(store, cache);
+            prefetcher.close();
+            prefetcher.onSegmentLoaded(tarFiles, readHead(store));
+            assertTrue(tasks.isEmpty());
+            assertEquals(0, cache.getCacheStats().getElementCount());
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static org.apache.jackrabbit.oak.segment.compaction.SegmentGCOptions.defaultGCOptions;
+import static org.apache.jackrabbit.oak.segment.file.FileStoreBuilder.fileStoreBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.jackrabbit.oak.segment.RecordId;
+import org.apache.jackrabbit.oak.segment.SegmentNodeState;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStore;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStoreBuilders;
+import org.apache.jackrabbit.oak.segment.file.tar.GCGeneration;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TailCompactionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    private FileStore newFileStore() throws Exception {
+        return fileStoreBuilder(folder.getRoot())
+                .withGCOptions(defaultGCOptions().setEstimationDisabled(true))
+                .build();
+    }
+
+    private static void addContent(NodeBuilder builder) {
+        for (int i = 0; i < 100; i++) {
+            NodeBuilder child = builder.child("node-" + i);
+            for (int j = 0; j < 10; j++) {
+                child.child("child-" + j).setProperty("p", "value-" + i + "-" + j);
+            }
+        }
+    }
+
+    private static void assertContent(NodeState state) {
+        for (int i = 0; i < 100; i++) {
+            NodeState child = state.getChildNode("node-" + i);
+            for (int j = 0; j < 10; j++) {
+                assertEquals("value-" + i + "-" + j, child.getChildNode("child-" + j).getString("p"));
+            }
+        }
+    }
+
+    private static RecordId getRecordId(NodeState state) {
+        return ((SegmentNodeState) state).getRecordId();
+    }
+
+    private static void setProperty(SegmentNodeStore nodeStore, String value) throws Exception {
+        NodeBuilder builder = nodeStore.getRoot().builder();
+        builder.setProperty("p", value);
+        nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+    }
+
+    @Test
+    public void reuseSubtreeOfCompactedTail() throws Exception {
+        // garbage collection backs off after a successful run, so each
+        // run below uses a new file store. The moved node itself is
+        // rewritten, because the move annotates its source path, but its
+        // subtrees are not.
+        try (FileStore store = newFileStore()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(store).build();
+            NodeBuilder builder = nodeStore.getRoot().builder();
+            addContent(builder.child("a"));
+            nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+            store.fullGC();
+        }
+
+        RecordId compacted;
+        try (FileStore store = newFileStore()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(store).build();
+            setProperty(nodeStore, "tail-1");
+            store.tailGC();
+            compacted = getRecordId(nodeStore.getRoot().getChildNode("a").getChildNode("node-0"));
+        }
+
+        try (FileStore store = newFileStore()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(store).build();
+            NodeBuilder builder = nodeStore.getRoot().builder();
+            assertTrue(builder.getChildNode("a").moveTo(builder, "b"));
+            nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+            setProperty(nodeStore, "tail-2");
+            store.tailGC();
+
+            GCGeneration generation = store.getHead().getGcGeneration();
+            assertEquals(3, generation.getGeneration());
+            assertEquals(1, generation.getFullGeneration());
+
+            NodeState root = nodeStore.getRoot();
+            assertFalse(root.hasChildNode("a"));
+            assertEquals(compacted, getRecordId(root.getChildNode("b").getChildNode("node-0")));
+            assertContent(root.getChildNode("b"));
+        }
+    }
+
+    @Test
+    public void compactSubtreeOfBaseGeneration() throws Exception {
+        RecordId compacted;
+        try (FileStore store = newFileStore()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(store).build();
+            NodeBuilder builder = nodeStore.getRoot().builder();
+            addContent(builder.child("a"));
+            nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+            store.fullGC();
+            compacted = getRecordId(nodeStore.getRoot().getChildNode("a").getChildNode("node-0"));
+        }
+
+        try (FileStore store = newFileStore()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(store).build();
+
+            // The subtree has the same generation as the base of the next
+            // tail compaction and is therefore compacted again.
+            NodeBuilder builder = nodeStore.getRoot().builder();
+            assertTrue(builder.getChildNode("a").moveTo(builder, "b"));
+            nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+            store.tailGC();
+
+            GCGeneration generation = store.getHead().getGcGeneration();
+            assertEquals(2, generation.getGeneration());
+            assertEquals(1, generation.getFullGeneration());
+
+            NodeState root = nodeStore.getRoot();
+            assertNotEquals(compacted, getRecordId(root.getChildNode("b").getChildNode("node-0")));
+            assertContent(root.getChildNode("b"));
+        }
+    }
+
+}
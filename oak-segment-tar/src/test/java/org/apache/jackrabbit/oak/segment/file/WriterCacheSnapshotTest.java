@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static org.apache.jackrabbit.oak.segment.file.FileStoreBuilder.fileStoreBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.jackrabbit.oak.segment.RecordId;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStore;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStoreBuilders;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WriterCacheSnapshotTest {
+
+    private static final String VALUE = "deduplicated value";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    private static int getGeneration(FileStore store) {
+        return store.getRevisions().getHead().getSegmentId().getGcGeneration().getGeneration();
+    }
+
+    private static void setProperty(FileStore store) throws Exception {
+        SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(store).build();
+        NodeBuilder builder = nodeStore.getRoot().builder();
+        builder.setProperty("p", VALUE);
+        nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+    }
+
+    @Test
+    public void loadSnapshotOnRestart() throws Exception {
+        RecordId expected;
+
+        FileStoreBuilder builder = fileStoreBuilder(folder.getRoot()).withWriterCacheSnapshot(true);
+        try (FileStore store = builder.build()) {
+            setProperty(store);
+            expected = builder.getCacheManager().getStringCache(getGeneration(store)).get(VALUE);
+            assertNotNull(expected);
+        }
+
+        assertTrue(new File(folder.getRoot(), WriterCacheSnapshot.FILE_NAME).exists());
+
+        builder = fileStoreBuilder(folder.getRoot()).withWriterCacheSnapshot(true);
+        try (FileStore store = builder.build()) {
+            assertEquals(expected, builder.getCacheManager().getStringCache(getGeneration(store)).get(VALUE));
+        }
+    }
+
+    @Test
+    public void noSnapshotIfDisabled() throws Exception {
+        try (FileStore store = fileStoreBuilder(folder.getRoot()).build()) {
+            setProperty(store);
+        }
+
+        assertFalse(new File(folder.getRoot(), WriterCacheSnapshot.FILE_NAME).exists());
+    }
+
+    @Test
+    public void ignoreSnapshotOfOtherGeneration() throws Exception {
+        try (FileStore store = fileStoreBuilder(folder.getRoot()).withWriterCacheSnapshot(true).build()) {
+            setProperty(store);
+        }
+
+        // Compact without updating the snapshot
+        try (FileStore store = fileStoreBuilder(folder.getRoot()).build()) {
+            assertTrue(store.compactFull());
+        }
+
+        FileStoreBuilder builder = fileStoreBuilder(folder.getRoot()).withWriterCacheSnapshot(true);
+        try (FileStore store = builder.build()) {
+            assertNull(builder.getCacheManager().getStringCache(getGeneration(store)).get(VALUE));
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file.tar;
+
+import static org.apache.jackrabbit.guava.common.base.Charsets.UTF_8;
+import static org.apache.jackrabbit.oak.segment.file.FileStoreBuilder.fileStoreBuilder;
+import static org.apache.jackrabbit.oak.segment.file.tar.GCGeneration.newGCGeneration;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.jackrabbit.oak.commons.Buffer;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStore;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStoreBuilders;
+import org.apache.jackrabbit.oak.segment.file.FileStore;
+import org.apache.jackrabbit.oak.segment.file.ReadOnlyFileStore;
+import org.apache.jackrabbit.oak.segment.file.tar.index.IndexEntry;
+import org.apache.jackrabbit.oak.segment.spi.monitor.FileStoreMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveEntry;
+import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveManager;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CompressedTarFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    private SegmentArchiveManager archiveManager;
+
+    @Before
+    public void setUp() throws IOException {
+        archiveManager = new SegmentTarManager(folder.newFolder(), new FileStoreMonitorAdapter(), new IOMonitorAdapter(), false, false, true);
+    }
+
+    private static byte[] compressible(int size) {
+        byte[] text = "All work and no play makes Jack a dull boy. ".getBytes(UTF_8);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = text[i % text.length];
+        }
+        return data;
+    }
+
+    private static byte[] incompressible(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static String storeVersion(File directory) throws IOException {
+        Properties manifest = new Properties();
+        try (InputStream in = Files.newInputStream(new File(directory, "manifest").toPath())) {
+            manifest.load(in);
+        }
+        return manifest.getProperty("store.version");
+    }
+
+    private static IndexEntry entry(TarReader reader, UUID id) {
+        for (SegmentArchiveEntry entry : reader.getEntries()) {
+            if (entry.getMsb() == id.getMostSignificantBits() && entry.getLsb() == id.getLeastSignificantBits()) {
+                return (IndexEntry) entry;
+            }
+        }
+        throw new AssertionError("Entry not found " + id);
+    }
+
+    @Test
+    public void testWriteAndReadCompressed() throws IOException {
+        UUID id = new UUID(1, 1);
+        byte[] data = compressible(64 * 1024);
+
+        try (TarWriter writer = new TarWriter(archiveManager, "data00000a.tar")) {
+            writer.writeEntry(id.getMostSignificantBits(), id.getLeastSignificantBits(), data, 0, data.length, newGCGeneration(1, 2, true));
+            assertEquals(Buffer.wrap(data), writer.readEntry(id.getMostSignificantBits(), id.getLeastSignificantBits()));
+        }
+
+        try (TarReader reader = TarReader.open("data00000a.tar", archiveManager)) {
+            assertEquals(Buffer.wrap(data), reader.readEntry(id.getMostSignificantBits(), id.getLeastSignificantBits()));
+
+            IndexEntry entry = entry(reader, id);
+            assertTrue(entry.isCompressed());
+            assertTrue(entry.getLength() < data.length);
+            assertEquals(newGCGeneration(1, 2, true), GCGeneration.newGCGeneration(entry));
+        }
+    }
+
+    @Test
+    public void testIncompressibleSegmentStoredAsIs() throws IOException {
+        UUID id = new UUID(1, 1);
+        byte[] data = incompressible(16 * 1024);
+
+        try (TarWriter writer = new TarWriter(archiveManager, "data00000a.tar")) {
+            writer.writeEntry(id.getMostSignificantBits(), id.getLeastSignificantBits(), data, 0, data.length, newGCGeneration(0, 0, false));
+        }
+
+        try (TarReader reader = TarReader.open("data00000a.tar", archiveManager)) {
+            assertEquals(Buffer.wrap(data), reader.readEntry(id.getMostSignificantBits(), id.getLeastSignificantBits()));
+            IndexEntry entry = entry(reader, id);
+            assertFalse(entry.isCompressed());
+            assertEquals(data.length, entry.getLength());
+        }
+    }
+
+    @Test
+    public void testReadSegmentsMixed() throws IOException {
+        Map<UUID, byte[]> segments = new LinkedHashMap<>();
+        for (int i = 0; i < 8; i++) {
+            segments.put(new UUID(1, i), i % 2 == 0 ? compressible(4096 + i) : incompressible(4096 + i));
+        }
+
+        try (TarWriter writer = new TarWriter(archiveManager, "data00000a.tar")) {
+            for (Map.Entry<UUID, byte[]> e : segments.entrySet()) {
+                UUID id = e.getKey();
+                byte[] data = e.getValue();
+                writer.writeEntry(id.getMostSignificantBits(), id.getLeastSignificantBits(), data, 0, data.length, newGCGeneration(0, 0, false));
+            }
+        }
+
+        try (TarReader reader = TarReader.open("data00000a.tar", archiveManager)) {
+            Map<UUID, Buffer> read = reader.readEntries(segments.keySet());
+            assertEquals(segments.size(), read.size());
+            for (Map.Entry<UUID, byte[]> e : segments.entrySet()) {
+                assertEquals(Buffer.wrap(e.getValue()), read.get(e.getKey()));
+            }
+        }
+    }
+
+    @Test
+    public void testRecoverCompressedEntries() throws IOException {
+        UUID id = new UUID(1, 1);
+        byte[] data = compressible(32 * 1024);
+
+        try (TarWriter writer = new TarWriter(archiveManager, "data00000a.tar")) {
+            writer.writeEntry(id.getMostSignificantBits(), id.getLeastSignificantBits(), data, 0, data.length, newGCGeneration(0, 0, false));
+            writer.flush();
+
+            // Recover the entries before the writer adds the index
+            LinkedHashMap<UUID, byte[]> entries = new LinkedHashMap<>();
+            archiveManager.recoverEntries("data00000a.tar", entries);
+            assertEquals(1, entries.size());
+            assertArrayEquals(data, entries.get(id));
+        }
+    }
+
+    @Test
+    public void testFileStoreWithCompression() throws Exception {
+        File directory = folder.newFolder();
+        String text = new String(compressible(10 * 1024), UTF_8);
+
+        try (FileStore store = fileStoreBuilder(directory).withSegmentCompression(true).build()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(store).build();
+            NodeBuilder builder = nodeStore.getRoot().builder();
+            for (int i = 0; i < 100; i++) {
+                builder.child("node-" + i).setProperty("text", text + i);
+            }
+            nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        }
+
+        assertEquals("3", storeVersion(directory));
+
+        // Compressed segments are read independently of the compression setting
+        try (ReadOnlyFileStore store = fileStoreBuilder(directory).buildReadOnly()) {
+            NodeState root = store.getHead().getChildNode("root");
+            for (int i = 0; i < 100; i++) {
+                assertEquals(text + i, root.getChildNode("node-" + i).getString("text"));
+            }
+        }
+
+        // Opening the store without compression does not downgrade its version
+        fileStoreBuilder(directory).build().close();
+        assertEquals("3", storeVersion(directory));
+    }
+
+    @Test
+    public void testCustomPersistenceIgnoresCompression() throws Exception {
+        File directory = folder.newFolder();
+
+        try (FileStore store = fileStoreBuilder(directory)
+                .withCustomPersistence(new TarPersistence(directory))
+                .withSegmentCompression(true)
+                .build()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(store).build();
+            NodeBuilder builder = nodeStore.getRoot().builder();
+            builder.child("node").setProperty("text", new String(compressible(10 * 1024), UTF_8));
+            nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        }
+
+        // The custom persistence doesn't compress, so older versions can still open the store
+        assertEquals("2", storeVersion(directory));
+    }
+
+}
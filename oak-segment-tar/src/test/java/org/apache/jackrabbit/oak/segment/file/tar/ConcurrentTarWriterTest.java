@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file.tar;
+
+import static org.apache.jackrabbit.oak.segment.file.FileStoreBuilder.fileStoreBuilder;
+import static org.apache.jackrabbit.oak.segment.file.tar.GCGeneration.newGCGeneration;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.jackrabbit.oak.commons.Buffer;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStore;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStoreBuilders;
+import org.apache.jackrabbit.oak.segment.file.FileStore;
+import org.apache.jackrabbit.oak.segment.spi.monitor.FileStoreMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveManager;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.stats.NoopStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConcurrentTarWriterTest {
+
+    private static final int THREADS = 8;
+
+    private static final int SEGMENTS = 100;
+
+    private static final String PADDING = new String(new char[256]).replace('\0', 'x');
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    private SegmentArchiveManager archiveManager;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        archiveManager = new SegmentTarManager(folder.newFolder(), new FileStoreMonitorAdapter(), new IOMonitorAdapter(), false, false);
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] data(int thread, int segment) {
+        byte[] data = new byte[100 + 37 * segment];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (thread * 31 + segment + i);
+        }
+        return data;
+    }
+
+    @Test
+    public void writeEntriesConcurrently() throws Exception {
+        Map<UUID, byte[]> written = new LinkedHashMap<>();
+        for (int t = 0; t < THREADS; t++) {
+            for (int s = 0; s < SEGMENTS; s++) {
+                written.put(new UUID(t, s), data(t, s));
+            }
+        }
+
+        try (TarWriter writer = new TarWriter(archiveManager, 0, NoopStats.INSTANCE, true)) {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    for (int s = 0; s < SEGMENTS; s++) {
+                        UUID id = new UUID(thread, s);
+                        byte[] data = written.get(id);
+                        writer.writeEntry(thread, s, data, 0, data.length, newGCGeneration(1, 1, false));
+                        writer.addGraphEdge(id, new UUID(thread, (s + 1) % SEGMENTS));
+                        writer.addBinaryReference(newGCGeneration(1, 1, false), id, "blob-" + id);
+
+                        // Entries are readable as soon as they are written
+                        assertEquals(Buffer.wrap(data), writer.readEntry(thread, s));
+                        if (s % 10 == 0) {
+                            writer.flush();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            assertEquals(THREADS * SEGMENTS, writer.getEntryCount());
+        }
+
+        try (TarReader reader = TarReader.open(String.format(TarConstants.FILE_NAME_FORMAT, 0, "a"), archiveManager)) {
+            assertEquals(THREADS * SEGMENTS, reader.getEntries().length);
+            for (Map.Entry<UUID, byte[]> e : written.entrySet()) {
+                UUID id = e.getKey();
+                assertEquals(Buffer.wrap(e.getValue()), reader.readEntry(id.getMostSignificantBits(), id.getLeastSignificantBits()));
+            }
+
+            Map<UUID, List<UUID>> graph = reader.getGraph();
+            assertEquals(THREADS * SEGMENTS, graph.size());
+
+            Set<String> references = new HashSet<>();
+            reader.getBinaryReferences().forEach((generation, full, compacted, segment, reference) -> references.add(reference));
+            assertEquals(THREADS * SEGMENTS, references.size());
+        }
+    }
+
+    @Test
+    public void fileStoreWithConcurrentWrites() throws Exception {
+        File directory = folder.newFolder();
+        try (FileStore store = fileStoreBuilder(directory).withMaxFileSize(1).withConcurrentSegmentWrites(true).build()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(store).build();
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    for (int c = 0; c < 10; c++) {
+                        NodeBuilder builder = nodeStore.getRoot().builder();
+                        NodeBuilder node = builder.child("thread-" + thread).child("commit-" + c);
+                        for (int i = 0; i < 100; i++) {
+                            node.child("node-" + i).setProperty("p", "value-" + thread + "-" + c + "-" + i + PADDING);
+                        }
+                        nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            store.flush();
+        }
+
+        assertTrue(directory.list((dir, name) -> name.endsWith(".tar")).length > 1);
+
+        try (FileStore store = fileStoreBuilder(directory).build()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(store).build();
+            for (int t = 0; t < THREADS; t++) {
+                for (int c = 0; c < 10; c++) {
+                    for (int i = 0; i < 100; i++) {
+                        assertEquals("value-" + t + "-" + c + "-" + i + PADDING, nodeStore.getRoot()
+                                .getChildNode("thread-" + t)
+                                .getChildNode("commit-" + c)
+                                .getChildNode("node-" + i)
+                                .getString("p"));
+                    }
+                }
+            }
+        }
+    }
+
+}
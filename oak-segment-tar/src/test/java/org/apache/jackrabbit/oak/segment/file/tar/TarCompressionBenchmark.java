@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file.tar;
+
+import static org.apache.jackrabbit.oak.segment.file.FileStoreBuilder.fileStoreBuilder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStore;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStoreBuilders;
+import org.apache.jackrabbit.oak.segment.file.FileStore;
+import org.apache.jackrabbit.oak.segment.spi.monitor.FileStoreMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveEntry;
+import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveReader;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+
+/**
+ * Compares the disk usage and the segment read latency of TAR files with
+ * compressed segments against TAR files with uncompressed segments, for
+ * text-heavy content.
+ */
+public class TarCompressionBenchmark {
+
+    private static final int NODE_COUNT = 50_000;
+
+    private static final int READS = 200_000;
+
+    private static final String[] WORDS = {
+            "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing",
+            "elit", "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore",
+            "et", "dolore", "magna", "aliqua", "enim", "ad", "minim", "veniam"
+    };
+
+    public static void main(String... args) throws Exception {
+        File root = Files.createTempDirectory("tar-compression").toFile();
+        try {
+            File plain = new File(root, "plain");
+            File compressed = new File(root, "compressed");
+            createContent(plain, false);
+            createContent(compressed, true);
+
+            // warm up
+            readSegments(plain, false);
+            readSegments(compressed, false);
+
+            long plainSize = FileUtils.sizeOfDirectory(plain);
+            long compressedSize = FileUtils.sizeOfDirectory(compressed);
+            System.out.printf("Disk usage: uncompressed %,d bytes, compressed %,d bytes (%.1f%%)%n",
+                    plainSize, compressedSize, 100.0 * compressedSize / plainSize);
+
+            for (boolean mmap : new boolean[] {false, true}) {
+                System.out.printf("Read latency (mmap=%s): uncompressed %,d ns, compressed %,d ns%n",
+                        mmap, readSegments(plain, mmap), readSegments(compressed, mmap));
+            }
+        } finally {
+            FileUtils.deleteDirectory(root);
+        }
+    }
+
+    private static void createContent(File directory, boolean compression) throws Exception {
+        Random random = new Random(42);
+        try (FileStore store = fileStoreBuilder(directory).withSegmentCompression(compression).build()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(store).build();
+            NodeBuilder builder = nodeStore.getRoot().builder();
+            for (int i = 0; i < NODE_COUNT; i++) {
+                NodeBuilder node = builder.child("folder-" + i / 1000).child("node-" + i);
+                node.setProperty("title", text(random, 8));
+                node.setProperty("text", text(random, 200));
+                if (i % 1000 == 999) {
+                    nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+                    builder = nodeStore.getRoot().builder();
+                }
+            }
+            nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        }
+    }
+
+    private static String text(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return the average time in nanoseconds to read a random segment
+     */
+    private static long readSegments(File directory, boolean mmap) throws Exception {
+        SegmentTarManager manager = new SegmentTarManager(directory, new FileStoreMonitorAdapter(), new IOMonitorAdapter(), mmap, false);
+        List<SegmentArchiveReader> readers = new ArrayList<>();
+        List<SegmentArchiveEntry> entries = new ArrayList<>();
+        List<SegmentArchiveReader> entryReaders = new ArrayList<>();
+        try {
+            for (String name : manager.listArchives()) {
+                SegmentArchiveReader reader = manager.open(name);
+                if (reader == null) {
+                    continue;
+                }
+                readers.add(reader);
+                for (SegmentArchiveEntry entry : reader.listSegments()) {
+                    entries.add(entry);
+                    entryReaders.add(reader);
+                }
+            }
+
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < entries.size(); i++) {
+                order.add(i);
+            }
+            Collections.shuffle(order, new Random(1));
+
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < READS; i++) {
+                int k = order.get(i % order.size());
+                SegmentArchiveEntry entry = entries.get(k);
+                checksum += entryReaders.get(k).readSegment(entry.getMsb(), entry.getLsb()).remaining();
+            }
+            long elapsed = System.nanoTime() - start;
+            if (checksum == 0) {
+                throw new IllegalStateException("No segment read");
+            }
+            return elapsed / READS;
+        } finally {
+            for (SegmentArchiveReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+}
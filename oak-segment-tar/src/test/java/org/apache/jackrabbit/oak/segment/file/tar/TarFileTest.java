@@ -268,4 +268,38 @@ public class TarFileTest {
         }
     }
 
+    @Test
+    public void segmentGraphShouldMatchGraph() throws Exception {
+        try (TarWriter writer = new TarWriter(archiveManager, "data00000a.tar")) {
+            for (int i = 0; i < 100; i++) {
+                writer.writeEntry(1, i, new byte[] {1}, 0, 1, generation(1));
+                for (int j = 1; j <= i % 5; j++) {
+                    writer.addGraphEdge(new UUID(1, i), new UUID(1, (i + j) % 100));
+                }
+            }
+        }
+
+        try (TarReader reader = TarReader.open("data00000a.tar", archiveManager)) {
+            Map<UUID, List<UUID>> graph = reader.getGraph();
+            SegmentGraph segmentGraph = reader.getSegmentGraph();
+
+            Map<UUID, Set<UUID>> edges = new HashMap<>();
+            segmentGraph.forEachEdge((from, to) -> edges.computeIfAbsent(from, k -> new HashSet<>()).add(to));
+            assertEquals(graph.size(), edges.size());
+
+            for (int i = 0; i < 100; i++) {
+                UUID id = new UUID(1, i);
+                Set<UUID> references = new HashSet<>();
+                segmentGraph.forEachReference(id, references::add);
+                Set<UUID> expected = graph.containsKey(id) ? new HashSet<>(graph.get(id)) : new HashSet<>();
+                assertEquals(expected, references);
+                assertEquals(expected, edges.getOrDefault(id, new HashSet<>()));
+            }
+
+            Set<UUID> references = new HashSet<>();
+            segmentGraph.forEachReference(new UUID(2, 0), references::add);
+            assertEquals(new HashSet<>(), references);
+        }
+    }
+
 }
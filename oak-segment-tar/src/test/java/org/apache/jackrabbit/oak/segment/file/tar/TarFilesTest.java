@@ -218,6 +218,30 @@ public class TarFilesTest {
         assertArrayEquals(data, readSegment(id));
     }
 
+    @Test
+    public void testReadSegments() throws Exception {
+        Map<UUID, byte[]> data = new HashMap<>();
+        for (int i = 0; i < 4; i++) {
+            UUID id = randomUUID();
+            data.put(id, randomData());
+            writeSegment(id, data.get(id));
+            if (i == 2) {
+                tarFiles.newWriter();
+            }
+        }
+
+        Set<UUID> ids = new HashSet<>(data.keySet());
+        ids.add(randomUUID());
+        Map<UUID, Buffer> segments = tarFiles.readSegments(ids);
+
+        assertEquals(data.keySet(), segments.keySet());
+        for (Map.Entry<UUID, Buffer> entry : segments.entrySet()) {
+            byte[] bytes = new byte[entry.getValue().remaining()];
+            entry.getValue().get(bytes);
+            assertArrayEquals(data.get(entry.getKey()), bytes);
+        }
+    }
+
     @Test
     public void testGetIndices() throws Exception {
         UUID a = randomUUID();
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file.tar;
+
+import static org.apache.jackrabbit.oak.segment.file.tar.GCGeneration.newGCGeneration;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.segment.spi.monitor.FileStoreMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveEntry;
+import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveManager;
+
+/**
+ * Measures the time and the heap allocated to open a store with many TAR
+ * files, to collect its binary references and to traverse the graphs of its
+ * TAR files, either parsed into maps or through {@link SegmentGraph} views.
+ * <p>
+ * The number of TAR files can be passed as the first argument and defaults
+ * to 5000.
+ */
+public class TarIndexBenchmark {
+
+    private static final int SEGMENTS = 64;
+
+    private static final int REFERENCES = 16;
+
+    private static final byte[] DATA = new byte[256];
+
+    public static void main(String... args) throws Exception {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        File directory = Files.createTempDirectory("tar-index").toFile();
+        try {
+            createTarFiles(directory, files);
+            for (boolean mmap : new boolean[] {false, true}) {
+                run(directory, mmap);
+            }
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    private static void createTarFiles(File directory, int files) throws Exception {
+        SegmentArchiveManager manager = new SegmentTarManager(directory, new FileStoreMonitorAdapter(), new IOMonitorAdapter(), false, false);
+        for (int i = 0; i < files; i++) {
+            try (TarWriter writer = new TarWriter(manager, String.format("data%05da.tar", i))) {
+                GCGeneration generation = newGCGeneration(i / 100, 0, false);
+                for (int j = 0; j < SEGMENTS; j++) {
+                    UUID id = new UUID(i, j);
+                    writer.writeEntry(i, j, DATA, 0, DATA.length, generation);
+                    for (int k = 0; k < REFERENCES; k++) {
+                        writer.addGraphEdge(id, new UUID(i, (j + k + 1) % SEGMENTS));
+                        writer.addBinaryReference(generation, id, "blob-" + i + "-" + j + "-" + k);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void run(File directory, boolean mmap) throws Exception {
+        System.out.printf("Memory mapping: %s%n", mmap);
+
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        try (TarFiles tarFiles = TarFiles.builder()
+                .withDirectory(directory)
+                .withTarRecovery((id, data, recovery) -> {
+                    // Intentionally left blank
+                })
+                .withMemoryMapping(mmap)
+                .withIOMonitor(new IOMonitorAdapter())
+                .withFileStoreMonitor(new FileStoreMonitorAdapter())
+                .withRemoteStoreMonitor(new RemoteStoreMonitorAdapter())
+                .withMaxFileSize(Long.MAX_VALUE)
+                .withReadOnly()
+                .build()) {
+            report("open", start, allocated);
+
+            AtomicLong references = new AtomicLong();
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            tarFiles.collectBlobReferences(reference -> references.incrementAndGet(), generation -> false);
+            report("collect " + references.get() + " binary references", start, allocated);
+        }
+
+        SegmentArchiveManager manager = new SegmentTarManager(directory, new FileStoreMonitorAdapter(), new IOMonitorAdapter(), mmap, false);
+        List<TarReader> readers = new ArrayList<>();
+        try {
+            for (String name : manager.listArchives()) {
+                readers.add(TarReader.open(name, manager));
+            }
+
+            AtomicLong edges = new AtomicLong();
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            for (TarReader reader : readers) {
+                Map<UUID, List<UUID>> graph = reader.getGraph();
+                for (SegmentArchiveEntry entry : reader.getEntries()) {
+                    List<UUID> vertices = graph.get(new UUID(entry.getMsb(), entry.getLsb()));
+                    if (vertices != null) {
+                        edges.addAndGet(vertices.size());
+                    }
+                }
+            }
+            report("traverse " + edges.get() + " edges of parsed graphs", start, allocated);
+
+            edges.set(0);
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            for (TarReader reader : readers) {
+                SegmentGraph graph = reader.getSegmentGraph();
+                for (SegmentArchiveEntry entry : reader.getEntries()) {
+                    graph.forEachReference(new UUID(entry.getMsb(), entry.getLsb()), vertex -> edges.incrementAndGet());
+                }
+            }
+            report("traverse " + edges.get() + " edges of graph views", start, allocated);
+        } finally {
+            for (TarReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static void report(String operation, long start, long allocated) {
+        System.out.printf("  %s: %,d ms, %,d bytes allocated%n", operation,
+                (System.nanoTime() - start) / 1_000_000, allocatedBytes() - allocated);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+}
@@ -61,6 +61,10 @@ public class StandbyStoreServiceTest {
             .withIntegerType()
             .withValue("60000")
             .check());
+        assertTrue(cd.hasProperty("standby.requestwindow")
+            .withIntegerType()
+            .withValue("32")
+            .check());
         assertTrue(cd.hasProperty("standby.autoclean")
             .withBooleanType()
             .withValue("true")
@@ -112,6 +116,10 @@ public class StandbyStoreServiceTest {
             .withIntegerType()
             .withDefaultValue("60000")
             .check());
+        assertTrue(ocd.hasAttributeDefinition("standby.requestwindow")
+            .withIntegerType()
+            .withDefaultValue("32")
+            .check());
         assertTrue(ocd.hasAttributeDefinition("standby.autoclean")
             .withBooleanType()
             .withDefaultValue("true")
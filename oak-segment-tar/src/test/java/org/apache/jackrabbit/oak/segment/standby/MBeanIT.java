@@ -230,6 +230,7 @@ public class MBeanIT extends TestBase {
             assertEquals("0", jmxServer.getAttribute(clientStatus, "SecondsSinceLastSuccess").toString());
             assertEquals("0", jmxServer.invoke(clientStatus, "calcFailedRequests", null, null).toString());
             assertEquals("0", jmxServer.invoke(clientStatus, "calcSecondsSinceLastSuccess", null, null).toString());
+            assertEquals(String.valueOf(StandbyClientSync.DEFAULT_REQUEST_WINDOW), jmxServer.getAttribute(clientStatus, "RequestWindow").toString());
 
             Thread.sleep(1000);
 
@@ -120,6 +120,49 @@ public class StandbyTestIT extends TestBase {
         }
     }
 
+    /**
+     * This test syncs a few segments with a small window of outstanding
+     * requests, so that requests are sent while responses to previous
+     * requests are still being received.
+     */
+    @Test
+    public void testSyncWithRequestWindow() throws Exception {
+        FileStore primary = serverFileStore.fileStore();
+        FileStore secondary = clientFileStore.fileStore();
+
+        NodeStore store = SegmentNodeStoreBuilders.builder(primary).build();
+        try (
+            StandbyServerSync serverSync = StandbyServerSync.builder()
+                .withPort(serverPort.getPort())
+                .withFileStore(primary)
+                .withBlobChunkSize(MB)
+                .build();
+            StandbyClientSync clientSync = StandbyClientSync.builder()
+                .withHost(getServerHost())
+                .withPort(serverPort.getPort())
+                .withFileStore(secondary)
+                .withSecureConnection(false)
+                .withReadTimeoutMs(getClientTimeout())
+                .withRequestWindow(4)
+                .withAutoClean(false)
+                .withSpoolFolder(folder.newFolder())
+                .build()
+        ) {
+            serverSync.start();
+            addTestContent(store, "server", MB, 1500);
+            primary.flush();
+
+            clientSync.run();
+
+            assertEquals(primary.getHead(), secondary.getHead());
+            assertEquals(0, clientSync.getFailedRequests());
+            assertEquals(4, clientSync.getRequestWindow());
+            assertTrue(clientSync.getSegmentsFetched() > 4);
+            assertTrue(clientSync.getBytesFetched() > 0);
+            assertTrue(clientSync.getFetchThroughput() > 0);
+        }
+    }
+
     /**
      * This test syncs a few segments over an encrypted connection.
      * Both server and client certificates are generated on-the-fly.
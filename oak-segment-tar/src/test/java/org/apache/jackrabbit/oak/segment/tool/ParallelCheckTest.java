@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.tool;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Set;
+
+import org.apache.jackrabbit.guava.common.collect.ImmutableSet;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Check} traversing the checked trees with multiple threads.
+ */
+public class ParallelCheckTest extends CheckRepositoryTestBase {
+
+    private String[] check(int concurrency, boolean checkBinaries, Set<String> checkpoints, Set<String> filterPaths) {
+        StringWriter strOut = new StringWriter();
+        StringWriter strErr = new StringWriter();
+
+        PrintWriter outWriter = new PrintWriter(strOut, true);
+        PrintWriter errWriter = new PrintWriter(strErr, true);
+
+        int result = Check.builder()
+            .withPath(temporaryFolder.getRoot())
+            .withDebugInterval(Long.MAX_VALUE)
+            .withCheckBinaries(checkBinaries)
+            .withCheckHead(true)
+            .withCheckpoints(checkpoints)
+            .withFilterPaths(filterPaths)
+            .withConcurrency(concurrency)
+            .withOutWriter(outWriter)
+            .withErrWriter(errWriter)
+            .build()
+            .run();
+
+        outWriter.close();
+        errWriter.close();
+
+        return new String[] {String.valueOf(result), strOut.toString(), strErr.toString()};
+    }
+
+    private void assertSameOutput(boolean checkBinaries, Set<String> checkpoints, Set<String> filterPaths) {
+        String[] expected = check(1, checkBinaries, checkpoints, filterPaths);
+        for (int concurrency : new int[] {2, 4}) {
+            String[] actual = check(concurrency, checkBinaries, checkpoints, filterPaths);
+            assertEquals("exit code", expected[0], actual[0]);
+            assertEquals("out", expected[1], actual[1]);
+            assertEquals("err", expected[2], actual[2]);
+        }
+    }
+
+    @Test
+    public void testValidRepository() {
+        assertSameOutput(true, ImmutableSet.of("all"), ImmutableSet.of("/"));
+        assertSameOutput(false, ImmutableSet.of("all"), ImmutableSet.of("/a", "/b", "/z"));
+    }
+
+    @Test
+    public void testInvalidRevision() throws Exception {
+        addInvalidRevision();
+        assertSameOutput(true, ImmutableSet.of("all"), ImmutableSet.of("/"));
+        assertSameOutput(false, ImmutableSet.of("all"), ImmutableSet.of("/a", "/b", "/z"));
+    }
+
+    @Test
+    public void testCorruptCheckpoint() throws Exception {
+        addInvalidRevision();
+        corruptPathFromCheckpoint();
+        assertSameOutput(true, ImmutableSet.of("all"), ImmutableSet.of("/"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidConcurrency() {
+        Check.builder().withConcurrency(0);
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.jetbrains.annotations.NotNull;
+
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkNotNull;
+
+/**
+ * Asynchronous variant of the read operations of a {@link DocumentStore}.
+ * The methods return immediately and complete the returned future once the
+ * underlying read finished. A caller that knows about multiple documents it
+ * will need can therefore overlap the round trips to the backend.
+ * <p>
+ * The operations have the same semantics as the corresponding methods of the
+ * {@link DocumentStore}. In particular, documents read through this interface
+ * are put into the cache of the store. A failed read completes the future
+ * exceptionally with a {@link DocumentStoreException}.
+ *
+ * @see DocumentStore#async()
+ */
+public interface AsyncDocumentStore {
+
+    /**
+     * Asynchronous variant of {@link DocumentStore#find(Collection, String)}.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param key the key
+     * @return a future with the document or {@code null} if not found.
+     */
+    @NotNull
+    <T extends Document> CompletableFuture<T> findAsync(Collection<T> collection,
+                                                        String key);
+
+    /**
+     * Asynchronous variant of
+     * {@link DocumentStore#query(Collection, String, String, int)}.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param fromKey the start value (excluding)
+     * @param toKey the end value (excluding)
+     * @param limit the maximum number of entries to return (starting with the lowest key)
+     * @return a future with the list (possibly empty).
+     */
+    @NotNull
+    <T extends Document> CompletableFuture<List<T>> queryAsync(Collection<T> collection,
+                                                               String fromKey,
+                                                               String toKey,
+                                                               int limit);
+
+    /**
+     * Returns an {@link AsyncDocumentStore} performing the operations on the
+     * given store in the calling thread. The returned futures are already
+     * completed.
+     *
+     * @param store the document store.
+     * @return a synchronous implementation of the interface.
+     */
+    @NotNull
+    static AsyncDocumentStore synchronous(@NotNull DocumentStore store) {
+        checkNotNull(store);
+        return new AsyncDocumentStore() {
+            @Override
+            public @NotNull <T extends Document> CompletableFuture<T> findAsync(Collection<T> collection,
+                                                                               String key) {
+                try {
+                    return CompletableFuture.completedFuture(store.find(collection, key));
+                } catch (Throwable t) {
+                    return failed(t);
+                }
+            }
+
+            @Override
+            public @NotNull <T extends Document> CompletableFuture<List<T>> queryAsync(Collection<T> collection,
+                                                                                      String fromKey,
+                                                                                      String toKey,
+                                                                                      int limit) {
+                try {
+                    return CompletableFuture.completedFuture(store.query(collection, fromKey, toKey, limit));
+                } catch (Throwable t) {
+                    return failed(t);
+                }
+            }
+
+            private <R> CompletableFuture<R> failed(Throwable t) {
+                CompletableFuture<R> f = new CompletableFuture<>();
+                f.completeExceptionally(DocumentStoreException.convert(t));
+                return f;
+            }
+        };
+    }
+}
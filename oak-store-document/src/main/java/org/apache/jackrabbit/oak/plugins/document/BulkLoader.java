@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jackrabbit.guava.common.base.Stopwatch;
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
+import org.apache.jackrabbit.oak.json.JsonSerializer;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
+
+/**
+ * Loads a new subtree into a {@link DocumentNodeStore} without going through
+ * the regular commit path for each node. This is intended for initial
+ * migrations into an empty or otherwise exclusively owned subtree.
+ * <p>
+ * The documents for the descendants of the new node are written in batches
+ * with bulk inserts. Each document is its own commit root for a single bulk
+ * revision and already has its {@code _lastRev} and {@code _children} flag
+ * set, therefore no conflict checks, commit root updates or {@code _lastRev}
+ * propagation is needed. The documents are not reachable until the new node
+ * itself is added to its parent with a regular commit at the end, which
+ * publishes the entire subtree at once.
+ * <p>
+ * Limitations:
+ * <ul>
+ *     <li>Nodes are not bundled.</li>
+ *     <li>Commit hooks do not see the subtree, indexes must be updated
+ *     with a reindex.</li>
+ *     <li>No other session must write to the subtree while it is loaded.</li>
+ * </ul>
+ */
+final class BulkLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkLoader.class);
+
+    private static final Comparator<UpdateOp> BY_ID = Comparator.comparing(UpdateOp::getId);
+
+    private final DocumentNodeStore nodeStore;
+
+    private final DocumentStore store;
+
+    private final int batchSize;
+
+    private final JsopBuilder json = new JsopBuilder();
+
+    private final List<UpdateOp> batch = new ArrayList<>();
+
+    /**
+     * Ids of documents that already existed when they were written, e.g.
+     * left over from a previously deleted subtree.
+     */
+    private final Set<String> updated = new HashSet<>();
+
+    private long numNodes;
+
+    BulkLoader(@NotNull DocumentNodeStore nodeStore) {
+        this.nodeStore = nodeStore;
+        this.store = nodeStore.getDocumentStore();
+        this.batchSize = Math.max(1, nodeStore.getCreateOrUpdateBatchSize());
+    }
+
+    /**
+     * Loads {@code content} as a new node at {@code path}.
+     *
+     * @param path the path of the new node.
+     * @param content the content of the new node.
+     * @return the number of nodes loaded.
+     * @throws IllegalArgumentException if the parent does not exist or the
+     *          node already exists.
+     * @throws CommitFailedException if the commit that publishes the new
+     *          node fails. The documents written so far are removed again.
+     */
+    long load(@NotNull Path path, @NotNull NodeState content)
+            throws CommitFailedException {
+        Path parentPath = path.getParent();
+        checkArgument(parentPath != null, "Cannot bulk load the root node");
+        NodeState parent = getNode(nodeStore.getRoot(), parentPath);
+        checkArgument(parent.exists(), "Parent does not exist: %s", parentPath);
+        checkArgument(!parent.hasChildNode(path.getName()), "Node already exists: %s", path);
+
+        Stopwatch sw = Stopwatch.createStarted();
+        Revision revision = nodeStore.newRevision();
+        boolean success = false;
+        try {
+            for (ChildNodeEntry child : content.getChildNodeEntries()) {
+                write(new Path(path, child.getName()), child.getNodeState(), revision);
+            }
+            flush(revision);
+            LOG.info("Bulk loaded {} nodes below {} in {}, publishing...",
+                    numNodes, path, sw);
+            publish(path, content);
+            success = true;
+        } finally {
+            if (!success) {
+                LOG.warn("Bulk load of {} failed, removing documents", path);
+                rollback(path, content, revision);
+            }
+        }
+        LOG.info("Bulk load of {} done in {}", path, sw);
+        return numNodes + 1;
+    }
+
+    //----------------------------< internal >----------------------------------
+
+    private void write(Path path, NodeState state, Revision revision) {
+        String id = Utils.getIdFromPath(path);
+        UpdateOp op = new UpdateOp(id, true);
+        if (Utils.isIdFromLongPath(id)) {
+            op.set(NodeDocument.PATH, path.toString());
+        }
+        NodeDocument.setModified(op, revision);
+        NodeDocument.setDeleted(op, revision, false);
+        for (PropertyState p : state.getProperties()) {
+            json.resetWriter();
+            JsonSerializer serializer = new JsonSerializer(json, nodeStore.getBlobSerializer());
+            serializer.serialize(p);
+            op.setMapEntry(Utils.escapePropertyName(p.getName()), revision, serializer.toString());
+            if (p.getType() == Type.BINARY || p.getType() == Type.BINARIES) {
+                NodeDocument.setHasBinary(op);
+            }
+        }
+        boolean hasChildren = false;
+        for (ChildNodeEntry child : state.getChildNodeEntries()) {
+            hasChildren = true;
+            write(new Path(path, child.getName()), child.getNodeState(), revision);
+        }
+        if (hasChildren) {
+            NodeDocument.setChildrenFlag(op, true);
+        }
+        NodeDocument.setRevision(op, revision, "c");
+        NodeDocument.setLastRev(op, revision);
+        batch.add(op);
+        numNodes++;
+        if (batch.size() >= batchSize) {
+            flush(revision);
+        }
+    }
+
+    private void flush(Revision revision) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        batch.sort(BY_ID);
+        if (!store.create(NODES, batch)) {
+            // some documents already exist, e.g. from a deleted subtree
+            // that was not yet garbage collected. the others may have
+            // been created by the bulk insert
+            for (UpdateOp op : batch) {
+                NodeDocument before = store.createOrUpdate(NODES, op);
+                if (before != null && !before.getLocalRevisions().containsKey(revision)) {
+                    updated.add(op.getId());
+                }
+            }
+        }
+        batch.clear();
+    }
+
+    private void publish(Path path, NodeState content)
+            throws CommitFailedException {
+        // the new node has children, but the commit does not know about
+        // them. set the flag upfront on the yet empty document
+        UpdateOp op = new UpdateOp(Utils.getIdFromPath(path), true);
+        if (Utils.isIdFromLongPath(op.getId())) {
+            op.set(NodeDocument.PATH, path.toString());
+        }
+        NodeDocument.setChildrenFlag(op, content.getChildNodeCount(1) > 0);
+        store.createOrUpdate(NODES, op);
+
+        NodeBuilder builder = nodeStore.getRoot().builder();
+        NodeBuilder parent = builder;
+        for (String name : path.getParent().elements()) {
+            parent = parent.getChildNode(name);
+        }
+        NodeBuilder target = parent.setChildNode(path.getName());
+        for (PropertyState p : content.getProperties()) {
+            target.setProperty(p);
+        }
+        nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+        // the commit considers the new node a leaf and may have cached
+        // it without children
+        DocumentNodeState state = (DocumentNodeState) getNode(nodeStore.getRoot(), path);
+        nodeStore.invalidateNodeChildrenCache(path, state.getLastRevision());
+    }
+
+    private void rollback(Path path, NodeState content, Revision revision) {
+        try {
+            batch.clear();
+            List<String> ids = new ArrayList<>();
+            remove(path, content, revision, ids);
+            if (!ids.isEmpty()) {
+                store.remove(NODES, ids);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to remove documents of failed bulk load at {}", path, e);
+        }
+    }
+
+    private void remove(Path path, NodeState state, Revision revision, List<String> ids) {
+        for (ChildNodeEntry child : state.getChildNodeEntries()) {
+            Path p = new Path(path, child.getName());
+            remove(p, child.getNodeState(), revision, ids);
+            String id = Utils.getIdFromPath(p);
+            if (updated.contains(id)) {
+                revert(id, revision);
+            } else {
+                ids.add(id);
+                if (ids.size() >= batchSize) {
+                    store.remove(NODES, ids);
+                    ids.clear();
+                }
+            }
+        }
+    }
+
+    private void revert(String id, Revision revision) {
+        // only remove the changes of the bulk revision from a document
+        // that existed before
+        NodeDocument doc = store.find(NODES, id);
+        if (doc == null) {
+            return;
+        }
+        UpdateOp op = new UpdateOp(id, false);
+        for (String key : doc.keySet()) {
+            Object value = doc.get(key);
+            if (value instanceof Map && ((Map<?, ?>) value).containsKey(revision)) {
+                op.removeMapEntry(key, revision);
+            }
+        }
+        if (op.hasChanges()) {
+            store.findAndUpdate(NODES, op);
+        }
+    }
+
+    private static NodeState getNode(NodeState root, Path path) {
+        NodeState state = root;
+        for (String name : path.elements()) {
+            state = state.getChildNode(name);
+        }
+        return state;
+    }
+}
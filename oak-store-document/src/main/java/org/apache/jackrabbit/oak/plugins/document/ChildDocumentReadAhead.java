@@ -0,0 +1,406 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkNotNull;
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
+
+/**
+ * Reads the child documents of sibling nodes ahead of a depth-first
+ * traversal.
+ * <p>
+ * The child documents of all children of a node {@code /a} are adjacent in
+ * the id space: {@code 3:/a/b/x}, {@code 3:/a/b/y}, {@code 3:/a/c/z}, ...
+ * When the child documents of two children of {@code /a} were read, the
+ * traversal most likely continues with the next children of {@code /a}.
+ * This class then issues a single asynchronous range query for the child
+ * documents of the following siblings and serves subsequent reads from the
+ * result. A listing of the children of {@code /a}, which does not descend
+ * into them, does not trigger a read-ahead.
+ * <p>
+ * The number of documents read ahead adapts per subtree. It doubles when the
+ * previous read-ahead was consumed and is halved when most of it was wasted.
+ * <p>
+ * A read-ahead result is only used for a read revision that was visible when
+ * the range query was issued. All child documents of a node at such a
+ * revision already existed and are contained in the result.
+ */
+final class ChildDocumentReadAhead {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChildDocumentReadAhead.class);
+
+    static final int MIN_WINDOW = 50;
+
+    /**
+     * The maximum number of subtrees tracked.
+     */
+    private static final int MAX_SUBTREES = 64;
+
+    private final AsyncDocumentStore store;
+
+    private final Supplier<RevisionVector> headRevision;
+
+    private final int maxWindow;
+
+    /**
+     * Tracked subtrees by the path of the node whose grandchildren are read.
+     * Guarded by {@code this}.
+     */
+    private final Map<Path, Subtree> subtrees = new LinkedHashMap<Path, Subtree>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Subtree> eldest) {
+            if (size() > MAX_SUBTREES) {
+                eldest.getValue().discard();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final AtomicLong readCount = new AtomicLong();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong readAheadCount = new AtomicLong();
+
+    private final AtomicLong readAheadDocCount = new AtomicLong();
+
+    private final AtomicLong wastedDocCount = new AtomicLong();
+
+    /**
+     * @param store the store to read from.
+     * @param headRevision supplies the current head revision or
+     *          {@code null} if not yet known.
+     * @param maxWindow the maximum number of documents read with a single
+     *          read-ahead.
+     */
+    ChildDocumentReadAhead(@NotNull AsyncDocumentStore store,
+                           @NotNull Supplier<RevisionVector> headRevision,
+                           int maxWindow) {
+        checkArgument(maxWindow >= MIN_WINDOW, "maxWindow must be at least %s: %s", MIN_WINDOW, maxWindow);
+        this.store = checkNotNull(store);
+        this.headRevision = checkNotNull(headRevision);
+        this.maxWindow = maxWindow;
+    }
+
+    /**
+     * Returns the child documents of the node at {@code path} from a
+     * previous read-ahead, if available.
+     *
+     * @param path the path of the parent node.
+     * @param readRevision the revision the children are read at.
+     * @param fromKey the lower bound id (exclusive).
+     * @param toKey the upper bound id (exclusive).
+     * @param limit the maximum number of documents to return.
+     * @return the child documents sorted by id, same as
+     *          {@link DocumentStore#query(Collection, String, String, int)},
+     *          or {@code null} if they were not read ahead.
+     */
+    @Nullable
+    List<NodeDocument> getChildDocs(@NotNull Path path,
+                                    @NotNull RevisionVector readRevision,
+                                    @NotNull String fromKey,
+                                    @NotNull String toKey,
+                                    int limit) {
+        readCount.incrementAndGet();
+        Path parent = path.getParent();
+        if (parent == null || readRevision.isBranch()) {
+            return null;
+        }
+        ReadAhead ra;
+        synchronized (this) {
+            Subtree s = subtrees.get(parent);
+            ra = s != null ? s.readAhead : null;
+        }
+        if (ra == null || !ra.isVisible(readRevision)) {
+            return null;
+        }
+        List<NodeDocument> docs = ra.serve(fromKey, toKey, limit);
+        if (docs != null) {
+            hitCount.incrementAndGet();
+        }
+        return docs;
+    }
+
+    /**
+     * Informs this read-ahead that the child documents of the node at
+     * {@code path} were read. This may issue a read-ahead for the child
+     * documents of the following siblings of the node.
+     *
+     * @param path the path of the parent node.
+     * @param readRevision the revision the children are read at.
+     */
+    void childDocsRead(@NotNull Path path, @NotNull RevisionVector readRevision) {
+        Path parent = path.getParent();
+        if (parent == null || readRevision.isBranch()) {
+            return;
+        }
+        String fromKey = Utils.getKeyUpperLimit(path);
+        String toKey = grandchildUpperLimit(parent);
+        if (!fromKey.startsWith(toKey.substring(0, toKey.indexOf(':') + 1) + "/")) {
+            // long path with hashed ids
+            return;
+        }
+        RevisionVector head = headRevision.get();
+        if (head == null) {
+            return;
+        }
+        ReadAhead ra;
+        synchronized (this) {
+            Subtree s = subtrees.computeIfAbsent(parent, p -> new Subtree());
+            if (++s.descents < 2) {
+                return;
+            }
+            ReadAhead previous = s.readAhead;
+            if (previous != null) {
+                if (!previous.isDone() || previous.covers(fromKey)) {
+                    // still in flight or documents left
+                    return;
+                }
+                s.window = previous.adapt(s.window, maxWindow);
+                previous.discard();
+            }
+            ra = new ReadAhead(fromKey, toKey, s.window, head);
+            s.readAhead = ra;
+        }
+        // issue the query outside the lock, a synchronous
+        // AsyncDocumentStore performs it in the calling thread
+        ra.start();
+    }
+
+    /**
+     * @return the number of child document reads.
+     */
+    long getReadCount() {
+        return readCount.get();
+    }
+
+    /**
+     * @return the number of child document reads served from a read-ahead.
+     */
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of read-ahead range queries.
+     */
+    long getReadAheadCount() {
+        return readAheadCount.get();
+    }
+
+    /**
+     * @return the number of documents read ahead.
+     */
+    long getReadAheadDocumentCount() {
+        return readAheadDocCount.get();
+    }
+
+    /**
+     * @return the number of documents read ahead and never used.
+     */
+    long getWastedDocumentCount() {
+        return wastedDocCount.get();
+    }
+
+    /**
+     * @return the ratio of child document reads served from a read-ahead.
+     */
+    double getHitRatio() {
+        long reads = readCount.get();
+        return reads == 0 ? 0 : (double) hitCount.get() / reads;
+    }
+
+    /**
+     * @return the ratio of documents read ahead and never used.
+     */
+    double getWasteRatio() {
+        long docs = readAheadDocCount.get();
+        return docs == 0 ? 0 : (double) wastedDocCount.get() / docs;
+    }
+
+    /**
+     * Returns the upper limit for the ids of the grandchildren of the node
+     * at the given path.
+     */
+    private static String grandchildUpperLimit(Path path) {
+        String upper = Utils.getKeyUpperLimit(path);
+        return (Utils.getIdDepth(path) + 2) + upper.substring(upper.indexOf(':'));
+    }
+
+    private static final class Subtree {
+
+        int descents;
+
+        int window = MIN_WINDOW * 2;
+
+        ReadAhead readAhead;
+
+        void discard() {
+            if (readAhead != null) {
+                readAhead.discard();
+                readAhead = null;
+            }
+        }
+    }
+
+    private final class ReadAhead {
+
+        private final String fromKey;
+
+        private final String toKey;
+
+        private final int limit;
+
+        private final RevisionVector head;
+
+        private volatile CompletableFuture<List<NodeDocument>> docs;
+
+        private final AtomicLong served = new AtomicLong();
+
+        ReadAhead(String fromKey, String toKey, int limit, RevisionVector head) {
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+            this.limit = limit;
+            this.head = head;
+        }
+
+        void start() {
+            LOG.debug("Reading ahead {} documents after {}", limit, fromKey);
+            readAheadCount.incrementAndGet();
+            CompletableFuture<List<NodeDocument>> f = store.queryAsync(NODES, fromKey, toKey, limit);
+            f.thenAccept(result -> readAheadDocCount.addAndGet(result.size()));
+            docs = f;
+        }
+
+        boolean isVisible(RevisionVector readRevision) {
+            return head.pmax(readRevision).equals(head);
+        }
+
+        boolean isDone() {
+            CompletableFuture<List<NodeDocument>> f = docs;
+            return f != null && f.isDone();
+        }
+
+        /**
+         * @return whether the result contains documents with an id greater
+         *          than {@code key}.
+         */
+        boolean covers(String key) {
+            List<NodeDocument> result = getResult();
+            return result != null && key.compareTo(coveredTo(result)) < 0;
+        }
+
+        @Nullable
+        List<NodeDocument> serve(String from, String to, int max) {
+            List<NodeDocument> result = getResult();
+            if (result == null || from.compareTo(fromKey) < 0
+                    || to.compareTo(coveredTo(result)) > 0) {
+                return null;
+            }
+            int start = indexAfter(result, from);
+            List<NodeDocument> served = new ArrayList<>();
+            for (int i = start; i < result.size() && served.size() < max; i++) {
+                NodeDocument doc = result.get(i);
+                if (doc.getId().compareTo(to) >= 0) {
+                    break;
+                }
+                served.add(doc);
+            }
+            this.served.addAndGet(served.size());
+            return served;
+        }
+
+        int adapt(int window, int maxWindow) {
+            List<NodeDocument> result = getResult();
+            if (result == null) {
+                return window;
+            }
+            if (served.get() >= result.size() / 2) {
+                return Math.min(window * 2, maxWindow);
+            } else {
+                return Math.max(window / 2, MIN_WINDOW);
+            }
+        }
+
+        void discard() {
+            if (!isDone()) {
+                // do not wait for a read-ahead in flight
+                return;
+            }
+            List<NodeDocument> result = getResult();
+            if (result != null) {
+                wastedDocCount.addAndGet(Math.max(0, result.size() - served.get()));
+            }
+        }
+
+        /**
+         * @return the upper bound (inclusive) of the ids covered by the
+         *          result.
+         */
+        private String coveredTo(List<NodeDocument> result) {
+            if (result.size() < limit) {
+                return toKey;
+            }
+            return result.get(result.size() - 1).getId();
+        }
+
+        @Nullable
+        private List<NodeDocument> getResult() {
+            CompletableFuture<List<NodeDocument>> f = docs;
+            if (f == null || f.isCompletedExceptionally()) {
+                return null;
+            }
+            try {
+                return f.join();
+            } catch (CompletionException e) {
+                LOG.debug("Read-ahead after {} failed", fromKey, e);
+                return null;
+            }
+        }
+    }
+
+    private static int indexAfter(List<NodeDocument> docs, String key) {
+        int low = 0;
+        int high = docs.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (docs.get(mid).getId().compareTo(key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
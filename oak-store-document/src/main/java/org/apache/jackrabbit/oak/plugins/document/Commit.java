@@ -411,7 +411,7 @@ public class Commit {
             } else {
                 int batchSize = nodeStore.getCreateOrUpdateBatchSize();
                 for (List<UpdateOp> updates : partition(changedNodes, batchSize)) {
-                    List<NodeDocument> oldDocs = store.createOrUpdate(NODES, updates);
+                    List<NodeDocument> oldDocs = nodeStore.createOrUpdateCommitChanges(updates);
                     checkConflicts(oldDocs, updates);
                     checkSplitCandidate(oldDocs);
                 }
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkNotNull;
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
+
+/**
+ * Collects the {@link UpdateOp}s of concurrently applied commits and writes
+ * them with a single {@link DocumentStore#createOrUpdate(Collection, List)}
+ * call.
+ * <p>
+ * The first commit that arrives while no batch is being written becomes the
+ * leader. It waits for the configured window, takes all queued requests and
+ * writes them. Commits arriving meanwhile queue up for the next batch, which
+ * is written by one of them as soon as the current leader is done. A batch
+ * never contains two updates for the same document. A request touching a
+ * document already present in the batch starts a new batch, which is written
+ * after the previous one. This way every commit sees exactly the before
+ * documents it would see with an individual call and conflict detection
+ * is unaffected.
+ * <p>
+ * If the write of a batch fails, all requests of the batch fail with the
+ * same exception. As with an individual call, the changes may have been
+ * applied partially and each commit rolls back its own changes.
+ */
+final class CommitPipeline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CommitPipeline.class);
+
+    private final DocumentStore store;
+
+    private final long windowNanos;
+
+    private final int maxBatchSize;
+
+    /**
+     * The requests waiting for the next batch. Guarded by {@code this}.
+     */
+    private final List<Request> queue = new ArrayList<>();
+
+    /**
+     * Whether a batch is currently collected or written. Guarded by
+     * {@code this}.
+     */
+    private boolean leading;
+
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /**
+     * @param store the store to write to.
+     * @param windowMicros the time in microseconds the leader waits for
+     *          other commits before it writes a batch.
+     * @param maxBatchSize the maximum number of updates in a batch.
+     */
+    CommitPipeline(@NotNull DocumentStore store,
+                   long windowMicros,
+                   int maxBatchSize) {
+        checkArgument(windowMicros >= 0, "windowMicros must not be negative: %s", windowMicros);
+        checkArgument(maxBatchSize > 0, "maxBatchSize must be positive: %s", maxBatchSize);
+        this.store = checkNotNull(store);
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Creates or updates the node documents of the given update operations,
+     * together with the updates of concurrent callers.
+     *
+     * @param updates the update operations of a commit.
+     * @return the documents before the update, see
+     *          {@link DocumentStore#createOrUpdate(Collection, List)}.
+     * @throws DocumentStoreException if the update failed.
+     */
+    @NotNull
+    List<NodeDocument> createOrUpdate(@NotNull List<UpdateOp> updates)
+            throws DocumentStoreException {
+        Request request = new Request(updates);
+        requestCount.incrementAndGet();
+        boolean interrupted = false;
+        synchronized (this) {
+            queue.add(request);
+            while (leading && !request.result.isDone()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // the request may already be part of a batch
+                    interrupted = true;
+                }
+            }
+            if (!request.result.isDone()) {
+                leading = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (!request.result.isDone()) {
+            lead();
+        }
+        try {
+            return request.result.get();
+        } catch (InterruptedException e) {
+            // cannot happen, the result is done
+            Thread.currentThread().interrupt();
+            throw DocumentStoreException.convert(e);
+        } catch (ExecutionException e) {
+            throw DocumentStoreException.convert(e.getCause());
+        }
+    }
+
+    /**
+     * @return the number of batches written so far.
+     */
+    long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * @return the number of requests received so far.
+     */
+    long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of requests currently waiting for a batch.
+     */
+    synchronized int getQueueLength() {
+        return queue.size();
+    }
+
+    private void lead() {
+        try {
+            if (windowNanos > 0) {
+                LockSupport.parkNanos(windowNanos);
+            }
+            List<Request> requests;
+            synchronized (this) {
+                requests = new ArrayList<>(queue);
+                queue.clear();
+            }
+            write(requests);
+        } finally {
+            synchronized (this) {
+                leading = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private void write(List<Request> requests) {
+        List<Request> batch = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        int size = 0;
+        for (Request r : requests) {
+            if (!batch.isEmpty()
+                    && (size + r.updates.size() > maxBatchSize || r.overlaps(ids))) {
+                write(batch, size);
+                batch = new ArrayList<>();
+                ids.clear();
+                size = 0;
+            }
+            batch.add(r);
+            for (UpdateOp op : r.updates) {
+                ids.add(op.getId());
+            }
+            size += r.updates.size();
+        }
+        if (!batch.isEmpty()) {
+            write(batch, size);
+        }
+    }
+
+    private void write(List<Request> batch, int size) {
+        List<UpdateOp> updates = new ArrayList<>(size);
+        for (Request r : batch) {
+            updates.addAll(r.updates);
+        }
+        LOG.debug("Writing {} updates of {} commits", size, batch.size());
+        batchCount.incrementAndGet();
+        List<NodeDocument> before;
+        try {
+            before = store.createOrUpdate(NODES, updates);
+        } catch (Throwable t) {
+            for (Request r : batch) {
+                r.result.completeExceptionally(t);
+            }
+            return;
+        }
+        int offset = 0;
+        for (Request r : batch) {
+            int end = offset + r.updates.size();
+            r.result.complete(new ArrayList<>(before.subList(offset, end)));
+            offset = end;
+        }
+    }
+
+    private static final class Request {
+
+        private final List<UpdateOp> updates;
+
+        private final CompletableFuture<List<NodeDocument>> result = new CompletableFuture<>();
+
+        Request(List<UpdateOp> updates) {
+            this.updates = updates;
+        }
+
+        boolean overlaps(Set<String> ids) {
+            for (UpdateOp op : updates) {
+                if (ids.contains(op.getId())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
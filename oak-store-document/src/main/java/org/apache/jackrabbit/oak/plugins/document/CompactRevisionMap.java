@@ -0,0 +1,460 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.jackrabbit.guava.common.collect.Interner;
+import org.apache.jackrabbit.guava.common.collect.Interners;
+import org.apache.jackrabbit.oak.cache.CacheValue;
+import org.apache.jackrabbit.oak.commons.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An immutable, compact representation of a sorted map from revisions to
+ * string values, as used for the {@link NodeDocument#REVISIONS},
+ * {@link NodeDocument#COMMIT_ROOT}, {@link NodeDocument#DELETED} and property
+ * entries of a sealed {@link NodeDocument}.
+ * <p>
+ * Instead of a tree of entries, the map keeps the timestamp, counter and
+ * cluster id of its revisions in parallel arrays, sorted by the comparator
+ * of the map. {@link Revision} objects and entries are only created when the
+ * map is accessed. Short values are interned, because the same values (e.g.
+ * "c" for a commit or "false" for a node that is not deleted) occur in most
+ * documents.
+ */
+final class CompactRevisionMap extends AbstractMap<Revision, Object>
+        implements NavigableMap<Revision, Object>, CacheValue {
+
+    /**
+     * Values up to this length are interned.
+     */
+    private static final int INTERN_LIMIT = 32;
+
+    private static final Interner<String> VALUES = Interners.newWeakInterner();
+
+    /**
+     * Shallow size of this object and of its four arrays.
+     */
+    private static final int SHALLOW_MEMORY_USAGE = 48 + 4 * 16;
+
+    /**
+     * Size of an entry: a timestamp, a counter, a cluster id and a reference
+     * to the value.
+     */
+    private static final int ENTRY_MEMORY_USAGE = 8 + 4 + 4 + 4;
+
+    private final Comparator<? super Revision> comparator;
+
+    /**
+     * Whether {@link #comparator} is {@link StableRevisionComparator#REVERSE}.
+     */
+    private final boolean reverse;
+
+    private final long[] timestamps;
+
+    private final int[] counters;
+
+    private final int[] clusterIds;
+
+    private final Object[] values;
+
+    /**
+     * The range of the arrays covered by this map: from (inclusive) to
+     * (exclusive). A sub map shares the arrays of its parent map.
+     */
+    private final int from, to;
+
+    private final int memory;
+
+    private CompactRevisionMap(Comparator<? super Revision> comparator,
+                               long[] timestamps,
+                               int[] counters,
+                               int[] clusterIds,
+                               Object[] values,
+                               int from,
+                               int to,
+                               int memory) {
+        this.comparator = comparator;
+        this.reverse = comparator == StableRevisionComparator.REVERSE;
+        this.timestamps = timestamps;
+        this.counters = counters;
+        this.clusterIds = clusterIds;
+        this.values = values;
+        this.from = from;
+        this.to = to;
+        this.memory = memory;
+    }
+
+    /**
+     * Creates a compact copy of the given map, if it can be represented as
+     * a {@code CompactRevisionMap}. That is the case if the map is a non-empty
+     * sorted map with a {@link StableRevisionComparator}, its keys are
+     * revisions, none of them a branch revision, and its values are strings.
+     *
+     * @param map the map to copy.
+     * @return the compact copy or {@code null} if the map can't be
+     *          represented as a {@code CompactRevisionMap}.
+     */
+    @Nullable
+    static CompactRevisionMap fromMap(@NotNull Map<?, ?> map) {
+        if (map.isEmpty() || !(map instanceof SortedMap)) {
+            return null;
+        }
+        Comparator<?> comparator = ((SortedMap<?, ?>) map).comparator();
+        if (comparator != StableRevisionComparator.REVERSE
+                && comparator != StableRevisionComparator.INSTANCE) {
+            return null;
+        }
+        int size = map.size();
+        long[] timestamps = new long[size];
+        int[] counters = new int[size];
+        int[] clusterIds = new int[size];
+        Object[] values = new Object[size];
+        long memory = SHALLOW_MEMORY_USAGE + (long) size * ENTRY_MEMORY_USAGE;
+        int i = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!(entry.getKey() instanceof Revision) || !(entry.getValue() instanceof String)) {
+                return null;
+            }
+            Revision r = (Revision) entry.getKey();
+            if (r.isBranch()) {
+                return null;
+            }
+            String value = (String) entry.getValue();
+            if (value.length() <= INTERN_LIMIT) {
+                value = VALUES.intern(value);
+            } else {
+                memory += StringUtils.estimateMemoryUsage(value);
+            }
+            timestamps[i] = r.getTimestamp();
+            counters[i] = r.getCounter();
+            clusterIds[i] = r.getClusterId();
+            values[i] = value;
+            i++;
+        }
+        @SuppressWarnings("unchecked")
+        Comparator<? super Revision> c = (Comparator<? super Revision>) comparator;
+        return new CompactRevisionMap(c, timestamps, counters, clusterIds,
+                values, 0, size, (int) Math.min(memory, Integer.MAX_VALUE));
+    }
+
+    //-----------------------------< CacheValue >-------------------------------
+
+    @Override
+    public int getMemory() {
+        return memory;
+    }
+
+    //----------------------------< Map >---------------------------------------
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return to == from;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Revision && search((Revision) key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof Revision)) {
+            return null;
+        }
+        int i = search((Revision) key);
+        return i >= 0 ? values[i] : null;
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<Revision, Object>> entrySet() {
+        return new AbstractSet<Entry<Revision, Object>>() {
+            @NotNull
+            @Override
+            public Iterator<Entry<Revision, Object>> iterator() {
+                return new Iterator<Entry<Revision, Object>>() {
+                    private int next = from;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < to;
+                    }
+
+                    @Override
+                    public Entry<Revision, Object> next() {
+                        if (next >= to) {
+                            throw new NoSuchElementException();
+                        }
+                        return entryAt(next++);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return CompactRevisionMap.this.size();
+            }
+        };
+    }
+
+    //----------------------------< SortedMap >---------------------------------
+
+    @Override
+    public Comparator<? super Revision> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public Revision firstKey() {
+        return keyOrThrow(firstEntry());
+    }
+
+    @Override
+    public Revision lastKey() {
+        return keyOrThrow(lastEntry());
+    }
+
+    @NotNull
+    @Override
+    public SortedMap<Revision, Object> subMap(Revision fromKey, Revision toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @NotNull
+    @Override
+    public SortedMap<Revision, Object> headMap(Revision toKey) {
+        return headMap(toKey, false);
+    }
+
+    @NotNull
+    @Override
+    public SortedMap<Revision, Object> tailMap(Revision fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    //----------------------------< NavigableMap >------------------------------
+
+    @Override
+    public Entry<Revision, Object> lowerEntry(Revision key) {
+        int i = search(key);
+        return entryOrNull(i >= 0 ? i - 1 : -i - 2);
+    }
+
+    @Override
+    public Revision lowerKey(Revision key) {
+        return keyOrNull(lowerEntry(key));
+    }
+
+    @Override
+    public Entry<Revision, Object> floorEntry(Revision key) {
+        int i = search(key);
+        return entryOrNull(i >= 0 ? i : -i - 2);
+    }
+
+    @Override
+    public Revision floorKey(Revision key) {
+        return keyOrNull(floorEntry(key));
+    }
+
+    @Override
+    public Entry<Revision, Object> ceilingEntry(Revision key) {
+        int i = search(key);
+        return entryOrNull(i >= 0 ? i : -i - 1);
+    }
+
+    @Override
+    public Revision ceilingKey(Revision key) {
+        return keyOrNull(ceilingEntry(key));
+    }
+
+    @Override
+    public Entry<Revision, Object> higherEntry(Revision key) {
+        int i = search(key);
+        return entryOrNull(i >= 0 ? i + 1 : -i - 1);
+    }
+
+    @Override
+    public Revision higherKey(Revision key) {
+        return keyOrNull(higherEntry(key));
+    }
+
+    @Override
+    public Entry<Revision, Object> firstEntry() {
+        return entryOrNull(from);
+    }
+
+    @Override
+    public Entry<Revision, Object> lastEntry() {
+        return entryOrNull(to - 1);
+    }
+
+    @Override
+    public Entry<Revision, Object> pollFirstEntry() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Entry<Revision, Object> pollLastEntry() {
+        throw new UnsupportedOperationException();
+    }
+
+    @NotNull
+    @Override
+    public NavigableMap<Revision, Object> subMap(Revision fromKey,
+                                                 boolean fromInclusive,
+                                                 Revision toKey,
+                                                 boolean toInclusive) {
+        if (comparator.compare(fromKey, toKey) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        return range(lowerBound(fromKey, fromInclusive), upperBound(toKey, toInclusive));
+    }
+
+    @NotNull
+    @Override
+    public NavigableMap<Revision, Object> headMap(Revision toKey, boolean inclusive) {
+        return range(from, upperBound(toKey, inclusive));
+    }
+
+    @NotNull
+    @Override
+    public NavigableMap<Revision, Object> tailMap(Revision fromKey, boolean inclusive) {
+        return range(lowerBound(fromKey, inclusive), to);
+    }
+
+    /**
+     * The descending views are rarely used and are therefore backed by a
+     * decoded copy of this map.
+     */
+    @Override
+    public NavigableMap<Revision, Object> descendingMap() {
+        return Collections.unmodifiableNavigableMap(new TreeMap<>(this).descendingMap());
+    }
+
+    @Override
+    public NavigableSet<Revision> navigableKeySet() {
+        return Collections.unmodifiableNavigableSet(new TreeMap<>(this).navigableKeySet());
+    }
+
+    @Override
+    public NavigableSet<Revision> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    //------------------------------< internal >--------------------------------
+
+    /**
+     * Searches the given revision in the range of this map.
+     *
+     * @param key the revision to search.
+     * @return the index of the revision, if it is contained in the range of
+     *          this map, otherwise <code>(-(insertion point) - 1)</code> as
+     *          defined by {@link java.util.Arrays#binarySearch(long[], long)}.
+     */
+    private int search(Revision key) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = compare(key, mid);
+            if (c > 0) {
+                low = mid + 1;
+            } else if (c < 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Compares a revision with the revision at the given index in the order
+     * of {@link #comparator}, without creating a {@link Revision}.
+     */
+    private int compare(Revision key, int i) {
+        int c = Long.compare(key.getTimestamp(), timestamps[i]);
+        if (c == 0) {
+            c = Integer.compare(key.getCounter(), counters[i]);
+        }
+        if (c == 0) {
+            c = Integer.compare(key.getClusterId(), clusterIds[i]);
+        }
+        if (c == 0 && key.isBranch()) {
+            // a branch revision is ordered before the
+            // same revision that is not a branch revision
+            c = -1;
+        }
+        return reverse ? -c : c;
+    }
+
+    private int lowerBound(Revision key, boolean inclusive) {
+        int i = search(key);
+        return i >= 0 ? (inclusive ? i : i + 1) : -i - 1;
+    }
+
+    private int upperBound(Revision key, boolean inclusive) {
+        int i = search(key);
+        return i >= 0 ? (inclusive ? i + 1 : i) : -i - 1;
+    }
+
+    private NavigableMap<Revision, Object> range(int from, int to) {
+        return new CompactRevisionMap(comparator, timestamps, counters,
+                clusterIds, values, from, Math.max(from, to), memory);
+    }
+
+    private Entry<Revision, Object> entryAt(int i) {
+        return new SimpleImmutableEntry<>(
+                new Revision(timestamps[i], counters[i], clusterIds[i]), values[i]);
+    }
+
+    @Nullable
+    private Entry<Revision, Object> entryOrNull(int i) {
+        return i >= from && i < to ? entryAt(i) : null;
+    }
+
+    @Nullable
+    private static Revision keyOrNull(@Nullable Entry<Revision, Object> entry) {
+        return entry == null ? null : entry.getKey();
+    }
+
+    private static Revision keyOrThrow(@Nullable Entry<Revision, Object> entry) {
+        if (entry == null) {
+            throw new NoSuchElementException();
+        }
+        return entry.getKey();
+    }
+}
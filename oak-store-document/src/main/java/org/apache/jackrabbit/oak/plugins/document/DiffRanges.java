@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
+import org.apache.jackrabbit.oak.plugins.document.util.RevisionsKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
+
+/**
+ * Remembers the revision ranges of diff cache entries, so that the diff for
+ * a larger range can be composed from the diffs of adjacent ranges. The
+ * entries created by background reads and local commits form a chain of
+ * adjacent ranges: {@code r1..r2}, {@code r2..r3}, ...
+ * <p>
+ * The ranges are kept in a table of fixed size indexed by the hash of the
+ * from revision. Reads and writes do not lock. A range replaces the range
+ * with a different from revision in the same slot of the table.
+ */
+final class DiffRanges {
+
+    private final AtomicReferenceArray<RevisionsKey> table;
+
+    private final int mask;
+
+    /**
+     * @param size the size of the table, must be a power of two.
+     */
+    DiffRanges(int size) {
+        checkArgument(Integer.bitCount(size) == 1, "size must be a power of two: %s", size);
+        this.table = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds a range.
+     *
+     * @param from the from revision of the range.
+     * @param to the to revision of the range.
+     */
+    void add(@NotNull RevisionVector from, @NotNull RevisionVector to) {
+        if (from.isBranch() || to.isBranch() || from.equals(to)) {
+            return;
+        }
+        table.set(index(from), new RevisionsKey(from, to));
+    }
+
+    /**
+     * Returns the to revision of the range starting at {@code from}.
+     *
+     * @param from the from revision.
+     * @return the to revision or {@code null} if there is no such range.
+     */
+    @Nullable
+    RevisionVector next(@NotNull RevisionVector from) {
+        RevisionsKey range = table.get(index(from));
+        if (range != null && range.getRev1().equals(from)) {
+            return range.getRev2();
+        }
+        return null;
+    }
+
+    /**
+     * Merges the jsop diffs of adjacent revision ranges into the diff of the
+     * combined range. A child node added and then removed does not show up
+     * in the result, a child node removed and then added again is reported
+     * as changed.
+     *
+     * @param diffs the diffs in the order of the ranges.
+     * @return the merged diff.
+     */
+    @NotNull
+    static String merge(@NotNull List<String> diffs) {
+        Map<String, Character> changes = new LinkedHashMap<>();
+        for (String diff : diffs) {
+            DiffCache.parseJsopDiff(diff, new DiffCache.Diff() {
+                @Override
+                public boolean childNodeAdded(String name) {
+                    Character previous = changes.get(name);
+                    changes.put(name, previous != null && previous == '-' ? '^' : '+');
+                    return true;
+                }
+
+                @Override
+                public boolean childNodeChanged(String name) {
+                    changes.putIfAbsent(name, '^');
+                    return true;
+                }
+
+                @Override
+                public boolean childNodeDeleted(String name) {
+                    Character previous = changes.get(name);
+                    if (previous != null && previous == '+') {
+                        changes.remove(name);
+                    } else {
+                        changes.put(name, '-');
+                    }
+                    return true;
+                }
+            });
+        }
+        JsopBuilder w = new JsopBuilder();
+        for (Map.Entry<String, Character> e : changes.entrySet()) {
+            char op = e.getValue();
+            if (op == '-') {
+                w.tag('-').value(e.getKey());
+            } else {
+                w.tag(op).key(e.getKey()).object().endObject();
+            }
+        }
+        return w.toString();
+    }
+
+    private int index(RevisionVector from) {
+        int h = from.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -58,6 +58,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
@@ -213,6 +216,32 @@ public final class DocumentNodeStore
     private final int createOrUpdateBatchSize = SystemPropertySupplier.create("oak.documentMK.createOrUpdateBatchSize", 1000)
             .loggingTo(LOG).get();
 
+    /**
+     * The time in microseconds the {@link CommitPipeline} collects updates of
+     * concurrent commits before it writes them with a single call. A negative
+     * value disables the pipeline and every commit writes its updates on its
+     * own.
+     */
+    private final long commitPipelineWindowMicros = SystemPropertySupplier.create("oak.documentMK.commitPipelineWindowMicros", -1L)
+            .loggingTo(LOG).get();
+
+    /**
+     * Whether the documents of child nodes missing in the cache are read
+     * concurrently through {@link DocumentStore#async()} when child nodes
+     * are iterated. Disabled by default.
+     */
+    private final boolean concurrentChildReads = SystemPropertySupplier.create("oak.documentMK.concurrentChildReads", false)
+            .loggingTo(LOG).get();
+
+    /**
+     * The maximum number of child documents read ahead of a depth-first
+     * traversal with a single query. A value lower than
+     * {@link ChildDocumentReadAhead#MIN_WINDOW} disables the read-ahead,
+     * which is the default.
+     */
+    private final int childReadAheadMax = SystemPropertySupplier.create("oak.documentMK.childReadAheadMax", 0)
+            .loggingTo(LOG).get();
+
     public static final String SYS_PROP_DISABLE_SWEEP2 = "oak.documentMK.disableSweep2";
     private boolean disableSweep2 = SystemPropertySupplier.create(SYS_PROP_DISABLE_SWEEP2, Boolean.FALSE).loggingTo(LOG)
             .get();
@@ -235,6 +264,18 @@ public final class DocumentNodeStore
      */
     private final DocumentStore store;
 
+    /**
+     * Asynchronous view on {@link #store}.
+     */
+    private final AsyncDocumentStore asyncStore;
+
+    /**
+     * Reads child documents ahead of depth-first traversals or {@code null}
+     * if disabled.
+     */
+    @Nullable
+    private final ChildDocumentReadAhead childReadAhead;
+
     /**
      * Marker node, indicating a node does not exist at a given revision.
      */
@@ -250,6 +291,13 @@ public final class DocumentNodeStore
      */
     private final BatchCommitQueue batchCommitQueue;
 
+    /**
+     * Pipeline for the updates of concurrent commits or {@code null} if
+     * disabled.
+     */
+    @Nullable
+    private final CommitPipeline commitPipeline;
+
     /**
      * The change dispatcher for this node store.
      */
@@ -657,6 +705,12 @@ public final class DocumentNodeStore
 
         this.journalPropertyHandlerFactory = builder.getJournalPropertyHandlerFactory();
         this.store = s;
+        this.asyncStore = s.async();
+        this.childReadAhead = childReadAheadMax < ChildDocumentReadAhead.MIN_WINDOW ? null :
+                new ChildDocumentReadAhead(asyncStore, () -> {
+                    DocumentNodeState r = root;
+                    return r != null ? r.getRootRevision() : null;
+                }, childReadAheadMax);
         this.changes = newJournalEntry();
         this.branches = new UnmergedBranches();
         this.asyncDelay = builder.getAsyncDelay();
@@ -753,6 +807,8 @@ public final class DocumentNodeStore
         commitQueue.setStatisticsCollector(nodeStoreStatsCollector);
         commitQueue.setSuspendTimeoutMillis(builder.getSuspendTimeoutMillis());
         batchCommitQueue = new BatchCommitQueue(store);
+        commitPipeline = commitPipelineWindowMicros < 0 ? null :
+                new CommitPipeline(store, commitPipelineWindowMicros, createOrUpdateBatchSize);
         // prepare background threads
         backgroundReadThread = new Thread(
                 new BackgroundReadOperation(this, isDisposed),
@@ -1328,6 +1384,10 @@ public final class DocumentNodeStore
         nodeChildrenCache.invalidateAll();
     }
 
+    void invalidateNodeChildrenCache(Path path, RevisionVector readRevision) {
+        nodeChildrenCache.invalidate(childNodeCacheKey(path, readRevision, ""));
+    }
+
     void invalidateNodeCache(String path, RevisionVector revision){
         nodeCache.invalidate(new PathRev(Path.fromString(path), revision));
     }
@@ -1498,7 +1558,7 @@ public final class DocumentNodeStore
         // child nodes than requested.
         int rawLimit = (int) Math.min(Integer.MAX_VALUE, ((long) limit) + 1);
         for (;;) {
-            docs = readChildDocs(path, name, rawLimit);
+            docs = readChildDocs(path, rev, name, rawLimit);
             int numReturned = 0;
             for (NodeDocument doc : docs) {
                 numReturned++;
@@ -1543,6 +1603,7 @@ public final class DocumentNodeStore
      * lower exclusive bound.
      *
      * @param path the path of the parent document.
+     * @param rev the revision the child nodes are read at.
      * @param name the name of the lower bound child node (exclusive) or the
      *              empty {@code String} if no lower bound is given.
      * @param limit the maximum number of child documents to return.
@@ -1550,6 +1611,7 @@ public final class DocumentNodeStore
      */
     @NotNull
     private Iterable<NodeDocument> readChildDocs(@NotNull final Path path,
+                                                 @NotNull final RevisionVector rev,
                                                  @NotNull String name,
                                                  final int limit) {
         final String to = Utils.getKeyUpperLimit(checkNotNull(path));
@@ -1559,7 +1621,22 @@ public final class DocumentNodeStore
         } else {
             from = Utils.getIdFromPath(new Path(path, name));
         }
-        return store.query(Collection.NODES, from, to, limit);
+        if (childReadAhead == null) {
+            return store.query(Collection.NODES, from, to, limit);
+        }
+        List<NodeDocument> docs = childReadAhead.getChildDocs(path, rev, from, to, limit);
+        if (docs == null) {
+            docs = store.query(Collection.NODES, from, to, limit);
+        }
+        if (name.isEmpty()) {
+            childReadAhead.childDocsRead(path, rev);
+        }
+        return docs;
+    }
+
+    @Nullable
+    ChildDocumentReadAhead getChildReadAhead() {
+        return childReadAhead;
     }
 
     /**
@@ -1584,7 +1661,9 @@ public final class DocumentNodeStore
         }
 
         final RevisionVector readRevision = parent.getLastRevision();
-        return transform(getChildren(parent, name, limit).children, new Function<String, DocumentNodeState>() {
+        List<String> children = getChildren(parent, name, limit).children;
+        readChildDocsConcurrently(parent.getPath(), children, readRevision);
+        return transform(children, new Function<String, DocumentNodeState>() {
             @Override
             public DocumentNodeState apply(String input) {
                 Path p = new Path(parent.getPath(), input);
@@ -1630,6 +1709,46 @@ public final class DocumentNodeStore
         });
     }
 
+    /**
+     * Reads the documents of the given child nodes concurrently and waits
+     * until all of them are available in the document cache. Child nodes
+     * with a cached node state or document are skipped. A failed read is
+     * ignored here and surfaces again when the child node is read with
+     * {@link #getNode(Path, RevisionVector)}.
+     *
+     * @param path the path of the parent node.
+     * @param names the names of the child nodes.
+     * @param readRevision the read revision of the child nodes.
+     */
+    private void readChildDocsConcurrently(@NotNull Path path,
+                                           @NotNull List<String> names,
+                                           @NotNull RevisionVector readRevision) {
+        if (!concurrentChildReads || names.size() < 2) {
+            return;
+        }
+        List<CompletableFuture<NodeDocument>> reads = new ArrayList<>();
+        for (String name : names) {
+            Path p = new Path(path, name);
+            if (nodeCache.getIfPresent(new PathRev(p, readRevision)) != null) {
+                continue;
+            }
+            String id = Utils.getIdFromPath(p);
+            if (store.getIfCached(NODES, id) == null) {
+                reads.add(asyncStore.findAsync(NODES, id));
+            }
+        }
+        if (reads.isEmpty()) {
+            return;
+        }
+        final long start = PERFLOG.start();
+        try {
+            CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException | CancellationException e) {
+            LOG.debug("Concurrent read of child documents of {} failed", path, e);
+        }
+        PERFLOG.end(start, 1, "readChildDocsConcurrently: path={}, documents={}", path, reads.size());
+    }
+
     @Nullable
     private DocumentNodeState readNode(Path path, RevisionVector readRevision) {
         final long start = PERFLOG.start();
@@ -1861,6 +1980,29 @@ public final class DocumentNodeStore
         throw e;
     }
 
+    /**
+     * Creates or updates the node documents changed by a commit. The updates
+     * are written together with the updates of concurrent commits when the
+     * {@link CommitPipeline} is enabled.
+     *
+     * @param updates the update operations of a commit.
+     * @return the documents before the update.
+     * @throws DocumentStoreException if the update failed.
+     */
+    @NotNull
+    List<NodeDocument> createOrUpdateCommitChanges(@NotNull List<UpdateOp> updates)
+            throws DocumentStoreException {
+        if (commitPipeline != null) {
+            return commitPipeline.createOrUpdate(updates);
+        }
+        return store.createOrUpdate(NODES, updates);
+    }
+
+    @Nullable
+    CommitPipeline getCommitPipeline() {
+        return commitPipeline;
+    }
+
     private NodeDocument batchUpdateCommitRoot(UpdateOp commit)
             throws DocumentStoreException {
         try {
@@ -2059,14 +2201,19 @@ public final class DocumentNodeStore
         if (node.hasNoChildren() && base.hasNoChildren()) {
             return true;
         }
-        return new JsopNodeStateDiffer(diffCache.getChanges(base.getRootRevision(),
+        Stopwatch sw = Stopwatch.createStarted();
+        AtomicBoolean compared = new AtomicBoolean();
+        String changes = diffCache.getChanges(base.getRootRevision(),
                 node.getRootRevision(), node.getPath(),
                 new DiffCache.Loader() {
                     @Override
                     public String call() {
+                        compared.set(true);
                         return diffImpl(base, node);
                     }
-                })).withoutPropertyChanges().compare(node, base, diff);
+                });
+        nodeStoreStatsCollector.doneChildNodeDiff(!compared.get(), sw.elapsed(MICROSECONDS));
+        return new JsopNodeStateDiffer(changes).withoutPropertyChanges().compare(node, base, diff);
     }
 
     /**
@@ -2143,6 +2290,27 @@ public final class DocumentNodeStore
         return asDocumentRootBuilder(builder).merge(commitHook, info);
     }
 
+    /**
+     * Adds a new node with the given content at {@code path}, bypassing
+     * the regular commit path for the descendants of the new node. The
+     * documents of the descendants are bulk inserted and the subtree is
+     * then published with a single commit that adds the new node to its
+     * parent. Commit hooks are not applied to the content and nodes are
+     * not bundled. The caller must ensure no other session writes to the
+     * subtree while it is loaded.
+     *
+     * @param path the path of the new node. The parent must exist.
+     * @param content the content of the new node.
+     * @return the number of nodes loaded.
+     * @throws IllegalArgumentException if the parent does not exist or the
+     *          node already exists.
+     * @throws CommitFailedException if the new node cannot be published.
+     */
+    public long bulkLoad(@NotNull String path, @NotNull NodeState content)
+            throws CommitFailedException {
+        return new BulkLoader(this).load(Path.fromString(path), checkNotNull(content));
+    }
+
     @NotNull
     @Override
     public NodeState rebase(@NotNull NodeBuilder builder) {
@@ -77,6 +77,24 @@ public interface DocumentNodeStoreMBean {
             @Name("clusterId")
             int clusterId);
 
+    @Description("The status of the current or last _lastRev recovery performed by this cluster node.")
+    String getLastRevRecoveryStatus();
+
+    @Description("The number of documents scanned by the current or last _lastRev recovery.")
+    long getLastRevRecoveryScannedCount();
+
+    @Description("The number of documents updated by the last _lastRev recovery.")
+    long getLastRevRecoveryUpdatedCount();
+
+    @Description("The number of documents per second scanned by the current or last _lastRev recovery.")
+    long getLastRevRecoveryThroughput();
+
+    @Description("The ratio of child document reads served from documents read ahead of a depth-first traversal.")
+    double getChildReadAheadHitRatio();
+
+    @Description("The ratio of documents read ahead of a depth-first traversal and never used.")
+    double getChildReadAheadWasteRatio();
+
     @Description("Invalidates all the caches used by the DocumentNodeStore and DocumentStore: DiffCache, NodeCache, NodeChildrenCache and DocumentCache.")
     String cleanAllCaches();
 
@@ -237,6 +237,38 @@ final class DocumentNodeStoreMBeanImpl extends AnnotatedStandardMBean implements
         return sum;
     }
 
+    @Override
+    public String getLastRevRecoveryStatus() {
+        return nodeStore.getLastRevRecoveryAgent().getRecoveryStatus();
+    }
+
+    @Override
+    public long getLastRevRecoveryScannedCount() {
+        return nodeStore.getLastRevRecoveryAgent().getScannedDocumentCount();
+    }
+
+    @Override
+    public long getLastRevRecoveryUpdatedCount() {
+        return nodeStore.getLastRevRecoveryAgent().getUpdatedDocumentCount();
+    }
+
+    @Override
+    public long getLastRevRecoveryThroughput() {
+        return nodeStore.getLastRevRecoveryAgent().getRecoveryThroughput();
+    }
+
+    @Override
+    public double getChildReadAheadHitRatio() {
+        ChildDocumentReadAhead readAhead = nodeStore.getChildReadAhead();
+        return readAhead != null ? readAhead.getHitRatio() : 0;
+    }
+
+    @Override
+    public double getChildReadAheadWasteRatio() {
+        ChildDocumentReadAhead readAhead = nodeStore.getChildReadAhead();
+        return readAhead != null ? readAhead.getWasteRatio() : 0;
+    }
+
     private List<NodeDocument> getChildDocs(String path) { 
         Path pathRef = Path.fromString(path);
         final String to = Utils.getKeyUpperLimit(pathRef);
@@ -65,6 +65,11 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     static final String BRANCH_COMMIT_COUNT = "DOCUMENT_NS_BRANCH_COMMIT_COUNT";
     static final String MERGE_BRANCH_COMMIT_COUNT = "DOCUMENT_NS_MERGE_BRANCH_COMMIT_COUNT";
 
+    static final String DIFF_CACHED_COUNT = "DOCUMENT_NS_DIFF_CACHED_COUNT";
+    static final String DIFF_COMPARED_COUNT = "DOCUMENT_NS_DIFF_COMPARED_COUNT";
+    private static final String DIFF_CACHED_TIME = "DOCUMENT_NS_DIFF_CACHED_TIME";
+    private static final String DIFF_COMPARED_TIME = "DOCUMENT_NS_DIFF_COMPARED_TIME";
+
     // background read
     private final TimerStats readHead;
     private final TimerStats readCacheInvalidate;
@@ -107,6 +112,12 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     private final MeterStats branchCommitRate;
     private final MeterStats mergeBranchCommitRate;
 
+    // diff stats
+    private final MeterStats diffCachedRate;
+    private final MeterStats diffComparedRate;
+    private final TimerStats diffCachedTime;
+    private final TimerStats diffComparedTime;
+
 
     public DocumentNodeStoreStats(StatisticsProvider sp) {
         readHead = sp.getTimer(BGR_READ_HEAD, StatsOptions.METRICS_ONLY);
@@ -145,6 +156,11 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
 
         branchCommitRate = sp.getMeter(BRANCH_COMMIT_COUNT, StatsOptions.DEFAULT);
         mergeBranchCommitRate = sp.getMeter(MERGE_BRANCH_COMMIT_COUNT, StatsOptions.DEFAULT);
+
+        diffCachedRate = sp.getMeter(DIFF_CACHED_COUNT, StatsOptions.DEFAULT);
+        diffComparedRate = sp.getMeter(DIFF_COMPARED_COUNT, StatsOptions.DEFAULT);
+        diffCachedTime = sp.getTimer(DIFF_CACHED_TIME, StatsOptions.METRICS_ONLY);
+        diffComparedTime = sp.getTimer(DIFF_COMPARED_TIME, StatsOptions.METRICS_ONLY);
     }
 
     @Override
@@ -245,4 +261,24 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     public void doneChangesApplied(long timeMicros) {
         mergeChangesApplied.update(timeMicros, TimeUnit.MICROSECONDS);
     }
+
+    @Override
+    public void doneChildNodeDiff(boolean cached, long timeMicros) {
+        if (cached) {
+            diffCachedRate.mark();
+            diffCachedTime.update(timeMicros, TimeUnit.MICROSECONDS);
+        } else {
+            diffComparedRate.mark();
+            diffComparedTime.update(timeMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * @return the ratio of child node diffs served from the diff cache.
+     */
+    public double getDiffCacheHitRatio() {
+        long cached = diffCachedRate.getCount();
+        long total = cached + diffComparedRate.getCount();
+        return total == 0 ? 0 : (double) cached / total;
+    }
 }
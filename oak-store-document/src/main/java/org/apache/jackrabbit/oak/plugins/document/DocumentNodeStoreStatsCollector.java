@@ -114,4 +114,15 @@ public interface DocumentNodeStoreStatsCollector {
      * @param timeMicros the time in microseconds.
      */
     void doneChangesApplied(long timeMicros);
+
+    /**
+     * Reports to the collector that the child node changes of a node were
+     * retrieved for a comparison of two node states.
+     *
+     * @param cached {@code true} if the changes were served from the diff
+     *          cache, {@code false} if they had to be computed by comparing
+     *          the node states.
+     * @param timeMicros the time in microseconds.
+     */
+    void doneChildNodeDiff(boolean cached, long timeMicros);
 }
@@ -474,6 +474,21 @@ public interface DocumentStore {
         // default does nothing
     }
 
+    /**
+     * Returns an asynchronous view on the read operations of this store.
+     * Implementations backed by a remote system should override this method
+     * and perform the reads concurrently. The default implementation performs
+     * the reads in the calling thread and returns completed futures. A store
+     * wrapping another store should delegate to the wrapped store, otherwise
+     * the reads are not performed concurrently.
+     *
+     * @return the asynchronous view on this store.
+     */
+    @NotNull
+    default AsyncDocumentStore async() {
+        return AsyncDocumentStore.synchronous(this);
+    }
+
     /**
      * Return the size limit for node name based on the document store implementation
      *
@@ -18,6 +18,7 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
 import static org.apache.jackrabbit.guava.common.collect.Iterables.filter;
 import static org.apache.jackrabbit.guava.common.collect.Iterables.transform;
 import static org.apache.jackrabbit.guava.common.collect.Lists.newArrayList;
@@ -30,21 +31,35 @@ import static org.apache.jackrabbit.oak.plugins.document.util.Utils.PROPERTY_OR_
 import static org.apache.jackrabbit.oak.plugins.document.util.Utils.isCommitted;
 import static org.apache.jackrabbit.oak.plugins.document.util.Utils.resolveCommitRevision;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.apache.jackrabbit.guava.common.base.Predicate;
 import org.apache.jackrabbit.guava.common.base.Supplier;
 import org.apache.jackrabbit.guava.common.collect.Iterables;
+import org.apache.jackrabbit.guava.common.collect.Iterators;
 import org.apache.jackrabbit.guava.common.collect.Sets;
 
 import org.apache.jackrabbit.oak.commons.TimeDurationFormatter;
+import org.apache.jackrabbit.oak.commons.properties.SystemPropertySupplier;
 import org.apache.jackrabbit.oak.plugins.document.bundlor.DocumentBundlor;
 import org.apache.jackrabbit.oak.plugins.document.cache.CacheInvalidationStats;
 import org.apache.jackrabbit.oak.plugins.document.util.MapFactory;
@@ -89,6 +104,27 @@ public class LastRevRecoveryAgent {
     // OAK-9535 : recalculate the journal entry size every 4096 elements
     private static final int PSEUDO_BRANCH_COMMIT_FLUSH_CHECK_COUNT = 4096;
 
+    /**
+     * The number of documents evaluated by a single task when recovery runs
+     * with more than one thread.
+     */
+    private static final int RECOVERY_CHUNK_SIZE = 100;
+
+    /**
+     * The number of threads evaluating candidate documents and reading
+     * ancestor documents during recovery. With a single thread, all work is
+     * done by the thread performing the recovery.
+     */
+    private int recoveryThreads = SystemPropertySupplier.create("oak.documentMK.lastRevRecoveryThreads", 1)
+            .loggingTo(log).get();
+
+    // progress of the current or last recovery
+    private final AtomicLong scannedCount = new AtomicLong();
+    private volatile int recoveringClusterId;
+    private volatile long recoveryStart;
+    private volatile long recoveryEnd;
+    private volatile long updatedCount;
+
     public LastRevRecoveryAgent(DocumentStore store,
                                 RevisionContext revisionContext,
                                 MissingLastRevSeeker seeker,
@@ -105,6 +141,76 @@ public class LastRevRecoveryAgent {
                 i -> {});
     }
 
+    /**
+     * Sets the number of threads used to evaluate candidate documents and
+     * to read ancestor documents during recovery. Documents are still read
+     * from the {@link MissingLastRevSeeker} and changes are still written by
+     * the thread performing the recovery.
+     *
+     * @param recoveryThreads the number of threads.
+     */
+    public void setRecoveryThreads(int recoveryThreads) {
+        checkArgument(recoveryThreads > 0, "recoveryThreads must be positive: %s", recoveryThreads);
+        this.recoveryThreads = recoveryThreads;
+    }
+
+    public int getRecoveryThreads() {
+        return recoveryThreads;
+    }
+
+    /**
+     * @return the number of documents scanned by the current or last
+     *          recovery.
+     */
+    public long getScannedDocumentCount() {
+        return scannedCount.get();
+    }
+
+    /**
+     * @return the number of documents updated by the last recovery.
+     */
+    public long getUpdatedDocumentCount() {
+        return updatedCount;
+    }
+
+    /**
+     * @return the number of documents per second scanned by the current or
+     *          last recovery.
+     */
+    public long getRecoveryThroughput() {
+        long start = recoveryStart;
+        if (start == 0) {
+            return 0;
+        }
+        long end = recoveryEnd;
+        if (end == 0) {
+            end = revisionContext.getClock().getTime();
+        }
+        return scannedCount.get() * 1000 / Math.max(1, end - start);
+    }
+
+    /**
+     * @return a human readable status of the current or last recovery.
+     */
+    @NotNull
+    public String getRecoveryStatus() {
+        long start = recoveryStart;
+        if (start == 0) {
+            return "No recovery performed";
+        }
+        long end = recoveryEnd;
+        boolean running = end == 0;
+        if (running) {
+            end = revisionContext.getClock().getTime();
+        }
+        return String.format("%s recovery for cluster node [%d] with %d thread(s) started at %s: " +
+                        "%d documents scanned in %s (~%d/s), %d documents updated",
+                running ? "Running" : "Finished", recoveringClusterId, recoveryThreads,
+                Utils.timestampToString(start), scannedCount.get(),
+                TimeDurationFormatter.forLogging().format(end - start, TimeUnit.MILLISECONDS),
+                getRecoveryThroughput(), updatedCount);
+    }
+
     /**
      * Recover the correct _lastRev updates for potentially missing candidate
      * nodes. If another cluster node is already performing the recovery for the
@@ -259,6 +365,29 @@ public class LastRevRecoveryAgent {
     public int recover(final Iterable<NodeDocument> suspects,
                        final int clusterId, final boolean dryRun)
             throws DocumentStoreException {
+        Clock clock = revisionContext.getClock();
+        scannedCount.set(0);
+        updatedCount = 0;
+        recoveringClusterId = clusterId;
+        recoveryEnd = 0;
+        recoveryStart = clock.getTime();
+        ExecutorService executor = newRecoveryExecutor(clusterId);
+        try {
+            int num = doRecover(suspects, clusterId, dryRun, executor);
+            updatedCount = num;
+            return num;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            recoveryEnd = Math.max(recoveryStart, clock.getTime());
+        }
+    }
+
+    private int doRecover(final Iterable<NodeDocument> suspects,
+                          final int clusterId, final boolean dryRun,
+                          @Nullable final ExecutorService executor)
+            throws DocumentStoreException {
         // set a deadline if this is a self recovery. Self recovery does not
         // update the lease in a background thread and must terminate before
         // the lease acquired by the recovery lock expires.
@@ -347,9 +476,13 @@ public class LastRevRecoveryAgent {
 
         final List<Revision> pseudoBcRevs = new ArrayList<>();
         int nextFlushCheckCount = PSEUDO_BRANCH_COMMIT_FLUSH_CHECK_COUNT;
-        for (NodeDocument doc : suspects) {
+        Iterable<PathRevision> candidates = evaluate(suspects,
+                doc -> new PathRevision(doc.getPath(), getLastRevForParents(doc, clusterId)),
+                executor);
+        for (PathRevision candidate : candidates) {
             totalCount++;
             lastCount++;
+            scannedCount.incrementAndGet();
 
             long now = clock.getTime();
             long lastElapsed = now - lastLog;
@@ -370,17 +503,14 @@ public class LastRevRecoveryAgent {
                 lastCount = 0;
             }
 
-            Revision currentLastRev = doc.getLastRev().get(clusterId);
-
-            // 1. determine last committed modification on document
-            Revision lastModifiedRev = determineLastModification(doc, clusterId);
-
-            Revision lastRevForParents = Utils.max(lastModifiedRev, currentLastRev);
+            // 1. the higher of the current _lastRev and the last
+            // committed modification on the document
+            Revision lastRevForParents = candidate.revision;
             // remember the higher of the two revisions. this is the
             // most recent revision currently obtained from either a
             // _lastRev entry or an explicit modification on the document
             if (lastRevForParents != null) {
-                knownLastRevOrModification.put(doc.getPath(), lastRevForParents);
+                knownLastRevOrModification.put(candidate.path, lastRevForParents);
             }
 
             //If both currentLastRev and lostLastRev are null it means
@@ -392,7 +522,7 @@ public class LastRevRecoveryAgent {
 
             //2. Update lastRev for parent paths aka rollup
             if (lastRevForParents != null) {
-                Path path = doc.getPath();
+                Path path = candidate.path;
                 changes.modified(path); // track all changes
                 while (true) {
                     path = path.getParent();
@@ -438,29 +568,15 @@ public class LastRevRecoveryAgent {
         // propagate the pseudoBcRevs to the changes
         changes.branchCommit(pseudoBcRevs);
 
-        for (Path parentPath : unsavedParents.getPaths()) {
+        // read the ancestors not seen as candidates
+        Iterable<PathRevision> parents = evaluate(unsavedParents.getPaths(),
+                parentPath -> new PathRevision(parentPath,
+                        getKnownLastRev(parentPath, clusterId, knownLastRevOrModification)),
+                executor);
+        for (PathRevision parent : parents) {
+            Path parentPath = parent.path;
             Revision calcLastRev = unsavedParents.get(parentPath);
-            Revision knownLastRev = knownLastRevOrModification.get(parentPath);
-            if (knownLastRev == null) {
-                List<Path> missingDocuments = new ArrayList<>();
-                // we don't know when the document was last modified with
-                // the given clusterId. need to read from store
-                NodeDocument doc = findNearestAncestorOrSelf(parentPath, missingDocuments);
-                if (doc != null) {
-                    Revision lastRev = doc.getLastRev().get(clusterId);
-                    Revision lastMod = determineLastModification(doc, clusterId);
-                    knownLastRev = Utils.max(lastRev, lastMod);
-
-                    if (!missingDocuments.isEmpty()
-                            && doc.getLocalMap(DocumentBundlor.META_PROP_PATTERN).isEmpty()) {
-                        // there are missing document and the returned document
-                        // does not have bundled nodes
-                        for (Path p : missingDocuments) {
-                            log.warn("Unable to find document: {}", Utils.getIdFromPath(p));
-                        }
-                    }
-                }
-            }
+            Revision knownLastRev = parent.revision;
 
             //Copy the calcLastRev of parent only if they have changed
             //In many case it might happen that parent have consistent lastRev
@@ -587,6 +703,124 @@ public class LastRevRecoveryAgent {
         return earliest;
     }
 
+    /**
+     * Returns the higher of the current _lastRev of {@code clusterId} on the
+     * given document and the last committed modification by
+     * {@code clusterId} on the document.
+     */
+    @Nullable
+    private Revision getLastRevForParents(@NotNull NodeDocument doc, int clusterId) {
+        Revision currentLastRev = doc.getLastRev().get(clusterId);
+        Revision lastModifiedRev = determineLastModification(doc, clusterId);
+        return Utils.max(lastModifiedRev, currentLastRev);
+    }
+
+    /**
+     * Returns the known _lastRev or modification by {@code clusterId} for
+     * the given path. Reads the document or its nearest ancestor from the
+     * store if the path was not seen as a candidate.
+     */
+    @Nullable
+    private Revision getKnownLastRev(@NotNull Path path,
+                                     int clusterId,
+                                     @NotNull Map<Path, Revision> knownLastRevOrModification) {
+        Revision knownLastRev = knownLastRevOrModification.get(path);
+        if (knownLastRev == null) {
+            List<Path> missingDocuments = new ArrayList<>();
+            // we don't know when the document was last modified with
+            // the given clusterId. need to read from store
+            NodeDocument doc = findNearestAncestorOrSelf(path, missingDocuments);
+            if (doc != null) {
+                Revision lastRev = doc.getLastRev().get(clusterId);
+                Revision lastMod = determineLastModification(doc, clusterId);
+                knownLastRev = Utils.max(lastRev, lastMod);
+
+                if (!missingDocuments.isEmpty()
+                        && doc.getLocalMap(DocumentBundlor.META_PROP_PATTERN).isEmpty()) {
+                    // there are missing document and the returned document
+                    // does not have bundled nodes
+                    for (Path p : missingDocuments) {
+                        log.warn("Unable to find document: {}", Utils.getIdFromPath(p));
+                    }
+                }
+            }
+        }
+        return knownLastRev;
+    }
+
+    @Nullable
+    private ExecutorService newRecoveryExecutor(int clusterId) {
+        int threads = recoveryThreads;
+        if (threads <= 1) {
+            return null;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "Oak LastRevRecovery-" + clusterId + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Applies {@code function} to the {@code items} and returns the results
+     * in the order of the items. The items are consumed by the calling
+     * thread. Without an executor the function is applied lazily by the
+     * calling thread as well, otherwise it is applied to chunks of items by
+     * the executor, with a bounded number of chunks in flight.
+     */
+    private <T, R> Iterable<R> evaluate(@NotNull Iterable<T> items,
+                                        @NotNull Function<T, R> function,
+                                        @Nullable ExecutorService executor) {
+        if (executor == null) {
+            return transform(items, function::apply);
+        }
+        int maxInFlight = recoveryThreads * 2;
+        return () -> new Iterator<R>() {
+
+            private final Iterator<List<T>> chunks = Iterators.partition(items.iterator(), RECOVERY_CHUNK_SIZE);
+
+            private final Deque<Future<List<R>>> inFlight = new ArrayDeque<>();
+
+            private Iterator<R> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    while (inFlight.size() < maxInFlight && chunks.hasNext()) {
+                        List<T> chunk = chunks.next();
+                        inFlight.add(executor.submit(
+                                () -> chunk.stream().map(function).collect(Collectors.toList())));
+                    }
+                    if (inFlight.isEmpty()) {
+                        return false;
+                    }
+                    current = getResult(inFlight.remove()).iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public R next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    private static <R> R getResult(Future<R> future) throws DocumentStoreException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DocumentStoreException("Interrupted while performing lastRev recovery", e);
+        } catch (ExecutionException e) {
+            throw DocumentStoreException.convert(e.getCause());
+        }
+    }
+
     @Nullable
     private NodeDocument findNearestAncestorOrSelf(@NotNull Path path,
                                                    @NotNull List<Path> missingDocuments) {
@@ -771,6 +1005,19 @@ public class LastRevRecoveryAgent {
         }), ClusterNodeInfoDocument::getClusterId);
     }
 
+    private static final class PathRevision {
+
+        private final Path path;
+
+        @Nullable
+        private final Revision revision;
+
+        PathRevision(@NotNull Path path, @Nullable Revision revision) {
+            this.path = path;
+            this.revision = revision;
+        }
+    }
+
     private static class ClusterPredicate implements Predicate<Revision> {
         private final int clusterId;
 
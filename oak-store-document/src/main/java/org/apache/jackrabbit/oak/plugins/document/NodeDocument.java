@@ -47,6 +47,7 @@ import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
 import org.apache.jackrabbit.oak.commons.json.JsopReader;
 import org.apache.jackrabbit.oak.commons.json.JsopTokenizer;
 import org.apache.jackrabbit.oak.commons.json.JsopWriter;
+import org.apache.jackrabbit.oak.commons.properties.SystemPropertySupplier;
 import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.util.LogSilencer;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
@@ -93,6 +94,13 @@ public final class NodeDocument extends Document {
 
     private static final LogSilencer LOG_SILENCER = new LogSilencer();
 
+    /**
+     * Whether the revision maps of sealed documents are kept in a compact
+     * representation. See {@link CompactRevisionMap}.
+     */
+    private static final boolean COMPACT_REVISION_MAPS = SystemPropertySupplier
+            .create("oak.documentMK.compactRevisionMaps", Boolean.FALSE).loggingTo(LOG).get();
+
     /**
      * All NodeDocument ID value would be greater than this value
      * It can be used as startKey in DocumentStore#query methods
@@ -1708,6 +1716,20 @@ public final class NodeDocument extends Document {
         return map;
     }
 
+    @NotNull
+    @Override
+    protected Map<?, ?> transformAndSeal(@NotNull Map<Object, Object> map,
+                                         @Nullable String key,
+                                         int level) {
+        if (COMPACT_REVISION_MAPS && level == 1) {
+            Map<?, ?> compact = CompactRevisionMap.fromMap(map);
+            if (compact != null) {
+                return compact;
+            }
+        }
+        return super.transformAndSeal(map, key, level);
+    }
+
     /**
      * Returns name of all the properties on this document
      * <p>
@@ -16,6 +16,9 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.jackrabbit.guava.common.cache.Cache;
 import org.apache.jackrabbit.guava.common.cache.CacheBuilder;
 import org.apache.jackrabbit.guava.common.collect.Iterables;
@@ -30,9 +33,20 @@ import static org.apache.jackrabbit.oak.plugins.document.util.Utils.isLocalChang
 /**
  * Implements a tiered diff cache which consists of a {@link LocalDiffCache} and
  * a {@link MemoryDiffCache}.
+ * <p>
+ * On a cache miss the diff is composed from the cached diffs of adjacent
+ * revision ranges, if available, before the loader is called. The composed
+ * diff is put into the {@link MemoryDiffCache}.
  */
 class TieredDiffCache extends DiffCache {
 
+    /**
+     * The maximum number of adjacent revision ranges composed into a diff.
+     */
+    static final int MAX_COMPOSED_RANGES = 16;
+
+    private static final int RANGES_TABLE_SIZE = 1024;
+
     /**
      * A small cache of local diff cache misses to prevent repeated calls with
      * the same revision vector range.
@@ -43,6 +57,7 @@ class TieredDiffCache extends DiffCache {
     private final int clusterId;
     private final DiffCache localCache;
     private final DiffCache memoryCache;
+    private final DiffRanges ranges = new DiffRanges(RANGES_TABLE_SIZE);
 
     TieredDiffCache(DocumentNodeStoreBuilder<?> builder, int clusterId) {
         this.clusterId = clusterId;
@@ -55,6 +70,30 @@ class TieredDiffCache extends DiffCache {
                              @NotNull RevisionVector to,
                              @NotNull Path path,
                              @Nullable Loader loader) {
+        String changes = getLocalChanges(from, to, path);
+        if (changes != null) {
+            return changes;
+        }
+        if (loader == null) {
+            changes = memoryCache.getChanges(from, to, path, null);
+            if (changes == null) {
+                changes = compose(from, to, path);
+                if (changes != null) {
+                    memoryCache.newEntry(from, to, false).append(path, changes);
+                }
+            }
+            return changes;
+        }
+        return memoryCache.getChanges(from, to, path, () -> {
+            String composed = compose(from, to, path);
+            return composed != null ? composed : loader.call();
+        });
+    }
+
+    @Nullable
+    private String getLocalChanges(@NotNull RevisionVector from,
+                                   @NotNull RevisionVector to,
+                                   @NotNull Path path) {
         // do not check local cache when changes are external
         if (isLocalChange(from, to, clusterId)) {
             // do not read from the localCache when there was a previous miss
@@ -71,7 +110,44 @@ class TieredDiffCache extends DiffCache {
                 localDiffMisses.put(k, k);
             }
         }
-        return memoryCache.getChanges(from, to, path, loader);
+        return null;
+    }
+
+    /**
+     * Composes the diff from the cached diffs of adjacent revision ranges.
+     *
+     * @return the diff or {@code null} if the revision range is not covered
+     *          by cached diffs.
+     */
+    @Nullable
+    private String compose(@NotNull RevisionVector from,
+                           @NotNull RevisionVector to,
+                           @NotNull Path path) {
+        List<String> diffs = new ArrayList<>();
+        RevisionVector r = from;
+        while (!r.equals(to)) {
+            if (diffs.size() == MAX_COMPOSED_RANGES) {
+                return null;
+            }
+            RevisionVector next = ranges.next(r);
+            // the range must end at or before the to revision
+            if (next == null || !to.pmax(next).equals(to)) {
+                return null;
+            }
+            String changes = getLocalChanges(r, next, path);
+            if (changes == null) {
+                changes = memoryCache.getChanges(r, next, path, null);
+            }
+            if (changes == null) {
+                return null;
+            }
+            diffs.add(changes);
+            r = next;
+        }
+        if (diffs.size() < 2) {
+            return null;
+        }
+        return DiffRanges.merge(diffs);
     }
 
     /**
@@ -85,6 +161,7 @@ class TieredDiffCache extends DiffCache {
     @NotNull
     @Override
     public Entry newEntry(@NotNull RevisionVector from, @NotNull RevisionVector to, boolean local) {
+        ranges.add(from, to);
         if (local) {
             return localCache.newEntry(from, to, true);
         } else {
@@ -34,8 +34,15 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -219,6 +226,7 @@ public class VersionGarbageCollector {
     private final VersionGCSupport versionStore;
     private final AtomicReference<GCJob> collector = newReference();
     private VersionGCOptions options;
+    private Throttler throttler;
     private GCMonitor gcMonitor = GCMonitor.EMPTY;
     private RevisionGCStats gcStats = new RevisionGCStats(NOOP);
     private FullGCStatsCollector fullGCStats = new FullGCStatsCollectorImpl(NOOP);
@@ -235,6 +243,7 @@ public class VersionGarbageCollector {
         this.isFullGCDryRun = isFullGCDryRun;
         this.embeddedVerification = embeddedVerification;
         this.options = new VersionGCOptions();
+        this.throttler = ds.throttler();
         AUDIT_LOG.info("<init> VersionGarbageCollector created with fullGcMode = {}", fullGcMode);
     }
 
@@ -328,6 +337,18 @@ public class VersionGarbageCollector {
         this.options = options;
     }
 
+    /**
+     * Sets the throttler consulted by the workers of a parallel collection
+     * after each batch of modifications. A worker pauses for the throttling
+     * time before it continues. Defaults to the throttler of the document
+     * store.
+     *
+     * @param throttler the throttler to use.
+     */
+    void setThrottler(@NotNull Throttler throttler) {
+        this.throttler = requireNonNull(throttler);
+    }
+
     public void reset() {
         ds.remove(SETTINGS, SETTINGS_COLLECTION_ID);
     }
@@ -436,6 +457,8 @@ public class VersionGarbageCollector {
                 collectAndDeleteSplitDocsElapsed, deleteSplitDocsElapsed, sortDocIdsElapsed, updateResurrectedDocumentsElapsed,
                 fullGCDocsElapsed, collectFullGCElapsed, collectOrphanNodesElapsed, collectDeletedPropsElapsed,
                 deleteFullGCDocsElapsed, collectDeletedOldRevsElapsed, collectUnmergedBCElapsed;
+        // time spent by the workers of a parallel collection, summed up over all workers
+        long checkDeletedDocsWorkersElapsed, deleteDeletedDocsWorkersElapsed, updateResurrectedDocumentsWorkersElapsed;
 
         @Override
         public String toString() {
@@ -484,6 +507,13 @@ public class VersionGarbageCollector {
                         df.format(collectDeletedOldRevs.elapsed(MICROSECONDS), MICROSECONDS),
                         df.format(collectUnmergedBC.elapsed(MICROSECONDS), MICROSECONDS));
             }
+            if (checkDeletedDocsWorkersElapsed > 0 || deleteDeletedDocsWorkersElapsed > 0
+                    || updateResurrectedDocumentsWorkersElapsed > 0) {
+                timings += String.format(", collectorWorkers=[timeToCheckDeletedDocs=%s, timeTakenToUpdateResurrectedDocs=%s, timeTakenToDeleteDeletedDocs=%s]",
+                        df.format(checkDeletedDocsWorkersElapsed, MICROSECONDS),
+                        df.format(updateResurrectedDocumentsWorkersElapsed, MICROSECONDS),
+                        df.format(deleteDeletedDocsWorkersElapsed, MICROSECONDS));
+            }
 
             return "VersionGCStats{" +
                     "ignoredGCDueToCheckPoint=" + ignoredGCDueToCheckPoint +
@@ -510,6 +540,23 @@ public class VersionGarbageCollector {
                     ", " + timings + "}";
         }
 
+        /**
+         * Adds the counts of documents collected by a worker of a parallel
+         * collection to this stats. The time the worker spent checking,
+         * deleting and updating documents is added to the worker elapsed
+         * fields. These are summed up over all workers and therefore not
+         * comparable with the wall clock time of the phases.
+         */
+        void merge(VersionGCStats worker) {
+            this.deletedDocGCCount += worker.deletedDocGCCount;
+            this.deletedLeafDocGCCount += worker.deletedLeafDocGCCount;
+            this.splitDocGCCount += worker.splitDocGCCount;
+            this.updateResurrectedGCCount += worker.updateResurrectedGCCount;
+            this.checkDeletedDocsWorkersElapsed += worker.checkDeletedDocs.elapsed(MICROSECONDS);
+            this.deleteDeletedDocsWorkersElapsed += worker.deleteDeletedDocs.elapsed(MICROSECONDS);
+            this.updateResurrectedDocumentsWorkersElapsed += worker.updateResurrectedDocuments.elapsed(MICROSECONDS);
+        }
+
         void addRun(VersionGCStats run) {
             ++iterationCount;
             this.ignoredGCDueToCheckPoint = run.ignoredGCDueToCheckPoint;
@@ -534,6 +581,9 @@ public class VersionGarbageCollector {
             this.deletedInternalPropRevsCount += run.deletedInternalPropRevsCount;
             this.deletedUnmergedBCCount += run.deletedUnmergedBCCount;
             this.deletedOrphanNodesCount += run.deletedOrphanNodesCount;
+            this.checkDeletedDocsWorkersElapsed += run.checkDeletedDocsWorkersElapsed;
+            this.deleteDeletedDocsWorkersElapsed += run.deleteDeletedDocsWorkersElapsed;
+            this.updateResurrectedDocumentsWorkersElapsed += run.updateResurrectedDocumentsWorkersElapsed;
             if (run.iterationCount > 0) {
                 // run is cumulative with times in elapsed fields
                 this.activeElapsed += run.activeElapsed;
@@ -924,44 +974,48 @@ public class VersionGarbageCollector {
             int docsTraversed = 0;
             try (DeletedDocsGC gc = new DeletedDocsGC(headRevision, cancel, options, monitor)) {
                 if (phases.start(GCPhase.COLLECTING)) {
-                    Iterable<NodeDocument> itr = versionStore.getPossiblyDeletedDocs(rec.scope.fromMs, rec.scope.toMs);
-                    try {
-                        for (NodeDocument doc : itr) {
-                            // continue with GC?
-                            if (cancel.get()) {
-                                break;
-                            }
-                            // Check if node is actually deleted at current revision
-                            // As node is not modified since oldestRevTimeStamp then
-                            // this node has not be revived again in past maxRevisionAge
-                            // So deleting it is safe
-                            docsTraversed++;
-                            if (docsTraversed % PROGRESS_BATCH_SIZE == 0) {
-                                monitor.info("Iterated through {} documents so far. {} found to be deleted",
-                                        docsTraversed, gc.getNumDocuments());
-                            }
-                            if (phases.start(GCPhase.CHECKING)) {
-                                gc.possiblyDeleted(doc);
-                                phases.stop(GCPhase.CHECKING);
-                            }
-                            if (rec.maxCollect > 0 && gc.docIdsToDelete.getSize() > rec.maxCollect) {
-                                throw new LimitExceededException();
-                            }
-                            if (gc.hasLeafBatch()) {
-                                if (phases.start(GCPhase.DELETING)) {
-                                    gc.removeLeafDocuments(phases.stats);
-                                    phases.stop(GCPhase.DELETING);
+                    if (options.collectorThreads > 1) {
+                        collectDeletedDocumentsInParallel(gc, phases.stats, headRevision, rec);
+                    } else {
+                        Iterable<NodeDocument> itr = versionStore.getPossiblyDeletedDocs(rec.scope.fromMs, rec.scope.toMs);
+                        try {
+                            for (NodeDocument doc : itr) {
+                                // continue with GC?
+                                if (cancel.get()) {
+                                    break;
                                 }
-                            }
-                            if (gc.hasRescurrectUpdateBatch()) {
-                                if (phases.start(GCPhase.UPDATING)) {
-                                    gc.updateResurrectedDocuments(phases.stats);
-                                    phases.stop(GCPhase.UPDATING);
+                                // Check if node is actually deleted at current revision
+                                // As node is not modified since oldestRevTimeStamp then
+                                // this node has not be revived again in past maxRevisionAge
+                                // So deleting it is safe
+                                docsTraversed++;
+                                if (docsTraversed % PROGRESS_BATCH_SIZE == 0) {
+                                    monitor.info("Iterated through {} documents so far. {} found to be deleted",
+                                            docsTraversed, gc.getNumDocuments());
+                                }
+                                if (phases.start(GCPhase.CHECKING)) {
+                                    gc.possiblyDeleted(doc);
+                                    phases.stop(GCPhase.CHECKING);
+                                }
+                                if (rec.maxCollect > 0 && gc.docIdsToDelete.getSize() > rec.maxCollect) {
+                                    throw new LimitExceededException();
+                                }
+                                if (gc.hasLeafBatch()) {
+                                    if (phases.start(GCPhase.DELETING)) {
+                                        gc.removeLeafDocuments(phases.stats);
+                                        phases.stop(GCPhase.DELETING);
+                                    }
+                                }
+                                if (gc.hasRescurrectUpdateBatch()) {
+                                    if (phases.start(GCPhase.UPDATING)) {
+                                        gc.updateResurrectedDocuments(phases.stats);
+                                        phases.stop(GCPhase.UPDATING);
+                                    }
                                 }
                             }
+                        } finally {
+                            Utils.closeIfCloseable(itr);
                         }
-                    } finally {
-                        Utils.closeIfCloseable(itr);
                     }
                     phases.stop(GCPhase.COLLECTING);
                 }
@@ -989,6 +1043,155 @@ public class VersionGarbageCollector {
                 }
             }
         }
+
+        /**
+         * Splits the time interval of the recommendations into ranges of
+         * {@code _modified} values and collects the deleted documents of each
+         * range in a separate thread. Each worker removes leaf documents and
+         * resets {@code _deletedOnce} on resurrected documents on its own. The
+         * ids of other deleted documents and their previous documents are
+         * added to the given {@code gc}, which removes them in the usual
+         * sorted order once all workers are done.
+         */
+        private void collectDeletedDocumentsInParallel(DeletedDocsGC gc,
+                                                       VersionGCStats stats,
+                                                       RevisionVector headRevision,
+                                                       VersionGCRecommendations rec)
+                throws IOException, LimitExceededException {
+            List<TimeInterval> ranges = splitScope(rec.scope, options.collectorThreads);
+            monitor.info("Collecting deleted documents with {} workers", ranges.size());
+            AtomicLong collected = new AtomicLong();
+            AtomicBoolean abort = new AtomicBoolean();
+            List<DeletedDocsGC> workers = new ArrayList<>();
+            List<VersionGCStats> workerStats = new ArrayList<>();
+            ExecutorService executor = Executors.newFixedThreadPool(ranges.size(), new CollectorThreadFactory());
+            try {
+                List<Future<Void>> futures = new ArrayList<>();
+                for (TimeInterval range : ranges) {
+                    DeletedDocsGC worker = new DeletedDocsGC(headRevision, cancel, options, monitor);
+                    VersionGCStats s = new VersionGCStats();
+                    workers.add(worker);
+                    workerStats.add(s);
+                    futures.add(executor.submit(() -> {
+                        collectDeletedDocuments(worker, s, range, rec.maxCollect, collected, abort);
+                        return null;
+                    }));
+                }
+                Throwable failure = null;
+                for (Future<Void> f : futures) {
+                    try {
+                        f.get();
+                    } catch (ExecutionException e) {
+                        abort.set(true);
+                        if (failure == null) {
+                            failure = e.getCause();
+                        }
+                    } catch (InterruptedException e) {
+                        abort.set(true);
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while collecting deleted documents", e);
+                    }
+                }
+                for (VersionGCStats s : workerStats) {
+                    stats.merge(s);
+                }
+                if (failure instanceof LimitExceededException) {
+                    throw (LimitExceededException) failure;
+                } else if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                } else if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                } else if (failure instanceof Error) {
+                    throw (Error) failure;
+                } else if (failure != null) {
+                    throw new IOException(failure);
+                }
+                for (DeletedDocsGC worker : workers) {
+                    gc.addAll(worker);
+                }
+            } finally {
+                executor.shutdownNow();
+                for (DeletedDocsGC worker : workers) {
+                    worker.close();
+                }
+            }
+        }
+
+        private void collectDeletedDocuments(DeletedDocsGC gc,
+                                             VersionGCStats stats,
+                                             TimeInterval range,
+                                             long maxCollect,
+                                             AtomicLong collected,
+                                             AtomicBoolean abort)
+                throws IOException, LimitExceededException {
+            int docsTraversed = 0;
+            Iterable<NodeDocument> itr = versionStore.getPossiblyDeletedDocs(range.fromMs, range.toMs);
+            try {
+                for (NodeDocument doc : itr) {
+                    if (cancel.get() || abort.get()) {
+                        return;
+                    }
+                    docsTraversed++;
+                    if (docsTraversed % PROGRESS_BATCH_SIZE == 0) {
+                        monitor.info("Iterated through {} documents in {} so far. {} found to be deleted",
+                                docsTraversed, range, gc.getNumDocuments());
+                    }
+                    long size = gc.docIdsToDelete.getSize();
+                    stats.checkDeletedDocs.start();
+                    gc.possiblyDeleted(doc);
+                    stats.checkDeletedDocs.stop();
+                    long total = collected.addAndGet(gc.docIdsToDelete.getSize() - size);
+                    if (maxCollect > 0 && total > maxCollect) {
+                        throw new LimitExceededException();
+                    }
+                    if (gc.hasLeafBatch()) {
+                        removeLeafDocuments(gc, stats);
+                    }
+                    if (gc.hasRescurrectUpdateBatch()) {
+                        updateResurrectedDocuments(gc, stats);
+                    }
+                }
+            } finally {
+                Utils.closeIfCloseable(itr);
+            }
+            removeLeafDocuments(gc, stats);
+            updateResurrectedDocuments(gc, stats);
+        }
+
+        private void removeLeafDocuments(DeletedDocsGC gc, VersionGCStats stats)
+                throws IOException {
+            stats.deleteDeletedDocs.start();
+            gc.removeLeafDocuments(stats);
+            stats.deleteDeletedDocs.stop();
+            throttleWorker(cancel);
+        }
+
+        private void updateResurrectedDocuments(DeletedDocsGC gc, VersionGCStats stats)
+                throws IOException {
+            stats.updateResurrectedDocuments.start();
+            gc.updateResurrectedDocuments(stats);
+            stats.updateResurrectedDocuments.stop();
+            throttleWorker(cancel);
+        }
+    }
+
+    /**
+     * Splits the given interval into at most {@code count} adjacent ranges.
+     * A range is never shorter than the resolution of the {@code _modified}
+     * field.
+     */
+    static List<TimeInterval> splitScope(TimeInterval scope, int count) {
+        long resolutionMs = SECONDS.toMillis(NodeDocument.MODIFIED_IN_SECS_RESOLUTION);
+        long duration = scope.toMs - scope.fromMs;
+        int n = (int) Math.max(1, Math.min(count, duration / resolutionMs));
+        List<TimeInterval> ranges = new ArrayList<>(n);
+        long from = scope.fromMs;
+        for (int i = 1; i <= n; i++) {
+            long to = i == n ? scope.toMs : scope.fromMs + duration / n * i;
+            ranges.add(new TimeInterval(from, to));
+            from = to;
+        }
+        return ranges;
     }
 
     private class FullGC implements Closeable {
@@ -2037,6 +2240,25 @@ public class VersionGarbageCollector {
         }
     }
 
+    /**
+     * Pauses a worker of a parallel collection for the current throttling
+     * time of the document store. This is in addition to the delay of
+     * {@link #delayOnModifications(long, AtomicBoolean)}, because multiple
+     * workers modify the store concurrently.
+     */
+    private void throttleWorker(final AtomicBoolean cancel) {
+        long delayMs = throttler.throttlingTime();
+        if (!cancel.get() && delayMs > 0) {
+            try {
+                Clock clock = nodeStore.getClock();
+                clock.waitUntil(clock.getTime() + delayMs);
+            }
+            catch (InterruptedException ex) {
+                /* ignore */
+            }
+        }
+    }
+
     public void collectGarbageOnDocument(DocumentNodeStore store, NodeDocument doc, boolean verbose) {
         VersionGCStats stats = new VersionGCStats();
         stats.active.start();
@@ -2177,6 +2399,24 @@ public class VersionGarbageCollector {
             stats.deletedDocGCCount += removeCount;
         }
 
+        /**
+         * Adds the deleted documents and previous documents collected by
+         * another instance to this instance.
+         *
+         * @param other the instance to take the document ids from.
+         */
+        void addAll(DeletedDocsGC other) throws IOException {
+            other.ensureSorted();
+            for (Iterator<String> it = other.docIdsToDelete.getIds(); it.hasNext(); ) {
+                addDocument(it.next());
+            }
+            for (Iterator<String> it = other.prevDocIdsToDelete.getIds(); it.hasNext(); ) {
+                prevDocIdsToDelete.add(it.next());
+            }
+            exclude.addAll(other.exclude);
+            sorted = false;
+        }
+
         void updateResurrectedDocuments(VersionGCStats stats) throws IOException {
             if (resurrectedIds.isEmpty()) {
                 return;
@@ -2505,6 +2745,18 @@ public class VersionGarbageCollector {
         }
     }
 
+    private static final class CollectorThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NotNull Runnable r) {
+            Thread t = new Thread(r, "Oak VersionGC worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
     private static final class LimitExceededException extends Exception {
         private static final long serialVersionUID = 6578586397629516408L;
     }
@@ -61,6 +61,7 @@ import com.mongodb.client.model.CreateCollectionOptions;
 import org.apache.jackrabbit.guava.common.util.concurrent.UncheckedExecutionException;
 import org.apache.jackrabbit.oak.cache.CacheStats;
 import org.apache.jackrabbit.oak.cache.CacheValue;
+import org.apache.jackrabbit.oak.plugins.document.AsyncDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.Collection;
 import org.apache.jackrabbit.oak.plugins.document.Document;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
@@ -82,6 +83,7 @@ import org.apache.jackrabbit.oak.plugins.document.cache.ModificationStamp;
 import org.apache.jackrabbit.oak.plugins.document.cache.NodeDocumentCache;
 import org.apache.jackrabbit.oak.plugins.document.locks.NodeDocumentLocks;
 import org.apache.jackrabbit.oak.plugins.document.locks.StripedNodeDocumentLocks;
+import org.apache.jackrabbit.oak.plugins.document.util.ExecutorAsyncDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.oak.stats.Clock;
 import org.apache.jackrabbit.oak.commons.PerfLogger;
@@ -284,6 +286,18 @@ public class MongoDocumentStore implements DocumentStore {
     private final int minPrefetch =
             Integer.getInteger("oak.mongo.minPrefetch", 5);
 
+    /**
+     * The maximum number of concurrent reads issued through {@link #async()}.
+     * A value of zero or less performs asynchronous reads in the calling
+     * thread.
+     */
+    private final int asyncReadThreads =
+            Integer.getInteger("oak.mongo.asyncReadThreads", 8);
+
+    private final ExecutorAsyncDocumentStore asyncStore = asyncReadThreads > 0
+            ? new ExecutorAsyncDocumentStore(this, asyncReadThreads, "MongoDocumentStore async read")
+            : null;
+
     /**
      * Feature flag for use of MongoDB client sessions.
      */
@@ -2041,8 +2055,17 @@ public class MongoDocumentStore implements DocumentStore {
         return Filters.eq(Document.ID, key);
     }
 
+    @NotNull
+    @Override
+    public AsyncDocumentStore async() {
+        return asyncStore != null ? asyncStore : DocumentStore.super.async();
+    }
+
     @Override
     public void dispose() {
+        if (asyncStore != null) {
+            asyncStore.close();
+        }
         connection.close();
         if (clusterNodesConnection != connection) {
             clusterNodesConnection.close();
@@ -0,0 +1,737 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.DataType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A log-structured store for the persistent cache.
+ * <p>
+ * Entries are appended to memory-mapped segment files of a fixed size. The
+ * location of the most recent entry for a key is kept in an in-memory hash
+ * index per map. Writers reserve space in the current segment without a global
+ * lock and therefore write concurrently. Only writers of the same key are
+ * serialized, to keep the order of the entries in the log consistent with the
+ * index.
+ * <p>
+ * Removals and {@link Map#clear()} are written to the log as well and are
+ * applied when the index is rebuilt on startup. A store that was not closed
+ * cleanly is discarded on startup.
+ * <p>
+ * When less than half of the written bytes are live, the oldest segment is
+ * compacted in the background: its live entries are appended again and the
+ * segment file is deleted. Because the oldest segment is always compacted
+ * first, removal entries in it do not need to be retained.
+ */
+class LogStructuredStore implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogStructuredStore.class);
+
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final String CLEAN_MARKER = "clean";
+
+    private static final byte PUT = 1;
+
+    private static final byte REMOVE = 2;
+
+    private static final byte CLEAR = 3;
+
+    /**
+     * The length of an entry header: entry length, type, map id and key
+     * length.
+     */
+    static final int HEADER_LENGTH = 4 + 1 + 4 + 4;
+
+    private static final int TYPE_OFFSET = 4;
+
+    private static final int MAP_ID_OFFSET = 5;
+
+    private static final int KEY_LENGTH_OFFSET = 9;
+
+    private static final int STRIPES = 64;
+
+    /**
+     * Compact when less than this fraction of the written bytes is live.
+     */
+    private static final double MIN_LIVE_RATIO = 0.5;
+
+    private final File directory;
+
+    private final boolean readOnly;
+
+    private final int segmentSize;
+
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+
+    /**
+     * The open maps by id. Guarded by {@code this}.
+     */
+    private final Map<Integer, LogMap<?, ?>> maps = new HashMap<>();
+
+    /**
+     * The entries read on startup for maps that were not yet opened, with
+     * the serialized key. Guarded by {@code this}.
+     */
+    private final Map<Integer, Map<ByteBuffer, Long>> recovered = new HashMap<>();
+
+    private final Object[] stripes = new Object[STRIPES];
+
+    private final ThreadLocal<WriteBuffer> writeBuffer = new ThreadLocal<>();
+
+    private final ExecutorService compactor;
+
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    private final AtomicLong compactionCount = new AtomicLong();
+
+    private volatile Segment active;
+
+    private volatile boolean closed;
+
+    /**
+     * Open the store in the given directory.
+     *
+     * @param directory the directory with the segment files
+     * @param readOnly whether the store is opened read-only
+     * @param segmentSize the size of a segment in bytes
+     * @throws IOException if the store could not be opened
+     */
+    LogStructuredStore(File directory, boolean readOnly, int segmentSize) throws IOException {
+        if (segmentSize < HEADER_LENGTH) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.readOnly = readOnly;
+        this.segmentSize = segmentSize;
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+        if (!readOnly) {
+            Files.createDirectories(directory.toPath());
+        }
+        File marker = new File(directory, CLEAN_MARKER);
+        boolean clean = marker.exists();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                int id;
+                try {
+                    id = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (!clean) {
+                    if (!readOnly) {
+                        Files.deleteIfExists(f.toPath());
+                    }
+                    continue;
+                }
+                segments.put(id, Segment.open(id, f));
+            }
+            if (!clean && files.length > 0) {
+                LOG.info("Discarding persistent cache {}, it was not closed cleanly", directory);
+            }
+        }
+        recover();
+        if (readOnly) {
+            compactor = null;
+        } else {
+            Files.deleteIfExists(marker.toPath());
+            int id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+            active = Segment.create(id, segmentFile(id), segmentSize);
+            segments.put(id, active);
+            compactor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "Oak PersistentCache Compaction " + directory.getName());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Open or get the map with the given name.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param name the map name
+     * @param keyType the key data type
+     * @param valueType the value data type
+     * @return the map
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <K, V> Map<K, V> openMap(String name,
+                                          DataType<? super K> keyType,
+                                          DataType<? super V> valueType) {
+        checkOpen();
+        int id = name.hashCode();
+        LogMap<?, ?> existing = maps.get(id);
+        if (existing != null) {
+            if (!existing.name.equals(name)) {
+                throw new IllegalArgumentException("Map " + name + " conflicts with " + existing.name);
+            }
+            return (Map<K, V>) existing;
+        }
+        LogMap<K, V> map = new LogMap<>(id, name, keyType, valueType);
+        Map<ByteBuffer, Long> entries = recovered.remove(id);
+        if (entries != null) {
+            for (Map.Entry<ByteBuffer, Long> e : entries.entrySet()) {
+                map.index.put((K) keyType.read(e.getKey().duplicate()), e.getValue());
+            }
+        }
+        maps.put(id, map);
+        return map;
+    }
+
+    /**
+     * @return the number of bytes written to the segments, including the
+     *          entries that are no longer live.
+     */
+    long getFileSize() {
+        long size = 0;
+        for (Segment s : segments.values()) {
+            size += s.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of bytes of the live entries.
+     */
+    long getLiveSize() {
+        long size = 0;
+        for (Segment s : segments.values()) {
+            size += s.live.get();
+        }
+        return size;
+    }
+
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    long getCompactionCount() {
+        return compactionCount.get();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (compactor != null) {
+            compactor.shutdown();
+            try {
+                if (!compactor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    LOG.warn("Compaction of {} did not finish", directory);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Segment s : segments.values()) {
+            s.awaitWriters();
+            s.force();
+        }
+        if (!readOnly) {
+            try {
+                Files.createFile(new File(directory, CLEAN_MARKER).toPath());
+            } catch (IOException e) {
+                LOG.warn("Could not mark the persistent cache {} as closed", directory, e);
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("This store is closed");
+        }
+    }
+
+    private void checkWritable() {
+        checkOpen();
+        if (readOnly) {
+            throw new IllegalStateException("This store is read-only");
+        }
+    }
+
+    private File segmentFile(int id) {
+        return new File(directory, String.format("%08d%s", id, SEGMENT_SUFFIX));
+    }
+
+    private Object stripe(Object key) {
+        return stripes[(key.hashCode() & 0x7fffffff) % STRIPES];
+    }
+
+    /**
+     * Rebuild the index from the segments, in the order they were written.
+     */
+    private void recover() {
+        for (Segment s : segments.values()) {
+            ByteBuffer b = s.buffer;
+            int offset = 0;
+            while (offset + HEADER_LENGTH <= b.capacity()) {
+                int length = b.getInt(offset);
+                if (length < HEADER_LENGTH || length > b.capacity() - offset) {
+                    break;
+                }
+                Map<ByteBuffer, Long> entries = recovered.computeIfAbsent(
+                        b.getInt(offset + MAP_ID_OFFSET), id -> new HashMap<>());
+                byte type = b.get(offset + TYPE_OFFSET);
+                if (type == CLEAR) {
+                    for (Long old : entries.values()) {
+                        release(old);
+                    }
+                    entries.clear();
+                } else {
+                    byte[] key = new byte[b.getInt(offset + KEY_LENGTH_OFFSET)];
+                    ByteBuffer d = b.duplicate();
+                    ((Buffer) d).position(offset + HEADER_LENGTH);
+                    d.get(key);
+                    Long old;
+                    if (type == PUT) {
+                        old = entries.put(ByteBuffer.wrap(key), location(s.id, offset));
+                        s.live.addAndGet(length);
+                    } else {
+                        old = entries.remove(ByteBuffer.wrap(key));
+                    }
+                    release(old);
+                }
+                offset += length;
+            }
+            s.position.set(offset);
+        }
+    }
+
+    /**
+     * Serialize an entry to a thread local buffer.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private ByteBuffer serialize(byte type, int mapId,
+                                 DataType keyType, Object key,
+                                 DataType valueType, Object value) {
+        WriteBuffer buff = writeBuffer.get();
+        if (buff == null) {
+            buff = new WriteBuffer();
+            writeBuffer.set(buff);
+        }
+        buff.clear();
+        buff.putInt(0).put(type).putInt(mapId).putInt(0);
+        if (key != null) {
+            keyType.write(buff, key);
+            buff.putInt(KEY_LENGTH_OFFSET, buff.position() - HEADER_LENGTH);
+        }
+        if (value != null) {
+            valueType.write(buff, value);
+        }
+        buff.putInt(0, buff.position());
+        ByteBuffer b = buff.getBuffer();
+        ((Buffer) b).flip();
+        return b;
+    }
+
+    /**
+     * Append an entry to the current segment.
+     *
+     * @param entry the entry
+     * @param live whether the entry is live
+     * @return the location of the entry
+     */
+    private long append(ByteBuffer entry, boolean live) {
+        int length = entry.remaining();
+        while (true) {
+            Segment s = active;
+            s.pending.incrementAndGet();
+            try {
+                // checked after registering as a writer,
+                // so that close() waits for this write
+                checkOpen();
+                int offset = s.reserve(length);
+                if (offset >= 0) {
+                    s.write(offset, entry);
+                    if (live) {
+                        s.live.addAndGet(length);
+                    }
+                    return location(s.id, offset);
+                }
+            } finally {
+                s.pending.decrementAndGet();
+            }
+            roll(s);
+        }
+    }
+
+    private synchronized void roll(Segment full) {
+        if (active != full || closed) {
+            return;
+        }
+        int id = full.id + 1;
+        try {
+            active = Segment.create(id, segmentFile(id), segmentSize);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create segment " + id, e);
+        }
+        segments.put(id, active);
+        if (needsCompaction() && compacting.compareAndSet(false, true)) {
+            compactor.execute(this::compact);
+        }
+    }
+
+    private void release(Long location) {
+        if (location == null) {
+            return;
+        }
+        Segment s = segments.get(segmentId(location));
+        if (s != null) {
+            s.live.addAndGet(-s.buffer.getInt(offset(location)));
+        }
+    }
+
+    private boolean needsCompaction() {
+        // at least two segments besides the current one
+        if (segments.size() < 3) {
+            return false;
+        }
+        return getLiveSize() < getFileSize() * MIN_LIVE_RATIO;
+    }
+
+    private void compact() {
+        try {
+            int max = segments.size() - 1;
+            for (int i = 0; i < max && !closed && needsCompaction(); i++) {
+                Segment oldest = segments.firstEntry().getValue();
+                if (oldest == active || oldest.pending.get() > 0) {
+                    break;
+                }
+                compact(oldest);
+            }
+        } catch (Exception e) {
+            LOG.warn("Compaction of {} failed", directory, e);
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * Append the live entries of the given segment again and delete the
+     * segment.
+     */
+    private void compact(Segment s) throws IOException {
+        synchronized (this) {
+            for (Map<ByteBuffer, Long> entries : recovered.values()) {
+                // maps that were not opened lose the entries
+                entries.values().removeIf(location -> segmentId(location) == s.id);
+            }
+        }
+        ByteBuffer b = s.buffer;
+        int end = s.size();
+        for (int offset = 0; offset < end; ) {
+            int length = b.getInt(offset);
+            if (length < HEADER_LENGTH) {
+                break;
+            }
+            if (b.get(offset + TYPE_OFFSET) == PUT) {
+                LogMap<?, ?> map;
+                synchronized (this) {
+                    map = maps.get(b.getInt(offset + MAP_ID_OFFSET));
+                }
+                if (map != null) {
+                    ByteBuffer entry = b.duplicate();
+                    ((Buffer) entry).position(offset).limit(offset + length);
+                    map.move(entry, location(s.id, offset));
+                }
+            }
+            offset += length;
+        }
+        segments.remove(s.id);
+        Files.deleteIfExists(s.file.toPath());
+        compactionCount.incrementAndGet();
+        LOG.debug("Compacted segment {} of {}", s.id, directory);
+    }
+
+    private static long location(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xffffffffL);
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    private static final class Segment {
+
+        final int id;
+
+        final File file;
+
+        final MappedByteBuffer buffer;
+
+        final boolean writable;
+
+        /**
+         * The number of bytes reserved so far.
+         */
+        final AtomicInteger position = new AtomicInteger();
+
+        /**
+         * The number of writers currently appending to this segment.
+         */
+        final AtomicInteger pending = new AtomicInteger();
+
+        /**
+         * The number of bytes of the live entries.
+         */
+        final AtomicLong live = new AtomicLong();
+
+        private Segment(int id, File file, MappedByteBuffer buffer, boolean writable) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+            this.writable = writable;
+        }
+
+        static Segment create(int id, File file, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // the mapping stays valid when the channel is closed
+                return new Segment(id, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size), true);
+            }
+        }
+
+        static Segment open(int id, File file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                return new Segment(id, file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), false);
+            }
+        }
+
+        /**
+         * Reserve space for an entry.
+         *
+         * @return the offset of the entry or -1 if the segment is full
+         */
+        int reserve(int length) {
+            while (true) {
+                int offset = position.get();
+                if (length > buffer.capacity() - offset) {
+                    return -1;
+                }
+                if (position.compareAndSet(offset, offset + length)) {
+                    return offset;
+                }
+            }
+        }
+
+        void write(int offset, ByteBuffer entry) {
+            ByteBuffer b = buffer.duplicate();
+            ((Buffer) b).position(offset);
+            b.put(entry.duplicate());
+        }
+
+        int size() {
+            return Math.min(position.get(), buffer.capacity());
+        }
+
+        void awaitWriters() {
+            while (pending.get() > 0) {
+                Thread.yield();
+            }
+        }
+
+        void force() {
+            if (writable) {
+                buffer.force();
+            }
+        }
+    }
+
+    /**
+     * A map of this store. The bulk operations are not supported. The
+     * previous value is not returned from {@link #put(Object, Object)} and
+     * {@link #remove(Object)}, as that would need an additional read.
+     */
+    private final class LogMap<K, V> implements Map<K, V> {
+
+        final int id;
+
+        final String name;
+
+        final DataType<? super K> keyType;
+
+        final DataType<? super V> valueType;
+
+        final ConcurrentHashMap<K, Long> index = new ConcurrentHashMap<>();
+
+        LogMap(int id, String name, DataType<? super K> keyType, DataType<? super V> valueType) {
+            this.id = id;
+            this.name = name;
+            this.keyType = keyType;
+            this.valueType = valueType;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            checkWritable();
+            ByteBuffer entry = serialize(PUT, id, keyType, key, valueType, value);
+            if (entry.remaining() > segmentSize) {
+                LOG.debug("Entry too large for map {}: {} bytes", name, entry.remaining());
+                remove(key);
+                return null;
+            }
+            synchronized (stripe(key)) {
+                release(index.put(key, append(entry, true)));
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public V get(Object key) {
+            Long previous = null;
+            while (true) {
+                checkOpen();
+                Long location = index.get(key);
+                if (location == null || location.equals(previous)) {
+                    return null;
+                }
+                previous = location;
+                Segment s = segments.get(segmentId(location));
+                if (s != null) {
+                    int offset = offset(location);
+                    ByteBuffer b = s.buffer.duplicate();
+                    ((Buffer) b).limit(offset + b.getInt(offset));
+                    ((Buffer) b).position(offset + HEADER_LENGTH + b.getInt(offset + KEY_LENGTH_OFFSET));
+                    return (V) valueType.read(b);
+                }
+                // the entry was moved by a compaction, look it up again
+            }
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            checkOpen();
+            return index.containsKey(key);
+        }
+
+        @Override
+        public V remove(Object key) {
+            checkWritable();
+            synchronized (stripe(key)) {
+                Long old = index.remove(key);
+                if (old != null) {
+                    append(serialize(REMOVE, id, keyType, key, null, null), false);
+                    release(old);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void clear() {
+            checkWritable();
+            append(serialize(CLEAR, id, null, null, null, null), false);
+            for (K key : index.keySet()) {
+                release(index.remove(key));
+            }
+        }
+
+        /**
+         * Append the given entry again if it is still the current entry of
+         * its key.
+         */
+        @SuppressWarnings("unchecked")
+        void move(ByteBuffer entry, long location) {
+            int start = entry.position();
+            ByteBuffer k = entry.duplicate();
+            ((Buffer) k).position(start + HEADER_LENGTH);
+            ((Buffer) k).limit(start + HEADER_LENGTH + entry.getInt(start + KEY_LENGTH_OFFSET));
+            K key = (K) keyType.read(k);
+            synchronized (stripe(key)) {
+                Long current = index.get(key);
+                if (current != null && current == location) {
+                    index.put(key, append(entry, true));
+                }
+            }
+        }
+
+        @Override
+        public int size() {
+            return index.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return index.isEmpty();
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void putAll(Map<? extends K, ? extends V> m) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Set<K> keySet() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collection<V> values() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
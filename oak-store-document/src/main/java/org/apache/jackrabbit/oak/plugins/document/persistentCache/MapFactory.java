@@ -22,6 +22,14 @@ import org.h2.mvstore.MVMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * The storage backend of a {@link CacheMap}. A factory manages the store of
+ * one cache generation. The default backend is an H2 {@code MVStore}, the
+ * {@code backend=log} option of the {@link PersistentCache} selects the
+ * {@link LogStructuredStore}. The map builder passed to
+ * {@link #openMap(String, MVMap.Builder)} provides the key and value data
+ * types, used by the backends to serialize the entries.
+ */
 public abstract class MapFactory {
     
     static final Logger LOG = LoggerFactory.getLogger(MapFactory.class);
@@ -19,6 +19,7 @@ package org.apache.jackrabbit.oak.plugins.document.persistentCache;
 import java.io.File;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -26,6 +27,7 @@ import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.guava.common.cache.Cache;
 import org.apache.jackrabbit.oak.cache.CacheValue;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
@@ -43,6 +45,8 @@ import org.h2.mvstore.MVMap.Builder;
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.MVStoreTool;
 import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.DataType;
+import org.h2.mvstore.type.ObjectDataType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +61,7 @@ public class PersistentCache implements Broadcaster.Listener {
 
     private static final String FILE_PREFIX = "cache-";
     private static final String FILE_SUFFIX = ".data";
+    private static final String LOG_FILE_SUFFIX = ".log";
     private static final AtomicInteger COUNTER = new AtomicInteger();
     
     private boolean cacheNodes = true;
@@ -68,6 +73,9 @@ public class PersistentCache implements Broadcaster.Listener {
     private boolean compress = true;
     private boolean asyncCache = true;
     private boolean asyncDiffCache = false;
+    private boolean logStructured;
+    private String fileSuffix = FILE_SUFFIX;
+    private int segmentSizeMB = -1;
     private HashMap<CacheType, GenerationCache> caches = 
             new HashMap<CacheType, GenerationCache>();
     
@@ -103,6 +111,7 @@ public class PersistentCache implements Broadcaster.Listener {
         String[] parts = url.split(",");
         String dir = parts[0];
         String broadcast = "disabled";
+        Boolean async = null;
         for (String p : parts) {
             if (p.equals("+docs")) {
                 logUnsupportedWarning("docs");
@@ -143,11 +152,26 @@ public class PersistentCache implements Broadcaster.Listener {
             } else if (p.startsWith("broadcast=")) {
                 broadcast = p.split("=")[1];               
             } else if (p.equals("-async")) {
-                asyncCache = false;
+                async = false;
+            } else if (p.equals("+async")) {
+                async = true;
             } else if (p.equals("+asyncDiff")) {
                 asyncDiffCache = true;
+            } else if (p.startsWith("backend=")) {
+                String backend = p.split("=")[1];
+                if (backend.equals("log")) {
+                    logStructured = true;
+                    fileSuffix = LOG_FILE_SUFFIX;
+                } else if (!backend.equals("mvstore")) {
+                    throw new IllegalArgumentException("Unknown persistent cache backend " + backend);
+                }
+            } else if (p.startsWith("segmentSize=")) {
+                segmentSizeMB = Integer.parseInt(p.split("=")[1]);
             }
         }
+        // writes to the log-structured backend are cheap and concurrent,
+        // so by default they are done synchronously
+        asyncCache = async != null ? async : !logStructured;
         this.directory = dir;
         if (dir.length() == 0) {
             readGeneration = -1;
@@ -167,8 +191,8 @@ public class PersistentCache implements Broadcaster.Listener {
         if (list != null) {
             for (File f : list) {
                 String fn = f.getName();
-                if (fn.startsWith(FILE_PREFIX) && fn.endsWith(FILE_SUFFIX)) {
-                    String g = fn.substring(FILE_PREFIX.length(), fn.indexOf(FILE_SUFFIX));
+                if (fn.startsWith(FILE_PREFIX) && fn.endsWith(fileSuffix)) {
+                    String g = fn.substring(FILE_PREFIX.length(), fn.indexOf(fileSuffix));
                     try {
                         int gen = Integer.parseInt(g);
                         if (gen >= 0) {
@@ -191,7 +215,7 @@ public class PersistentCache implements Broadcaster.Listener {
                 LOG.info("Ignoring old, read-only generation " + oldFile.getAbsolutePath());
             } else {
                 LOG.info("Removing old generation " + oldFile.getAbsolutePath());
-                oldFile.delete();
+                FileUtils.deleteQuietly(oldFile);
             }
             generations.remove(oldest);
         }
@@ -245,10 +269,13 @@ public class PersistentCache implements Broadcaster.Listener {
         if (directory.length() == 0) {
             return null;
         }
-        return directory + "/" + FILE_PREFIX + generation + FILE_SUFFIX;
+        return directory + "/" + FILE_PREFIX + generation + fileSuffix;
     }
     
     private MapFactory createMapFactory(final int generation, final boolean readOnly) {
+        if (logStructured) {
+            return createLogMapFactory(generation, readOnly);
+        }
         MapFactory f = new MapFactory() {
             
             final String fileName = getFileName(generation);
@@ -366,6 +393,89 @@ public class PersistentCache implements Broadcaster.Listener {
         f.openStore();
         return f;
     }
+
+    private MapFactory createLogMapFactory(final int generation, final boolean readOnly) {
+        MapFactory f = new MapFactory() {
+
+            final String fileName = getFileName(generation);
+            LogStructuredStore store;
+
+            @Override
+            void openStore() {
+                if (store != null) {
+                    return;
+                }
+                try {
+                    File dir;
+                    if (fileName != null) {
+                        dir = new File(fileName);
+                    } else {
+                        // no cache directory: use a temporary one
+                        dir = Files.createTempDirectory("oak-persistent-cache").toFile();
+                        FileUtils.forceDeleteOnExit(dir);
+                    }
+                    store = new LogStructuredStore(dir, readOnly, getSegmentSize());
+                } catch (Exception e) {
+                    exceptionCount++;
+                    LOG.warn("Could not open the store " + fileName, e);
+                }
+            }
+
+            @Override
+            synchronized void closeStore() {
+                if (store == null) {
+                    return;
+                }
+                try {
+                    // clear the interrupted flag, if set
+                    Thread.interrupted();
+                    store.close();
+                } catch (Exception e) {
+                    exceptionCount++;
+                    LOG.debug("Could not close the store", e);
+                    LOG.warn("Could not close the store: " + e);
+                }
+                store = null;
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            <K, V> Map<K, V> openMap(String name, Builder<K, V> builder) {
+                try {
+                    DataType<? super K> keyType;
+                    DataType<? super V> valueType;
+                    if (builder == null) {
+                        keyType = (DataType<? super K>) new ObjectDataType();
+                        valueType = (DataType<? super V>) new ObjectDataType();
+                    } else {
+                        keyType = builder.getKeyType();
+                        valueType = builder.getValueType();
+                    }
+                    return store.openMap(name, keyType, valueType);
+                } catch (Exception e) {
+                    exceptionCount++;
+                    LOG.warn("Could not open the map", e);
+                    return null;
+                }
+            }
+
+            @Override
+            long getFileSize() {
+                LogStructuredStore s = store;
+                return s == null ? 0 : s.getFileSize();
+            }
+        };
+        f.openStore();
+        return f;
+    }
+
+    private int getSegmentSize() {
+        int mb = segmentSizeMB;
+        if (mb <= 0) {
+            mb = Math.max(1, Math.min(64, maxSizeMB / 16));
+        }
+        return mb * 1024 * 1024;
+    }
     
     public void close() {
         writeDispatcher.stop();
@@ -482,7 +592,7 @@ public class PersistentCache implements Broadcaster.Listener {
             }
             if (oldRead != null) {
                 oldRead.closeStore();
-                new File(getFileName(oldReadGeneration)).delete();
+                FileUtils.deleteQuietly(new File(getFileName(oldReadGeneration)));
             }
         }
     }
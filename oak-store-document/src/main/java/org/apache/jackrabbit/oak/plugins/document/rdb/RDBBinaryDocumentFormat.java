@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.rdb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.oak.plugins.document.Document;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.StableRevisionComparator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Binary serialization of documents, stored in the BDATA column as an
+ * alternative to the JSON serialization.
+ * <p>
+ * The format starts with a header of five bytes: a zero byte, the characters
+ * 'O' and 'B', the format version and a flags byte. The zero byte never starts
+ * a JSON serialization or a GZIP stream, so both formats can be told apart.
+ * If the {@link #FLAG_DEFLATED} flag is set, the remaining data is compressed
+ * with {@link Deflater#BEST_SPEED}.
+ * <p>
+ * The body consists of the number of properties, followed by the properties,
+ * each as name, length of the value in bytes and the value. The length allows
+ * a reader to skip properties it is not interested in. Values are tagged with
+ * their type. Revisions in a map are encoded with the timestamp as difference
+ * to the previous entry, which makes the typical revision map of a document
+ * considerably smaller than its JSON representation. Numbers are written as
+ * variable length integers.
+ */
+final class RDBBinaryDocumentFormat {
+
+    static final byte VERSION = 1;
+
+    static final int FLAG_DEFLATED = 1;
+
+    private static final byte[] MAGIC = { 0, 'O', 'B' };
+
+    private static final int HEADER_LENGTH = MAGIC.length + 2;
+
+    // bodies smaller than this are not compressed
+    private static final int COMPRESS_THRESHOLD = 256;
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_FALSE = 1;
+    private static final int TYPE_TRUE = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_DOUBLE = 4;
+    private static final int TYPE_STRING = 5;
+    private static final int TYPE_REVISION_MAP = 6;
+    private static final int TYPE_LIST = 7;
+
+    private RDBBinaryDocumentFormat() {
+    }
+
+    /**
+     * @return whether the data is in the binary format.
+     */
+    static boolean isBinary(@Nullable byte[] data) {
+        return data != null && data.length >= HEADER_LENGTH
+                && data[0] == MAGIC[0] && data[1] == MAGIC[1] && data[2] == MAGIC[2];
+    }
+
+    /**
+     * Serializes all non-column properties of the document.
+     *
+     * @param doc the document.
+     * @param columnProperties the properties not to serialize.
+     * @return the serialized document.
+     * @throws IllegalArgumentException if the document contains a value that
+     *          cannot be represented in the binary format.
+     */
+    @NotNull
+    static byte[] encode(@NotNull Document doc, @NotNull Set<String> columnProperties) {
+        Buffer body = new Buffer(1024);
+        Buffer value = new Buffer(256);
+        int count = 0;
+        for (String key : doc.keySet()) {
+            if (!columnProperties.contains(key)) {
+                count++;
+            }
+        }
+        body.writeVarLong(count);
+        for (Map.Entry<String, Object> entry : doc.entrySet()) {
+            if (columnProperties.contains(entry.getKey())) {
+                continue;
+            }
+            value.reset();
+            writeValue(value, entry.getValue());
+            body.writeString(entry.getKey());
+            body.writeVarLong(value.size());
+            value.writeTo(body);
+        }
+
+        int flags = 0;
+        byte[] data = body.toByteArray();
+        if (data.length >= COMPRESS_THRESHOLD) {
+            byte[] compressed = deflate(data);
+            if (compressed.length < data.length) {
+                data = compressed;
+                flags |= FLAG_DEFLATED;
+            }
+        }
+        byte[] result = new byte[HEADER_LENGTH + data.length];
+        System.arraycopy(MAGIC, 0, result, 0, MAGIC.length);
+        result[MAGIC.length] = VERSION;
+        result[MAGIC.length + 1] = (byte) flags;
+        System.arraycopy(data, 0, result, HEADER_LENGTH, data.length);
+        return result;
+    }
+
+    /**
+     * Reads the properties of a serialized document into {@code doc}.
+     *
+     * @param data the serialized document.
+     * @param doc the document to read into.
+     * @param properties the names of the properties to read, or {@code null}
+     *          to read all. Other properties are skipped without decoding.
+     * @throws IOException if the data is corrupt or of an unsupported version.
+     */
+    static void decode(@NotNull byte[] data,
+                       @NotNull Document doc,
+                       @Nullable Set<String> properties) throws IOException {
+        if (!isBinary(data)) {
+            throw new IOException("Not a binary document");
+        }
+        int version = data[MAGIC.length];
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary document version: " + version);
+        }
+        int flags = data[MAGIC.length + 1];
+        InputStream in = new ByteArrayInputStream(data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+        Inflater inflater = null;
+        if ((flags & FLAG_DEFLATED) != 0) {
+            inflater = new Inflater();
+            in = new InflaterInputStream(in, inflater, 4096);
+        }
+        try {
+            long count = readVarLong(in);
+            int remaining = properties == null ? Integer.MAX_VALUE : properties.size();
+            for (long i = 0; i < count && remaining > 0; i++) {
+                String key = readString(in);
+                long length = readVarLong(in);
+                if (properties == null || properties.contains(key)) {
+                    doc.put(key, readValue(in));
+                    remaining--;
+                } else {
+                    IOUtils.skipFully(in, length);
+                }
+            }
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    //----------------------------< internal >----------------------------------
+
+    private static void writeValue(Buffer out, Object value) {
+        if (value == null) {
+            out.write(TYPE_NULL);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+        } else if (value instanceof Long || value instanceof Integer) {
+            out.write(TYPE_LONG);
+            out.writeVarLong(zigZag(((Number) value).longValue()));
+        } else if (value instanceof Double) {
+            out.write(TYPE_DOUBLE);
+            long bits = Double.doubleToLongBits((Double) value);
+            for (int i = 56; i >= 0; i -= 8) {
+                out.write((int) (bits >>> i));
+            }
+        } else if (value instanceof String) {
+            out.write(TYPE_STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.write(TYPE_REVISION_MAP);
+            out.writeVarLong(map.size());
+            long previous = 0;
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                if (!(e.getKey() instanceof Revision)) {
+                    throw new IllegalArgumentException("Unsupported map key: " + e.getKey());
+                }
+                Revision r = (Revision) e.getKey();
+                out.writeVarLong(zigZag(r.getTimestamp() - previous));
+                out.writeVarLong(r.getCounter());
+                out.writeVarLong(((long) r.getClusterId() << 1) | (r.isBranch() ? 1 : 0));
+                previous = r.getTimestamp();
+                writeValue(out, e.getValue());
+            }
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.write(TYPE_LIST);
+            out.writeVarLong(list.size());
+            for (Object o : list) {
+                writeValue(out, o);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported value type: " + value.getClass());
+        }
+    }
+
+    private static Object readValue(InputStream in) throws IOException {
+        int type = readByte(in);
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_FALSE:
+                return Boolean.FALSE;
+            case TYPE_TRUE:
+                return Boolean.TRUE;
+            case TYPE_LONG:
+                return unZigZag(readVarLong(in));
+            case TYPE_DOUBLE: {
+                long bits = 0;
+                for (int i = 0; i < 8; i++) {
+                    bits = (bits << 8) | readByte(in);
+                }
+                return Double.longBitsToDouble(bits);
+            }
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_REVISION_MAP: {
+                long size = readVarLong(in);
+                Map<Revision, Object> map = new TreeMap<>(StableRevisionComparator.REVERSE);
+                long timestamp = 0;
+                for (long i = 0; i < size; i++) {
+                    timestamp += unZigZag(readVarLong(in));
+                    int counter = (int) readVarLong(in);
+                    long c = readVarLong(in);
+                    Revision r = new Revision(timestamp, counter, (int) (c >>> 1), (c & 1) != 0);
+                    map.put(r, readValue(in));
+                }
+                return map;
+            }
+            case TYPE_LIST: {
+                long size = readVarLong(in);
+                List<Object> list = new ArrayList<>();
+                for (long i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            default:
+                throw new IOException("Unknown value type: " + type);
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 2);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bos, deflater, 4096)) {
+            out.write(data);
+        } catch (IOException e) {
+            // not expected with a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        } finally {
+            deflater.end();
+        }
+        return bos.toByteArray();
+    }
+
+    private static long zigZag(long x) {
+        return (x << 1) ^ (x >> 63);
+    }
+
+    private static long unZigZag(long x) {
+        return (x >>> 1) ^ -(x & 1);
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long x = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte(in);
+            x |= (long) (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return x;
+            }
+        }
+        throw new IOException("Malformed variable length number");
+    }
+
+    private static String readString(InputStream in) throws IOException {
+        int length = (int) readVarLong(in);
+        return new String(IOUtils.readFully(in, length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A byte array output stream with methods to write the primitives of
+     * the format.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        Buffer(int size) {
+            super(size);
+        }
+
+        void writeVarLong(long x) {
+            while ((x & ~0x7fL) != 0) {
+                write((int) ((x & 0x7f) | 0x80));
+                x >>>= 7;
+            }
+            write((int) x);
+        }
+
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void writeTo(Buffer other) {
+            other.write(buf, 0, count);
+        }
+    }
+}
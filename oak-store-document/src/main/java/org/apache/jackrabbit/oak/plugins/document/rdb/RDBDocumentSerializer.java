@@ -45,6 +45,7 @@ import org.apache.jackrabbit.oak.plugins.document.UpdateOp;
 import org.apache.jackrabbit.oak.plugins.document.UpdateOp.Key;
 import org.apache.jackrabbit.oak.plugins.document.UpdateOp.Operation;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -70,8 +71,21 @@ public class RDBDocumentSerializer {
 
     private static final RDBJSONSupport JSON = new RDBJSONSupport(true);
 
+    private final boolean binaryFormat;
+
     public RDBDocumentSerializer(DocumentStore store) {
+        this(store, false);
+    }
+
+    /**
+     * @param store the document store.
+     * @param binaryFormat whether to serialize documents with
+     *            {@link #asBinary(Document, Set)}. Documents in either format
+     *            are always read.
+     */
+    public RDBDocumentSerializer(DocumentStore store, boolean binaryFormat) {
         this.store = store;
+        this.binaryFormat = binaryFormat;
     }
 
     /**
@@ -96,6 +110,26 @@ public class RDBDocumentSerializer {
         return sb.toString();
     }
 
+    /**
+     * Serializes all non-column properties of the {@link Document} into the
+     * binary format (see {@link RDBBinaryDocumentFormat}).
+     *
+     * @return the serialized document, or {@code null} if the binary format
+     *         is not enabled or the document cannot be represented in it.
+     */
+    @Nullable
+    public byte[] asBinary(@NotNull Document doc, Set<String> columnProperties) {
+        if (!binaryFormat) {
+            return null;
+        }
+        try {
+            return RDBBinaryDocumentFormat.encode(doc, columnProperties);
+        } catch (IllegalArgumentException ex) {
+            LOG.debug("Falling back to JSON serialization for {}: {}", doc.getId(), ex.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Serializes the changes in the {@link UpdateOp} into a JSON array; each
      * entry is another JSON array holding operation, key, revision, and value.
@@ -145,6 +179,21 @@ public class RDBDocumentSerializer {
      */
     @NotNull
     public <T extends Document> T fromRow(@NotNull Collection<T> collection, @NotNull RDBRow row) throws DocumentStoreException {
+        return fromRow(collection, row, null);
+    }
+
+    /**
+     * Reconstructs a {@link Document} based on the persisted {@link RDBRow},
+     * with only the given properties (in addition to the ones stored in
+     * columns). Properties serialized in the binary format that are not
+     * requested are skipped without being decoded. The returned document is
+     * incomplete and must not be put into a cache.
+     *
+     * @param properties the properties to read, or {@code null} for all.
+     */
+    @NotNull
+    public <T extends Document> T fromRow(@NotNull Collection<T> collection, @NotNull RDBRow row,
+            @Nullable Set<String> properties) throws DocumentStoreException {
 
         final String charData = row.getData();
         checkNotNull(charData, "RDBRow.getData() is null for collection " + collection + ", id: " + row.getId());
@@ -183,15 +232,19 @@ public class RDBDocumentSerializer {
         // update operations
         try {
             if (bdata != null && bdata.length != 0) {
-                String s = fromBlobData(bdata);
-                json = new JsopTokenizer(s);
-                json.read('{');
-                readDocumentFromJson(json, doc);
-                json.read(JsopReader.END);
+                if (RDBBinaryDocumentFormat.isBinary(bdata)) {
+                    RDBBinaryDocumentFormat.decode(bdata, doc, properties);
+                } else {
+                    String s = fromBlobData(bdata);
+                    json = new JsopTokenizer(s);
+                    json.read('{');
+                    readDocumentFromJson(json, doc, properties);
+                    json.read(JsopReader.END);
+                }
                 blobInUse = true;
             }
         } catch (Exception ex) {
-            throw asDocumentStoreException(ex, "parsing blob data as JSON");
+            throw asDocumentStoreException(ex, "parsing blob data");
         }
 
         json = new JsopTokenizer(charData);
@@ -204,7 +257,7 @@ public class RDBDocumentSerializer {
                 if (blobInUse) {
                     throw new DocumentStoreException("expected literal \"blob\" but found: " + row.getData());
                 }
-                readDocumentFromJson(json, doc);
+                readDocumentFromJson(json, doc, properties);
             } else if (next == JsopReader.STRING) {
                 if (!blobInUse) {
                     throw new DocumentStoreException("did not expect \"blob\" here: " + row.getData());
@@ -225,7 +278,9 @@ public class RDBDocumentSerializer {
                     }
                     List<List<Object>> update = (List<List<Object>>) ob;
                     for (List<Object> op : update) {
-                        applyUpdate(doc, update, op);
+                        if (properties == null || properties.contains(op.get(1).toString())) {
+                            applyUpdate(doc, update, op);
+                        }
                     }
 
                 } while (json.matches(','));
@@ -312,13 +367,16 @@ public class RDBDocumentSerializer {
     /**
      * Reads from an opened JSON stream ("{" already consumed) into a document.
      */
-    private static <T extends Document> void readDocumentFromJson(@NotNull JsopTokenizer json, @NotNull T doc) {
+    private static <T extends Document> void readDocumentFromJson(@NotNull JsopTokenizer json, @NotNull T doc,
+            @Nullable Set<String> properties) {
         if (!json.matches('}')) {
             do {
                 String key = json.readString();
                 json.read(':');
                 Object value = JSON.parse(json);
-                doc.put(key, value);
+                if (properties == null || properties.contains(key)) {
+                    doc.put(key, value);
+                }
             } while (json.matches(','));
             json.read('}');
         }
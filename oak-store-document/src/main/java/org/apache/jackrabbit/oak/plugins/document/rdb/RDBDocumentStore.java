@@ -64,6 +64,7 @@ import javax.sql.DataSource;
 import org.apache.jackrabbit.oak.cache.CacheStats;
 import org.apache.jackrabbit.oak.cache.CacheValue;
 import org.apache.jackrabbit.oak.commons.properties.SystemPropertySupplier;
+import org.apache.jackrabbit.oak.plugins.document.AsyncDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.Collection;
 import org.apache.jackrabbit.oak.plugins.document.Document;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStoreBuilder;
@@ -83,6 +84,7 @@ import org.apache.jackrabbit.oak.plugins.document.locks.NodeDocumentLocks;
 import org.apache.jackrabbit.oak.plugins.document.locks.StripedNodeDocumentLocks;
 import org.apache.jackrabbit.oak.plugins.document.mongo.MongoDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterator;
+import org.apache.jackrabbit.oak.plugins.document.util.ExecutorAsyncDocumentStore;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
@@ -194,7 +196,9 @@ import org.apache.jackrabbit.guava.common.collect.Sets;
  * <th>BDATA</th>
  * <td>blob</td>
  * <td>The document's JSON serialization (usually GZIPped, only used for "large"
- * documents).</td>
+ * documents), or its binary serialization (see
+ * {@link RDBOptions#binaryFormat(boolean)}), in which case DATA only holds
+ * update operations.</td>
  * </tr>
  * </tbody>
  * </table>
@@ -786,8 +790,21 @@ public class RDBDocumentStore implements DocumentStore {
 
     private final Map<Collection<? extends Document>, RDBTableMetaData> tableMeta = new HashMap<Collection<? extends Document>, RDBTableMetaData>();
 
+    private final ExecutorAsyncDocumentStore asyncStore = ASYNCREADTHREADS > 0
+            ? new ExecutorAsyncDocumentStore(this, ASYNCREADTHREADS, "RDBDocumentStore async read")
+            : null;
+
+    @NotNull
+    @Override
+    public AsyncDocumentStore async() {
+        return asyncStore != null ? asyncStore : DocumentStore.super.async();
+    }
+
     @Override
     public void dispose() {
+        if (asyncStore != null) {
+            asyncStore.close();
+        }
         if (!this.tablesToBeDropped.isEmpty()) {
             String dropped = "";
             LOG.debug("attempting to drop: " + this.tablesToBeDropped);
@@ -990,7 +1007,7 @@ public class RDBDocumentStore implements DocumentStore {
             new String[] { ID, NodeDocument.HAS_BINARY_FLAG, NodeDocument.DELETED_ONCE, COLLISIONSMODCOUNT, MODIFIED, MODCOUNT,
                     NodeDocument.SD_TYPE, NodeDocument.SD_MAX_REV_TIME_IN_SECS, VERSIONPROP }));
 
-    private final RDBDocumentSerializer ser = new RDBDocumentSerializer(this);
+    private RDBDocumentSerializer ser = new RDBDocumentSerializer(this);
 
     private void initialize(DataSource ds, DocumentNodeStoreBuilder<?> builder, RDBOptions options) throws Exception {
         this.stats = builder.getDocumentStoreStatsCollector();
@@ -999,6 +1016,8 @@ public class RDBDocumentStore implements DocumentStore {
 
         this.readOnly = builder.getReadOnlyMode();
 
+        this.ser = new RDBDocumentSerializer(this, options.isBinaryFormat());
+
         this.ch = new RDBConnectionHandler(ds);
         Connection con = this.ch.getRWConnection();
         String catalog = con.getCatalog();
@@ -2068,7 +2087,7 @@ public class RDBDocumentStore implements DocumentStore {
             @NotNull UpdateOp update, Long oldmodcount) {
         Connection connection = null;
         RDBTableMetaData tmd = getTable(collection);
-        String data = null;
+        boolean fullUpdate = false;
         try {
             connection = this.ch.getRWConnection();
             Number hasBinary = (Number) document.get(NodeDocument.HAS_BINARY_FLAG);
@@ -2102,18 +2121,19 @@ public class RDBDocumentStore implements DocumentStore {
                 }
             }
             if (!success && shouldRetry) {
-                data = ser.asString(document, tmd.getColumnOnlyProperties());
+                fullUpdate = true;
                 Object m = document.get(MODIFIED);
                 long modified = (m instanceof Long) ? ((Long)m).longValue() : 0;
                 success = db.update(connection, tmd, document.getId(), modified, hasBinary, deletedOnce, modcount, cmodcount,
-                        oldmodcount, data);
+                        oldmodcount, document);
                 connection.commit();
             }
             return success;
         } catch (SQLException ex) {
             this.ch.rollbackConnection(connection);
             String addDiags = "";
-            if (data != null && RDBJDBCTools.matchesSQLState(ex, "22", "72")) {
+            if (fullUpdate && RDBJDBCTools.matchesSQLState(ex, "22", "72")) {
+                String data = ser.asString(document, tmd.getColumnOnlyProperties());
                 byte[] bytes = asBytes(data);
                 addDiags = String.format(" (DATA size in Java characters: %d, in octets: %d, computed character limit: %d)",
                         data.length(), bytes.length, tmd.getDataLimitInOctets() / CHAR2OCTETRATIO);
@@ -2234,6 +2254,11 @@ public class RDBDocumentStore implements DocumentStore {
                 return String.format("Batch updates disabled (system property %s set to '%s')", name, value);
             }).get();
 
+    // Maximum number of concurrent reads issued through async(), 0 reads in the calling thread (default: 8)
+    private static final int ASYNCREADTHREADS = SystemPropertySupplier
+            .create(RDBDocumentStore.class.getName() + ".ASYNCREADTHREADS", 8).loggingTo(LOG)
+            .validateWith(value -> value >= 0).get();
+
     public static byte[] asBytes(@NotNull String data) {
         byte[] bytes;
         try {
@@ -264,7 +264,8 @@ public class RDBDocumentStoreJDBC {
         int[] results;
         try {
             for (T document : sortedDocs) {
-                String data = this.ser.asString(document, tmd.getColumnOnlyProperties());
+                byte[] binary = this.ser.asBinary(document, tmd.getColumnOnlyProperties());
+                String data = binary == null ? this.ser.asString(document, tmd.getColumnOnlyProperties()) : null;
                 String id = document.getId();
                 Number hasBinary = (Number) document.get(NodeDocument.HAS_BINARY_FLAG);
                 Boolean deletedOnce = (Boolean) document.get(NodeDocument.DELETED_ONCE);
@@ -277,19 +278,12 @@ public class RDBDocumentStoreJDBC {
                 stmt.setObject(si++, deletedOnceAsNullOrInteger(deletedOnce), Types.SMALLINT);
                 stmt.setObject(si++, document.get(MODCOUNT), Types.BIGINT);
                 stmt.setObject(si++, cmodcount == null ? Long.valueOf(0) : cmodcount, Types.BIGINT);
-                stmt.setObject(si++, data.length(), Types.BIGINT);
+                stmt.setObject(si++, dataSize(data, binary), Types.BIGINT);
                 if (tmd.hasSplitDocs()) {
                     stmt.setObject(si++, document.get(NodeDocument.SD_TYPE));
                     stmt.setObject(si++, document.get(NodeDocument.SD_MAX_REV_TIME_IN_SECS));
                 }
-                if (data.length() < tmd.getDataLimitInOctets() / CHAR2OCTETRATIO) {
-                    setDataInStatement(tmd, stmt, si++, data);
-                    stmt.setBinaryStream(si++, null, 0);
-                } else {
-                    setDataInStatement(tmd, stmt, si++, "\"blob\"");
-                    byte[] bytes = asBytes(data);
-                    stmt.setBytes(si++, bytes);
-                }
+                si = setDocumentInStatement(tmd, stmt, si, data, binary);
                 stmt.addBatch();
             }
             results = stmt.executeBatch();
@@ -350,7 +344,8 @@ public class RDBDocumentStoreJDBC {
                     continue; // This is a new document. We'll deal with the inserts later.
                 }
 
-                String data = this.ser.asString(document, tmd.getColumnOnlyProperties());
+                byte[] binary = this.ser.asBinary(document, tmd.getColumnOnlyProperties());
+                String data = binary == null ? this.ser.asString(document, tmd.getColumnOnlyProperties()) : null;
                 Number hasBinary = (Number) document.get(NodeDocument.HAS_BINARY_FLAG);
                 Boolean deletedOnce = (Boolean) document.get(NodeDocument.DELETED_ONCE);
                 Long cmodcount = (Long) document.get(COLLISIONSMODCOUNT);
@@ -361,16 +356,9 @@ public class RDBDocumentStoreJDBC {
                 stmt.setObject(si++, deletedOnceAsNullOrInteger(deletedOnce), Types.SMALLINT);
                 stmt.setObject(si++, modcount, Types.BIGINT);
                 stmt.setObject(si++, cmodcount == null ? Long.valueOf(0) : cmodcount, Types.BIGINT);
-                stmt.setObject(si++, data.length(), Types.BIGINT);
+                stmt.setObject(si++, dataSize(data, binary), Types.BIGINT);
 
-                if (data.length() < tmd.getDataLimitInOctets() / CHAR2OCTETRATIO) {
-                    setDataInStatement(tmd, stmt, si++, data);
-                    stmt.setBinaryStream(si++, null, 0);
-                } else {
-                    setDataInStatement(tmd, stmt, si++, "\"blob\"");
-                    byte[] bytes = asBytes(data);
-                    stmt.setBytes(si++, bytes);
-                }
+                si = setDocumentInStatement(tmd, stmt, si, data, binary);
 
                 setIdInStatement(tmd, stmt, si++, document.getId());
                 stmt.setObject(si++, modcount - 1, Types.BIGINT);
@@ -912,7 +900,10 @@ public class RDBDocumentStoreJDBC {
     }
 
     public boolean update(Connection connection, RDBTableMetaData tmd, String id, Long modified, Number hasBinary,
-            Boolean deletedOnce, Long modcount, Long cmodcount, Long oldmodcount, String data) throws SQLException {
+            Boolean deletedOnce, Long modcount, Long cmodcount, Long oldmodcount, Document document) throws SQLException {
+
+        byte[] binary = this.ser.asBinary(document, tmd.getColumnOnlyProperties());
+        String data = binary == null ? this.ser.asString(document, tmd.getColumnOnlyProperties()) : null;
 
         StringBuilder t = new StringBuilder();
         t.append("update " + tmd.getName() + " set ");
@@ -930,16 +921,9 @@ public class RDBDocumentStoreJDBC {
             stmt.setObject(si++, deletedOnceAsNullOrInteger(deletedOnce), Types.SMALLINT);
             stmt.setObject(si++, modcount, Types.BIGINT);
             stmt.setObject(si++, cmodcount == null ? Long.valueOf(0) : cmodcount, Types.BIGINT);
-            stmt.setObject(si++, data.length(), Types.BIGINT);
+            stmt.setObject(si++, dataSize(data, binary), Types.BIGINT);
 
-            if (data.length() < tmd.getDataLimitInOctets() / CHAR2OCTETRATIO) {
-                setDataInStatement(tmd, stmt, si++, data);
-                stmt.setBinaryStream(si++, null, 0);
-            } else {
-                setDataInStatement(tmd, stmt, si++, "\"blob\"");
-                byte[] bytes = asBytes(data);
-                stmt.setBytes(si++, bytes);
-            }
+            si = setDocumentInStatement(tmd, stmt, si, data, binary);
 
             setIdInStatement(tmd, stmt, si++, id);
 
@@ -1079,6 +1063,30 @@ public class RDBDocumentStoreJDBC {
         }
     }
 
+    /**
+     * Sets the DATA and BDATA columns for a document serialized either as
+     * JSON or in the binary format, and returns the next parameter index.
+     */
+    private static int setDocumentInStatement(RDBTableMetaData tmd, PreparedStatement stmt, int si, @Nullable String data,
+            @Nullable byte[] binary) throws SQLException {
+        if (binary != null) {
+            setDataInStatement(tmd, stmt, si++, "\"blob\"");
+            stmt.setBytes(si++, binary);
+        } else if (data.length() < tmd.getDataLimitInOctets() / CHAR2OCTETRATIO) {
+            setDataInStatement(tmd, stmt, si++, data);
+            stmt.setBinaryStream(si++, null, 0);
+        } else {
+            setDataInStatement(tmd, stmt, si++, "\"blob\"");
+            byte[] bytes = asBytes(data);
+            stmt.setBytes(si++, bytes);
+        }
+        return si;
+    }
+
+    private static long dataSize(@Nullable String data, @Nullable byte[] binary) {
+        return binary != null ? binary.length : data.length();
+    }
+
     private static void setDataInStatement(RDBTableMetaData tmd, PreparedStatement stmt, int idx, String id) throws SQLException {
         if (tmd.isDataNChar()) {
             stmt.setNString(idx, id);
@@ -164,6 +164,7 @@ public class RDBExport {
             List<String> columnNames, RDBDocumentSerializer ser) throws IOException {
         File f = new File(filename);
         File lobDirectory = lobdir == null ? new File(f.getParentFile(), "lobdir") : new File(lobdir);
+        Set<String> properties = propertiesToRead(fieldNames);
 
         int iId = columnNames.indexOf("id");
         int iModified = columnNames.indexOf("modified");
@@ -231,7 +232,7 @@ public class RDBExport {
                 RDBRow row = new RDBRow(id, "1".equals(shasbinary) ? 1L : 0L, "1".equals(sdeletedonce),
                         smodified.length() == 0 ? 0 : Long.parseLong(smodified), Long.parseLong(smodcount),
                         Long.parseLong(scmodcount), -1L, -1L, -1L, sdata, bytes);
-                StringBuilder fulljson = dumpRow(ser, id, row);
+                StringBuilder fulljson = dumpRow(ser, id, row, properties);
                 if (format == Format.CSV) {
                     out.println(asCSV(fieldNames, fulljson));
                 } else {
@@ -298,6 +299,7 @@ public class RDBExport {
     private static void dumpJDBC(String url, String user, String pw, String table, String query, Format format, PrintStream out,
             List<String> fieldNames, RDBDocumentSerializer ser) throws SQLException {
         String driver = RDBJDBCTools.driverForDBType(RDBJDBCTools.jdbctype(url));
+        Set<String> properties = propertiesToRead(fieldNames);
         try {
             Class.forName(driver);
         } catch (ClassNotFoundException ex) {
@@ -336,7 +338,7 @@ public class RDBExport {
             byte[] bdata = rs.getBytes("BDATA");
 
             RDBRow row = new RDBRow(id, hasBinary, deletedOnce, modified, modcount, cmodcount, -1L, -1L, -1L, data, bdata);
-            StringBuilder fulljson = dumpRow(ser, id, row);
+            StringBuilder fulljson = dumpRow(ser, id, row, properties);
             if (format == Format.CSV) {
                 out.println(asCSV(fieldNames, fulljson));
             } else {
@@ -369,9 +371,25 @@ public class RDBExport {
         return res.wasNull() ? null : Long.valueOf(v);
     }
 
+    /**
+     * The top-level properties needed for the given field names, or
+     * {@code null} if all properties are exported.
+     */
+    @Nullable
+    private static Set<String> propertiesToRead(List<String> fieldNames) {
+        if (fieldNames.isEmpty()) {
+            return null;
+        }
+        Set<String> properties = new HashSet<String>();
+        for (String field : fieldNames) {
+            properties.add(field.split("\\.")[0]);
+        }
+        return properties;
+    }
+
     @NotNull
-    private static StringBuilder dumpRow(RDBDocumentSerializer ser, String id, RDBRow row) {
-        NodeDocument doc = ser.fromRow(Collection.NODES, row);
+    private static StringBuilder dumpRow(RDBDocumentSerializer ser, String id, RDBRow row, @Nullable Set<String> properties) {
+        NodeDocument doc = ser.fromRow(Collection.NODES, row, properties);
         String docjson = ser.asString(doc, EXCLUDE_COLUMNS);
         StringBuilder fulljson = new StringBuilder();
         fulljson.append("{\"_id\":\"");
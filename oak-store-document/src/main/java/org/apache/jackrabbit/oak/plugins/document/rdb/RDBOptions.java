@@ -28,6 +28,7 @@ public class RDBOptions {
     private int initialSchema = Integer.getInteger("org.apache.jackrabbit.oak.plugins.document.rdb.RDBOptions.INITIALSCHEMA", 2);
     private int upgradeToSchema = Integer.getInteger("org.apache.jackrabbit.oak.plugins.document.rdb.RDBOptions.UPGRADETOSCHEMA",
             2);
+    private boolean binaryFormat = Boolean.getBoolean("org.apache.jackrabbit.oak.plugins.document.rdb.RDBOptions.BINARYFORMAT");
 
     public RDBOptions() {
     }
@@ -79,4 +80,19 @@ public class RDBOptions {
     public int getUpgradeToSchema() {
         return this.upgradeToSchema;
     }
+
+    /**
+     * Whether to write documents in the binary format instead of JSON.
+     * Documents in both formats are always read, existing documents are
+     * converted when they are rewritten. All cluster nodes must be able to
+     * read the binary format before it is enabled.
+     */
+    public RDBOptions binaryFormat(boolean binaryFormat) {
+        this.binaryFormat = binaryFormat;
+        return this;
+    }
+
+    public boolean isBinaryFormat() {
+        return this.binaryFormat;
+    }
 }
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.util;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.jackrabbit.oak.plugins.document.AsyncDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.Collection;
+import org.apache.jackrabbit.oak.plugins.document.Document;
+import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
+import org.jetbrains.annotations.NotNull;
+
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkNotNull;
+
+/**
+ * An {@link AsyncDocumentStore} performing the blocking operations of a
+ * {@link DocumentStore} with a pool of threads. The threads are created on
+ * demand and terminate when idle. Operations submitted after {@link #close()}
+ * fail with a {@link DocumentStoreException}.
+ */
+public final class ExecutorAsyncDocumentStore implements AsyncDocumentStore, Closeable {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final DocumentStore store;
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param store the store to read from.
+     * @param threads the maximum number of concurrent reads.
+     * @param name the name prefix of the threads.
+     */
+    public ExecutorAsyncDocumentStore(@NotNull DocumentStore store,
+                                      int threads,
+                                      @NotNull String name) {
+        checkArgument(threads > 0, "threads must be positive: %s", threads);
+        checkNotNull(name);
+        this.store = checkNotNull(store);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public @NotNull <T extends Document> CompletableFuture<T> findAsync(Collection<T> collection,
+                                                                       String key) {
+        return submit(() -> store.find(collection, key));
+    }
+
+    @Override
+    public @NotNull <T extends Document> CompletableFuture<List<T>> queryAsync(Collection<T> collection,
+                                                                              String fromKey,
+                                                                              String toKey,
+                                                                              int limit) {
+        return submit(() -> store.query(collection, fromKey, toKey, limit));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private <R> CompletableFuture<R> submit(Supplier<R> operation) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(operation.get());
+                } catch (Throwable t) {
+                    result.completeExceptionally(DocumentStoreException.convert(t));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(DocumentStoreException.convert(e, "Store is closed"));
+        }
+        return result;
+    }
+}
@@ -20,8 +20,10 @@ package org.apache.jackrabbit.oak.plugins.document.util;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.jackrabbit.oak.cache.CacheStats;
+import org.apache.jackrabbit.oak.plugins.document.AsyncDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.ClusterNodeInfo;
 import org.apache.jackrabbit.oak.plugins.document.Collection;
 import org.apache.jackrabbit.oak.plugins.document.Document;
@@ -235,6 +237,29 @@ public final class LeaseCheckDocumentStoreWrapper implements DocumentStore {
         delegate.prefetch(collection, keys);
     }
 
+    @NotNull
+    @Override
+    public AsyncDocumentStore async() {
+        AsyncDocumentStore async = delegate.async();
+        return new AsyncDocumentStore() {
+            @Override
+            public @NotNull <T extends Document> CompletableFuture<T> findAsync(Collection<T> collection,
+                                                                               String key) {
+                performLeaseCheck();
+                return async.findAsync(collection, key);
+            }
+
+            @Override
+            public @NotNull <T extends Document> CompletableFuture<List<T>> queryAsync(Collection<T> collection,
+                                                                                      String fromKey,
+                                                                                      String toKey,
+                                                                                      int limit) {
+                performLeaseCheck();
+                return async.queryAsync(collection, fromKey, toKey, limit);
+            }
+        };
+    }
+
     /**
      * Return the size limit for node name based on the document store implementation
      *
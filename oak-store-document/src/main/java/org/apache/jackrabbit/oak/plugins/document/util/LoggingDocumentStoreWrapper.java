@@ -19,9 +19,11 @@ package org.apache.jackrabbit.oak.plugins.document.util;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.jackrabbit.oak.cache.CacheStats;
 import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
+import org.apache.jackrabbit.oak.plugins.document.AsyncDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.Collection;
 import org.apache.jackrabbit.oak.plugins.document.Document;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
@@ -415,6 +417,29 @@ public class LoggingDocumentStoreWrapper implements DocumentStore {
         return result;
     }
 
+    @NotNull
+    @Override
+    public AsyncDocumentStore async() {
+        AsyncDocumentStore async = store.async();
+        return new AsyncDocumentStore() {
+            @Override
+            public @NotNull <T extends Document> CompletableFuture<T> findAsync(Collection<T> collection,
+                                                                               String key) {
+                logMethod("findAsync", collection, key);
+                return logAsyncResult(async.findAsync(collection, key));
+            }
+
+            @Override
+            public @NotNull <T extends Document> CompletableFuture<List<T>> queryAsync(Collection<T> collection,
+                                                                                      String fromKey,
+                                                                                      String toKey,
+                                                                                      int limit) {
+                logMethod("queryAsync", collection, fromKey, toKey, limit);
+                return logAsyncResult(async.queryAsync(collection, fromKey, toKey, limit));
+            }
+        };
+    }
+
     /**
      * Return the {@link Throttler} for the underlying store
      * Default is no throttling
@@ -463,6 +488,17 @@ public class LoggingDocumentStoreWrapper implements DocumentStore {
         log("// exception: " + e.toString());
     }
 
+    private <T> CompletableFuture<T> logAsyncResult(CompletableFuture<T> future) {
+        long time = System.nanoTime();
+        return future.whenComplete((result, e) -> {
+            if (e == null) {
+                log("// " + ((System.nanoTime() - time) / 1000) + " us\t" + quote(result));
+            } else {
+                log("// exception: " + e.toString());
+            }
+        });
+    }
+
     private <T> T logResult(Callable<T> callable) throws Exception {
         long time = System.nanoTime();
         T result = callable.call();
@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.jackrabbit.oak.cache.CacheStats;
+import org.apache.jackrabbit.oak.plugins.document.AsyncDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.Collection;
 import org.apache.jackrabbit.oak.plugins.document.Document;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
@@ -173,6 +174,16 @@ public class SynchronizingDocumentStoreWrapper implements DocumentStore {
         return store.getNodeNameLimit();
     }
 
+    /**
+     * Reads in the calling thread through the synchronized methods of this
+     * wrapper, and not concurrently through the wrapped store.
+     */
+    @NotNull
+    @Override
+    public AsyncDocumentStore async() {
+        return AsyncDocumentStore.synchronous(this);
+    }
+
     /**
      * Return the {@link Throttler} for the underlying store
      * Default is no throttling
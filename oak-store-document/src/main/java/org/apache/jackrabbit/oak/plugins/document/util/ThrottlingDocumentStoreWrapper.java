@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.oak.plugins.document.util;
 
 import org.apache.jackrabbit.oak.cache.CacheStats;
+import org.apache.jackrabbit.oak.plugins.document.AsyncDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.Collection;
 import org.apache.jackrabbit.oak.plugins.document.Document;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
@@ -263,6 +264,13 @@ public class ThrottlingDocumentStoreWrapper implements DocumentStore {
         return store.getNodeNameLimit();
     }
 
+    @NotNull
+    @Override
+    public AsyncDocumentStore async() {
+        // reads are not throttled
+        return store.async();
+    }
+
     /**
      * Return the {@link Throttler} for the underlying store
      * Default is no throttling
@@ -22,10 +22,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.jackrabbit.oak.cache.CacheStats;
+import org.apache.jackrabbit.oak.plugins.document.AsyncDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.Collection;
 import org.apache.jackrabbit.oak.plugins.document.Document;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
@@ -481,6 +483,37 @@ public class TimingDocumentStoreWrapper implements DocumentStore {
         }
     }
 
+    @NotNull
+    @Override
+    public AsyncDocumentStore async() {
+        AsyncDocumentStore async = base.async();
+        return new AsyncDocumentStore() {
+            @Override
+            public @NotNull <T extends Document> CompletableFuture<T> findAsync(Collection<T> collection,
+                                                                               String key) {
+                long start = now();
+                return async.findAsync(collection, key).whenComplete((result, e) -> {
+                    if (e == null) {
+                        updateAndLogTimes("findAsync", start, 0, size(result));
+                    }
+                });
+            }
+
+            @Override
+            public @NotNull <T extends Document> CompletableFuture<List<T>> queryAsync(Collection<T> collection,
+                                                                                      String fromKey,
+                                                                                      String toKey,
+                                                                                      int limit) {
+                long start = now();
+                return async.queryAsync(collection, fromKey, toKey, limit).whenComplete((result, e) -> {
+                    if (e == null) {
+                        updateAndLogTimes("queryAsync", start, 0, size(result));
+                    }
+                });
+            }
+        };
+    }
+
     /**
      * Return the {@link Throttler} for the underlying store
      * Default is no throttling
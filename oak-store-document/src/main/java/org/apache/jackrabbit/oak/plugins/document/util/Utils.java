@@ -40,6 +40,7 @@ import java.util.stream.Collectors;
 import org.apache.jackrabbit.guava.common.base.Function;
 import org.apache.jackrabbit.guava.common.base.Predicate;
 import org.apache.jackrabbit.guava.common.collect.AbstractIterator;
+import org.apache.jackrabbit.oak.cache.CacheValue;
 import org.apache.jackrabbit.oak.commons.OakVersion;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.commons.StringUtils;
@@ -169,6 +170,10 @@ public class Utils {
         if (map == null) {
             return 0;
         }
+        if (map instanceof CacheValue) {
+            // the map estimates its own memory usage
+            return ((CacheValue) map).getMemory();
+        }
         long size = 0;
 
         for (Entry<?, Object> e : map.entrySet()) {
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.ExecutorAsyncDocumentStore;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncDocumentStoreTest {
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    @Test
+    public void synchronous() throws Exception {
+        DocumentStore store = new MemoryDocumentStore();
+        store.create(NODES, List.of(new UpdateOp("1:/a", true)));
+        AsyncDocumentStore async = store.async();
+        CompletableFuture<NodeDocument> doc = async.findAsync(NODES, "1:/a");
+        assertTrue(doc.isDone());
+        assertNotNull(doc.get());
+        assertNull(async.findAsync(NODES, "1:/b").get());
+        assertEquals(1, async.queryAsync(NODES, "1:/", "1:/z", 10).get().size());
+    }
+
+    @Test
+    public void concurrentReads() throws Exception {
+        CountDownLatch entered = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        DocumentStore store = new DocumentStoreWrapper(new MemoryDocumentStore()) {
+            @Override
+            public <T extends Document> T find(Collection<T> collection, String key) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw DocumentStoreException.convert(e);
+                }
+                return super.find(collection, key);
+            }
+        };
+        store.create(NODES, List.of(new UpdateOp("1:/a", true), new UpdateOp("1:/b", true)));
+        try (ExecutorAsyncDocumentStore async = new ExecutorAsyncDocumentStore(store, 2, "test")) {
+            CompletableFuture<NodeDocument> a = async.findAsync(NODES, "1:/a");
+            CompletableFuture<NodeDocument> b = async.findAsync(NODES, "1:/b");
+            // both reads are in progress at the same time
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+            release.countDown();
+            assertEquals("1:/a", a.get().getId());
+            assertEquals("1:/b", b.get().getId());
+        }
+    }
+
+    @Test
+    public void closed() throws Exception {
+        ExecutorAsyncDocumentStore async = new ExecutorAsyncDocumentStore(
+                new MemoryDocumentStore(), 1, "test");
+        async.close();
+        try {
+            async.findAsync(NODES, "1:/a").get();
+            fail("must fail with DocumentStoreException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DocumentStoreException);
+        }
+    }
+
+    @Test
+    public void childNodesReadAsync() throws Exception {
+        AtomicInteger asyncReads = new AtomicInteger();
+        DocumentStore store = new DocumentStoreWrapper(new MemoryDocumentStore()) {
+            @Override
+            public <T extends Document> T getIfCached(Collection<T> collection, String key) {
+                // pretend nothing is cached
+                return null;
+            }
+
+            @Override
+            public @NotNull AsyncDocumentStore async() {
+                AsyncDocumentStore async = super.async();
+                return new AsyncDocumentStore() {
+                    @Override
+                    public @NotNull <T extends Document> CompletableFuture<T> findAsync(Collection<T> collection,
+                                                                                       String key) {
+                        asyncReads.incrementAndGet();
+                        return async.findAsync(collection, key);
+                    }
+
+                    @Override
+                    public @NotNull <T extends Document> CompletableFuture<List<T>> queryAsync(Collection<T> collection,
+                                                                                              String fromKey,
+                                                                                              String toKey,
+                                                                                              int limit) {
+                        return async.queryAsync(collection, fromKey, toKey, limit);
+                    }
+                };
+            }
+        };
+        DocumentNodeStore ns;
+        System.setProperty("oak.documentMK.concurrentChildReads", "true");
+        try {
+            ns = builderProvider.newBuilder()
+                    .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+        } finally {
+            System.clearProperty("oak.documentMK.concurrentChildReads");
+        }
+        NodeBuilder builder = ns.getRoot().builder();
+        NodeBuilder parent = builder.child("parent");
+        for (int i = 0; i < 10; i++) {
+            parent.child("node-" + i);
+        }
+        ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+        // read children once to populate the children cache
+        assertEquals(10, count(ns));
+        // node states must now be read again from the documents
+        ns.getNodeCache().invalidateAll();
+        asyncReads.set(0);
+        assertEquals(10, count(ns));
+        assertEquals(10, asyncReads.get());
+    }
+
+    private static int count(DocumentNodeStore ns) {
+        int count = 0;
+        for (ChildNodeEntry ignored : ns.getRoot().getChildNode("parent").getChildNodeEntries()) {
+            count++;
+        }
+        return count;
+    }
+}
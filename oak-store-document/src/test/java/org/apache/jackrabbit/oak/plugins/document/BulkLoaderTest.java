@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BulkLoaderTest {
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    private final AtomicInteger creates = new AtomicInteger();
+
+    private final DocumentStore store = new DocumentStoreWrapper(new MemoryDocumentStore()) {
+        @Override
+        public <T extends Document> boolean create(Collection<T> collection,
+                                                   List<UpdateOp> updateOps) {
+            if (collection == Collection.NODES) {
+                creates.incrementAndGet();
+            }
+            return super.create(collection, updateOps);
+        }
+    };
+
+    @Test
+    public void load() throws Exception {
+        DocumentNodeStore ns1 = newNodeStore(1);
+        NodeBuilder builder = ns1.getRoot().builder();
+        builder.child("content");
+        ns1.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns1.runBackgroundOperations();
+        DocumentNodeStore ns2 = newNodeStore(2);
+
+        creates.set(0);
+        assertEquals(1 + 10 + 10 * 20, ns1.bulkLoad("/content/import", createContent(10, 20)));
+        // a few bulk inserts, the commit only adds the new node
+        assertTrue("creates: " + creates.get(), creates.get() < 10);
+
+        assertContent(ns1.getRoot().getChildNode("content").getChildNode("import"));
+
+        // visible on another cluster node after the background operations
+        assertFalse(ns2.getRoot().getChildNode("content").hasChildNode("import"));
+        ns1.runBackgroundOperations();
+        ns2.runBackgroundOperations();
+        assertContent(ns2.getRoot().getChildNode("content").getChildNode("import"));
+
+        // the loaded content can be modified with regular commits
+        builder = ns2.getRoot().builder();
+        builder.child("content").child("import").child("node-3").remove();
+        builder.child("content").child("import").child("node-4").child("child-0").setProperty("p", "changed");
+        ns2.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        NodeState imported = ns2.getRoot().getChildNode("content").getChildNode("import");
+        assertEquals(9, imported.getChildNodeCount(Long.MAX_VALUE));
+        assertEquals("changed", imported.getChildNode("node-4").getChildNode("child-0").getString("p"));
+    }
+
+    @Test
+    public void loadLeaf() throws Exception {
+        DocumentNodeStore ns = newNodeStore(1);
+        NodeBuilder builder = EmptyNodeState.EMPTY_NODE.builder();
+        builder.setProperty("p", "v");
+        assertEquals(1, ns.bulkLoad("/leaf", builder.getNodeState()));
+        NodeState leaf = ns.getRoot().getChildNode("leaf");
+        assertEquals("v", leaf.getString("p"));
+        assertEquals(0, leaf.getChildNodeCount(Long.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void existingNode() throws Exception {
+        DocumentNodeStore ns = newNodeStore(1);
+        NodeBuilder builder = ns.getRoot().builder();
+        builder.child("content");
+        ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns.bulkLoad("/content", createContent(1, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingParent() throws Exception {
+        newNodeStore(1).bulkLoad("/missing/import", createContent(1, 1));
+    }
+
+    @Test
+    public void conflict() throws Exception {
+        DocumentNodeStore ns1 = newNodeStore(1);
+        DocumentNodeStore ns2 = newNodeStore(2);
+        // the node is added by another cluster node in the meantime
+        NodeBuilder builder = ns2.getRoot().builder();
+        builder.child("import");
+        ns2.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns2.runBackgroundOperations();
+        try {
+            ns1.bulkLoad("/import", createContent(5, 5));
+            fail("CommitFailedException expected");
+        } catch (CommitFailedException e) {
+            // expected
+        }
+        // documents of the failed bulk load are removed
+        assertNull(store.find(Collection.NODES, Utils.getIdFromPath("/import/node-0")));
+        assertNull(store.find(Collection.NODES, Utils.getIdFromPath("/import/node-0/child-0")));
+        ns1.runBackgroundOperations();
+        assertEquals(0, ns1.getRoot().getChildNode("import").getChildNodeCount(Long.MAX_VALUE));
+    }
+
+    private DocumentNodeStore newNodeStore(int clusterId) {
+        return builderProvider.newBuilder().setClusterId(clusterId)
+                .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+    }
+
+    private static NodeState createContent(int numChildren, int numGrandChildren) {
+        NodeBuilder builder = EmptyNodeState.EMPTY_NODE.builder();
+        builder.setProperty("jcr:primaryType", "nt:unstructured");
+        for (int i = 0; i < numChildren; i++) {
+            NodeBuilder child = builder.child("node-" + i);
+            child.setProperty("index", i);
+            for (int j = 0; j < numGrandChildren; j++) {
+                child.child("child-" + j).setProperty("p", "value-" + i + "-" + j);
+            }
+        }
+        return builder.getNodeState();
+    }
+
+    private static void assertContent(@NotNull NodeState imported) {
+        assertTrue(imported.exists());
+        assertEquals("nt:unstructured", imported.getString("jcr:primaryType"));
+        assertEquals(10, imported.getChildNodeCount(Long.MAX_VALUE));
+        for (int i = 0; i < 10; i++) {
+            NodeState child = imported.getChildNode("node-" + i);
+            assertEquals(i, child.getProperty("index").getValue(Type.LONG).intValue());
+            assertEquals(20, child.getChildNodeCount(Long.MAX_VALUE));
+            assertEquals("value-" + i + "-7", child.getChildNode("child-7").getString("p"));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChildDocumentReadAheadTest {
+
+    private static final int NUM_CHILDREN = 50;
+
+    private static final int NUM_GRANDCHILDREN = 5;
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    private final AtomicInteger grandchildQueries = new AtomicInteger();
+
+    private final DocumentStore store = new DocumentStoreWrapper(new MemoryDocumentStore()) {
+        @Override
+        public @NotNull <T extends Document> List<T> query(Collection<T> collection,
+                                                           String fromKey,
+                                                           String toKey,
+                                                           int limit) {
+            if (fromKey.startsWith("3:/a/")) {
+                grandchildQueries.incrementAndGet();
+            }
+            return super.query(collection, fromKey, toKey, limit);
+        }
+    };
+
+    @Before
+    public void enableReadAhead() {
+        System.setProperty("oak.documentMK.childReadAheadMax", "1600");
+    }
+
+    @After
+    public void resetReadAhead() {
+        System.clearProperty("oak.documentMK.childReadAheadMax");
+    }
+
+    @Test
+    public void disabledByDefault() {
+        System.clearProperty("oak.documentMK.childReadAheadMax");
+        DocumentNodeStore ns = builderProvider.newBuilder()
+                .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+        assertNull(ns.getChildReadAhead());
+    }
+
+    @Test
+    public void depthFirstTraversal() throws Exception {
+        DocumentNodeStore ns1 = builderProvider.newBuilder().setClusterId(1)
+                .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+        NodeBuilder builder = ns1.getRoot().builder();
+        NodeBuilder a = builder.child("a");
+        for (int i = 0; i < NUM_CHILDREN; i++) {
+            NodeBuilder child = a.child("node-" + i);
+            for (int j = 0; j < NUM_GRANDCHILDREN; j++) {
+                child.child("c-" + j);
+            }
+        }
+        ns1.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns1.runBackgroundOperations();
+
+        // a second node store starts with empty caches
+        DocumentNodeStore ns2 = builderProvider.newBuilder().setClusterId(2)
+                .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+        grandchildQueries.set(0);
+        int children = 0;
+        int grandchildren = 0;
+        for (ChildNodeEntry child : ns2.getRoot().getChildNode("a").getChildNodeEntries()) {
+            children++;
+            NodeState state = child.getNodeState();
+            for (ChildNodeEntry ignored : state.getChildNodeEntries()) {
+                grandchildren++;
+            }
+        }
+        assertEquals(NUM_CHILDREN, children);
+        assertEquals(NUM_CHILDREN * NUM_GRANDCHILDREN, grandchildren);
+
+        ChildDocumentReadAhead readAhead = ns2.getChildReadAhead();
+        assertNotNull(readAhead);
+        assertTrue(readAhead.getReadAheadCount() > 0);
+        assertTrue(readAhead.getHitCount() > 0);
+        assertTrue(readAhead.getHitRatio() > 0.5);
+        // without read-ahead there is one query per child
+        assertTrue("queries: " + grandchildQueries.get(),
+                grandchildQueries.get() < NUM_CHILDREN / 4);
+    }
+
+    @Test
+    public void listingDoesNotReadAhead() throws Exception {
+        DocumentNodeStore ns1 = builderProvider.newBuilder().setClusterId(1)
+                .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+        NodeBuilder builder = ns1.getRoot().builder();
+        NodeBuilder a = builder.child("a");
+        for (int i = 0; i < NUM_CHILDREN; i++) {
+            a.child("node-" + i).child("c");
+        }
+        ns1.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns1.runBackgroundOperations();
+
+        DocumentNodeStore ns2 = builderProvider.newBuilder().setClusterId(2)
+                .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+        int children = 0;
+        for (ChildNodeEntry ignored : ns2.getRoot().getChildNode("a").getChildNodeEntries()) {
+            children++;
+        }
+        assertEquals(NUM_CHILDREN, children);
+        ChildDocumentReadAhead readAhead = ns2.getChildReadAhead();
+        assertNotNull(readAhead);
+        assertEquals(0, readAhead.getReadAheadCount());
+        assertEquals(0, readAhead.getWasteRatio(), 0.0);
+    }
+}
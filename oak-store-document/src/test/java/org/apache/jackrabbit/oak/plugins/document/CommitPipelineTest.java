@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.junit.After;
+import org.junit.Test;
+
+import static java.util.Collections.singletonList;
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CommitPipelineTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final BlockingStore store = new BlockingStore(new MemoryDocumentStore());
+
+    private final CommitPipeline pipeline = new CommitPipeline(store, 0, 1000);
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCommitsBatched() throws Exception {
+        Future<List<NodeDocument>> first = update("1:/a", "p", 1);
+        assertTrue(store.entered.await(10, TimeUnit.SECONDS));
+        Future<List<NodeDocument>> second = update("1:/b", "p", 1);
+        Future<List<NodeDocument>> third = update("1:/c", "p", 1);
+        awaitQueueLength(2);
+        store.release.countDown();
+
+        assertNull(first.get().get(0));
+        assertNull(second.get().get(0));
+        assertNull(third.get().get(0));
+        assertEquals(2, pipeline.getBatchCount());
+        assertEquals(2, store.calls.get());
+        assertEquals(3, pipeline.getRequestCount());
+        for (String id : new String[] {"1:/a", "1:/b", "1:/c"}) {
+            assertNotNull(store.find(NODES, id));
+        }
+    }
+
+    @Test
+    public void sameDocumentInSeparateBatches() throws Exception {
+        Future<List<NodeDocument>> first = update("1:/a", "p", 1);
+        assertTrue(store.entered.await(10, TimeUnit.SECONDS));
+        Future<List<NodeDocument>> second = update("1:/b", "p", 1);
+        awaitQueueLength(1);
+        Future<List<NodeDocument>> third = update("1:/b", "p", 2);
+        awaitQueueLength(2);
+        store.release.countDown();
+
+        assertNull(first.get().get(0));
+        assertNull(second.get().get(0));
+        // the third request must see the change of the second
+        NodeDocument before = third.get().get(0);
+        assertNotNull(before);
+        assertEquals(1L, before.get("p"));
+        assertEquals(3, pipeline.getBatchCount());
+        assertEquals(2L, store.find(NODES, "1:/b").get("p"));
+    }
+
+    @Test
+    public void failedBatch() throws Exception {
+        store.fail = true;
+        store.release.countDown();
+        try {
+            pipeline.createOrUpdate(singletonList(newUpdate("1:/a", "p", 1)));
+            fail("must fail with DocumentStoreException");
+        } catch (DocumentStoreException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        store.fail = false;
+        assertNull(pipeline.createOrUpdate(singletonList(newUpdate("1:/a", "p", 1))).get(0));
+    }
+
+    private Future<List<NodeDocument>> update(String id, String name, long value) {
+        return executor.submit((Callable<List<NodeDocument>>) () ->
+                pipeline.createOrUpdate(singletonList(newUpdate(id, name, value))));
+    }
+
+    private void awaitQueueLength(int length) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (pipeline.getQueueLength() < length) {
+            if (System.currentTimeMillis() > end) {
+                fail("Queue did not reach length " + length);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static UpdateOp newUpdate(String id, String name, long value) {
+        UpdateOp op = new UpdateOp(id, true);
+        op.set(name, value);
+        return op;
+    }
+
+    private static final class BlockingStore extends DocumentStoreWrapper {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        volatile boolean fail;
+
+        BlockingStore(DocumentStore store) {
+            super(store);
+        }
+
+        @Override
+        public <T extends Document> List<T> createOrUpdate(Collection<T> collection,
+                                                           List<UpdateOp> updateOps) {
+            calls.incrementAndGet();
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw DocumentStoreException.convert(e);
+            }
+            if (fail) {
+                throw new DocumentStoreException("failed");
+            }
+            return super.createOrUpdate(collection, updateOps);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.jackrabbit.oak.plugins.document.cache.NodeDocumentCache;
+import org.apache.jackrabbit.oak.plugins.document.locks.StripedNodeDocumentLocks;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+
+import static org.apache.jackrabbit.oak.plugins.document.DocumentNodeStoreBuilder.newDocumentNodeStoreBuilder;
+
+/**
+ * Compares the hit ratio of the node document cache with a fixed memory
+ * budget, with and without compact revision maps. The flag is read once per
+ * JVM, therefore run this class once with argument {@code default} and once
+ * with argument {@code compact}.
+ */
+public class CompactRevisionMapBenchmark {
+
+    private static final int DOCUMENTS = 50000;
+
+    private static final int REVISIONS = 20;
+
+    private static final int READS = 1000000;
+
+    private static final long CACHE_SIZE = 64 * 1024 * 1024;
+
+    public static void main(String... args) {
+        boolean compact = args.length > 0 && args[0].equals("compact");
+        // must be set before NodeDocument is initialized
+        System.setProperty("oak.documentMK.compactRevisionMaps", String.valueOf(compact));
+
+        DocumentStore store = new MemoryDocumentStore();
+        NodeDocumentCache cache = newDocumentNodeStoreBuilder()
+                .memoryCacheSize(CACHE_SIZE)
+                .buildNodeDocumentCache(store, new StripedNodeDocumentLocks());
+
+        long time = System.nanoTime();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            cache.put(createDocument(store, i));
+        }
+        long putTime = System.nanoTime() - time;
+
+        Random random = new Random(42);
+        int hits = 0;
+        time = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            if (cache.getIfPresent(id(random.nextInt(DOCUMENTS))) != null) {
+                hits++;
+            }
+        }
+        long readTime = System.nanoTime() - time;
+
+        System.out.println("compact: " + compact);
+        System.out.println("documents: " + DOCUMENTS + " cache size: " + CACHE_SIZE);
+        System.out.println("hit ratio: " + String.format("%.3f", (double) hits / READS));
+        System.out.println("put: " + putTime / DOCUMENTS + " ns/doc, read: " + readTime / READS + " ns/op");
+    }
+
+    private static String id(int i) {
+        return "2:/content/node-" + i;
+    }
+
+    private static NodeDocument createDocument(DocumentStore store, int i) {
+        NodeDocument doc = new NodeDocument(store);
+        doc.put(Document.ID, id(i));
+        doc.put(Document.MOD_COUNT, 1L);
+        NavigableMap<Revision, Object> revisions = new TreeMap<>(StableRevisionComparator.REVERSE);
+        NavigableMap<Revision, Object> commitRoot = new TreeMap<>(StableRevisionComparator.REVERSE);
+        NavigableMap<Revision, Object> property = new TreeMap<>(StableRevisionComparator.REVERSE);
+        for (int r = 0; r < REVISIONS; r++) {
+            Revision rev = new Revision(1500000000000L + i * 1000L + r, 0, 1 + r % 3);
+            revisions.put(rev, "c");
+            commitRoot.put(rev, "0");
+            property.put(rev, "\"value-" + i + "-" + r + "\"");
+        }
+        doc.put(NodeDocument.REVISIONS, revisions);
+        doc.put(NodeDocument.COMMIT_ROOT, commitRoot);
+        doc.put("prop", property);
+        doc.seal();
+        return doc;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompactRevisionMapTest {
+
+    private static NavigableMap<Revision, Object> newMap(Comparator<Revision> comparator) {
+        NavigableMap<Revision, Object> map = new TreeMap<>(comparator);
+        for (int i = 0; i < 50; i++) {
+            // two revisions per timestamp to exercise counter and clusterId
+            map.put(new Revision(1000 + i * 10, 0, 1), "c");
+            map.put(new Revision(1000 + i * 10, 1, 2), "\"value-" + i + "\"");
+        }
+        return map;
+    }
+
+    private static List<Revision> probes() {
+        List<Revision> probes = new ArrayList<>();
+        for (int i = -1; i <= 51; i++) {
+            probes.add(new Revision(1000 + i * 10, 0, 1));
+            probes.add(new Revision(1000 + i * 10, 1, 2));
+            probes.add(new Revision(1000 + i * 10 + 5, 0, 1));
+            probes.add(new Revision(1000 + i * 10, 0, 1, true));
+        }
+        return probes;
+    }
+
+    @Test
+    public void sameAsTreeMap() {
+        List<Comparator<Revision>> comparators = Arrays.asList(
+                StableRevisionComparator.REVERSE, StableRevisionComparator.INSTANCE);
+        for (Comparator<Revision> comparator : comparators) {
+            NavigableMap<Revision, Object> expected = newMap(comparator);
+            NavigableMap<Revision, Object> actual = CompactRevisionMap.fromMap(expected);
+            assertNotNull(actual);
+            assertSameMap(expected, actual);
+
+            Revision lower = new Revision(1105, 0, 1);
+            Revision upper = new Revision(1300, 1, 2);
+            if (comparator.compare(lower, upper) > 0) {
+                Revision tmp = lower;
+                lower = upper;
+                upper = tmp;
+            }
+            assertSameMap(expected.headMap(upper, false), actual.headMap(upper, false));
+            assertSameMap(expected.headMap(upper, true), actual.headMap(upper, true));
+            assertSameMap(expected.tailMap(lower, true), actual.tailMap(lower, true));
+            assertSameMap(expected.tailMap(lower, false), actual.tailMap(lower, false));
+            assertSameMap(expected.subMap(lower, true, upper, false), actual.subMap(lower, true, upper, false));
+            assertSameMap(expected.subMap(lower, false, upper, true), actual.subMap(lower, false, upper, true));
+            assertEquals(new ArrayList<>(expected.descendingMap().entrySet()),
+                    new ArrayList<>(actual.descendingMap().entrySet()));
+        }
+    }
+
+    private static void assertSameMap(NavigableMap<Revision, Object> expected,
+                                      NavigableMap<Revision, Object> actual) {
+        assertEquals(expected, actual);
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(expected.size(), actual.size());
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(actual.entrySet()));
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+        assertEquals(expected.firstEntry(), actual.firstEntry());
+        assertEquals(expected.lastEntry(), actual.lastEntry());
+        for (Revision r : probes()) {
+            assertEquals(expected.get(r), actual.get(r));
+            assertEquals(expected.containsKey(r), actual.containsKey(r));
+            assertEquals(expected.lowerEntry(r), actual.lowerEntry(r));
+            assertEquals(expected.floorEntry(r), actual.floorEntry(r));
+            assertEquals(expected.ceilingEntry(r), actual.ceilingEntry(r));
+            assertEquals(expected.higherEntry(r), actual.higherEntry(r));
+        }
+    }
+
+    @Test
+    public void notCompacted() {
+        assertNull(CompactRevisionMap.fromMap(new TreeMap<>(StableRevisionComparator.REVERSE)));
+        Map<Revision, Object> unsorted = new HashMap<>();
+        unsorted.put(new Revision(1, 0, 1), "c");
+        assertNull(CompactRevisionMap.fromMap(unsorted));
+        NavigableMap<Revision, Object> branch = newMap(StableRevisionComparator.REVERSE);
+        branch.put(new Revision(1, 0, 1, true), "c");
+        assertNull(CompactRevisionMap.fromMap(branch));
+        NavigableMap<Revision, Object> nonString = newMap(StableRevisionComparator.REVERSE);
+        nonString.put(new Revision(1, 0, 1), 1L);
+        assertNull(CompactRevisionMap.fromMap(nonString));
+    }
+
+    @Test
+    public void immutable() {
+        NavigableMap<Revision, Object> map = CompactRevisionMap.fromMap(newMap(StableRevisionComparator.REVERSE));
+        assertNotNull(map);
+        Revision r = map.firstKey();
+        try {
+            map.put(new Revision(1, 0, 1), "c");
+            fail("must not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            map.remove(r);
+            fail("must not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertTrue(map.containsKey(r));
+    }
+
+    @Test
+    public void internedValues() {
+        CompactRevisionMap m1 = CompactRevisionMap.fromMap(newMap(StableRevisionComparator.REVERSE));
+        CompactRevisionMap m2 = CompactRevisionMap.fromMap(newMap(StableRevisionComparator.REVERSE));
+        assertNotNull(m1);
+        assertNotNull(m2);
+        Revision r = new Revision(1000, 1, 2);
+        assertSame(m1.get(r), m2.get(r));
+    }
+
+    @Test
+    public void memory() {
+        NavigableMap<Revision, Object> map = newMap(StableRevisionComparator.REVERSE);
+        CompactRevisionMap compact = CompactRevisionMap.fromMap(map);
+        assertNotNull(compact);
+        assertEquals(compact.getMemory(), Utils.estimateMemoryUsage(compact));
+        assertTrue(compact.getMemory() < Utils.estimateMemoryUsage(map) / 2);
+    }
+}
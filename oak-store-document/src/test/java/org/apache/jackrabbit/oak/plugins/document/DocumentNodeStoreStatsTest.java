@@ -86,6 +86,17 @@ public class DocumentNodeStoreStatsTest {
         assertEquals(105, m.getCount());
     }
 
+    @Test
+    public void childNodeDiff() {
+        stats.doneChildNodeDiff(true, 10);
+        stats.doneChildNodeDiff(true, 10);
+        stats.doneChildNodeDiff(true, 10);
+        stats.doneChildNodeDiff(false, 1000);
+        assertEquals(3, getMeter(DocumentNodeStoreStats.DIFF_CACHED_COUNT).getCount());
+        assertEquals(1, getMeter(DocumentNodeStoreStats.DIFF_COMPARED_COUNT).getCount());
+        assertEquals(0.75, stats.getDiffCacheHitRatio(), 0.001);
+    }
+
     private Meter getMeter(String name) {
         return statsProvider.getRegistry().getMeters().get(name);
     }
@@ -2523,6 +2523,8 @@ public class DocumentNodeStoreTest {
         startValues.clear();
         // make sure diff is not served from node children cache entries
         ns.invalidateNodeChildrenCache();
+        // nor composed from the cached diffs of the two commits
+        ns.getDiffCache().invalidateAll();
         afterTest.compareAgainstBaseState(beforeTest, new DefaultNodeStateDiff());
 
         assertEquals(1, startValues.size());
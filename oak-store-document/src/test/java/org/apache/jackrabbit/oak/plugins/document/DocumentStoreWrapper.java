@@ -169,4 +169,15 @@ public class DocumentStoreWrapper implements DocumentStore {
     public long determineServerTimeDifferenceMillis() {
         return store.determineServerTimeDifferenceMillis();
     }
+
+    /**
+     * Reads in the calling thread through the methods of this wrapper, so
+     * that subclasses overriding {@code find} or {@code query} also see the
+     * asynchronous reads.
+     */
+    @NotNull
+    @Override
+    public AsyncDocumentStore async() {
+        return AsyncDocumentStore.synchronous(this);
+    }
 }
@@ -295,6 +295,9 @@ public class JournalDiffLoaderTest {
         ns2.runBackgroundOperations();
 
         DocumentNodeState fooAfter = (DocumentNodeState) ns1.getRoot().getChildNode("foo");
+        // make sure the diff is not composed from the cached diffs
+        // of the two commits
+        ns1.getDiffCache().invalidateAll();
         journalQueryCounter.set(0);
         final Set<String> changes = Sets.newHashSet();
         fooAfter.compareAgainstBaseState(fooBefore, new DefaultNodeStateDiff() {
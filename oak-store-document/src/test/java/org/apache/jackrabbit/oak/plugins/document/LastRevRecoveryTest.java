@@ -19,6 +19,7 @@
 
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -149,6 +150,41 @@ public class LastRevRecoveryTest {
         assertEquals(head2, getDocument(ds1, "/").getLastRev().get(c2Id));
     }
 
+    @Test
+    public void parallelRecover() throws Exception {
+        NodeBuilder b2 = ds2.getRoot().builder();
+        for (int i = 0; i < 500; i++) {
+            b2.child("x").child("n-" + i);
+        }
+        ds2.merge(b2, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ds2.runBackgroundOperations();
+
+        // update all nodes without persisting the _lastRev
+        b2 = ds2.getRoot().builder();
+        for (int i = 0; i < 500; i++) {
+            b2.child("x").child("n-" + i).setProperty("p", i);
+        }
+        ds2.merge(b2, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        Revision head2 = ds2.getHeadRevision().getRevision(c2Id);
+
+        ds1.runBackgroundOperations();
+        assertNotEquals(head2, getDocument(ds1, "/x").getLastRev().get(c2Id));
+
+        LastRevRecoveryAgent recovery = new LastRevRecoveryAgent(sharedStore, ds1);
+        recovery.setRecoveryThreads(4);
+        assertEquals(4, recovery.getRecoveryThreads());
+        assertThat(recovery.getRecoveryStatus(), containsString("No recovery"));
+
+        List<NodeDocument> suspects = newArrayList(Utils.getAllDocuments(sharedStore));
+        assertEquals(2, recovery.recover(suspects, c2Id));
+
+        assertEquals(head2, getDocument(ds1, "/x").getLastRev().get(c2Id));
+        assertEquals(head2, getDocument(ds1, "/").getLastRev().get(c2Id));
+        assertEquals(suspects.size(), recovery.getScannedDocumentCount());
+        assertEquals(2, recovery.getUpdatedDocumentCount());
+        assertThat(recovery.getRecoveryStatus(), containsString("Finished"));
+    }
+
     // OAK-3079
     @Test
     public void recoveryWithoutRootUpdate() throws Exception {
@@ -29,6 +29,13 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
+import static org.apache.jackrabbit.oak.plugins.document.util.Utils.getIdFromPath;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -99,6 +106,44 @@ public class RevisionGCTest {
         assertTrue(store.getRoot().hasChildNode("child"));
     }
 
+    @Test
+    public void parallelCollectDeletedDocuments() throws Exception {
+        int numParents = 100;
+        NodeBuilder b = newNodeBuilder();
+        for (int i = 0; i < numParents; i++) {
+            b.child("p-" + i).child("c");
+        }
+        merge(b);
+        // remove the nodes over a period of time to spread them
+        // across the _modified ranges of the workers
+        for (int i = 0; i < numParents; i++) {
+            if (i % 10 == 0) {
+                clock.waitUntil(clock.getTime() + MINUTES.toMillis(1));
+            }
+            b = newNodeBuilder();
+            b.child("p-" + i).remove();
+            merge(b);
+        }
+        store.runBackgroundOperations();
+
+        clock.waitUntil(clock.getTime() + HOURS.toMillis(2));
+        gc.setOptions(gc.getOptions().withCollectorThreads(4));
+        VersionGarbageCollector.VersionGCStats stats = gc.gc(1, HOURS);
+
+        assertFalse(stats.limitExceeded);
+        assertEquals(2 * numParents, stats.deletedDocGCCount);
+        assertEquals(numParents, stats.deletedLeafDocGCCount);
+        for (int i = 0; i < numParents; i++) {
+            String p = "/p-" + i;
+            assertNull(store.getDocumentStore().find(NODES, getIdFromPath(p)));
+            assertNull(store.getDocumentStore().find(NODES, getIdFromPath(p + "/c")));
+        }
+        // time spent by the workers is reported separately from the phase timings
+        assertNotEquals(0, stats.checkDeletedDocsWorkersElapsed);
+        assertNotEquals(0, stats.deleteDeletedDocsWorkersElapsed);
+        assertEquals(0, stats.checkDeletedDocsElapsed);
+    }
+
     private NodeBuilder newNodeBuilder() {
         return store.getRoot().builder();
     }
@@ -114,6 +114,13 @@ public class TestUtils {
         ClusterNodeInfo.resetClockToDefault();
     }
 
+    public static void setMapEntry(@NotNull UpdateOp op,
+                                   @NotNull String property,
+                                   @NotNull Revision revision,
+                                   @NotNull String value) {
+        op.setMapEntry(property, revision, value);
+    }
+
     public static void persistToBranch(NodeBuilder builder) {
         if (builder instanceof DocumentRootBuilder) {
             ((DocumentRootBuilder) builder).persist();
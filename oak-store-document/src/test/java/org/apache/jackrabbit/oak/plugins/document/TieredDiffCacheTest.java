@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TieredDiffCacheTest {
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    @Test
+    public void mergeDiffs() {
+        String merged = DiffRanges.merge(Arrays.asList(
+                "+\"a\":{}^\"b\":{}-\"c\"",
+                "-\"a\"^\"b\":{}+\"c\":{}+\"d\":{}",
+                "^\"d\":{}-\"e\""));
+        assertEquals(Set.of("^b", "^c", "+d", "-e"), changes(merged));
+    }
+
+    @Test
+    public void composeAdjacentRanges() {
+        DiffCache cache = new TieredDiffCache(builderProvider.newBuilder(), 1);
+        List<RevisionVector> revs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            revs.add(new RevisionVector(new Revision(i + 1, 0, 2)));
+        }
+        append(cache, revs.get(0), revs.get(1), "+\"a\":{}");
+        append(cache, revs.get(1), revs.get(2), "^\"a\":{}+\"b\":{}");
+        append(cache, revs.get(2), revs.get(3), "-\"b\"");
+
+        assertEquals(Set.of("+a"), changes(cache.getChanges(revs.get(0), revs.get(3), Path.ROOT, null)));
+        assertEquals(Set.of("+a", "+b"), changes(cache.getChanges(revs.get(0), revs.get(2), Path.ROOT,
+                () -> {
+                    throw new AssertionError("must be composed");
+                })));
+        // the ranges do not cover this path
+        assertNull(cache.getChanges(revs.get(0), revs.get(3), Path.fromString("/a"), null));
+    }
+
+    @Test
+    public void composeRequiresAllRanges() {
+        DiffCache cache = new TieredDiffCache(builderProvider.newBuilder(), 1);
+        RevisionVector r1 = new RevisionVector(new Revision(1, 0, 2));
+        RevisionVector r2 = new RevisionVector(new Revision(2, 0, 2));
+        RevisionVector r3 = new RevisionVector(new Revision(3, 0, 2));
+        RevisionVector r4 = new RevisionVector(new Revision(4, 0, 2));
+        append(cache, r1, r2, "+\"a\":{}");
+        append(cache, r3, r4, "+\"b\":{}");
+        assertNull(cache.getChanges(r1, r4, Path.ROOT, null));
+        assertEquals("loaded", cache.getChanges(r1, r4, Path.ROOT, () -> "loaded"));
+    }
+
+    private static void append(DiffCache cache,
+                               RevisionVector from,
+                               RevisionVector to,
+                               String changes) {
+        DiffCache.Entry entry = cache.newEntry(from, to, false);
+        entry.append(Path.ROOT, changes);
+        entry.done();
+    }
+
+    private static Set<String> changes(String jsop) {
+        Set<String> changes = new HashSet<>();
+        DiffCache.parseJsopDiff(jsop, new DiffCache.Diff() {
+            @Override
+            public boolean childNodeAdded(String name) {
+                return changes.add("+" + name);
+            }
+
+            @Override
+            public boolean childNodeChanged(String name) {
+                return changes.add("^" + name);
+            }
+
+            @Override
+            public boolean childNodeDeleted(String name) {
+                return changes.add("-" + name);
+            }
+        });
+        return changes;
+    }
+}
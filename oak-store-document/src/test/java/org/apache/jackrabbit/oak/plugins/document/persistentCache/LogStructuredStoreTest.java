@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.commons.concurrent.ExecutorCloser;
+import org.h2.mvstore.type.StringDataType;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LogStructuredStoreTest {
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    @Test
+    public void putGetRemove() throws Exception {
+        LogStructuredStore store = new LogStructuredStore(folder.newFolder(), false, SEGMENT_SIZE);
+        try {
+            Map<String, String> map = openMap(store, "test");
+            map.put("a", "1");
+            map.put("b", "2");
+            map.put("a", "3");
+            assertEquals("3", map.get("a"));
+            assertEquals("2", map.get("b"));
+            map.remove("b");
+            assertNull(map.get("b"));
+            assertFalse(map.containsKey("b"));
+            assertTrue(map.containsKey("a"));
+            // maps with different names are separate
+            assertNull(openMap(store, "other").get("a"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void reopen() throws Exception {
+        File dir = folder.newFolder();
+        LogStructuredStore store = new LogStructuredStore(dir, false, SEGMENT_SIZE);
+        Map<String, String> map = openMap(store, "test");
+        Map<String, String> other = openMap(store, "other");
+        for (int i = 0; i < 1000; i++) {
+            map.put("k" + i, "v" + i);
+        }
+        map.put("k1", "changed");
+        map.remove("k2");
+        other.put("x", "y");
+        other.clear();
+        other.put("z", "z");
+        store.close();
+
+        store = new LogStructuredStore(dir, false, SEGMENT_SIZE);
+        try {
+            map = openMap(store, "test");
+            assertEquals(999, map.size());
+            assertEquals("v0", map.get("k0"));
+            assertEquals("changed", map.get("k1"));
+            assertNull(map.get("k2"));
+            assertEquals("v999", map.get("k999"));
+            other = openMap(store, "other");
+            assertEquals(1, other.size());
+            assertEquals("z", other.get("z"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void discardIfNotClosed() throws Exception {
+        File dir = folder.newFolder();
+        LogStructuredStore store = new LogStructuredStore(dir, false, SEGMENT_SIZE);
+        openMap(store, "test").put("a", "1");
+
+        // the first store was not closed
+        LogStructuredStore store2 = new LogStructuredStore(dir, false, SEGMENT_SIZE);
+        try {
+            assertNull(openMap(store2, "test").get("a"));
+        } finally {
+            store2.close();
+        }
+    }
+
+    @Test
+    public void compaction() throws Exception {
+        LogStructuredStore store = new LogStructuredStore(folder.newFolder(), false, SEGMENT_SIZE);
+        try {
+            Map<String, String> map = openMap(store, "test");
+            String value = new String(new char[1000]);
+            // overwrite the same 20 keys, most of the log is garbage
+            for (int i = 0; i < 2000; i++) {
+                map.put("k" + (i % 20), value + i);
+            }
+            long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (store.getCompactionCount() == 0 && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertTrue(store.getCompactionCount() > 0);
+            assertTrue("segments: " + store.getSegmentCount(), store.getSegmentCount() < 2000 * 1000 / SEGMENT_SIZE);
+            for (int i = 1980; i < 2000; i++) {
+                assertEquals(value + i, map.get("k" + (i % 20)));
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void concurrentWriters() throws Exception {
+        File dir = folder.newFolder();
+        LogStructuredStore store = new LogStructuredStore(dir, false, SEGMENT_SIZE);
+        Map<String, String> map = openMap(store, "test");
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int id = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    map.put(id + "-" + i, "value-" + i);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(20000, map.size());
+        store.close();
+
+        store = new LogStructuredStore(dir, false, SEGMENT_SIZE);
+        try {
+            Map<String, String> reopened = openMap(store, "test");
+            assertEquals(20000, reopened.size());
+            assertEquals("value-4999", reopened.get("3-4999"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void persistentCacheBackend() throws Exception {
+        File dir = folder.newFolder();
+        PersistentCache cache = new PersistentCache(dir.getAbsolutePath() + ",backend=log");
+        CacheMap<String, String> map = cache.openMap(0, "test", null);
+        map.put("hello", "world");
+        cache.close();
+        assertTrue(new File(dir, "cache-0.log").isDirectory());
+
+        cache = new PersistentCache(dir.getAbsolutePath() + ",backend=log");
+        try {
+            assertEquals("world", cache.openMap(0, "test", null).get("hello"));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    @Ignore("benchmark")
+    public void benchmark() throws Exception {
+        for (String backend : new String[] {"mvstore", "log"}) {
+            File dir = folder.newFolder();
+            PersistentCache cache = new PersistentCache(dir.getAbsolutePath() + ",backend=" + backend);
+            try {
+                CacheMap<String, String> map = cache.openMap(0, "test", null);
+                String value = new String(new char[500]);
+                int threads = 8;
+                int count = 100000;
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+                long start = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    int id = t;
+                    executor.execute(() -> {
+                        for (int i = 0; i < count; i++) {
+                            String key = id + "-" + (i % 10000);
+                            if (map.get(key) == null || i % 4 == 0) {
+                                map.put(key, value + i);
+                            }
+                        }
+                    });
+                }
+                new ExecutorCloser(executor, 10, TimeUnit.MINUTES).close();
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                System.out.println(backend + ": " + millis + " ms, " +
+                        FileUtils.sizeOf(dir) / 1024 / 1024 + " MB");
+            } finally {
+                cache.close();
+            }
+        }
+    }
+
+    private static Map<String, String> openMap(LogStructuredStore store, String name) {
+        return store.openMap(name, StringDataType.INSTANCE, StringDataType.INSTANCE);
+    }
+}
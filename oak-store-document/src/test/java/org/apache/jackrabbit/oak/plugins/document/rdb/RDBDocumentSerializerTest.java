@@ -16,6 +16,7 @@
  */
 package org.apache.jackrabbit.oak.plugins.document.rdb;
 
+import static org.apache.jackrabbit.oak.plugins.document.TestUtils.setMapEntry;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -26,8 +27,13 @@ import static org.junit.Assert.fail;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.zip.GZIPOutputStream;
 
 import org.apache.jackrabbit.oak.plugins.document.Collection;
@@ -35,6 +41,9 @@ import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreFixture;
 import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.UpdateOp;
+import org.apache.jackrabbit.oak.plugins.document.UpdateUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -221,6 +230,111 @@ public class RDBDocumentSerializerTest {
         }
     }
 
+    @Test
+    public void testBinaryRoundTrip() {
+        RDBDocumentSerializer binser = new RDBDocumentSerializer(store, true);
+        NodeDocument doc = createDocument(100);
+        int jsonLength = binser.asString(doc, COLUMNPROPERTIES).length();
+        // not supported by the JSON serialization
+        doc.put("list", Arrays.asList(1L, "a", null));
+        byte[] bytes = binser.asBinary(doc, COLUMNPROPERTIES);
+        assertTrue(RDBBinaryDocumentFormat.isBinary(bytes));
+        // smaller than the JSON serialization
+        assertTrue(bytes.length < jsonLength);
+
+        RDBRow row = new RDBRow("_foo", 0L, false, 1l, 2l, 3l, 0L, 0L, 0L, "\"blob\"", bytes);
+        NodeDocument read = this.ser.fromRow(Collection.NODES, row);
+        assertEquals(doc.get("s"), read.get("s"));
+        assertEquals(doc.get("l"), read.get("l"));
+        assertEquals(doc.get("d"), read.get("d"));
+        assertEquals(doc.get("b"), read.get("b"));
+        assertTrue(read.keySet().contains("n"));
+        assertNull(read.get("n"));
+        assertEquals(doc.get("list"), read.get("list"));
+        assertEquals(doc.get("_revisions"), read.get("_revisions"));
+        assertEquals(doc.get("prop"), read.get("prop"));
+        assertEquals(((SortedMap<?, ?>) doc.get("prop")).firstKey(), ((SortedMap<?, ?>) read.get("prop")).firstKey());
+    }
+
+    @Test
+    public void testBinaryAndDiff() {
+        RDBDocumentSerializer binser = new RDBDocumentSerializer(store, true);
+        NodeDocument doc = createDocument(3);
+        byte[] bytes = binser.asBinary(doc, COLUMNPROPERTIES);
+
+        UpdateOp update = new UpdateOp("_foo", false);
+        Revision r = new Revision(System.currentTimeMillis() + 10000, 0, 2);
+        setMapEntry(update, "prop", r, "\"changed\"");
+        update.set("s", "updated");
+        String diff = binser.asString(update, COLUMNPROPERTIES);
+
+        RDBRow row = new RDBRow("_foo", 0L, false, 1l, 2l, 3l, 0L, 0L, 0L, "\"blob\"," + diff, bytes);
+        NodeDocument read = this.ser.fromRow(Collection.NODES, row);
+        UpdateUtils.applyChanges(doc, update);
+        assertEquals("updated", read.get("s"));
+        assertEquals(doc.get("prop"), read.get("prop"));
+    }
+
+    @Test
+    public void testBinaryPartial() {
+        RDBDocumentSerializer binser = new RDBDocumentSerializer(store, true);
+        NodeDocument doc = createDocument(100);
+        RDBRow row = new RDBRow("_foo", 0L, false, 1l, 2l, 3l, 0L, 0L, 0L, "\"blob\"", binser.asBinary(doc, COLUMNPROPERTIES));
+        NodeDocument read = this.ser.fromRow(Collection.NODES, row, Collections.singleton("s"));
+        assertEquals("_foo", read.getId());
+        assertEquals(2L, read.getModCount().longValue());
+        assertEquals(doc.get("s"), read.get("s"));
+        assertFalse(read.keySet().contains("prop"));
+        assertFalse(read.keySet().contains("_revisions"));
+
+        // same for JSON
+        row = new RDBRow("_foo", 0L, false, 1l, 2l, 3l, 0L, 0L, 0L, this.ser.asString(doc, COLUMNPROPERTIES), null);
+        read = this.ser.fromRow(Collection.NODES, row, Collections.singleton("s"));
+        assertEquals(doc.get("s"), read.get("s"));
+        assertFalse(read.keySet().contains("prop"));
+    }
+
+    @Test
+    public void testBinaryDisabled() {
+        assertNull(this.ser.asBinary(createDocument(1), COLUMNPROPERTIES));
+    }
+
+    @Test
+    public void testBinaryUnsupportedVersion() {
+        byte[] bytes = new RDBDocumentSerializer(store, true).asBinary(createDocument(1), COLUMNPROPERTIES);
+        bytes[3] = RDBBinaryDocumentFormat.VERSION + 1;
+        try {
+            RDBRow row = new RDBRow("_foo", 0L, false, 1l, 2l, 3l, 0L, 0L, 0L, "\"blob\"", bytes);
+            this.ser.fromRow(Collection.NODES, row);
+            fail("should fail");
+        } catch (DocumentStoreException expected) {
+        }
+    }
+
+    private static final Set<String> COLUMNPROPERTIES = new HashSet<String>(Arrays.asList(
+            "_id", NodeDocument.HAS_BINARY_FLAG, NodeDocument.DELETED_ONCE, "_collisionsModCount",
+            NodeDocument.MODIFIED_IN_SECS, NodeDocument.MOD_COUNT));
+
+    private NodeDocument createDocument(int numRevisions) {
+        NodeDocument doc = Collection.NODES.newDocument(store);
+        doc.put("_id", "_foo");
+        doc.put(NodeDocument.MOD_COUNT, 2L);
+        UpdateOp op = new UpdateOp("_foo", true);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < numRevisions; i++) {
+            Revision r = new Revision(now + i * 1000, i % 3, 1 + i % 2, i % 10 == 0);
+            setMapEntry(op, "prop", r, "\"value-" + i + "\"");
+            NodeDocument.setRevision(op, r, "c");
+        }
+        op.set("s", "\u20ac\uD834\uDD1E");
+        op.set("l", -42L);
+        op.set("b", true);
+        UpdateUtils.applyChanges(doc, op);
+        doc.put("d", 1.5d);
+        doc.put("n", null);
+        return doc;
+    }
+
     @Test
     public void testInvalidGzip() {
         try {
@@ -16,6 +16,7 @@
  */
 package org.apache.jackrabbit.oak.plugins.document.rdb;
 
+import static org.apache.jackrabbit.oak.plugins.document.TestUtils.setMapEntry;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
@@ -26,11 +27,18 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 import org.apache.jackrabbit.oak.plugins.document.AbstractDocumentStoreTest;
+import org.apache.jackrabbit.oak.plugins.document.Collection;
+import org.apache.jackrabbit.oak.plugins.document.DocumentMK;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreFixture;
+import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.UpdateOp;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,6 +87,56 @@ public class RDBDocumentStorePerformanceTest extends AbstractDocumentStoreTest {
         internalTestPerfUpdateLimit("testPerfUpdateGrowingDoc", "raw row update (string + blob)", 4);
     }
 
+    @Test
+    public void testPerfReadUpdateJSON() {
+        internalTestPerfReadUpdate("testPerfReadUpdateJSON", "document read/update (JSON format)", false);
+    }
+
+    @Test
+    public void testPerfReadUpdateBinary() {
+        internalTestPerfReadUpdate("testPerfReadUpdateBinary", "document read/update (binary format)", true);
+    }
+
+    private void internalTestPerfReadUpdate(String name, String desc, boolean binaryFormat) {
+        RDBOptions options = new RDBOptions().tablePrefix(binaryFormat ? "PERFBIN" : "PERFJSON").dropTablesOnClose(true)
+                .binaryFormat(binaryFormat);
+        RDBDocumentStore store = new RDBDocumentStore(super.rdbDataSource, new DocumentMK.Builder(), options);
+        try {
+            int numDocs = 100;
+            List<String> ids = new ArrayList<String>();
+            List<UpdateOp> ops = new ArrayList<UpdateOp>();
+            for (int i = 0; i < numDocs; i++) {
+                String id = "1:/" + name + "-" + i;
+                ids.add(id);
+                UpdateOp op = new UpdateOp(id, true);
+                // documents with a typical number of revisions
+                for (int r = 0; r < 50; r++) {
+                    Revision rev = new Revision(System.currentTimeMillis() + r, 0, 1);
+                    setMapEntry(op, "prop", rev, "\"" + generateString(32, true) + "\"");
+                    NodeDocument.setRevision(op, rev, "c");
+                }
+                ops.add(op);
+            }
+            assertTrue(store.create(Collection.NODES, ops));
+
+            long duration = 1000;
+            long end = System.currentTimeMillis() + duration;
+            long cnt = 0;
+            while (System.currentTimeMillis() < end) {
+                String id = ids.get((int) (cnt % numDocs));
+                UpdateOp op = new UpdateOp(id, false);
+                setMapEntry(op, "prop", new Revision(System.currentTimeMillis(), (int) cnt, 1), "\"updated\"");
+                store.findAndUpdate(Collection.NODES, op);
+                store.invalidateCache(Collection.NODES, id);
+                assertTrue(store.find(Collection.NODES, id) != null);
+                cnt += 1;
+            }
+            LOG.info(desc + " for " + super.dsname + " was " + cnt + " in " + duration + "ms (" + (cnt / (duration / 1000f)) + "/s)");
+        } finally {
+            store.dispose();
+        }
+    }
+
     private void internalTestPerfUpdateLimit(String name, String desc, int mode) throws SQLException, UnsupportedEncodingException {
         String key = name;
         Connection connection = null;